@@ -0,0 +1,157 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the generations of {@link DatabaseBackup}, taken from a database in use
+ * and restored into a separate file.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseBackupTest {
+
+    private static final String DATABASE_NAME = "backup_test.db";
+
+    /** Number of phones in the database before the first backup */
+    private static final int PHONE_ROWS = 2000;
+
+    private Context mContext;
+    private DbHelper mDbHelper;
+    private File mDirectory;
+    private File mRestored;
+    private DatabaseBackup mBackup;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new DbHelper(mContext, DATABASE_NAME, DbHelper.DEFAULT_SYNCHRONOUS_MODE,
+                DbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+        mDirectory = new File(mContext.getCacheDir(), "backup_test");
+        deleteDirectory(mDirectory);
+        mRestored = new File(mContext.getCacheDir(), "restored.db");
+        mBackup = new DatabaseBackup(mDirectory);
+        insertPhones(0, PHONE_ROWS);
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+        deleteDirectory(mDirectory);
+        SQLiteDatabase.deleteDatabase(mRestored);
+    }
+
+    @Test
+    public void secondBackup_onlyHoldsChangedPages() throws IOException {
+        DatabaseBackup.Generation first = mBackup.backUp(mDbHelper);
+        assertEquals(0, first.base);
+        assertEquals(first.pageCount, first.changedPages);
+
+        insertPhones(PHONE_ROWS, 1);
+        DatabaseBackup.Generation second = mBackup.backUp(mDbHelper);
+        assertEquals(first.number, second.base);
+        assertTrue("All " + second.pageCount + " pages were written again",
+                second.changedPages < second.pageCount);
+    }
+
+    @Test
+    public void restore_returnsThePhonesOfTheGeneration() throws IOException {
+        DatabaseBackup.Generation first = mBackup.backUp(mDbHelper);
+        insertPhones(PHONE_ROWS, 100);
+        DatabaseBackup.Generation second = mBackup.backUp(mDbHelper);
+        insertPhones(PHONE_ROWS + 100, 100);
+
+        mBackup.restore(first.number, mRestored);
+        assertEquals(PHONE_ROWS, countRestoredPhones());
+
+        mBackup.restore(second.number, mRestored);
+        assertEquals(PHONE_ROWS + 100, countRestoredPhones());
+        assertEquals(second.number, mBackup.latestGeneration());
+    }
+
+    @Test
+    public void olderGenerations_arePruned() throws IOException {
+        for (int i = 0; i < DatabaseBackup.MAX_GENERATIONS + DatabaseBackup.FULL_BACKUP_INTERVAL; i++) {
+            insertPhones(PHONE_ROWS + i, 1);
+            mBackup.backUp(mDbHelper);
+        }
+        long[] generations = mBackup.listGenerations();
+        assertTrue(generations.length < DatabaseBackup.MAX_GENERATIONS + DatabaseBackup.FULL_BACKUP_INTERVAL);
+
+        // The oldest kept generation can still be restored from its full generation
+        mBackup.restore(generations[0], mRestored);
+    }
+
+    @Test(expected = IOException.class)
+    public void damagedGeneration_isRejected() throws IOException {
+        DatabaseBackup.Generation generation = mBackup.backUp(mDbHelper);
+        RandomAccessFile file = new RandomAccessFile(
+                new File(mDirectory, generation.number + ".gen"), "rw");
+        try {
+            file.seek(file.length() / 2);
+            int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xff);
+        } finally {
+            file.close();
+        }
+        mBackup.restore(generation.number, mRestored);
+    }
+
+    private void insertPhones(int first, int count) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = first; i < first + count; i++) {
+                values.put(PhoneEntry.COLUMN_PHONE_NAME, "Phone " + i);
+                values.put(PhoneEntry.COLUMN_PRICE, 100 + i % 900);
+                values.put(PhoneEntry.COLUMN_SUPPLIER, i % 5);
+                values.put(PhoneEntry.COLUMN_SUPPLIER_NUMBER, "079123456");
+                values.put(PhoneEntry.COLUMN_QUANTITY, i % 50);
+                database.insert(PhoneEntry.TABLE_NAME, null, values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private long countRestoredPhones() {
+        SQLiteDatabase database = SQLiteDatabase.openDatabase(mRestored.getPath(), null,
+                SQLiteDatabase.OPEN_READONLY);
+        try {
+            return DatabaseUtils.queryNumEntries(database, PhoneEntry.TABLE_NAME);
+        } finally {
+            database.close();
+        }
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
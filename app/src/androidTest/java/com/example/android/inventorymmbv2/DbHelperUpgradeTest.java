@@ -0,0 +1,209 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteConstraintException;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the upgrade steps of {@link DbHelper}. A database is written with the
+ * schema of an older version, as the app of that version left it, and then opened with the
+ * current helper, which upgrades it.
+ *
+ * The old schemas are copied here as they were, rather than built from {@link PhoneSchema}, which
+ * only holds the current one.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DbHelperUpgradeTest {
+
+    private static final String DATABASE_NAME = "upgrade_test.db";
+
+    /** Schema of version 1, with the supplier as TEXT */
+    private static final String[] SCHEMA_VERSION_1 = {
+            "CREATE TABLE phones (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                    + "price INTEGER NOT NULL, supplier TEXT NOT NULL DEFAULT 0, "
+                    + "number TEXT NOT NULL, quantity INTEGER NOT NULL);" };
+
+    /** Schema of version 5, before the stock ledger, the reorder thresholds and the suppliers */
+    private static final String[] SCHEMA_VERSION_5 = {
+            "CREATE TABLE phones (_id INTEGER PRIMARY KEY AUTOINCREMENT, name TEXT NOT NULL, "
+                    + "price INTEGER NOT NULL, supplier INTEGER NOT NULL DEFAULT 0, "
+                    + "number TEXT NOT NULL, quantity INTEGER NOT NULL);",
+            "CREATE INDEX phones_name_index ON phones (name);",
+            "CREATE INDEX phones_supplier_index ON phones (supplier);",
+            "CREATE INDEX phones_quantity_index ON phones (quantity);",
+            "CREATE VIRTUAL TABLE phones_fts USING fts4(name);",
+            "CREATE TRIGGER phones_fts_insert AFTER INSERT ON phones BEGIN "
+                    + "INSERT INTO phones_fts (docid, name) VALUES (new._id, new.name); END;",
+            "CREATE TRIGGER phones_fts_update AFTER UPDATE OF name ON phones BEGIN "
+                    + "UPDATE phones_fts SET name = new.name WHERE docid = old._id; END;",
+            "CREATE TRIGGER phones_fts_delete AFTER DELETE ON phones BEGIN "
+                    + "DELETE FROM phones_fts WHERE docid = old._id; END;",
+            "CREATE TABLE inventory_summary (supplier INTEGER PRIMARY KEY, "
+                    + "phone_count INTEGER NOT NULL DEFAULT 0, units INTEGER NOT NULL DEFAULT 0, "
+                    + "stock_value INTEGER NOT NULL DEFAULT 0);",
+            "CREATE TRIGGER inventory_summary_insert AFTER INSERT ON phones BEGIN "
+                    + "INSERT OR IGNORE INTO inventory_summary (supplier) VALUES (new.supplier); "
+                    + "UPDATE inventory_summary SET phone_count = phone_count + 1, "
+                    + "units = units + new.quantity, stock_value = stock_value + new.price * new.quantity "
+                    + "WHERE supplier = new.supplier; END;",
+            "CREATE TRIGGER inventory_summary_update AFTER UPDATE OF price, supplier, quantity ON phones BEGIN "
+                    + "INSERT OR IGNORE INTO inventory_summary (supplier) VALUES (old.supplier); "
+                    + "UPDATE inventory_summary SET phone_count = phone_count - 1, "
+                    + "units = units - old.quantity, stock_value = stock_value - old.price * old.quantity "
+                    + "WHERE supplier = old.supplier; "
+                    + "INSERT OR IGNORE INTO inventory_summary (supplier) VALUES (new.supplier); "
+                    + "UPDATE inventory_summary SET phone_count = phone_count + 1, "
+                    + "units = units + new.quantity, stock_value = stock_value + new.price * new.quantity "
+                    + "WHERE supplier = new.supplier; END;",
+            "CREATE TRIGGER inventory_summary_delete AFTER DELETE ON phones BEGIN "
+                    + "INSERT OR IGNORE INTO inventory_summary (supplier) VALUES (old.supplier); "
+                    + "UPDATE inventory_summary SET phone_count = phone_count - 1, "
+                    + "units = units - old.quantity, stock_value = stock_value - old.price * old.quantity "
+                    + "WHERE supplier = old.supplier; END;",
+            "CREATE TABLE stock_batches (token TEXT PRIMARY KEY, applied_at INTEGER NOT NULL);" };
+
+    private Context mContext;
+    private DbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        if (mDbHelper != null) {
+            mDbHelper.close();
+        }
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void upgradeFromVersion1_keepsThePhonesAndTheirIds() {
+        SQLiteDatabase old = createDatabase(1, SCHEMA_VERSION_1);
+        try {
+            old.execSQL("INSERT INTO phones (name, price, supplier, number, quantity) "
+                    + "VALUES ('Xperia XZ2', 500, '2', '079123456', 3);");
+            old.execSQL("INSERT INTO phones (name, price, supplier, number, quantity) "
+                    + "VALUES ('Galaxy S9', 700, '4', '079123456', 1);");
+            old.execSQL("INSERT INTO phones (name, price, supplier, number, quantity) "
+                    + "VALUES ('P20', 600, '3', '079123456', 2);");
+            old.execSQL("DELETE FROM phones WHERE _id = 3;");
+        } finally {
+            old.close();
+        }
+
+        SQLiteDatabase db = openUpgraded();
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, PhoneSchema.TABLE_PHONES));
+        assertEquals("integer", DatabaseUtils.stringForQuery(db, "SELECT typeof("
+                + PhoneSchema.COLUMN_SUPPLIER + ") FROM " + PhoneSchema.TABLE_PHONES + " WHERE "
+                + PhoneSchema.COLUMN_ID + " = 1;", null));
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT SUM(" + PhoneSchema.COLUMN_REORDER_THRESHOLD
+                + ") FROM " + PhoneSchema.TABLE_PHONES + ";", null));
+        assertEquals(2, DatabaseUtils.longForQuery(db, "SELECT SUM(" + PhoneSchema.COLUMN_VERSION
+                + ") FROM " + PhoneSchema.TABLE_PHONES + ";", null));
+
+        // Versions 3, 4 and 6 fill the search index, the summary and the ledger from the phones
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT docid FROM " + PhoneSchema.TABLE_PHONES_FTS
+                + " WHERE " + PhoneSchema.TABLE_PHONES_FTS + " MATCH 'xperia';", null));
+        assertEquals(4, DatabaseUtils.longForQuery(db, "SELECT SUM(" + PhoneSchema.COLUMN_UNITS
+                + ") FROM " + PhoneSchema.TABLE_INVENTORY_SUMMARY + ";", null));
+        assertEquals(4, DatabaseUtils.longForQuery(db, "SELECT SUM(" + PhoneSchema.COLUMN_DELTA
+                + ") FROM " + PhoneSchema.TABLE_STOCK_MOVEMENTS + ";", null));
+
+        // The ID of the deleted phone is not handed out again
+        assertEquals(4, db.insertOrThrow(PhoneSchema.TABLE_PHONES, null,
+                newPhone("Mate 10", 550, PhoneSchema.SUPPLIER_HUAWEI, 5)));
+        assertIntegrity(db);
+    }
+
+    @Test
+    public void upgradeFromVersion5_keepsTheBatchesAndMovesUnknownSuppliers() {
+        SQLiteDatabase old = createDatabase(5, SCHEMA_VERSION_5);
+        try {
+            old.execSQL("INSERT INTO phones (name, price, supplier, number, quantity) "
+                    + "VALUES ('Xperia XZ2', 500, 2, '079123456', 3);");
+            // No supplier of this ID is created by version 9
+            old.execSQL("INSERT INTO phones (name, price, supplier, number, quantity) "
+                    + "VALUES ('Nokia 8', 400, 7, '079123456', 2);");
+            old.execSQL("INSERT INTO stock_batches (token, applied_at) VALUES ('batch-1', 1000);");
+        } finally {
+            old.close();
+        }
+
+        SQLiteDatabase db = openUpgraded();
+        assertEquals(1, DatabaseUtils.queryNumEntries(db, PhoneSchema.TABLE_STOCK_BATCHES));
+        assertEquals(PhoneSchema.SUPPLIER_UNKNOWN, DatabaseUtils.longForQuery(db, "SELECT "
+                + PhoneSchema.COLUMN_SUPPLIER + " FROM " + PhoneSchema.TABLE_PHONES + " WHERE "
+                + PhoneSchema.COLUMN_ID + " = 2;", null));
+        assertEquals(2, DatabaseUtils.queryNumEntries(db, PhoneSchema.TABLE_STOCK_MOVEMENTS));
+
+        // Version 8 replaced the single column indexes with the covering ones
+        for (String index : PhoneSchema.PHONES_INDEX_NAMES) {
+            String sql = DatabaseUtils.stringForQuery(db, "SELECT sql FROM sqlite_master WHERE name = ?;",
+                    new String[]{index});
+            assertTrue(sql, sql.contains(PhoneSchema.COLUMN_ID));
+        }
+
+        // The triggers rebuilt by version 9 point at the new phones table
+        assertEquals(0, DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM sqlite_master WHERE sql LIKE ?;",
+                new String[]{"%" + PhoneSchema.TABLE_PHONES + "_v8%"}));
+        ContentValues values = new ContentValues();
+        values.put(PhoneSchema.COLUMN_PHONE_NAME, "Xperia XZ2 Compact");
+        db.update(PhoneSchema.TABLE_PHONES, values, PhoneSchema.COLUMN_ID + " = 1", null);
+        assertEquals(1, DatabaseUtils.longForQuery(db, "SELECT docid FROM " + PhoneSchema.TABLE_PHONES_FTS
+                + " WHERE " + PhoneSchema.TABLE_PHONES_FTS + " MATCH 'compact';", null));
+
+        // Foreign keys are on once the upgrade is done
+        try {
+            db.insertOrThrow(PhoneSchema.TABLE_PHONES, null, newPhone("Nokia 7", 550, 7, 5));
+            fail("Expected the phone of a missing supplier to be rejected");
+        } catch (SQLiteConstraintException expected) {
+            // The supplier does not exist
+        }
+        assertIntegrity(db);
+    }
+
+    /**
+     * Returns a new database file of the given version with the given schema, as the app of
+     * that version left it.
+     */
+    private SQLiteDatabase createDatabase(int version, String[] schema) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(mContext.getDatabasePath(DATABASE_NAME), null);
+        for (String sql : schema) {
+            db.execSQL(sql);
+        }
+        db.setVersion(version);
+        return db;
+    }
+
+    private SQLiteDatabase openUpgraded() {
+        mDbHelper = new DbHelper(mContext, DATABASE_NAME, DbHelper.DEFAULT_SYNCHRONOUS_MODE,
+                DbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+        return mDbHelper.getWritableDatabase();
+    }
+
+    private static void assertIntegrity(SQLiteDatabase db) {
+        assertEquals("ok", DatabaseUtils.stringForQuery(db, "PRAGMA integrity_check;", null));
+        Cursor violations = db.rawQuery("PRAGMA foreign_key_check;", null);
+        try {
+            assertEquals(0, violations.getCount());
+        } finally {
+            violations.close();
+        }
+    }
+}
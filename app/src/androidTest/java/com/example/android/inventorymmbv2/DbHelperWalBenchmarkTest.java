@@ -0,0 +1,144 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the phone list query while another thread keeps writing to the database,
+ * showing that in WAL mode readers do not wait for the writer's transactions.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DbHelperWalBenchmarkTest {
+
+    private static final String LOG_TAG = DbHelperWalBenchmarkTest.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "wal_benchmark.db";
+
+    /** Number of phones in the table that is listed */
+    private static final int PHONE_ROWS = 5000;
+
+    /** Number of list queries timed while the writer is running */
+    private static final int QUERIES = 100;
+
+    /** How long the writer keeps each of its transactions open */
+    private static final long WRITER_HOLD_MILLIS = 500;
+
+    /** Columns of the phone list in MainActivity */
+    private static final String[] LIST_PROJECTION = {
+            PhoneEntry._ID,
+            PhoneEntry.COLUMN_PHONE_NAME,
+            PhoneEntry.COLUMN_PRICE,
+            PhoneEntry.COLUMN_QUANTITY };
+
+    private Context mContext;
+    private DbHelper mDbHelper;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new DbHelper(mContext, DATABASE_NAME, DbHelper.DEFAULT_SYNCHRONOUS_MODE,
+                DbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < PHONE_ROWS; i++) {
+                values.put(PhoneEntry.COLUMN_PHONE_NAME, "Phone " + i);
+                values.put(PhoneEntry.COLUMN_PRICE, 100 + i % 900);
+                values.put(PhoneEntry.COLUMN_SUPPLIER, i % 5);
+                values.put(PhoneEntry.COLUMN_SUPPLIER_NUMBER, "079123456");
+                values.put(PhoneEntry.COLUMN_QUANTITY, i % 50);
+                database.insert(PhoneEntry.TABLE_NAME, null, values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void listQuery_doesNotWaitForConcurrentWriter() throws InterruptedException {
+        final CountDownLatch writerStarted = new CountDownLatch(1);
+        final CountDownLatch readerDone = new CountDownLatch(1);
+
+        // The writer keeps a transaction open most of the time, like a long savePhone() batch
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                SQLiteDatabase database = mDbHelper.getWritableDatabase();
+                while (readerDone.getCount() > 0) {
+                    database.beginTransaction();
+                    try {
+                        database.execSQL("UPDATE " + PhoneEntry.TABLE_NAME + " SET "
+                                + PhoneEntry.COLUMN_QUANTITY + " = " + PhoneEntry.COLUMN_QUANTITY
+                                + " + 1 WHERE " + PhoneEntry._ID + " % 10 = 0");
+                        writerStarted.countDown();
+                        SystemClock.sleep(WRITER_HOLD_MILLIS);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                }
+            }
+        });
+        writer.start();
+        assertTrue(writerStarted.await(10, TimeUnit.SECONDS));
+
+        long[] latencies = new long[QUERIES];
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        try {
+            for (int i = 0; i < QUERIES; i++) {
+                long start = SystemClock.elapsedRealtime();
+                Cursor cursor = database.query(PhoneEntry.TABLE_NAME, LIST_PROJECTION,
+                        null, null, null, null, null);
+                try {
+                    // getCount() fills the first window, which is what the list needs for its first frame
+                    assertEquals(PHONE_ROWS, cursor.getCount());
+                } finally {
+                    cursor.close();
+                }
+                latencies[i] = SystemClock.elapsedRealtime() - start;
+            }
+        } finally {
+            readerDone.countDown();
+            writer.join();
+        }
+
+        Arrays.sort(latencies);
+        long median = latencies[QUERIES / 2];
+        long p95 = latencies[QUERIES * 95 / 100];
+        long max = latencies[QUERIES - 1];
+        Log.i(LOG_TAG, "List query with concurrent writer: median " + median + " ms, p95 " + p95
+                + " ms, max " + max + " ms");
+
+        // A reader that had to wait for the writer would take at least one full transaction
+        assertTrue("Reader waited for the writer (max " + max + " ms)", max < WRITER_HOLD_MILLIS);
+    }
+}
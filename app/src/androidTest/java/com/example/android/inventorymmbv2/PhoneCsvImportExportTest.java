@@ -0,0 +1,93 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.provider.OpenableColumns;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the CSV import of {@link PhoneCsvImporter}, which reports every row it
+ * skips, and for the {@link OpenableColumns} of the CSV export.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneCsvImportExportTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void import_reportsRowsTheTableWouldReject() throws IOException {
+        ContentResolver resolver = mProviderRule.getResolver();
+        final List<Integer> errorLines = new ArrayList<>();
+        PhoneCsvImporter importer = new PhoneCsvImporter(resolver, new PhoneCsvImporter.Listener() {
+            @Override
+            public void onProgress(int rowsRead, int rowsImported) {
+            }
+
+            @Override
+            public void onRowError(int line, String message) {
+                errorLines.add(line);
+            }
+        });
+
+        String csv = PhoneEntry.COLUMN_PHONE_NAME + "," + PhoneEntry.COLUMN_PRICE + ","
+                + PhoneEntry.COLUMN_SUPPLIER + "," + PhoneEntry.COLUMN_SUPPLIER_NUMBER + ","
+                + PhoneEntry.COLUMN_QUANTITY + "\n"
+                + "Xperia XZ2,500," + PhoneEntry.SUPPLIER_SONY + ",079123456,10\n"
+                + "Galaxy S9,," + PhoneEntry.SUPPLIER_SAMSUNG + ",079123456,10\n"
+                + "P20,600," + PhoneEntry.SUPPLIER_UNKNOWN + ",079123456,\n";
+        assertEquals(1, importer.importFrom(new StringReader(csv)));
+
+        // The rows without a price and without a quantity
+        assertEquals("[3, 4]", errorLines.toString());
+        Cursor cursor = resolver.query(PhoneEntry.CONTENT_URI, new String[]{PhoneEntry._ID},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void exportQuery_answersTheNameAndUnknownSize() {
+        Cursor cursor = mProviderRule.getResolver().query(PhoneEntry.EXPORT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(PhoneEntry.EXPORT_FILE_NAME,
+                    cursor.getString(cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME)));
+            assertTrue(cursor.isNull(cursor.getColumnIndex(OpenableColumns.SIZE)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void exportQuery_leavesOutOtherColumns() {
+        Cursor cursor = mProviderRule.getResolver().query(PhoneEntry.EXPORT_URI,
+                new String[]{OpenableColumns.DISPLAY_NAME, "_data"}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertArrayEquals(new String[]{OpenableColumns.DISPLAY_NAME}, cursor.getColumnNames());
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.insertPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the batched stock changes of {@link PhoneEntry#METHOD_ADJUST_STOCK}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderAdjustStockTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void adjustStock_appliesEachDelta() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri firstUri = insertPhone(resolver, 10);
+        Uri secondUri = insertPhone(resolver, 10);
+
+        Bundle result = adjustStock(resolver, "batch-1",
+                new long[]{ContentUris.parseId(firstUri), ContentUris.parseId(secondUri)},
+                new int[]{-3, 5});
+
+        assertTrue(result.getBoolean(PhoneEntry.EXTRA_APPLIED));
+        assertEquals(7, queryQuantity(resolver, firstUri));
+        assertEquals(15, queryQuantity(resolver, secondUri));
+    }
+
+    @Test
+    public void adjustStock_sameBatchIsAppliedOnce() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, 10);
+        long[] ids = {ContentUris.parseId(phoneUri)};
+
+        assertTrue(adjustStock(resolver, "batch-1", ids, new int[]{-4}).getBoolean(PhoneEntry.EXTRA_APPLIED));
+        assertFalse(adjustStock(resolver, "batch-1", ids, new int[]{-4}).getBoolean(PhoneEntry.EXTRA_APPLIED));
+
+        assertEquals(6, queryQuantity(resolver, phoneUri));
+    }
+
+    @Test
+    public void adjustStock_neverGoesBelowZero() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, 2);
+
+        adjustStock(resolver, "batch-1", new long[]{ContentUris.parseId(phoneUri)}, new int[]{-5});
+
+        assertEquals(0, queryQuantity(resolver, phoneUri));
+    }
+
+    @Test
+    public void adjustStock_returnsTheQuantitiesBeforeTheChange() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri changedUri = insertPhone(resolver, 4);
+        Uri emptyUri = insertPhone(resolver, 0);
+        long[] ids = {ContentUris.parseId(changedUri), ContentUris.parseId(emptyUri)};
+
+        Bundle result = adjustStock(resolver, "batch-1", ids, new int[]{-6, -1});
+        assertArrayEquals(new int[]{4, -1}, result.getIntArray(PhoneEntry.EXTRA_QUANTITIES));
+
+        // A batch that was already applied changes nothing
+        result = adjustStock(resolver, "batch-1", ids, new int[]{-6, -1});
+        assertArrayEquals(new int[]{-1, -1}, result.getIntArray(PhoneEntry.EXTRA_QUANTITIES));
+    }
+
+    private static Bundle adjustStock(ContentResolver resolver, String batch, long[] ids, int[] deltas) {
+        Bundle extras = new Bundle();
+        extras.putLongArray(PhoneEntry.EXTRA_IDS, ids);
+        extras.putIntArray(PhoneEntry.EXTRA_DELTAS, deltas);
+        Bundle result = resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_ADJUST_STOCK, batch, extras);
+        assertNotNull(result);
+        return result;
+    }
+
+    private static int queryQuantity(ContentResolver resolver, Uri phoneUri) {
+        Cursor cursor = resolver.query(phoneUri, new String[]{PhoneEntry.COLUMN_QUANTITY}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
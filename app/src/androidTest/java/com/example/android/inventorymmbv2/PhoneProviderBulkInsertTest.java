@@ -0,0 +1,134 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link PhoneProvider#bulkInsert}, which also reports the insert
+ * throughput in rows per second.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderBulkInsertTest {
+
+    private static final String LOG_TAG = PhoneProviderBulkInsertTest.class.getSimpleName();
+
+    /** Number of rows loaded through bulkInsert() */
+    private static final int BULK_ROWS = 20000;
+
+    /** Number of rows loaded one insert() at a time, for comparison */
+    private static final int SINGLE_ROWS = 500;
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void bulkInsert_insertsEveryRow() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        ContentValues[] phones = createPhones(BULK_ROWS);
+
+        long start = SystemClock.elapsedRealtime();
+        int inserted = resolver.bulkInsert(PhoneEntry.CONTENT_URI, phones);
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+
+        Log.i(LOG_TAG, "bulkInsert: " + inserted + " rows in " + elapsed + " ms ("
+                + (inserted * 1000L / elapsed) + " rows/s)");
+
+        assertEquals(BULK_ROWS, inserted);
+        assertEquals(BULK_ROWS, countPhones(resolver));
+    }
+
+    @Test
+    public void bulkInsert_isFasterThanSingleInserts() {
+        ContentResolver resolver = mProviderRule.getResolver();
+
+        ContentValues[] singles = createPhones(SINGLE_ROWS);
+        long start = SystemClock.elapsedRealtime();
+        for (ContentValues phone : singles) {
+            resolver.insert(PhoneEntry.CONTENT_URI, phone);
+        }
+        long singleElapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+        long singleRate = SINGLE_ROWS * 1000L / singleElapsed;
+
+        ContentValues[] batch = createPhones(BULK_ROWS);
+        start = SystemClock.elapsedRealtime();
+        resolver.bulkInsert(PhoneEntry.CONTENT_URI, batch);
+        long bulkElapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+        long bulkRate = BULK_ROWS * 1000L / bulkElapsed;
+
+        Log.i(LOG_TAG, "insert: " + singleRate + " rows/s, bulkInsert: " + bulkRate + " rows/s");
+
+        assertTrue("bulkInsert should beat one insert() per row", bulkRate > singleRate);
+    }
+
+    @Test
+    public void bulkInsert_invalidRowInsertsNothing() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        ContentValues[] phones = createPhones(10);
+        phones[7].put(PhoneEntry.COLUMN_SUPPLIER, 99);
+
+        try {
+            resolver.bulkInsert(PhoneEntry.CONTENT_URI, phones);
+            fail("Expected the invalid supplier to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // The whole batch is rejected
+        }
+
+        assertEquals(0, countPhones(resolver));
+    }
+
+    @Test
+    public void bulkInsert_rowRejectedByTheDatabaseInsertsNothing() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        ContentValues[] phones = createPhones(10);
+        // The price is optional for the checks, but required by the table
+        phones[4].remove(PhoneEntry.COLUMN_PRICE);
+
+        try {
+            resolver.bulkInsert(PhoneEntry.CONTENT_URI, phones);
+            fail("Expected the row without a price to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // The rows before it are rolled back with the rest of the batch
+        }
+
+        assertEquals(0, countPhones(resolver));
+    }
+
+    private static ContentValues[] createPhones(int count) {
+        ContentValues[] phones = new ContentValues[count];
+        for (int i = 0; i < count; i++) {
+            ContentValues values = new ContentValues();
+            values.put(PhoneEntry.COLUMN_PHONE_NAME, "Phone " + i);
+            values.put(PhoneEntry.COLUMN_PRICE, 100 + i % 900);
+            values.put(PhoneEntry.COLUMN_SUPPLIER, i % 5);
+            values.put(PhoneEntry.COLUMN_SUPPLIER_NUMBER, "0791234" + (i % 1000));
+            values.put(PhoneEntry.COLUMN_QUANTITY, i % 50);
+            phones[i] = values;
+        }
+        return phones;
+    }
+
+    private static int countPhones(ContentResolver resolver) {
+        Cursor cursor = resolver.query(PhoneEntry.CONTENT_URI, new String[]{PhoneEntry._ID},
+                null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
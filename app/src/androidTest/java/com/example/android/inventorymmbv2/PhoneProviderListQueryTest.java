@@ -0,0 +1,96 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.android.inventorymmbv2.TestPhones.insertPhone;
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the sort and filter query parameters of the phone list at
+ * {@link PhoneEntry#CONTENT_URI}, read page by page like the list of {@link MainActivity}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderListQueryTest {
+
+    private static final String[] LIST_PROJECTION = {
+            PhoneEntry._ID,
+            PhoneEntry.COLUMN_PHONE_NAME,
+            PhoneEntry.COLUMN_PRICE,
+            PhoneEntry.COLUMN_QUANTITY};
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void pages_followSortAndFilters() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        for (int i = 0; i < 20; i++) {
+            insertPhone(resolver, newPhone("Phone " + i, 100 * (i % 5),
+                    i % 2 == 0 ? PhoneEntry.SUPPLIER_SONY : PhoneEntry.SUPPLIER_APPLE, i % 3));
+        }
+
+        Uri listUri = PhoneEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(PhoneEntry.QUERY_PARAMETER_SORT, PhoneEntry.COLUMN_PRICE)
+                .appendQueryParameter(PhoneEntry.QUERY_PARAMETER_SUPPLIER, String.valueOf(PhoneEntry.SUPPLIER_SONY))
+                .appendQueryParameter(PhoneEntry.QUERY_PARAMETER_MIN_PRICE, "100")
+                .appendQueryParameter(PhoneEntry.QUERY_PARAMETER_IN_STOCK, "true")
+                .build();
+
+        // Read the list 3 phones at a time, each page after the last phone of the previous one
+        List<Integer> prices = new ArrayList<>();
+        String afterKey = null;
+        long afterId = 0;
+        while (true) {
+            Cursor page = resolver.query(PhoneEntry.buildPageUri(listUri, afterKey, afterId, 3),
+                    LIST_PROJECTION, null, null, null);
+            assertNotNull(page);
+            try {
+                while (page.moveToNext()) {
+                    afterId = page.getLong(page.getColumnIndex(PhoneEntry._ID));
+                    afterKey = page.getString(page.getColumnIndex(PhoneEntry.COLUMN_PRICE));
+                    prices.add(page.getInt(page.getColumnIndex(PhoneEntry.COLUMN_PRICE)));
+                    assertTrue(page.getInt(page.getColumnIndex(PhoneEntry.COLUMN_QUANTITY)) > 0);
+                }
+                if (page.getCount() < 3) {
+                    break;
+                }
+            } finally {
+                page.close();
+            }
+        }
+
+        // Sony has the even phones, of which 0, 6, 12 and 18 are out of stock and 10 costs 0
+        assertEquals("[100, 200, 300, 400, 400]", prices.toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sortParameterAndSortOrder_areRejected() {
+        Uri listUri = PhoneEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(PhoneEntry.QUERY_PARAMETER_SORT, PhoneEntry.COLUMN_PRICE)
+                .build();
+        mProviderRule.getResolver().query(listUri, LIST_PROJECTION, null, null, PhoneEntry.COLUMN_PHONE_NAME);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSortColumn_isRejected() {
+        Uri listUri = PhoneEntry.CONTENT_URI.buildUpon()
+                .appendQueryParameter(PhoneEntry.QUERY_PARAMETER_SORT, PhoneEntry.COLUMN_SUPPLIER_NUMBER)
+                .build();
+        mProviderRule.getResolver().query(listUri, LIST_PROJECTION, null, null, null);
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.LowStockEntry;
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the phones that are low on stock at {@link LowStockEntry#CONTENT_URI},
+ * and for the notifications sent when a phone crosses its reorder threshold. It runs against the
+ * real provider, because only the real content resolver delivers notifications.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderLowStockTest {
+
+    private static final String PHONE_NAME = "PhoneProviderLowStockTest";
+
+    private ContentResolver mResolver;
+    private HandlerThread mObserverThread;
+    private final BlockingQueue<Uri> mNotifications = new LinkedBlockingQueue<>();
+    private ContentObserver mObserver;
+
+    @Before
+    public void setUp() {
+        mResolver = InstrumentationRegistry.getTargetContext().getContentResolver();
+        deleteTestPhones();
+
+        mObserverThread = new HandlerThread(PHONE_NAME);
+        mObserverThread.start();
+        mObserver = new ContentObserver(new Handler(mObserverThread.getLooper())) {
+            @Override
+            public void onChange(boolean selfChange, Uri uri) {
+                mNotifications.add(uri);
+            }
+        };
+    }
+
+    @After
+    public void tearDown() {
+        mResolver.unregisterContentObserver(mObserver);
+        mObserverThread.quit();
+        deleteTestPhones();
+    }
+
+    @Test
+    public void update_notifiesOnlyThresholdCrossings() throws InterruptedException {
+        Uri phoneUri = insertPhone(10, 5);
+        long id = ContentUris.parseId(phoneUri);
+        mResolver.registerContentObserver(LowStockEntry.CROSSINGS_URI, true, mObserver);
+
+        // Still above the threshold
+        updatePhone(phoneUri, PhoneEntry.COLUMN_QUANTITY, 7);
+        assertNull(mNotifications.poll(500, TimeUnit.MILLISECONDS));
+
+        // Down to the threshold
+        updatePhone(phoneUri, PhoneEntry.COLUMN_QUANTITY, 5);
+        assertEquals(LowStockEntry.buildPhoneUri(id), mNotifications.poll(5, TimeUnit.SECONDS));
+        assertEquals(1, queryLowStockIds().size());
+
+        // Lower, but it was low already
+        updatePhone(phoneUri, PhoneEntry.COLUMN_QUANTITY, 2);
+        assertNull(mNotifications.poll(500, TimeUnit.MILLISECONDS));
+
+        // A lower threshold takes it out of the low stock phones
+        updatePhone(phoneUri, PhoneEntry.COLUMN_REORDER_THRESHOLD, 1);
+        assertEquals(LowStockEntry.buildPhoneUri(id), mNotifications.poll(5, TimeUnit.SECONDS));
+        assertTrue(queryLowStockIds().isEmpty());
+    }
+
+    @Test
+    public void sell_notifiesThresholdCrossing() throws InterruptedException {
+        Uri phoneUri = insertPhone(3, 2);
+        long id = ContentUris.parseId(phoneUri);
+        mResolver.registerContentObserver(LowStockEntry.CROSSINGS_URI, true, mObserver);
+
+        mResolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_SELL, String.valueOf(id), null);
+
+        assertEquals(LowStockEntry.buildPhoneUri(id), mNotifications.poll(5, TimeUnit.SECONDS));
+        List<Long> lowStockIds = queryLowStockIds();
+        assertEquals(1, lowStockIds.size());
+        assertEquals(id, (long) lowStockIds.get(0));
+    }
+
+    @Test
+    public void crossing_isNotNotifiedToThePhoneObservers() throws InterruptedException {
+        Uri phoneUri = insertPhone(3, 2);
+        mResolver.registerContentObserver(PhoneEntry.CONTENT_URI, true, mObserver);
+
+        updatePhone(phoneUri, PhoneEntry.COLUMN_QUANTITY, 1);
+
+        // The phone itself changed, and its own URI is the only one that ends with its ID
+        List<Uri> phoneUris = new ArrayList<>();
+        Uri uri = mNotifications.poll(5, TimeUnit.SECONDS);
+        while (uri != null) {
+            if (phoneUri.getLastPathSegment().equals(uri.getLastPathSegment())) {
+                phoneUris.add(uri);
+            }
+            uri = mNotifications.poll(500, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(1, phoneUris.size());
+        assertEquals(phoneUri, phoneUris.get(0));
+    }
+
+    @Test
+    public void lowStock_sortedByQuantity() {
+        long lowerId = ContentUris.parseId(insertPhone(1, 4));
+        long higherId = ContentUris.parseId(insertPhone(3, 4));
+        insertPhone(8, 4);
+
+        List<Long> lowStockIds = queryLowStockIds();
+        assertEquals(2, lowStockIds.size());
+        assertEquals(lowerId, (long) lowStockIds.get(0));
+        assertEquals(higherId, (long) lowStockIds.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeThreshold_isRejected() {
+        updatePhone(insertPhone(3, 2), PhoneEntry.COLUMN_REORDER_THRESHOLD, -1);
+    }
+
+    private Uri insertPhone(int quantity, int threshold) {
+        ContentValues values = TestPhones.newPhone(PHONE_NAME, 500, quantity);
+        values.put(PhoneEntry.COLUMN_REORDER_THRESHOLD, threshold);
+        return TestPhones.insertPhone(mResolver, values);
+    }
+
+    private void updatePhone(Uri phoneUri, String column, int value) {
+        ContentValues values = new ContentValues();
+        values.put(column, value);
+        assertEquals(1, mResolver.update(phoneUri, values, null, null));
+    }
+
+    private List<Long> queryLowStockIds() {
+        Cursor cursor = mResolver.query(LowStockEntry.CONTENT_URI, new String[]{PhoneEntry._ID},
+                PhoneEntry.COLUMN_PHONE_NAME + " = ?", new String[]{PHONE_NAME}, null);
+        assertNotNull(cursor);
+        try {
+            List<Long> ids = new ArrayList<>();
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void deleteTestPhones() {
+        mResolver.delete(PhoneEntry.CONTENT_URI, PhoneEntry.COLUMN_PHONE_NAME + " = ?",
+                new String[]{PHONE_NAME});
+    }
+}
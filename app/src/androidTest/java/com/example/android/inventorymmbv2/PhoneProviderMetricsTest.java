@@ -0,0 +1,62 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the latency and row count metrics of {@link PhoneProvider}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderMetricsTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void metrics_countOperationsAndRows() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        ContentValues[] phones = new ContentValues[3];
+        for (int i = 0; i < phones.length; i++) {
+            phones[i] = newPhone("Xperia " + i, 500, 10);
+        }
+        assertEquals(3, resolver.bulkInsert(PhoneEntry.CONTENT_URI, phones));
+
+        Cursor cursor = resolver.query(PhoneEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        cursor.close();
+        resolver.delete(PhoneEntry.CONTENT_URI, null, null);
+
+        Bundle metrics = resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_METRICS, null, null);
+        assertNotNull(metrics);
+        assertOperation(metrics, "bulkInsert PHONES", 1, 3);
+        assertOperation(metrics, "query PHONES", 1, 3);
+        assertOperation(metrics, "delete PHONES", 1, 3);
+    }
+
+    private static void assertOperation(Bundle metrics, String name, long count, long rows) {
+        Bundle stats = metrics.getBundle(name);
+        assertNotNull(name, stats);
+        assertEquals(count, stats.getLong(PhoneEntry.EXTRA_METRICS_COUNT));
+        assertEquals(rows, stats.getLong(PhoneEntry.EXTRA_METRICS_ROWS));
+
+        long total = 0;
+        for (long bucket : stats.getLongArray(PhoneEntry.EXTRA_METRICS_HISTOGRAM)) {
+            total += bucket;
+        }
+        assertEquals(count, total);
+    }
+}
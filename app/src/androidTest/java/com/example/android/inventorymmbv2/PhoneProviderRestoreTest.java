@@ -0,0 +1,34 @@
+package com.example.android.inventorymmbv2;
+
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Instrumented test for the arg of {@link PhoneEntry#METHOD_RESTORE}, the generation of the
+ * backup to restore.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderRestoreTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restore_rejectsAnArgThatIsNoGeneration() {
+        mProviderRule.getResolver().call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_RESTORE,
+                "latest", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restore_rejectsANegativeGeneration() {
+        mProviderRule.getResolver().call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_RESTORE,
+                "-1", null);
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.insertPhone;
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the cache of single phones in {@link PhoneProvider}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderRowCacheTest {
+
+    private static final String[] EDITOR_PROJECTION = {
+            PhoneEntry._ID,
+            PhoneEntry.COLUMN_PHONE_NAME,
+            PhoneEntry.COLUMN_PRICE,
+            PhoneEntry.COLUMN_SUPPLIER,
+            PhoneEntry.COLUMN_SUPPLIER_NUMBER,
+            PhoneEntry.COLUMN_QUANTITY };
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void query_secondLookupIsAHit() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, newPhone("Xperia XZ2", 500, 10));
+
+        assertEquals("Xperia XZ2", queryName(resolver, phoneUri));
+        assertEquals("Xperia XZ2", queryName(resolver, phoneUri));
+
+        Bundle stats = resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_CACHE_STATS, null, null);
+        assertNotNull(stats);
+        assertEquals(1, stats.getInt(PhoneEntry.EXTRA_CACHE_MISSES));
+        assertEquals(1, stats.getInt(PhoneEntry.EXTRA_CACHE_HITS));
+    }
+
+    @Test
+    public void update_invalidatesCachedPhone() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, newPhone("Xperia XZ2", 500, 10));
+        queryName(resolver, phoneUri);
+
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_PHONE_NAME, "Xperia XZ3");
+        resolver.update(phoneUri, values, null, null);
+
+        assertEquals("Xperia XZ3", queryName(resolver, phoneUri));
+    }
+
+    @Test
+    public void selectionUpdate_invalidatesCachedPhones() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri firstUri = insertPhone(resolver, newPhone("Xperia XZ2", 500, 0));
+        Uri secondUri = insertPhone(resolver, newPhone("Galaxy S9", 500, 0));
+        queryName(resolver, firstUri);
+        queryName(resolver, secondUri);
+
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_QUANTITY, 5);
+        resolver.update(PhoneEntry.CONTENT_URI, values, PhoneEntry.COLUMN_QUANTITY + " = 0", null);
+
+        assertEquals(5, queryQuantity(resolver, firstUri));
+        assertEquals(5, queryQuantity(resolver, secondUri));
+    }
+
+    @Test
+    public void sell_invalidatesCachedPhone() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, newPhone("Xperia XZ2", 500, 10));
+        queryName(resolver, phoneUri);
+
+        resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_SELL,
+                String.valueOf(ContentUris.parseId(phoneUri)), null);
+
+        assertEquals(9, queryQuantity(resolver, phoneUri));
+    }
+
+    @Test
+    public void selectionDelete_invalidatesCachedPhone() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, newPhone("Xperia XZ2", 500, 10));
+        queryName(resolver, phoneUri);
+
+        resolver.delete(PhoneEntry.CONTENT_URI, null, null);
+
+        Cursor cursor = resolver.query(phoneUri, EDITOR_PROJECTION, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(0, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static String queryName(ContentResolver resolver, Uri phoneUri) {
+        Cursor cursor = resolver.query(phoneUri, EDITOR_PROJECTION, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(cursor.getColumnIndex(PhoneEntry.COLUMN_PHONE_NAME));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static int queryQuantity(ContentResolver resolver, Uri phoneUri) {
+        Cursor cursor = resolver.query(phoneUri, EDITOR_PROJECTION, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(cursor.getColumnIndex(PhoneEntry.COLUMN_QUANTITY));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the search of the phones by name through {@link PhoneEntry#SEARCH_URI}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderSearchTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        mResolver.insert(PhoneEntry.CONTENT_URI, newPhone("Apple iPhone X", 500, PhoneEntry.SUPPLIER_APPLE, 3));
+        mResolver.insert(PhoneEntry.CONTENT_URI, newPhone("iPhone 8 Plus", 500, PhoneEntry.SUPPLIER_APPLE, 3));
+        mResolver.insert(PhoneEntry.CONTENT_URI, newPhone("iPhone 8", 500, PhoneEntry.SUPPLIER_APPLE, 3));
+        mResolver.insert(PhoneEntry.CONTENT_URI, newPhone("Xperia XZ2", 500, PhoneEntry.SUPPLIER_APPLE, 3));
+    }
+
+    @Test
+    public void search_matchesWordPrefixesInAnyCase() {
+        // Names starting with the first word come first, then the shorter ones
+        assertEquals("[iPhone 8, iPhone 8 Plus, Apple iPhone X]", search("IPH"));
+        assertEquals("[iPhone 8 Plus]", search("8 pl"));
+    }
+
+    @Test
+    public void search_doesNotFollowTheDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals("[iPhone 8, iPhone 8 Plus, Apple iPhone X]", search("IPHONE"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void search_withoutWords_matchesNothing() {
+        assertEquals("[]", search("\"* -"));
+        assertEquals("[]", search(""));
+    }
+
+    /**
+     * Returns the names of the phones found for the given text, in the order of the results.
+     */
+    private String search(String query) {
+        Cursor cursor = mResolver.query(PhoneEntry.buildSearchUri(query, 10), null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            List<String> names = new ArrayList<>();
+            int nameIndex = cursor.getColumnIndex(PhoneEntry.COLUMN_PHONE_NAME);
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(nameIndex));
+            }
+            return names.toString();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.insertPhone;
+import static com.example.android.inventorymmbv2.TestPhones.sell;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link PhoneEntry#METHOD_SELL}, which only sells the units that are
+ * left in stock.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderSellTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void sell_takesTheUnitsOutOfStock() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, 5);
+
+        Bundle result = sell(resolver, phoneUri, 2);
+        assertTrue(result.getBoolean(PhoneEntry.EXTRA_SOLD));
+        assertEquals(3, result.getInt(PhoneEntry.COLUMN_QUANTITY));
+    }
+
+    @Test
+    public void sell_lastUnits_leavesNoneInStock() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        String id = String.valueOf(ContentUris.parseId(insertPhone(resolver, 2)));
+
+        Bundle result = sell(resolver, id, 2);
+        assertTrue(result.getBoolean(PhoneEntry.EXTRA_SOLD));
+        assertEquals(0, result.getInt(PhoneEntry.COLUMN_QUANTITY));
+
+        // Nothing is left to sell
+        result = sell(resolver, id, 1);
+        assertFalse(result.getBoolean(PhoneEntry.EXTRA_SOLD));
+        assertEquals(0, result.getInt(PhoneEntry.COLUMN_QUANTITY));
+    }
+
+    @Test
+    public void sell_moreThanInStock_sellsNothing() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, 1);
+
+        Bundle result = sell(resolver, phoneUri, 3);
+        assertFalse(result.getBoolean(PhoneEntry.EXTRA_SOLD));
+        assertEquals(1, result.getInt(PhoneEntry.COLUMN_QUANTITY));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sell_rejectsAnArgThatIsNoPhoneId() {
+        sell(mProviderRule.getResolver(), "phone", 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sell_rejectsAMissingArg() {
+        sell(mProviderRule.getResolver(), (String) null, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sell_rejectsNoUnits() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, 1);
+        sell(resolver, phoneUri, 0);
+    }
+}
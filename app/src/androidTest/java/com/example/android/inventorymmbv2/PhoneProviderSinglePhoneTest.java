@@ -0,0 +1,93 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the writes to a single phone URI, which go through the phone
+ * store {@link SqlitePhoneStore} for a whole row, a new quantity alone, and a delete.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderSinglePhoneTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void wholeRowUpdate_replacesEveryAttribute() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Xperia XZ2", 500, 10));
+        assertNotNull(phoneUri);
+
+        assertEquals(1, resolver.update(phoneUri, newPhone("Xperia XZ3", 650, 4), null, null));
+
+        Cursor cursor = resolver.query(phoneUri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Xperia XZ3", cursor.getString(cursor.getColumnIndex(PhoneEntry.COLUMN_PHONE_NAME)));
+            assertEquals(650, cursor.getInt(cursor.getColumnIndex(PhoneEntry.COLUMN_PRICE)));
+            assertEquals(4, cursor.getInt(cursor.getColumnIndex(PhoneEntry.COLUMN_QUANTITY)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void quantityUpdate_onlyCountsThePhoneIfChanged() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Galaxy S9", 700, 3));
+        assertNotNull(phoneUri);
+
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_QUANTITY, 8);
+        assertEquals(1, resolver.update(phoneUri, values, null, null));
+        assertEquals(0, resolver.update(phoneUri, values, null, null));
+        assertEquals(8, queryQuantity(resolver, phoneUri));
+
+        Uri missingUri = ContentUris.withAppendedId(PhoneEntry.CONTENT_URI, ContentUris.parseId(phoneUri) + 1);
+        assertEquals(0, resolver.update(missingUri, values, null, null));
+    }
+
+    @Test
+    public void delete_removesOnlyThatPhone() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri firstUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("P20", 600, 1));
+        Uri secondUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Mate 10", 550, 2));
+        assertNotNull(firstUri);
+        assertNotNull(secondUri);
+
+        assertEquals(1, resolver.delete(firstUri, null, null));
+        assertEquals(0, resolver.delete(firstUri, null, null));
+        assertEquals(-1, queryQuantity(resolver, firstUri));
+        assertEquals(2, queryQuantity(resolver, secondUri));
+    }
+
+    /**
+     * Returns the quantity of the phone, or -1 if there is no such phone.
+     */
+    private static int queryQuantity(ContentResolver resolver, Uri phoneUri) {
+        Cursor cursor = resolver.query(phoneUri, new String[]{PhoneEntry.COLUMN_QUANTITY}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
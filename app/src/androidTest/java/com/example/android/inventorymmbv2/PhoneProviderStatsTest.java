@@ -0,0 +1,106 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.StatsEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.insertPhone;
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the inventory totals at {@link StatsEntry#CONTENT_URI}, which are
+ * checked against totals computed from the phones themselves after every kind of change.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderStatsTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void stats_followInsertUpdateSellAndDelete() {
+        ContentResolver resolver = mProviderRule.getResolver();
+
+        Uri sonyUri = insertPhone(resolver, newPhone("Xperia XZ2", 500, PhoneEntry.SUPPLIER_SONY, 10));
+        insertPhone(resolver, newPhone("Xperia XA2", 300, PhoneEntry.SUPPLIER_SONY, 4));
+        Uri appleUri = insertPhone(resolver, newPhone("iPhone X", 900, PhoneEntry.SUPPLIER_APPLE, 2));
+        assertStatsMatchPhones(resolver);
+
+        // Change price and quantity, then move a phone to another supplier
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_PRICE, 450);
+        values.put(PhoneEntry.COLUMN_QUANTITY, 7);
+        resolver.update(sonyUri, values, null, null);
+        assertStatsMatchPhones(resolver);
+
+        values.clear();
+        values.put(PhoneEntry.COLUMN_SUPPLIER, PhoneEntry.SUPPLIER_SAMSUNG);
+        resolver.update(appleUri, values, null, null);
+        assertStatsMatchPhones(resolver);
+
+        resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_SELL,
+                String.valueOf(ContentUris.parseId(sonyUri)), null);
+        assertStatsMatchPhones(resolver);
+
+        resolver.delete(sonyUri, null, null);
+        assertStatsMatchPhones(resolver);
+
+        resolver.delete(PhoneEntry.CONTENT_URI, null, null);
+        assertStatsMatchPhones(resolver);
+    }
+
+    /**
+     * Check every supplier row of the totals against a full scan of the phones.
+     */
+    private static void assertStatsMatchPhones(ContentResolver resolver) {
+        int[] suppliers = {PhoneEntry.SUPPLIER_UNKNOWN, PhoneEntry.SUPPLIER_APPLE,
+                PhoneEntry.SUPPLIER_SONY, PhoneEntry.SUPPLIER_HUAWEI, PhoneEntry.SUPPLIER_SAMSUNG};
+        for (int supplier : suppliers) {
+            long[] expected = new long[3];
+            Cursor phones = resolver.query(PhoneEntry.CONTENT_URI,
+                    new String[]{PhoneEntry.COLUMN_PRICE, PhoneEntry.COLUMN_QUANTITY},
+                    PhoneEntry.COLUMN_SUPPLIER + " = ?", new String[]{String.valueOf(supplier)}, null);
+            assertNotNull(phones);
+            try {
+                while (phones.moveToNext()) {
+                    expected[0]++;
+                    expected[1] += phones.getLong(1);
+                    expected[2] += phones.getLong(0) * phones.getLong(1);
+                }
+            } finally {
+                phones.close();
+            }
+
+            long[] actual = new long[3];
+            Cursor stats = resolver.query(StatsEntry.CONTENT_URI,
+                    new String[]{StatsEntry.COLUMN_PHONE_COUNT, StatsEntry.COLUMN_UNITS,
+                            StatsEntry.COLUMN_STOCK_VALUE},
+                    StatsEntry.COLUMN_SUPPLIER + " = ?", new String[]{String.valueOf(supplier)}, null);
+            assertNotNull(stats);
+            try {
+                if (stats.moveToFirst()) {
+                    actual[0] = stats.getLong(0);
+                    actual[1] = stats.getLong(1);
+                    actual[2] = stats.getLong(2);
+                }
+            } finally {
+                stats.close();
+            }
+
+            assertArrayEquals("Totals of supplier " + supplier, expected, actual);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.StockEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.insertPhone;
+import static com.example.android.inventorymmbv2.TestPhones.sell;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the stock movement ledger of {@link PhoneProvider}: the stock at a given
+ * time, and the compaction of old movements into snapshots.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderStockLedgerTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void stockAsOf_followsEveryChange() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, 10);
+        long afterInsert = tick();
+
+        assertTrue(sell(resolver, phoneUri, 3).getBoolean(PhoneEntry.EXTRA_SOLD));
+        long afterSale = tick();
+
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_QUANTITY, 20);
+        resolver.update(phoneUri, values, null, null);
+        long afterCorrection = tick();
+
+        assertEquals(10, queryStockAsOf(resolver, phoneUri, afterInsert));
+        assertEquals(7, queryStockAsOf(resolver, phoneUri, afterSale));
+        assertEquals(20, queryStockAsOf(resolver, phoneUri, afterCorrection));
+        assertEquals(0, queryStockAsOf(resolver, phoneUri, afterInsert - 1000));
+    }
+
+    @Test
+    public void compaction_keepsTheRetentionPeriod() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = insertPhone(resolver, 10);
+        long afterInsert = tick();
+        assertTrue(sell(resolver, phoneUri, 2).getBoolean(PhoneEntry.EXTRA_SOLD));
+        long beforeCompaction = tick();
+
+        // A cutoff within the retention period is moved back, so the recent movements stay
+        Bundle result = resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_COMPACT_STOCK,
+                String.valueOf(beforeCompaction), null);
+        assertNotNull(result);
+        assertEquals(0, result.getInt(PhoneEntry.EXTRA_COMPACTED));
+
+        assertTrue(sell(resolver, phoneUri, 1).getBoolean(PhoneEntry.EXTRA_SOLD));
+        long afterSale = tick();
+
+        assertEquals(10, queryStockAsOf(resolver, phoneUri, afterInsert));
+        assertEquals(8, queryStockAsOf(resolver, phoneUri, beforeCompaction));
+        assertEquals(7, queryStockAsOf(resolver, phoneUri, afterSale));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compaction_rejectsAnArgThatIsNoTime() {
+        mProviderRule.getResolver().call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_COMPACT_STOCK,
+                "yesterday", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compaction_rejectsANegativeTime() {
+        mProviderRule.getResolver().call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_COMPACT_STOCK,
+                "-1", null);
+    }
+
+    /**
+     * Returns the current time, making sure the changes before and after it get different times.
+     */
+    private static long tick() {
+        SystemClock.sleep(5);
+        long now = System.currentTimeMillis();
+        SystemClock.sleep(5);
+        return now;
+    }
+
+    private static int queryStockAsOf(ContentResolver resolver, Uri phoneUri, long timeMillis) {
+        Cursor cursor = resolver.query(StockEntry.buildAsOfUri(timeMillis),
+                new String[]{PhoneEntry.COLUMN_QUANTITY}, PhoneEntry._ID + " = ?",
+                new String[]{String.valueOf(ContentUris.parseId(phoneUri))}, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
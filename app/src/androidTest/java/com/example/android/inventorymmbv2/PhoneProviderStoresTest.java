@@ -0,0 +1,242 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.RemoteException;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.LowStockEntry;
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.StoreEntry;
+import com.example.android.inventorymmbv2.PhoneContract.SupplierEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the stores at {@link StoreEntry#CONTENT_URI}, each with the phones of
+ * its own database, and their totals at {@link StoreEntry#STATS_URI}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderStoresTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    private ContentResolver mResolver;
+
+    /** ID of a store opened for the test */
+    private long mStoreId;
+
+    @Before
+    public void setUp() {
+        mResolver = mProviderRule.getResolver();
+        Uri storeUri = mResolver.insert(StoreEntry.CONTENT_URI, new ContentValues());
+        assertNotNull(storeUri);
+        mStoreId = ContentUris.parseId(storeUri);
+    }
+
+    @After
+    public void tearDown() {
+        Cursor cursor = mResolver.query(StoreEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            while (cursor.moveToNext()) {
+                long storeId = cursor.getLong(0);
+                if (storeId != StoreEntry.DEFAULT_STORE_ID) {
+                    mResolver.delete(ContentUris.withAppendedId(StoreEntry.CONTENT_URI, storeId), null, null);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void phonesOfAStore_stayInItsDatabase() {
+        int defaultStorePhones = countPhones(PhoneEntry.CONTENT_URI);
+        Uri storePhones = StoreEntry.buildPhonesUri(mStoreId);
+        Uri phoneUri = mResolver.insert(storePhones, newPhone("Xperia XZ2", 300, 5));
+        assertNotNull(phoneUri);
+        assertEquals(mStoreId, Long.parseLong(phoneUri.getPathSegments().get(1)));
+
+        assertEquals(1, countPhones(storePhones));
+        assertEquals(defaultStorePhones, countPhones(PhoneEntry.CONTENT_URI));
+
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_QUANTITY, 2);
+        assertEquals(1, mResolver.update(phoneUri, values, null, null));
+        Cursor cursor = mResolver.query(phoneUri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals(2, cursor.getInt(cursor.getColumnIndex(PhoneEntry.COLUMN_QUANTITY)));
+        } finally {
+            cursor.close();
+        }
+
+        assertEquals(1, mResolver.delete(phoneUri, null, null));
+        assertEquals(0, countPhones(storePhones));
+    }
+
+    @Test
+    public void defaultStore_isTheInventoryOfTheApp() {
+        mResolver.insert(PhoneEntry.CONTENT_URI, newPhone("P20", 300, 3));
+        assertEquals(countPhones(PhoneEntry.CONTENT_URI),
+                countPhones(StoreEntry.buildPhonesUri(StoreEntry.DEFAULT_STORE_ID)));
+    }
+
+    @Test
+    public void storeTotals_haveOneRowPerStore() {
+        mResolver.insert(PhoneEntry.CONTENT_URI, newPhone("P20", 300, 3));
+        mResolver.insert(StoreEntry.buildPhonesUri(mStoreId), newPhone("Xperia XZ2", 300, 5));
+        mResolver.insert(StoreEntry.buildPhonesUri(mStoreId), newPhone("Xperia XA2", 300, 1));
+
+        Cursor cursor = mResolver.query(StoreEntry.STATS_URI, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(2, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals(StoreEntry.DEFAULT_STORE_ID, cursor.getLong(cursor.getColumnIndex(StoreEntry._ID)));
+            assertTrue(cursor.getLong(cursor.getColumnIndex(StoreEntry.COLUMN_UNITS)) >= 3);
+            assertTrue(cursor.moveToNext());
+            assertEquals(mStoreId, cursor.getLong(cursor.getColumnIndex(StoreEntry._ID)));
+            assertEquals(2, cursor.getLong(cursor.getColumnIndex(StoreEntry.COLUMN_PHONE_COUNT)));
+            assertEquals(6, cursor.getLong(cursor.getColumnIndex(StoreEntry.COLUMN_UNITS)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void newSupplier_canBeUsedInEveryStore() {
+        ContentValues supplier = new ContentValues();
+        supplier.put(SupplierEntry.COLUMN_SUPPLIER_NAME, "Xiaomi " + System.nanoTime());
+        Uri supplierUri = mResolver.insert(SupplierEntry.CONTENT_URI, supplier);
+        assertNotNull(supplierUri);
+        int supplierId = (int) ContentUris.parseId(supplierUri);
+
+        // A store that was open when the supplier was added, and one opened after it
+        Uri newStoreUri = mResolver.insert(StoreEntry.CONTENT_URI, new ContentValues());
+        assertNotNull(newStoreUri);
+        for (long storeId : new long[]{mStoreId, ContentUris.parseId(newStoreUri)}) {
+            ContentValues phone = newPhone("Mi 8", 300, 2);
+            phone.put(PhoneEntry.COLUMN_SUPPLIER, supplierId);
+            assertNotNull(mResolver.insert(StoreEntry.buildPhonesUri(storeId), phone));
+        }
+    }
+
+    @Test
+    public void sale_changesTheStockOfTheStore() {
+        Uri phoneUri = mResolver.insert(StoreEntry.buildPhonesUri(mStoreId), newPhone("Xperia XZ2", 300, 1));
+        assertNotNull(phoneUri);
+
+        Bundle extras = new Bundle();
+        extras.putLong(PhoneEntry.EXTRA_STORE_ID, mStoreId);
+        Bundle result = mResolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_SELL,
+                String.valueOf(ContentUris.parseId(phoneUri)), extras);
+        assertNotNull(result);
+        assertTrue(result.getBoolean(PhoneEntry.EXTRA_SOLD));
+        assertEquals(0, result.getInt(PhoneEntry.COLUMN_QUANTITY));
+
+        // Sold out, so the phone is on the low stock list of its store
+        Cursor cursor = mResolver.query(StoreEntry.buildStoreUri(mStoreId, LowStockEntry.CONTENT_URI),
+                null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void searchAndExport_readTheStore() throws IOException {
+        mResolver.insert(PhoneEntry.CONTENT_URI, newPhone("Xperia Default", 300, 3));
+        mResolver.insert(StoreEntry.buildPhonesUri(mStoreId), newPhone("Xperia Store", 300, 5));
+
+        Cursor cursor = mResolver.query(StoreEntry.buildStoreUri(mStoreId,
+                PhoneEntry.buildSearchUri("xperia", 10)), null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(1, cursor.getCount());
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Xperia Store",
+                    cursor.getString(cursor.getColumnIndex(PhoneEntry.COLUMN_PHONE_NAME)));
+        } finally {
+            cursor.close();
+        }
+
+        InputStream export = mResolver.openInputStream(
+                StoreEntry.buildStoreUri(mStoreId, PhoneEntry.EXPORT_URI));
+        assertNotNull(export);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(export, "UTF-8"));
+        try {
+            int lines = 0;
+            while (reader.readLine() != null) {
+                lines++;
+            }
+            // The header and the phone of the store
+            assertEquals(2, lines);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchOverTwoStores_isRejected() throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+        operations.add(ContentProviderOperation.newInsert(PhoneEntry.CONTENT_URI)
+                .withValues(newPhone("P20", 300, 3)).build());
+        operations.add(ContentProviderOperation.newInsert(StoreEntry.buildPhonesUri(mStoreId))
+                .withValues(newPhone("Xperia XZ2", 300, 5)).build());
+        mResolver.applyBatch(PhoneContract.CONTENT_AUTHORITY, operations);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deletedStore_isUnknown() {
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(StoreEntry.CONTENT_URI, mStoreId),
+                null, null));
+        countPhones(StoreEntry.buildPhonesUri(mStoreId));
+    }
+
+    @Test
+    public void deletedStoreId_isNotUsedAgain() {
+        assertEquals(1, mResolver.delete(ContentUris.withAppendedId(StoreEntry.CONTENT_URI, mStoreId),
+                null, null));
+
+        Uri storeUri = mResolver.insert(StoreEntry.CONTENT_URI, new ContentValues());
+        assertNotNull(storeUri);
+        assertTrue(ContentUris.parseId(storeUri) > mStoreId);
+    }
+
+    private int countPhones(Uri uri) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.SupplierEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the suppliers at {@link SupplierEntry#CONTENT_URI}, and the check and
+ * the name of the supplier of the phones.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderSuppliersTest {
+
+    private static final String[] PHONE_PROJECTION = {
+            PhoneEntry._ID,
+            PhoneEntry.COLUMN_SUPPLIER,
+            PhoneEntry.COLUMN_SUPPLIER_NAME};
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void builtInSuppliers_areListedInIdOrder() {
+        Cursor cursor = mProviderRule.getResolver().query(SupplierEntry.CONTENT_URI, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertEquals(5, cursor.getCount());
+            assertTrue(cursor.moveToPosition(PhoneEntry.SUPPLIER_SONY));
+            assertEquals(PhoneEntry.SUPPLIER_SONY, cursor.getInt(cursor.getColumnIndex(SupplierEntry._ID)));
+            assertEquals("Sony", cursor.getString(cursor.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_NAME)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void newSupplier_canSupplyPhones() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri supplierUri = resolver.insert(SupplierEntry.CONTENT_URI, newSupplier("Nokia"));
+        assertNotNull(supplierUri);
+        int supplier = (int) ContentUris.parseId(supplierUri);
+
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Nokia 7", 300, supplier, 5));
+        assertNotNull(phoneUri);
+        assertEquals("Nokia", querySupplierName(resolver, phoneUri));
+
+        // The name is looked up when the phone is read, so a renamed supplier shows at once
+        assertEquals(1, resolver.update(supplierUri, newSupplier("HMD Global"), null, null));
+        assertEquals("HMD Global", querySupplierName(resolver, phoneUri));
+    }
+
+    @Test
+    public void duplicateSupplierName_isNotInserted() {
+        assertNull(mProviderRule.getResolver().insert(SupplierEntry.CONTENT_URI, newSupplier("Apple")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSupplier_isRejected() {
+        mProviderRule.getResolver().insert(PhoneEntry.CONTENT_URI, newPhone("Nokia 8", 300, 99, 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSupplierUpdate_isRejected() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("P20", 300, PhoneEntry.SUPPLIER_HUAWEI, 5));
+        assertNotNull(phoneUri);
+
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_SUPPLIER, 99);
+        resolver.update(phoneUri, values, null, null);
+    }
+
+    private static ContentValues newSupplier(String name) {
+        ContentValues values = new ContentValues();
+        values.put(SupplierEntry.COLUMN_SUPPLIER_NAME, name);
+        return values;
+    }
+
+    private static String querySupplierName(ContentResolver resolver, Uri phoneUri) {
+        Cursor cursor = resolver.query(phoneUri, PHONE_PROJECTION, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(cursor.getColumnIndex(PhoneEntry.COLUMN_SUPPLIER_NAME));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.test.rule.provider.ProviderTestRule;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.StoreEntry;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the {@link PhoneEntry#COLUMN_VERSION} of the phones, and the updates
+ * that only apply at the version of {@link PhoneEntry#QUERY_PARAMETER_EXPECTED_VERSION}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderVersionTest {
+
+    @Rule
+    public ProviderTestRule mProviderRule =
+            new ProviderTestRule.Builder(PhoneProvider.class, PhoneContract.CONTENT_AUTHORITY).build();
+
+    @Test
+    public void everyChange_movesTheVersionOn() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Xperia XZ2", 500, 10));
+        assertNotNull(phoneUri);
+        assertEquals(1, queryVersion(resolver, phoneUri));
+
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_PRICE, 450);
+        assertEquals(1, resolver.update(phoneUri, values, null, null));
+        assertEquals(2, queryVersion(resolver, phoneUri));
+
+        // A sale goes through the stock movements, and still counts as a change
+        resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_SELL,
+                String.valueOf(ContentUris.parseId(phoneUri)), null);
+        assertEquals(3, queryVersion(resolver, phoneUri));
+    }
+
+    @Test
+    public void editOfTheQuantity_movesTheVersionOnOnce() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Xperia XZ2", 500, 10));
+        assertNotNull(phoneUri);
+        String[] idArgs = {String.valueOf(ContentUris.parseId(phoneUri))};
+
+        // The quantity alone, through a selection
+        ContentValues quantity = new ContentValues();
+        quantity.put(PhoneEntry.COLUMN_QUANTITY, 8);
+        assertEquals(1, resolver.update(PhoneEntry.CONTENT_URI, quantity, PhoneEntry._ID + "=?", idArgs));
+        assertEquals(2, queryVersion(resolver, phoneUri));
+
+        // The quantity and the price, through a selection
+        ContentValues quantityAndPrice = new ContentValues();
+        quantityAndPrice.put(PhoneEntry.COLUMN_QUANTITY, 6);
+        quantityAndPrice.put(PhoneEntry.COLUMN_PRICE, 450);
+        assertEquals(1, resolver.update(PhoneEntry.CONTENT_URI, quantityAndPrice, PhoneEntry._ID + "=?", idArgs));
+        assertEquals(3, queryVersion(resolver, phoneUri));
+
+        // The whole phone with only a new quantity, as the editor saves it
+        assertEquals(1, resolver.update(PhoneEntry.buildVersionedUri(phoneUri, 3),
+                newPhone("Xperia XZ2", 450, 4), null, null));
+        assertEquals(4, queryVersion(resolver, phoneUri));
+    }
+
+    @Test
+    public void updateAtExpectedVersion_isApplied() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Galaxy S9", 700, 3));
+        assertNotNull(phoneUri);
+
+        assertEquals(1, resolver.update(PhoneEntry.buildVersionedUri(phoneUri, 1),
+                newPhone("Galaxy S9+", 800, 5), null, null));
+        assertEquals(2, queryVersion(resolver, phoneUri));
+    }
+
+    @Test
+    public void updateAtOlderVersion_isRejected() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("P20", 600, 4));
+        assertNotNull(phoneUri);
+
+        // Somebody else changes the stock after the phone was read at version 1
+        ContentValues quantity = new ContentValues();
+        quantity.put(PhoneEntry.COLUMN_QUANTITY, 2);
+        assertEquals(1, resolver.update(phoneUri, quantity, null, null));
+
+        assertEquals(0, resolver.update(PhoneEntry.buildVersionedUri(phoneUri, 1),
+                newPhone("P20 Pro", 900, 4), null, null));
+        Cursor cursor = resolver.query(phoneUri, null, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("P20", cursor.getString(cursor.getColumnIndex(PhoneEntry.COLUMN_PHONE_NAME)));
+            assertEquals(2, cursor.getInt(cursor.getColumnIndex(PhoneEntry.COLUMN_QUANTITY)));
+            assertEquals(2, cursor.getLong(cursor.getColumnIndex(PhoneEntry.COLUMN_VERSION)));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void updatePhoneCall_tellsConflictFromMissingPhone() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Galaxy S8", 400, 6));
+        assertNotNull(phoneUri);
+
+        Bundle updated = callUpdatePhone(resolver, phoneUri, newPhone("Galaxy S8+", 450, 6), 1);
+        assertTrue(updated.getBoolean(PhoneEntry.EXTRA_UPDATED));
+        assertFalse(updated.getBoolean(PhoneEntry.EXTRA_CONFLICT));
+
+        Bundle conflict = callUpdatePhone(resolver, phoneUri, newPhone("Galaxy S8 Active", 500, 6), 1);
+        assertFalse(conflict.getBoolean(PhoneEntry.EXTRA_UPDATED));
+        assertTrue(conflict.getBoolean(PhoneEntry.EXTRA_CONFLICT));
+
+        Uri missingUri = ContentUris.withAppendedId(PhoneEntry.CONTENT_URI, ContentUris.parseId(phoneUri) + 1);
+        Bundle missing = callUpdatePhone(resolver, missingUri, newPhone("Galaxy S8", 400, 6), 1);
+        assertFalse(missing.getBoolean(PhoneEntry.EXTRA_UPDATED));
+        assertFalse(missing.getBoolean(PhoneEntry.EXTRA_CONFLICT));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void updatePhoneCall_rejectsInvalidValues() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Mate 9", 350, 2));
+        assertNotNull(phoneUri);
+        callUpdatePhone(resolver, phoneUri, newPhone("", 350, 2), 1);
+    }
+
+    @Test
+    public void updateOfAnotherStore_checksTheVersion() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri storeUri = resolver.insert(StoreEntry.CONTENT_URI, new ContentValues());
+        assertNotNull(storeUri);
+        try {
+            Uri phoneUri = resolver.insert(StoreEntry.buildPhonesUri(ContentUris.parseId(storeUri)),
+                    newPhone("Mate 10", 550, 2));
+            assertNotNull(phoneUri);
+
+            assertEquals(0, resolver.update(PhoneEntry.buildVersionedUri(phoneUri, 2),
+                    newPhone("Mate 10 Pro", 650, 2), null, null));
+            assertEquals(1, resolver.update(PhoneEntry.buildVersionedUri(phoneUri, 1),
+                    newPhone("Mate 10 Pro", 650, 2), null, null));
+        } finally {
+            resolver.delete(storeUri, null, null);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void expectedVersionOfAList_isRejected() {
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_PRICE, 100);
+        mProviderRule.getResolver().update(PhoneEntry.buildVersionedUri(PhoneEntry.CONTENT_URI, 1),
+                values, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void version_cannotBeWritten() {
+        ContentResolver resolver = mProviderRule.getResolver();
+        Uri phoneUri = resolver.insert(PhoneEntry.CONTENT_URI, newPhone("Xperia XA2", 300, 1));
+        assertNotNull(phoneUri);
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_VERSION, 10);
+        resolver.update(phoneUri, values, null, null);
+    }
+
+    private static Bundle callUpdatePhone(ContentResolver resolver, Uri phoneUri, ContentValues values,
+                                          long version) {
+        Bundle extras = new Bundle();
+        extras.putParcelable(PhoneEntry.EXTRA_VALUES, values);
+        extras.putLong(PhoneEntry.COLUMN_VERSION, version);
+        Bundle result = resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_UPDATE_PHONE,
+                phoneUri.toString(), extras);
+        assertNotNull(result);
+        return result;
+    }
+
+    private static long queryVersion(ContentResolver resolver, Uri phoneUri) {
+        Cursor cursor = resolver.query(phoneUri, new String[]{PhoneEntry.COLUMN_VERSION}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Benchmark of the first query of the phone list after the app starts, with and without the
+ * warm-up of {@link PhoneProvider#warmUp}. Each round opens the database again with a new
+ * helper, as a new process does, and waits as long as creating the first activity takes
+ * before the list is queried.
+ *
+ * The time of the whole start of the app is logged by {@link StartupTrace} on each launch, so
+ * repeated cold starts are measured with:
+ *
+ * adb shell am force-stop com.example.android.inventorymmbv2
+ * adb shell am start -W -n com.example.android.inventorymmbv2/.MainActivity
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneProviderWarmUpBenchmarkTest {
+
+    private static final String LOG_TAG = PhoneProviderWarmUpBenchmarkTest.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "warm_up_benchmark.db";
+
+    /** Number of phones in the database */
+    private static final int PHONE_ROWS = 5000;
+
+    /** Number of starts measured with and without the warm-up */
+    private static final int ROUNDS = 20;
+
+    /** Time the main thread spends creating the first activity before the list is queried */
+    private static final long ACTIVITY_CREATE_MILLIS = 150;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        DbHelper dbHelper = newDbHelper();
+        SQLiteDatabase database = dbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < PHONE_ROWS; i++) {
+                values.put(PhoneEntry.COLUMN_PHONE_NAME, "Phone " + i);
+                values.put(PhoneEntry.COLUMN_PRICE, 100 + i % 900);
+                values.put(PhoneEntry.COLUMN_SUPPLIER, i % 5);
+                values.put(PhoneEntry.COLUMN_SUPPLIER_NUMBER, "079123456");
+                values.put(PhoneEntry.COLUMN_QUANTITY, i % 50);
+                database.insert(PhoneEntry.TABLE_NAME, null, values);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        dbHelper.close();
+    }
+
+    @After
+    public void tearDown() {
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void firstPage_isFasterAfterWarmUp() throws InterruptedException {
+        long[] coldMicros = new long[ROUNDS];
+        long[] warmMicros = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; i++) {
+            coldMicros[i] = measureFirstPage(false);
+            warmMicros[i] = measureFirstPage(true);
+        }
+
+        Arrays.sort(coldMicros);
+        Arrays.sort(warmMicros);
+        long coldMedian = coldMicros[ROUNDS / 2];
+        long warmMedian = warmMicros[ROUNDS / 2];
+        Log.i(LOG_TAG, "First page after start: median " + coldMedian + " us without warm-up, "
+                + warmMedian + " us with warm-up (max " + coldMicros[ROUNDS - 1] + " us and "
+                + warmMicros[ROUNDS - 1] + " us)");
+
+        // Without the warm-up the query opens the database and compiles its statement itself
+        assertTrue("Warm-up did not help: " + warmMedian + " us, " + coldMedian + " us without",
+                warmMedian < coldMedian);
+    }
+
+    /**
+     * Returns the time in microseconds from the query of the first page of a freshly opened
+     * database until its rows are counted.
+     */
+    private long measureFirstPage(boolean warmUp) throws InterruptedException {
+        final DbHelper dbHelper = newDbHelper();
+        Thread warmUpThread = null;
+        if (warmUp) {
+            warmUpThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    PhoneProvider.warmUp(dbHelper, new SupplierDirectory());
+                }
+            });
+            warmUpThread.start();
+        }
+        try {
+            SystemClock.sleep(ACTIVITY_CREATE_MILLIS);
+
+            long start = System.nanoTime();
+            Cursor cursor = PhoneProvider.queryFirstPage(dbHelper.getReadableDatabase());
+            try {
+                assertEquals(PhoneEntry.DEFAULT_PAGE_SIZE, cursor.getCount());
+            } finally {
+                cursor.close();
+            }
+            return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        } finally {
+            if (warmUpThread != null) {
+                warmUpThread.join();
+            }
+            dbHelper.close();
+        }
+    }
+
+    private DbHelper newDbHelper() {
+        return new DbHelper(mContext, DATABASE_NAME, DbHelper.DEFAULT_SYNCHRONOUS_MODE,
+                DbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+    }
+}
@@ -0,0 +1,143 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Looper;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.android.inventorymmbv2.TestPhones.newPhone;
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for the order and the callbacks of the writes of {@link PhoneWriter}, and
+ * for the failed result each kind of write reports when the provider throws.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PhoneWriterTest {
+
+    @Test
+    public void writes_completeInOrderOnMainThread() throws InterruptedException {
+        final PhoneWriter writer = PhoneWriter.getInstance(InstrumentationRegistry.getTargetContext());
+        final List<String> completed = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(3);
+        final boolean[] onMainThread = {true};
+
+        final ContentValues values = newPhone("PhoneWriterTest", 500, 10);
+
+        final String selection = PhoneEntry.COLUMN_PHONE_NAME + " = ?";
+        final String[] selectionArgs = {"PhoneWriterTest"};
+        final ContentValues update = new ContentValues();
+        update.put(PhoneEntry.COLUMN_QUANTITY, 5);
+
+        writer.insert(PhoneEntry.CONTENT_URI, values, new PhoneWriter.Callback<Uri>() {
+            @Override
+            public void onWriteComplete(Uri result) {
+                onMainThread[0] &= Looper.myLooper() == Looper.getMainLooper();
+                completed.add("insert " + (result != null));
+                done.countDown();
+            }
+        });
+        writer.update(PhoneEntry.CONTENT_URI, update, selection, selectionArgs,
+                new PhoneWriter.Callback<Integer>() {
+                    @Override
+                    public void onWriteComplete(Integer result) {
+                        onMainThread[0] &= Looper.myLooper() == Looper.getMainLooper();
+                        completed.add("update " + result);
+                        done.countDown();
+                    }
+                });
+        writer.delete(PhoneEntry.CONTENT_URI, selection, selectionArgs,
+                new PhoneWriter.Callback<Integer>() {
+                    @Override
+                    public void onWriteComplete(Integer result) {
+                        onMainThread[0] &= Looper.myLooper() == Looper.getMainLooper();
+                        completed.add("delete " + result);
+                        done.countDown();
+                    }
+                });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(onMainThread[0]);
+        assertEquals("[insert true, update 1, delete 1]", completed.toString());
+    }
+
+    @Test
+    public void invalidInsert_reportsFailure() throws InterruptedException {
+        PhoneWriter writer = PhoneWriter.getInstance(InstrumentationRegistry.getTargetContext());
+        final Uri[] result = {Uri.EMPTY};
+        final CountDownLatch done = new CountDownLatch(1);
+        final boolean[] onMainThread = {false};
+
+        // A phone without a name is rejected by the provider
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_PRICE, 500);
+        writer.insert(PhoneEntry.CONTENT_URI, values, new PhoneWriter.Callback<Uri>() {
+            @Override
+            public void onWriteComplete(Uri newUri) {
+                onMainThread[0] = Looper.myLooper() == Looper.getMainLooper();
+                result[0] = newUri;
+                done.countDown();
+            }
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(onMainThread[0]);
+        assertNull(result[0]);
+    }
+
+    @Test
+    public void failedWrites_reportNullOrZeroOnMainThread() throws InterruptedException {
+        PhoneWriter writer = PhoneWriter.getInstance(InstrumentationRegistry.getTargetContext());
+        final List<Object> results = new ArrayList<>();
+        final CountDownLatch done = new CountDownLatch(3);
+        final boolean[] onMainThread = {true};
+
+        // The version of a phone cannot be written
+        ContentValues update = new ContentValues();
+        update.put(PhoneEntry.COLUMN_VERSION, 10);
+        writer.update(PhoneEntry.CONTENT_URI, update, null, null, new PhoneWriter.Callback<Integer>() {
+            @Override
+            public void onWriteComplete(Integer result) {
+                onMainThread[0] &= Looper.myLooper() == Looper.getMainLooper();
+                results.add(result);
+                done.countDown();
+            }
+        });
+        // Nothing can be deleted at an unknown URI
+        writer.delete(Uri.withAppendedPath(PhoneContract.BASE_CONTENT_URI, "unknown"), null, null,
+                new PhoneWriter.Callback<Integer>() {
+                    @Override
+                    public void onWriteComplete(Integer result) {
+                        onMainThread[0] &= Looper.myLooper() == Looper.getMainLooper();
+                        results.add(result);
+                        done.countDown();
+                    }
+                });
+        // A stock adjustment needs its batch token and changes
+        writer.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_ADJUST_STOCK, null, new Bundle(),
+                new PhoneWriter.Callback<Bundle>() {
+                    @Override
+                    public void onWriteComplete(Bundle result) {
+                        onMainThread[0] &= Looper.myLooper() == Looper.getMainLooper();
+                        results.add(result);
+                        done.countDown();
+                    }
+                });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertTrue(onMainThread[0]);
+        assertEquals("[0, 0, null]", results.toString());
+    }
+}
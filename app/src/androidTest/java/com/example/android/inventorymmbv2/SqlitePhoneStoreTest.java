@@ -0,0 +1,124 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test for {@link SqlitePhoneStore}, which also reports the throughput of the
+ * operations measured by the JVM benchmarks, so device and host numbers can be compared.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SqlitePhoneStoreTest {
+
+    private static final String LOG_TAG = SqlitePhoneStoreTest.class.getSimpleName();
+
+    private static final String DATABASE_NAME = "store_test.db";
+
+    /** Number of phones loaded before the lookups */
+    private static final int CATALOG_SIZE = 10000;
+
+    /** Number of times each single-row operation is timed */
+    private static final int OPERATIONS = 1000;
+
+    private Context mContext;
+    private DbHelper mDbHelper;
+    private PhoneStore mStore;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new DbHelper(mContext, DATABASE_NAME,
+                DbHelper.DEFAULT_SYNCHRONOUS_MODE, DbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+        mStore = new SqlitePhoneStore(mDbHelper.getWritableDatabase());
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void operations_behaveLikeTheJdbcStore() {
+        long id = mStore.insert(new Phone("Xperia XZ2", 500, PhoneSchema.SUPPLIER_SONY, "079123456", 2));
+        assertEquals("Xperia XZ2", mStore.query(id).getName());
+
+        assertTrue(mStore.sell(id, 2));
+        assertFalse(mStore.sell(id, 1));
+        assertEquals(0, mStore.query(id).getQuantity());
+
+        assertEquals(1, mStore.update(id,
+                new Phone("Xperia XZ3", 650, PhoneSchema.SUPPLIER_SONY, "079123456", 4)));
+        assertEquals(1, mStore.queryBySupplier(PhoneSchema.SUPPLIER_SONY, 10).size());
+        assertEquals(1, mStore.delete(id));
+        assertNull(mStore.query(id));
+    }
+
+    @Test
+    public void pooledStores_areReusedUntilTheDatabaseCloses() {
+        SqlitePhoneStore store = mDbHelper.acquirePhoneStore();
+        mDbHelper.releasePhoneStore(store);
+        SqlitePhoneStore reused = mDbHelper.acquirePhoneStore();
+        assertSame(store, reused);
+
+        // A store given back after the database was closed is not handed out again
+        mDbHelper.close();
+        mDbHelper.releasePhoneStore(reused);
+        SqlitePhoneStore reopened = mDbHelper.acquirePhoneStore();
+        assertNotSame(store, reopened);
+        assertTrue(reopened.isOpen());
+        mDbHelper.releasePhoneStore(reopened);
+
+        // The store of setUp was opened on the closed database
+        mStore = new SqlitePhoneStore(mDbHelper.getWritableDatabase());
+    }
+
+    @Test
+    public void throughput() {
+        List<Phone> catalog = new ArrayList<>(CATALOG_SIZE);
+        for (int i = 0; i < CATALOG_SIZE; i++) {
+            catalog.add(new Phone("Phone " + i, 100 + i % 900, i % 5, "079123456", 1000));
+        }
+        long start = SystemClock.elapsedRealtime();
+        assertEquals(CATALOG_SIZE, mStore.bulkInsert(catalog));
+        logRate("bulkLoad", CATALOG_SIZE, start);
+
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            assertNotNull(mStore.query(1 + (i * 7919) % CATALOG_SIZE));
+        }
+        logRate("pointLookup", OPERATIONS, start);
+
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            mStore.queryBySupplier(i % 5, 50);
+        }
+        logRate("filteredScan", OPERATIONS, start);
+
+        start = SystemClock.elapsedRealtime();
+        for (int i = 0; i < OPERATIONS; i++) {
+            assertTrue(mStore.sell(1 + (i * 7919) % CATALOG_SIZE, 1));
+        }
+        logRate("stockDecrement", OPERATIONS, start);
+    }
+
+    private static void logRate(String operation, int count, long start) {
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+        Log.i(LOG_TAG, operation + ": " + (count * 1000L / elapsed) + " ops/s");
+    }
+}
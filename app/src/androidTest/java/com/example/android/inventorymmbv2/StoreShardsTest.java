@@ -0,0 +1,120 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented test of the lifetime of the store databases of {@link StoreShards}, which are
+ * only closed once the last thread using them has released them, and of the lock of the shards,
+ * which is never held while a database is written.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StoreShardsTest {
+
+    private static final String DATABASE_NAME = "shards_test.db";
+
+    private Context mContext;
+    private DbHelper mDbHelper;
+    private StoreShards mShards;
+    private long mStoreId;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getTargetContext();
+        mContext.deleteDatabase(DATABASE_NAME);
+        mDbHelper = new DbHelper(mContext, DATABASE_NAME, DbHelper.DEFAULT_SYNCHRONOUS_MODE,
+                DbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+        mShards = new StoreShards(mContext, mDbHelper, new SupplierDirectory());
+        mStoreId = mShards.create();
+    }
+
+    @After
+    public void tearDown() {
+        mShards.delete(mStoreId);
+        mDbHelper.close();
+        mContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    @Test
+    public void deletedStore_staysOpenUntilReleased() {
+        StoreShards.Shard shard = mShards.acquire(mStoreId);
+        try {
+            assertTrue(mShards.delete(mStoreId));
+            for (long storeId : mShards.listStoreIds()) {
+                assertNotEquals(mStoreId, storeId);
+            }
+
+            // The thread that acquired the store before it was deleted can still finish its work
+            assertEquals(0, DatabaseUtils.queryNumEntries(shard.dbHelper.getReadableDatabase(),
+                    PhoneSchema.TABLE_PHONES));
+        } finally {
+            mShards.release(shard);
+        }
+        assertFalse(shard.dbHelper.getDatabaseFile().exists());
+    }
+
+    @Test
+    public void supplierWaitingForATransaction_doesNotBlockTheLookups() throws InterruptedException {
+        StoreShards.Shard shard = mShards.acquire(mStoreId);
+        final CountDownLatch supplierPut = new CountDownLatch(1);
+        Thread supplierThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                mShards.putSupplier(PhoneSchema.SUPPLIER_SONY, "Sony Mobile");
+                supplierPut.countDown();
+            }
+        });
+        SQLiteDatabase database = shard.dbHelper.getWritableDatabase();
+        database.beginTransaction();
+        try {
+            // The supplier thread waits for this transaction to end
+            supplierThread.start();
+            assertFalse(supplierPut.await(500, TimeUnit.MILLISECONDS));
+
+            // The thread in the transaction can still look up its store, as a batch does
+            final CountDownLatch acquired = new CountDownLatch(1);
+            Thread lookupThread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    mShards.release(mShards.acquire(mStoreId));
+                    acquired.countDown();
+                }
+            });
+            lookupThread.start();
+            assertTrue(acquired.await(5, TimeUnit.SECONDS));
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            mShards.release(shard);
+        }
+
+        assertTrue(supplierPut.await(5, TimeUnit.SECONDS));
+        assertEquals("Sony Mobile", DatabaseUtils.stringForQuery(database, "SELECT "
+                + PhoneSchema.COLUMN_SUPPLIER_NAME + " FROM " + PhoneSchema.TABLE_SUPPLIERS + " WHERE "
+                + PhoneSchema.COLUMN_ID + " = " + PhoneSchema.SUPPLIER_SONY, null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void deletedStore_cannotBeAcquired() {
+        StoreShards.Shard shard = mShards.acquire(mStoreId);
+        try {
+            mShards.delete(mStoreId);
+            mShards.acquire(mStoreId);
+        } finally {
+            mShards.release(shard);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Phones written by the instrumented tests of the provider, and the calls they make on them.
+ */
+final class TestPhones {
+
+    /** Supplier number of every phone of the tests */
+    static final String SUPPLIER_NUMBER = "079123456";
+
+    private TestPhones() {
+    }
+
+    /**
+     * Returns the values of a new phone.
+     */
+    static ContentValues newPhone(String name, int price, int supplier, int quantity) {
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_PHONE_NAME, name);
+        values.put(PhoneEntry.COLUMN_PRICE, price);
+        values.put(PhoneEntry.COLUMN_SUPPLIER, supplier);
+        values.put(PhoneEntry.COLUMN_SUPPLIER_NUMBER, SUPPLIER_NUMBER);
+        values.put(PhoneEntry.COLUMN_QUANTITY, quantity);
+        return values;
+    }
+
+    /**
+     * Returns the values of a new phone of Sony.
+     */
+    static ContentValues newPhone(String name, int price, int quantity) {
+        return newPhone(name, price, PhoneEntry.SUPPLIER_SONY, quantity);
+    }
+
+    /**
+     * Inserts a phone with the given values into the default store and returns its URI.
+     */
+    static Uri insertPhone(ContentResolver resolver, ContentValues values) {
+        Uri uri = resolver.insert(PhoneEntry.CONTENT_URI, values);
+        assertNotNull(uri);
+        return uri;
+    }
+
+    /**
+     * Inserts an Xperia XZ2 at 500 with the given quantity into the default store and returns
+     * its URI.
+     */
+    static Uri insertPhone(ContentResolver resolver, int quantity) {
+        return insertPhone(resolver, newPhone("Xperia XZ2", 500, quantity));
+    }
+
+    /**
+     * Sells units of the phone with the given ID, the arg of {@link PhoneEntry#METHOD_SELL}, and
+     * returns the result of the call.
+     */
+    static Bundle sell(ContentResolver resolver, String id, int count) {
+        Bundle extras = new Bundle();
+        extras.putInt(PhoneEntry.EXTRA_COUNT, count);
+        Bundle result = resolver.call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_SELL, id, extras);
+        assertNotNull(result);
+        return result;
+    }
+
+    /**
+     * Sells units of the phone with the given URI and returns the result of the call.
+     */
+    static Bundle sell(ContentResolver resolver, Uri phoneUri, int count) {
+        return sell(resolver, String.valueOf(ContentUris.parseId(phoneUri)), count);
+    }
+}
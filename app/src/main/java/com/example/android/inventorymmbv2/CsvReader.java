@@ -0,0 +1,124 @@
+package com.example.android.inventorymmbv2;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+
+/**
+ * Reads CSV records (RFC 4180) one at a time from a {@link Reader}, so a file of any size can be
+ * parsed without holding more than the current record in memory. Fields may be quoted with
+ * double quotes, and quoted fields may contain commas, line breaks and doubled quotes.
+ */
+final class CsvReader {
+
+    /** Size of the buffer the input is read into */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[BUFFER_SIZE];
+
+    /** Position of the next character in {@link #mBuffer} */
+    private int mPosition;
+
+    /** Number of characters in {@link #mBuffer} */
+    private int mLimit;
+
+    /** The field being read, reused for every field */
+    private final StringBuilder mField = new StringBuilder();
+
+    /** Line of the input the last record started on, starting at 1 */
+    private int mRecordLine;
+
+    /** Line of the input the reader is at */
+    private int mLine = 1;
+
+    CsvReader(Reader reader) {
+        mReader = reader;
+    }
+
+    /**
+     * Returns the line of the input where the last record returned by {@link #readRecord} started.
+     */
+    int getRecordLine() {
+        return mRecordLine;
+    }
+
+    /**
+     * Reads the next record into the given list, which is cleared first.
+     *
+     * @return false if the end of the input was reached before the record
+     * @throws IOException if the input cannot be read or ends inside a quoted field
+     */
+    boolean readRecord(List<String> fields) throws IOException {
+        fields.clear();
+        mField.setLength(0);
+        mRecordLine = mLine;
+
+        int c = read();
+        if (c == -1) {
+            return false;
+        }
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field starting on line " + mRecordLine);
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        // The closing quote, the character after it is handled as unquoted
+                        quoted = false;
+                        continue;
+                    }
+                }
+                if (c == '\n') {
+                    mLine++;
+                }
+                mField.append((char) c);
+            } else if (c == ',') {
+                fields.add(mField.toString());
+                mField.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == -1) {
+                if (c == '\r' && peek() == '\n') {
+                    read();
+                }
+                if (c != -1) {
+                    mLine++;
+                }
+                fields.add(mField.toString());
+                return true;
+            } else if (c == '"' && mField.length() == 0) {
+                quoted = true;
+            } else {
+                mField.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private int read() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPosition++];
+    }
+
+    private int peek() throws IOException {
+        if (mPosition == mLimit && !fill()) {
+            return -1;
+        }
+        return mBuffer[mPosition];
+    }
+
+    private boolean fill() throws IOException {
+        mLimit = mReader.read(mBuffer, 0, mBuffer.length);
+        mPosition = 0;
+        if (mLimit <= 0) {
+            mLimit = 0;
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,506 @@
+package com.example.android.inventorymmbv2;
+
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Online backups of the database, kept as numbered generations in a directory.
+ *
+ * A backup copies the database file page by page while {@link DbHelper#pauseCheckpoints} keeps
+ * SQLite from writing to it, followed by the WAL file. In WAL mode only checkpoints write to the
+ * database file, so it does not change during the copy, and writers carry on by appending to the
+ * WAL file. SQLite replays the WAL up to its last complete commit when the copy is opened, so
+ * the two copies together are a consistent snapshot of the database.
+ *
+ * A generation only holds the pages that changed since the previous one, found by comparing a
+ * checksum of each page with those kept for the previous generation. Every
+ * {@link #FULL_BACKUP_INTERVAL} generations all pages are written again, so a restore never
+ * reads more than that many files. Each generation file ends with a CRC32 of its content, which
+ * is checked when it is restored.
+ *
+ * The layout of a generation file is: the header of {@link Generation}, then each changed page
+ * as its page number and content, ended by page number 0, then the length and content of the WAL
+ * file and whether it was started over while it was copied, then the CRC32 of everything before
+ * it.
+ */
+final class DatabaseBackup {
+
+    private static final String LOG_TAG = DatabaseBackup.class.getSimpleName();
+
+    /** Start of every generation file */
+    private static final int MAGIC = 0x50484231;
+
+    /** Version of the layout of the generation files */
+    private static final int FORMAT_VERSION = 1;
+
+    /** Number of generations kept, older ones are deleted unless a kept one needs them */
+    static final int MAX_GENERATIONS = 10;
+
+    /** Maximum number of generations a restore has to read, including the full one */
+    static final int FULL_BACKUP_INTERVAL = 7;
+
+    private static final String GENERATION_SUFFIX = ".gen";
+    private static final String SUMS_SUFFIX = ".sums";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Size of the header of a WAL file, which changes when SQLite starts the file over */
+    private static final int WAL_HEADER_SIZE = 32;
+
+    /** Size of the buffers of the file streams */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Header of a generation file.
+     */
+    static final class Generation {
+
+        /** Number of the generation, from 1 */
+        final long number;
+
+        /** Generation the pages are changed from, or 0 if the generation holds all pages */
+        final long base;
+
+        /** Page size of the database in bytes */
+        final int pageSize;
+
+        /** Number of pages of the database file */
+        final int pageCount;
+
+        /** Number of pages written to the generation, only known for a new one */
+        int changedPages;
+
+        Generation(long number, long base, int pageSize, int pageCount) {
+            this.number = number;
+            this.base = base;
+            this.pageSize = pageSize;
+            this.pageCount = pageCount;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(number);
+            out.writeLong(base);
+            out.writeInt(pageSize);
+            out.writeInt(pageCount);
+        }
+
+        static Generation read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a backup generation");
+            }
+            return new Generation(in.readLong(), in.readLong(), in.readInt(), in.readInt());
+        }
+    }
+
+    private final File mDirectory;
+
+    /**
+     * @param directory where the generations are kept, created with the first backup
+     */
+    DatabaseBackup(File directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns the numbers of the generations in the directory, oldest first.
+     */
+    long[] listGenerations() {
+        String[] names = mDirectory.list();
+        if (names == null) {
+            return new long[0];
+        }
+        long[] generations = new long[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.endsWith(GENERATION_SUFFIX)) {
+                try {
+                    generations[count++] = Long.parseLong(
+                            name.substring(0, name.length() - GENERATION_SUFFIX.length()));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        generations = Arrays.copyOf(generations, count);
+        Arrays.sort(generations);
+        return generations;
+    }
+
+    /**
+     * Returns the number of the latest generation, or 0 if there is none.
+     */
+    long latestGeneration() {
+        long[] generations = listGenerations();
+        return generations.length == 0 ? 0 : generations[generations.length - 1];
+    }
+
+    /**
+     * Back up the database of the given helper as a new generation, and delete the generations
+     * that are no longer kept. Writers are not blocked, only checkpoints wait for the backup.
+     *
+     * @return the new generation
+     */
+    Generation backUp(DbHelper dbHelper) throws IOException {
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Cannot create " + mDirectory);
+        }
+        long latest = latestGeneration();
+        boolean incremental = latest != 0 && chainLength(latest) < FULL_BACKUP_INTERVAL;
+
+        Generation generation;
+        dbHelper.pauseCheckpoints();
+        try {
+            File databaseFile = dbHelper.getDatabaseFile();
+            int pageSize = dbHelper.getPageSize();
+            long[] baseSums = incremental ? readSums(latest, pageSize) : null;
+            generation = new Generation(latest + 1, baseSums == null ? 0 : latest, pageSize,
+                    (int) (databaseFile.length() / pageSize));
+            long[] sums = writeGeneration(generation, databaseFile,
+                    new File(databaseFile.getPath() + "-wal"), baseSums);
+            writeSums(generation, sums);
+        } finally {
+            dbHelper.resumeCheckpoints();
+        }
+
+        // Only the sums of the latest generation are needed for the next one
+        if (latest != 0) {
+            deleteFile(new File(mDirectory, latest + SUMS_SUFFIX));
+        }
+        prune();
+        Log.i(LOG_TAG, "Backed up generation " + generation.number + " with "
+                + generation.changedPages + " of " + generation.pageCount + " pages");
+        return generation;
+    }
+
+    /**
+     * Write the generation file, copying the pages of the database file that changed from the
+     * base sums, or all of them if there are none. Returns the sums of all the pages.
+     */
+    private long[] writeGeneration(Generation generation, File databaseFile, File walFile,
+                                   long[] baseSums) throws IOException {
+        long[] sums = new long[generation.pageCount];
+        byte[] page = new byte[generation.pageSize];
+        File temp = new File(mDirectory, generation.number + GENERATION_SUFFIX + TEMP_SUFFIX);
+        FileOutputStream file = new FileOutputStream(temp);
+        try {
+            CRC32 fileCrc = new CRC32();
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(file, BUFFER_SIZE), fileCrc));
+            generation.write(out);
+
+            DataInputStream database = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(databaseFile), BUFFER_SIZE));
+            try {
+                CRC32 crc = new CRC32();
+                Adler32 adler = new Adler32();
+                for (int i = 0; i < generation.pageCount; i++) {
+                    database.readFully(page);
+                    crc.reset();
+                    crc.update(page, 0, page.length);
+                    adler.reset();
+                    adler.update(page, 0, page.length);
+                    sums[i] = crc.getValue() << 32 | adler.getValue();
+                    if (baseSums == null || i >= baseSums.length || baseSums[i] != sums[i]) {
+                        out.writeInt(i + 1);
+                        out.write(page);
+                        generation.changedPages++;
+                    }
+                }
+            } finally {
+                database.close();
+            }
+            out.writeInt(0);
+
+            // The WAL is read up to its length now. Frames appended while it is read are
+            // incomplete at the end, and SQLite ignores them when the copy is opened.
+            long walLength = walFile.length();
+            out.writeLong(walLength);
+            byte[] walHeader = new byte[(int) Math.min(WAL_HEADER_SIZE, walLength)];
+            if (walLength > 0) {
+                DataInputStream wal = new DataInputStream(
+                        new BufferedInputStream(new FileInputStream(walFile), BUFFER_SIZE));
+                try {
+                    wal.readFully(walHeader);
+                    out.write(walHeader);
+                    copy(wal, out, walLength - walHeader.length, page);
+                } finally {
+                    wal.close();
+                }
+            }
+            // Once a checkpoint has copied all of the WAL, the next writer starts it over with a
+            // new header. The copy of the database file then holds all the frames of the old
+            // WAL, and the old frames read before the new ones must not be replayed over it.
+            out.writeBoolean(walLength > 0 && !Arrays.equals(walHeader, readWalHeader(walFile)));
+
+            out.flush();
+            out.writeLong(fileCrc.getValue());
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        rename(temp, new File(mDirectory, generation.number + GENERATION_SUFFIX));
+        return sums;
+    }
+
+    /**
+     * Build the database of the given generation in the target file, and check it. The WAL of
+     * the generation is folded into the file, so it can replace the database on its own.
+     */
+    void restore(long number, File target) throws IOException {
+        // The full generation comes first, then the changes of each one after it
+        List<Generation> chain = new ArrayList<>();
+        for (long n = number; n != 0; n = chain.get(chain.size() - 1).base) {
+            Generation generation = readHeader(n);
+            if (generation.base >= n) {
+                throw new IOException("Backup generation " + n + " is damaged");
+            }
+            chain.add(generation);
+        }
+        File walFile = new File(target.getPath() + "-wal");
+        deleteFile(walFile);
+        deleteFile(new File(target.getPath() + "-shm"));
+
+        RandomAccessFile database = new RandomAccessFile(target, "rw");
+        try {
+            database.setLength(0);
+            for (int i = chain.size() - 1; i >= 0; i--) {
+                applyGeneration(chain.get(i), database, i == 0 ? walFile : null);
+            }
+            Generation generation = chain.get(0);
+            database.setLength((long) generation.pageCount * generation.pageSize);
+            database.getFD().sync();
+        } finally {
+            database.close();
+        }
+
+        // Opening the copy replays its WAL, and closing it checkpoints the WAL into the file
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(target.getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        try {
+            String check = DatabaseUtils.stringForQuery(db, "PRAGMA quick_check;", null);
+            if (!"ok".equals(check)) {
+                throw new IOException("Backup generation " + number + " is corrupt: " + check);
+            }
+        } finally {
+            db.close();
+        }
+        if (walFile.length() > 0) {
+            throw new IOException("The WAL of backup generation " + number + " was not checkpointed");
+        }
+        deleteFile(walFile);
+        deleteFile(new File(target.getPath() + "-shm"));
+    }
+
+    /**
+     * Write the pages of a generation to the database file, and its WAL to the given file if
+     * not null, checking the CRC32 of the generation file.
+     */
+    private void applyGeneration(Generation generation, RandomAccessFile database, File walFile)
+            throws IOException {
+        File file = new File(mDirectory, generation.number + GENERATION_SUFFIX);
+        CRC32 fileCrc = new CRC32();
+        DataInputStream in = new DataInputStream(new CheckedInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE), fileCrc));
+        try {
+            Generation header = Generation.read(in);
+            byte[] page = new byte[header.pageSize];
+            for (int pageNumber = in.readInt(); pageNumber != 0; pageNumber = in.readInt()) {
+                if (pageNumber < 0 || pageNumber > header.pageCount) {
+                    throw new IOException("Backup generation " + generation.number + " is damaged");
+                }
+                in.readFully(page);
+                database.seek((long) (pageNumber - 1) * header.pageSize);
+                database.write(page);
+            }
+
+            long walLength = in.readLong();
+            if (walFile != null) {
+                FileOutputStream wal = new FileOutputStream(walFile);
+                try {
+                    copy(in, wal, walLength, page);
+                    wal.getFD().sync();
+                } finally {
+                    wal.close();
+                }
+            } else {
+                copy(in, null, walLength, page);
+            }
+            if (in.readBoolean() && walFile != null) {
+                // The copy of the database file is complete without the WAL
+                deleteFile(walFile);
+            }
+
+            long crc = fileCrc.getValue();
+            if (in.readLong() != crc) {
+                throw new IOException("Backup generation " + generation.number + " is damaged");
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Returns the number of generations a restore of the given one reads, or
+     * {@link Integer#MAX_VALUE} if one of them cannot be read, so the next one holds all pages.
+     */
+    private int chainLength(long number) {
+        try {
+            int length = 1;
+            for (long base = readHeader(number).base; base != 0; base = readHeader(base).base) {
+                length++;
+            }
+            return length;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Cannot read backup generation " + number, e);
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Delete the generations before the oldest full generation that a kept one needs.
+     */
+    private void prune() throws IOException {
+        long[] generations = listGenerations();
+        if (generations.length <= MAX_GENERATIONS) {
+            return;
+        }
+        long oldestNeeded = generations[generations.length - MAX_GENERATIONS];
+        for (long base = readHeader(oldestNeeded).base; base != 0; base = readHeader(base).base) {
+            oldestNeeded = base;
+        }
+        for (long generation : generations) {
+            if (generation < oldestNeeded) {
+                deleteFile(new File(mDirectory, generation + GENERATION_SUFFIX));
+                deleteFile(new File(mDirectory, generation + SUMS_SUFFIX));
+            }
+        }
+    }
+
+    private Generation readHeader(long number) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(mDirectory, number + GENERATION_SUFFIX))));
+        try {
+            Generation generation = Generation.read(in);
+            if (generation.number != number) {
+                throw new IOException("Backup generation " + number + " is damaged");
+            }
+            return generation;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Write the page sums of a generation, which the next backup compares its pages with.
+     */
+    private void writeSums(Generation generation, long[] sums) throws IOException {
+        File temp = new File(mDirectory, generation.number + SUMS_SUFFIX + TEMP_SUFFIX);
+        FileOutputStream file = new FileOutputStream(temp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, BUFFER_SIZE));
+            out.writeInt(generation.pageSize);
+            out.writeInt(sums.length);
+            for (long sum : sums) {
+                out.writeLong(sum);
+            }
+            out.flush();
+            file.getFD().sync();
+        } finally {
+            file.close();
+        }
+        rename(temp, new File(mDirectory, generation.number + SUMS_SUFFIX));
+    }
+
+    /**
+     * Returns the page sums of a generation, or null if they are not there or were taken with
+     * another page size, in which case the next generation holds all pages.
+     */
+    private long[] readSums(long number, int pageSize) {
+        File file = new File(mDirectory, number + SUMS_SUFFIX);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            try {
+                if (in.readInt() != pageSize) {
+                    return null;
+                }
+                long[] sums = new long[in.readInt()];
+                for (int i = 0; i < sums.length; i++) {
+                    sums[i] = in.readLong();
+                }
+                return sums;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Cannot read the page sums of generation " + number, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns the header of the given WAL file, shorter if the file is.
+     */
+    private static byte[] readWalHeader(File walFile) throws IOException {
+        RandomAccessFile wal = new RandomAccessFile(walFile, "r");
+        try {
+            byte[] header = new byte[(int) Math.min(WAL_HEADER_SIZE, wal.length())];
+            wal.readFully(header);
+            return header;
+        } finally {
+            wal.close();
+        }
+    }
+
+    /**
+     * Copy exactly {@code length} bytes, using the given buffer. The bytes are skipped if the
+     * output is null.
+     */
+    private static void copy(DataInputStream in, OutputStream out, long length, byte[] buffer)
+            throws IOException {
+        while (length > 0) {
+            int count = (int) Math.min(buffer.length, length);
+            in.readFully(buffer, 0, count);
+            if (out != null) {
+                out.write(buffer, 0, count);
+            }
+            length -= count;
+        }
+    }
+
+    private static void rename(File from, File to) throws IOException {
+        if (!from.renameTo(to)) {
+            throw new IOException("Cannot rename " + from + " to " + to);
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            Log.w(LOG_TAG, "Cannot delete " + file);
+        }
+    }
+}
@@ -2,10 +2,19 @@ package com.example.android.inventorymmbv2;
 
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 
 import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.StatsEntry;
 
 /**
  * Database helper for Smartphone Inventory app. Manages database creation and version management.
@@ -18,9 +27,50 @@ public class DbHelper extends SQLiteOpenHelper {
     private static final String DATABASE_NAME = "smartphones.db";
 
     /**
-     * Database version. If you change the database schema, you must increment the database version.
+     * Database version. If you change the database schema, you must increment the database version
+     * and add a matching step to {@link #upgradeTo(SQLiteDatabase, int)}.
+     *
+     * Version 2 stores the supplier as INTEGER and indexes the name, supplier and quantity columns.
+     * Version 3 adds the full-text index of the phone names.
+     * Version 4 adds the inventory summary table.
+     * Version 5 adds the table of applied stock adjustment batches.
+     * Version 6 adds the stock movement ledger and its snapshots.
+     * Version 7 adds the reorder threshold of the phones and the low stock events.
+     * Version 8 replaces the indexes of the phones with covering indexes of the phone list.
+     * Version 9 adds the suppliers table and the foreign key of the phones to it.
+     * Version 10 adds the row version of the phones.
+     */
+    private static final int DATABASE_VERSION = 10;
+
+    /**
+     * Synchronous level used by default in WAL mode. With NORMAL a commit only appends to the WAL
+     * file and the disk is synced at checkpoints, so a commit survives an app crash but may be lost
+     * on a power failure. FULL syncs on every commit.
      */
-    private static final int DATABASE_VERSION = 1;
+    static final String DEFAULT_SYNCHRONOUS_MODE = "NORMAL";
+
+    /**
+     * Number of pages the WAL file may grow to before a commit checkpoints it automatically.
+     */
+    static final int DEFAULT_WAL_AUTOCHECKPOINT_PAGES = 1000;
+
+    /** Synchronous level applied to the database connection that does the writes */
+    private final String mSynchronousMode;
+
+    /** WAL size in pages that triggers an automatic checkpoint */
+    private final int mWalAutoCheckpointPages;
+
+    /** The database file */
+    private final File mDatabaseFile;
+
+    /** Whether checkpoints are paused for a backup, see {@link #pauseCheckpoints} */
+    private boolean mCheckpointsPaused;
+
+    /**
+     * Phone stores on the writable database that no thread is using, with their statements
+     * compiled, see {@link #acquirePhoneStore}
+     */
+    private final ArrayList<SqlitePhoneStore> mFreePhoneStores = new ArrayList<>();
 
     /**
      * Constructs a new instance of {@link DbHelper}.
@@ -28,7 +78,205 @@ public class DbHelper extends SQLiteOpenHelper {
      * @param context of the app
      */
     public DbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, DATABASE_NAME, DEFAULT_SYNCHRONOUS_MODE, DEFAULT_WAL_AUTOCHECKPOINT_PAGES);
+    }
+
+    /**
+     * Constructs a new instance of {@link DbHelper} for the given database file, in write-ahead
+     * logging mode. Readers then run on their own connections from the pool that
+     * {@link SQLiteDatabase} keeps in WAL mode, and never wait for a writer to commit.
+     *
+     * @param context                of the app
+     * @param name                   of the database file
+     * @param synchronousMode        SQLite synchronous level: OFF, NORMAL or FULL
+     * @param walAutoCheckpointPages WAL size in pages after which SQLite checkpoints on its own
+     */
+    DbHelper(Context context, String name, String synchronousMode, int walAutoCheckpointPages) {
+        super(context, name, null, DATABASE_VERSION);
+        mSynchronousMode = synchronousMode;
+        mWalAutoCheckpointPages = walAutoCheckpointPages;
+        mDatabaseFile = context.getDatabasePath(name);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
+    }
+
+    /**
+     * This is called every time the database is opened, after it has been created or upgraded.
+     */
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+
+        // Before Jelly Bean WAL mode can only be switched on once the database is open
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+
+        // The supplier of a phone must exist. This is switched on here rather than before the
+        // upgrade, which rebuilds the phones table while the rows still point at no supplier.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            db.setForeignKeyConstraintsEnabled(true);
+        } else {
+            db.execSQL("PRAGMA foreign_keys = ON;");
+        }
+
+        // These settings belong to the primary connection, which is the one doing all the writes
+        db.execSQL("PRAGMA synchronous = " + mSynchronousMode + ";");
+        DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = " + mWalAutoCheckpointPages + ";", null);
+
+        // Partial indexes need SQLite 3.8.0, which ships with Lollipop. The index is created here
+        // rather than with the schema, so a device that is updated to Lollipop gets it as well.
+        // Before that, the low stock phones are found by reading the whole table.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            db.execSQL(PhoneSchema.CREATE_LOW_STOCK_INDEX);
+        }
+    }
+
+    /**
+     * Copy as much of the WAL file back into the database as possible without waiting for readers
+     * or writers, so the next reads and the next automatic checkpoint have less to do.
+     * Nothing is copied while checkpoints are paused.
+     */
+    synchronized void checkpoint() {
+        if (mCheckpointsPaused) {
+            return;
+        }
+        SQLiteDatabase db = getWritableDatabase();
+        Cursor cursor = db.rawQuery("PRAGMA wal_checkpoint(PASSIVE);", null);
+        try {
+            if (cursor.moveToFirst()) {
+                Log.d(LOG_TAG, "Checkpointed " + cursor.getInt(2) + " of " + cursor.getInt(1)
+                        + " WAL frames");
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the database file. Its WAL file is next to it, with "-wal" appended to the name.
+     */
+    File getDatabaseFile() {
+        return mDatabaseFile;
+    }
+
+    /**
+     * Returns the size of the pages of the database in bytes.
+     */
+    int getPageSize() {
+        return (int) DatabaseUtils.longForQuery(getReadableDatabase(), "PRAGMA page_size;", null);
+    }
+
+    /**
+     * Stop SQLite from copying the WAL file into the database file, after one last passive
+     * checkpoint. In WAL mode the database file then does not change at all, while writers carry
+     * on by appending to the WAL file. Every call must be followed by {@link #resumeCheckpoints}.
+     *
+     * @throws IllegalStateException if the database is not in WAL mode, in which every commit
+     *                               writes to the database file
+     */
+    synchronized void pauseCheckpoints() {
+        SQLiteDatabase db = getWritableDatabase();
+        String journalMode = DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode;", null);
+        if (!"wal".equalsIgnoreCase(journalMode)) {
+            throw new IllegalStateException("The database is in " + journalMode + " mode, not WAL");
+        }
+        checkpoint();
+        // The automatic checkpoints run on the primary connection, which does all the writes
+        DatabaseUtils.longForQuery(db, "PRAGMA wal_autocheckpoint = 0;", null);
+        mCheckpointsPaused = true;
+    }
+
+    /**
+     * Let SQLite checkpoint the WAL file again after {@link #pauseCheckpoints}.
+     */
+    synchronized void resumeCheckpoints() {
+        mCheckpointsPaused = false;
+        DatabaseUtils.longForQuery(getWritableDatabase(),
+                "PRAGMA wal_autocheckpoint = " + mWalAutoCheckpointPages + ";", null);
+    }
+
+    /**
+     * Returns a phone store on the writable database, which only the calling thread may use
+     * until it gives it back with {@link #releasePhoneStore}. The stores are kept with their
+     * compiled statements between uses, and closed with the database.
+     */
+    SqlitePhoneStore acquirePhoneStore() {
+        SQLiteDatabase database = getWritableDatabase();
+        synchronized (mFreePhoneStores) {
+            while (!mFreePhoneStores.isEmpty()) {
+                SqlitePhoneStore store = mFreePhoneStores.remove(mFreePhoneStores.size() - 1);
+                if (store.isFor(database)) {
+                    return store;
+                }
+                // Given back while the database it was opened on was being closed
+                store.close();
+            }
+        }
+        return new SqlitePhoneStore(database);
+    }
+
+    /**
+     * Give back a phone store of {@link #acquirePhoneStore}, for the next thread to use. A store
+     * of a database that has been closed meanwhile is closed instead.
+     */
+    void releasePhoneStore(SqlitePhoneStore store) {
+        synchronized (mFreePhoneStores) {
+            if (store.isOpen()) {
+                mFreePhoneStores.add(store);
+                return;
+            }
+        }
+        store.close();
+    }
+
+    /**
+     * Close the phone stores that are not in use, and then the database. A store that is in
+     * use is closed when it is given back.
+     */
+    @Override
+    public synchronized void close() {
+        synchronized (mFreePhoneStores) {
+            for (SqlitePhoneStore store : mFreePhoneStores) {
+                store.close();
+            }
+            mFreePhoneStores.clear();
+        }
+        super.close();
+    }
+
+    /**
+     * Close the database and replace its file with the given one, which must be a complete
+     * database without a WAL file of its own. The file is renamed over the database, so after a
+     * crash there is either the old database or the new one. The next query opens the new one,
+     * upgrading it if it is of an older version.
+     *
+     * @throws IOException if the database is still in use by another thread after being closed,
+     *                     or the file cannot be moved
+     */
+    synchronized void replaceDatabase(File file) throws IOException {
+        close();
+
+        // Closing the last connection checkpoints the WAL file and deletes it. If it is still
+        // there, a query or a transaction is holding the old database open.
+        File walFile = new File(mDatabaseFile.getPath() + "-wal");
+        if (walFile.length() > 0) {
+            throw new IOException("The database is still in use");
+        }
+        // A WAL or shared memory file left with the new database would be read as its own
+        for (String suffix : new String[]{"-wal", "-shm", "-journal"}) {
+            File leftover = new File(mDatabaseFile.getPath() + suffix);
+            if (leftover.exists() && !leftover.delete()) {
+                throw new IOException("Cannot delete " + leftover);
+            }
+        }
+        if (!file.renameTo(mDatabaseFile)) {
+            throw new IOException("Cannot move " + file + " to " + mDatabaseFile);
+        }
     }
 
     /**
@@ -36,24 +284,272 @@ public class DbHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase db) {
-        // Create a String that contains the SQL statement to create the pets table
-        String SQL_CREATE_PHONES_TABLE =  "CREATE TABLE " + PhoneEntry.TABLE_NAME + " ("
-                + PhoneEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                + PhoneEntry.COLUMN_PHONE_NAME + " TEXT NOT NULL, "
-                + PhoneEntry.COLUMN_PRICE + " INTEGER NOT NULL, "
-                + PhoneEntry.COLUMN_SUPPLIER + " TEXT NOT NULL DEFAULT 0, "
-                + PhoneEntry.COLUMN_SUPPLIER_NUMBER + " TEXT NOT NULL, "
-                + PhoneEntry.COLUMN_QUANTITY + " INTEGER NOT NULL);";
-
-        // Execute the SQL statement
-        db.execSQL(SQL_CREATE_PHONES_TABLE);
+        // Create the suppliers, the phones table and its indexes with the current schema
+        execAll(db, PhoneSchema.CREATE_SUPPLIERS);
+        db.execSQL(PhoneSchema.CREATE_PHONES_TABLE);
+        db.execSQL(PhoneSchema.CREATE_PHONES_VERSION_TRIGGER);
+        execAll(db, PhoneSchema.CREATE_PHONES_INDEXES);
+        execAll(db, PhoneSchema.CREATE_PHONES_FTS);
+        execAll(db, PhoneSchema.CREATE_INVENTORY_SUMMARY);
+        db.execSQL(PhoneSchema.CREATE_STOCK_BATCHES_TABLE);
+        execAll(db, PhoneSchema.CREATE_STOCK_LEDGER);
+        execAll(db, PhoneSchema.CREATE_LOW_STOCK_EVENTS);
     }
 
     /**
-     * This is called when the database needs to be upgraded.
+     * This is called when the database needs to be upgraded. Every version between the old and
+     * the new one is applied in turn, inside the transaction opened by {@link SQLiteOpenHelper},
+     * so a failed upgrade leaves the database at its old version.
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // The database is still at version 1, so there's nothing to do be done here.
+        for (int version = oldVersion + 1; version <= newVersion; version++) {
+            Log.i(LOG_TAG, "Upgrading " + DATABASE_NAME + " to version " + version);
+            upgradeTo(db, version);
+        }
+    }
+
+    /**
+     * Migrate the database from the previous version to the given one.
+     */
+    private void upgradeTo(SQLiteDatabase db, int version) {
+        switch (version) {
+            case 2:
+                upgradeToVersion2(db);
+                break;
+            case 3:
+                upgradeToVersion3(db);
+                break;
+            case 4:
+                upgradeToVersion4(db);
+                break;
+            case 5:
+                upgradeToVersion5(db);
+                break;
+            case 6:
+                upgradeToVersion6(db);
+                break;
+            case 7:
+                upgradeToVersion7(db);
+                break;
+            case 8:
+                upgradeToVersion8(db);
+                break;
+            case 9:
+                upgradeToVersion9(db);
+                break;
+            case 10:
+                upgradeToVersion10(db);
+                break;
+            default:
+                throw new IllegalStateException("No upgrade step to database version " + version);
+        }
+    }
+
+    /**
+     * Version 2 changes the supplier column from TEXT to INTEGER affinity and adds the indexes.
+     * SQLite cannot change the type of a column, so the table is rebuilt and its rows copied over,
+     * keeping the IDs and the AUTOINCREMENT counter.
+     */
+    private void upgradeToVersion2(SQLiteDatabase db) {
+        String oldTable = PhoneEntry.TABLE_NAME + "_v1";
+        String columns = PhoneEntry._ID + ", "
+                + PhoneEntry.COLUMN_PHONE_NAME + ", "
+                + PhoneEntry.COLUMN_PRICE + ", "
+                + PhoneEntry.COLUMN_SUPPLIER + ", "
+                + PhoneEntry.COLUMN_SUPPLIER_NUMBER + ", "
+                + PhoneEntry.COLUMN_QUANTITY;
+
+        db.execSQL("ALTER TABLE " + PhoneEntry.TABLE_NAME + " RENAME TO " + oldTable + ";");
+        db.execSQL(PhoneSchema.CREATE_PHONES_TABLE);
+        db.execSQL("INSERT INTO " + PhoneEntry.TABLE_NAME + " (" + columns + ") SELECT "
+                + PhoneEntry._ID + ", "
+                + PhoneEntry.COLUMN_PHONE_NAME + ", "
+                + PhoneEntry.COLUMN_PRICE + ", "
+                + "CAST(" + PhoneEntry.COLUMN_SUPPLIER + " AS INTEGER), "
+                + PhoneEntry.COLUMN_SUPPLIER_NUMBER + ", "
+                + PhoneEntry.COLUMN_QUANTITY
+                + " FROM " + oldTable + ";");
+
+        // Carry the AUTOINCREMENT counter over, so IDs of deleted phones are never handed out again
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + PhoneEntry.TABLE_NAME + "';");
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + PhoneEntry.TABLE_NAME
+                + "', seq FROM sqlite_sequence WHERE name = '" + oldTable + "';");
+
+        db.execSQL("DROP TABLE " + oldTable + ";");
+        execAll(db, PhoneSchema.CREATE_PHONES_INDEXES);
+    }
+
+    /**
+     * Version 3 adds the full-text index of the phone names and fills it with the existing phones.
+     */
+    private void upgradeToVersion3(SQLiteDatabase db) {
+        execAll(db, PhoneSchema.CREATE_PHONES_FTS);
+        db.execSQL("INSERT INTO " + PhoneSchema.TABLE_PHONES_FTS + " (docid, " + PhoneEntry.COLUMN_PHONE_NAME + ")"
+                + " SELECT " + PhoneEntry._ID + ", " + PhoneEntry.COLUMN_PHONE_NAME
+                + " FROM " + PhoneEntry.TABLE_NAME + ";");
+    }
+
+    /**
+     * Version 4 adds the inventory summary table and fills it with the totals of the existing phones.
+     */
+    private void upgradeToVersion4(SQLiteDatabase db) {
+        execAll(db, PhoneSchema.CREATE_INVENTORY_SUMMARY);
+        db.execSQL("INSERT INTO " + StatsEntry.TABLE_NAME + " ("
+                + StatsEntry.COLUMN_SUPPLIER + ", "
+                + StatsEntry.COLUMN_PHONE_COUNT + ", "
+                + StatsEntry.COLUMN_UNITS + ", "
+                + StatsEntry.COLUMN_STOCK_VALUE + ") SELECT "
+                + PhoneEntry.COLUMN_SUPPLIER + ", "
+                + "COUNT(*), "
+                + "SUM(" + PhoneEntry.COLUMN_QUANTITY + "), "
+                + "SUM(" + PhoneEntry.COLUMN_PRICE + " * " + PhoneEntry.COLUMN_QUANTITY + ")"
+                + " FROM " + PhoneEntry.TABLE_NAME
+                + " GROUP BY " + PhoneEntry.COLUMN_SUPPLIER + ";");
+    }
+
+    /**
+     * Version 5 adds the table of applied stock adjustment batches. No batch was applied before,
+     * so it starts empty.
+     */
+    private void upgradeToVersion5(SQLiteDatabase db) {
+        db.execSQL(PhoneSchema.CREATE_STOCK_BATCHES_TABLE);
+    }
+
+    /**
+     * Version 6 adds the stock movement ledger, starting with the current stock of each phone
+     * as its initial movement.
+     */
+    private void upgradeToVersion6(SQLiteDatabase db) {
+        execAll(db, PhoneSchema.CREATE_STOCK_LEDGER);
+        db.execSQL("INSERT INTO " + PhoneSchema.TABLE_STOCK_MOVEMENTS + " ("
+                + PhoneSchema.COLUMN_PHONE_ID + ", "
+                + PhoneSchema.COLUMN_DELTA + ", "
+                + PhoneSchema.COLUMN_REASON + ") SELECT "
+                + PhoneEntry._ID + ", "
+                + PhoneEntry.COLUMN_QUANTITY + ", "
+                + PhoneSchema.REASON_INITIAL
+                + " FROM " + PhoneEntry.TABLE_NAME + ";");
+    }
+
+    /**
+     * Version 7 adds the reorder threshold of the phones, 0 for the existing ones, and the low
+     * stock events. The low stock index is created in {@link #onOpen}.
+     */
+    private void upgradeToVersion7(SQLiteDatabase db) {
+        // Version 2 rebuilds the phones table with the current schema, so coming from version 1
+        // the column is already there
+        if (!hasColumn(db, PhoneEntry.TABLE_NAME, PhoneEntry.COLUMN_REORDER_THRESHOLD)) {
+            db.execSQL("ALTER TABLE " + PhoneEntry.TABLE_NAME + " ADD COLUMN "
+                    + PhoneEntry.COLUMN_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0;");
+        }
+        execAll(db, PhoneSchema.CREATE_LOW_STOCK_EVENTS);
+    }
+
+    /**
+     * Version 8 replaces the single column indexes of the phones with the covering indexes of
+     * the phone list, and adds the one of the price.
+     */
+    private void upgradeToVersion8(SQLiteDatabase db) {
+        for (String index : PhoneSchema.PHONES_INDEX_NAMES) {
+            db.execSQL("DROP INDEX IF EXISTS " + index + ";");
+        }
+        execAll(db, PhoneSchema.CREATE_PHONES_INDEXES);
+    }
+
+    /**
+     * Version 9 moves the suppliers into their own table, starting with the built-in ones, and
+     * makes the supplier of the phones a foreign key to it. A phone with a supplier that is not
+     * one of them gets the unknown supplier. SQLite cannot add a foreign key to a table, so the
+     * phones table is rebuilt as in version 2.
+     */
+    private void upgradeToVersion9(SQLiteDatabase db) {
+        execAll(db, PhoneSchema.CREATE_SUPPLIERS);
+        // The summary triggers move the totals of these phones to the unknown supplier
+        db.execSQL("UPDATE " + PhoneEntry.TABLE_NAME + " SET " + PhoneEntry.COLUMN_SUPPLIER + " = "
+                + PhoneEntry.SUPPLIER_UNKNOWN + " WHERE " + PhoneEntry.COLUMN_SUPPLIER + " NOT IN (SELECT "
+                + PhoneSchema.COLUMN_ID + " FROM " + PhoneSchema.TABLE_SUPPLIERS + ");");
+
+        String oldTable = PhoneEntry.TABLE_NAME + "_v8";
+        String columns = PhoneEntry._ID + ", "
+                + PhoneEntry.COLUMN_PHONE_NAME + ", "
+                + PhoneEntry.COLUMN_PRICE + ", "
+                + PhoneEntry.COLUMN_SUPPLIER + ", "
+                + PhoneEntry.COLUMN_SUPPLIER_NUMBER + ", "
+                + PhoneEntry.COLUMN_QUANTITY + ", "
+                + PhoneEntry.COLUMN_REORDER_THRESHOLD;
+
+        db.execSQL("ALTER TABLE " + PhoneEntry.TABLE_NAME + " RENAME TO " + oldTable + ";");
+        db.execSQL(PhoneSchema.CREATE_PHONES_TABLE);
+        db.execSQL("INSERT INTO " + PhoneEntry.TABLE_NAME + " (" + columns + ") SELECT "
+                + columns + " FROM " + oldTable + ";");
+
+        db.execSQL("DELETE FROM sqlite_sequence WHERE name = '" + PhoneEntry.TABLE_NAME + "';");
+        db.execSQL("INSERT INTO sqlite_sequence (name, seq) SELECT '" + PhoneEntry.TABLE_NAME
+                + "', seq FROM sqlite_sequence WHERE name = '" + oldTable + "';");
+
+        // The triggers and indexes of the phones went with the old table, and newer SQLite
+        // versions point the triggers of the other tables at it as well, so all are created again.
+        // The rows are already copied, so the new triggers do not count them a second time.
+        db.execSQL("DROP TABLE " + oldTable + ";");
+        execAll(db, PhoneSchema.CREATE_PHONES_INDEXES);
+        recreateTriggers(db, PhoneSchema.CREATE_PHONES_FTS);
+        recreateTriggers(db, PhoneSchema.CREATE_INVENTORY_SUMMARY);
+        recreateTriggers(db, PhoneSchema.CREATE_STOCK_LEDGER);
+        recreateTriggers(db, PhoneSchema.CREATE_LOW_STOCK_EVENTS);
+    }
+
+    /**
+     * Version 10 adds the row version of the phones, 1 for the existing ones, and the trigger
+     * that moves it on with every change.
+     */
+    private void upgradeToVersion10(SQLiteDatabase db) {
+        // The phones table rebuilt by version 2 or 9 already has the column
+        if (!hasColumn(db, PhoneEntry.TABLE_NAME, PhoneEntry.COLUMN_VERSION)) {
+            db.execSQL("ALTER TABLE " + PhoneEntry.TABLE_NAME + " ADD COLUMN "
+                    + PhoneEntry.COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1;");
+        }
+        db.execSQL(PhoneSchema.CREATE_PHONES_VERSION_TRIGGER);
+    }
+
+    /**
+     * Drop and create again the triggers among the given SQL statements, leaving the others.
+     */
+    private static void recreateTriggers(SQLiteDatabase db, String[] statements) {
+        String prefix = "CREATE TRIGGER ";
+        for (String sql : statements) {
+            if (sql.startsWith(prefix)) {
+                String name = sql.substring(prefix.length(), sql.indexOf(' ', prefix.length()));
+                db.execSQL("DROP TRIGGER IF EXISTS " + name + ";");
+                db.execSQL(sql);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the given table has a column with the given name.
+     */
+    private static boolean hasColumn(SQLiteDatabase db, String table, String column) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ");", null);
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                if (column.equals(cursor.getString(nameIndex))) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Execute each of the given SQL statements in order.
+     */
+    private static void execAll(SQLiteDatabase db, String[] statements) {
+        for (String sql : statements) {
+            db.execSQL(sql);
+        }
     }
 }
@@ -3,6 +3,7 @@ package com.example.android.inventorymmbv2;
 import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
 import android.content.DialogInterface;
 import android.content.Intent;
@@ -18,13 +19,14 @@ import android.view.MenuItem;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.EditText;
+import android.widget.SimpleCursorAdapter;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.SupplierEntry;
 
 /**
  * Allows user to create a new phone or edit an existing one.
@@ -37,6 +39,11 @@ public class EditorActivity extends AppCompatActivity implements
      */
     private static final int EXISTING_PHONE_LOADER = 0;
 
+    /**
+     * Identifier for the loader of the suppliers shown in the spinner
+     */
+    private static final int SUPPLIER_LOADER = 1;
+
     /** Content URI for the existing phone (null if it's a new phone) */
     private Uri mCurrentPhoneUri;
 
@@ -54,16 +61,48 @@ public class EditorActivity extends AppCompatActivity implements
 
     /** EditText field to enter the Supplier */
     private Spinner mSupplierSpinner;
+
+    /** Adapter of the suppliers in the spinner, with the supplier ID as the item ID */
+    private SimpleCursorAdapter mSupplierAdapter;
     private int stock;
 
     /**
-     * The possible valid values are in the PhoneContract.java file.
+     * ID of the selected supplier, one of the rows of {@link SupplierEntry#CONTENT_URI}.
      */
     private int mSupplier = PhoneEntry.SUPPLIER_UNKNOWN;
 
     /** Boolean flag that keeps track of whether the phone has been edited (true) or not (false) */
     private boolean mPhoneHasChanged = false;
 
+    /**
+     * Save or deletion of the phone that is running, so the editor is about to close (null if
+     * there is none). It is kept across configuration changes, see {@link PendingWrite}.
+     */
+    private PendingWrite<?> mPendingWrite;
+
+    /**
+     * Attributes of the existing phone as they were last loaded, to tell which fields the user
+     * has changed since (null if the phone has not been loaded yet)
+     */
+    private ContentValues mLoadedPhone;
+
+    /**
+     * {@link PhoneEntry#COLUMN_VERSION} of the loaded phone, which the update of the phone expects
+     * it to still be at (-1 if the phone has not been loaded yet)
+     */
+    private long mLoadedVersion = -1;
+
+    /**
+     * Whether the phone is being loaded again after a save found it changed by somebody else,
+     * so the other changes are merged into the fields
+     */
+    private boolean mMergePending = false;
+
+    /** Keys of the state of the loaded phone, kept across configuration changes */
+    private static final String STATE_LOADED_PHONE = "loaded_phone";
+    private static final String STATE_LOADED_VERSION = "loaded_version";
+    private static final String STATE_MERGE_PENDING = "merge_pending";
+
     /**
      * OnTouchListener that listens for any user touches on a View, implying that they are modifying
      * the view, and we change the mPhoneHasChanged boolean to true.
@@ -86,6 +125,14 @@ public class EditorActivity extends AppCompatActivity implements
         Intent intent = getIntent();
         mCurrentPhoneUri = intent.getData();
 
+        // Restore the phone as it was loaded before a configuration change, before the loader
+        // delivers it again
+        if (savedInstanceState != null) {
+            mLoadedPhone = savedInstanceState.getParcelable(STATE_LOADED_PHONE);
+            mLoadedVersion = savedInstanceState.getLong(STATE_LOADED_VERSION, -1);
+            mMergePending = savedInstanceState.getBoolean(STATE_MERGE_PENDING);
+        }
+
         // If the intent DOES NOT contain a phone content URI, then we know that we are
         // creating a new phone.
         if (mCurrentPhoneUri == null) {
@@ -121,6 +168,51 @@ public class EditorActivity extends AppCompatActivity implements
         mSupplierSpinner.setOnTouchListener(mTouchListener);
 
         setupSpinner();
+        getLoaderManager().initLoader(SUPPLIER_LOADER, null, this);
+
+        // A write started before a configuration change reports to this editor from now on,
+        // and right away if it is already done
+        mPendingWrite = (PendingWrite<?>) getLastCustomNonConfigurationInstance();
+        if (mPendingWrite != null) {
+            mPendingWrite.attach(this);
+        }
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mPendingWrite;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // The write must not finish a destroyed editor. After a configuration change it is
+        // attached to the new one, otherwise its result only shows as a toast.
+        if (mPendingWrite != null) {
+            mPendingWrite.detach();
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        // The fields keep their text by themselves, the version they were loaded at has to be
+        // kept with them, or a save after a rotation would write over changes the user never saw
+        outState.putParcelable(STATE_LOADED_PHONE, mLoadedPhone);
+        outState.putLong(STATE_LOADED_VERSION, mLoadedVersion);
+        outState.putBoolean(STATE_MERGE_PENDING, mMergePending);
+    }
+
+    /**
+     * Show {@link #mSupplier} as the selected supplier, once the suppliers have been loaded.
+     */
+    private void selectSupplier() {
+        for (int position = 0; position < mSupplierAdapter.getCount(); position++) {
+            if (mSupplierAdapter.getItemId(position) == mSupplier) {
+                mSupplierSpinner.setSelection(position);
+                return;
+            }
+        }
     }
 
 
@@ -172,38 +264,26 @@ public class EditorActivity extends AppCompatActivity implements
     }
 
     /**
-     * Setup the dropdown spinner that allows the user to select the supplier.
+     * Setup the dropdown spinner that allows the user to select the supplier. The suppliers are
+     * read from the database by {@link #SUPPLIER_LOADER}.
      */
     private void setupSpinner() {
-        // Create adapter for spinner. The list options are from the String array it will use
+        // Create adapter for spinner. The list options are the names of the suppliers, and
         // the spinner will use the default layout
-        ArrayAdapter supplierSpinnerAdapter = ArrayAdapter.createFromResource(this,
-                R.array.array_supplier_options, android.R.layout.simple_spinner_item);
+        mSupplierAdapter = new SimpleCursorAdapter(this, android.R.layout.simple_spinner_item, null,
+                new String[]{SupplierEntry.COLUMN_SUPPLIER_NAME}, new int[]{android.R.id.text1}, 0);
 
         // Specify dropdown layout style - simple list view with 1 item per line
-        supplierSpinnerAdapter.setDropDownViewResource(android.R.layout.simple_dropdown_item_1line);
+        mSupplierAdapter.setDropDownViewResource(android.R.layout.simple_dropdown_item_1line);
 
         // Apply the adapter to the spinner
-        mSupplierSpinner.setAdapter(supplierSpinnerAdapter);
+        mSupplierSpinner.setAdapter(mSupplierAdapter);
 
-        // Set the integer mSelected to the constant values
+        // The item ID of a supplier is its ID in the database
         mSupplierSpinner.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
             @Override
             public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
-                String selection = (String) parent.getItemAtPosition(position);
-                if (!TextUtils.isEmpty(selection)) {
-                    if (selection.equals(getString(R.string.supplier_apple))) {
-                        mSupplier = PhoneEntry.SUPPLIER_APPLE;
-                    } else if (selection.equals(getString(R.string.supplier_sony))) {
-                        mSupplier = PhoneEntry.SUPPLIER_SONY;
-                    } else if (selection.equals(getString(R.string.supplier_samsung))) {
-                        mSupplier = PhoneEntry.SUPPLIER_SAMSUNG;
-                    } else if (selection.equals(getString(R.string.supplier_huawei))) {
-                        mSupplier = PhoneEntry.SUPPLIER_HUAWEI;
-                    } else {
-                        mSupplier = PhoneEntry.SUPPLIER_UNKNOWN;
-                    }
-                }
+                mSupplier = (int) id;
             }
 
             // Because AdapterView is an abstract class, onNothingSelected must be defined
@@ -216,7 +296,8 @@ public class EditorActivity extends AppCompatActivity implements
 
 
     /**
-     * Get user input from editor and save phone into database.
+     * Get user input from editor and save phone into database. The phone is written in the
+     * background, and the editor is closed once it has been saved.
      */
     private void savePhone() {
         // Read from input fields
@@ -233,6 +314,7 @@ public class EditorActivity extends AppCompatActivity implements
                 TextUtils.isEmpty(numberString) && TextUtils.isEmpty(quantityString) && mSupplier == PhoneEntry.SUPPLIER_UNKNOWN) {
             // Since no fields were modified, we can return early without creating a new phone.
             // No need to create ContentValues and no need to do any ContentProvider operations.
+            finish();
             return;
         }
 
@@ -245,42 +327,66 @@ public class EditorActivity extends AppCompatActivity implements
         values.put(PhoneEntry.COLUMN_SUPPLIER_NUMBER, numberString);
         values.put(PhoneEntry.COLUMN_QUANTITY, quantityString);
 
+        // An existing phone can only be saved at the version it was loaded at
+        if (mCurrentPhoneUri != null && mLoadedPhone == null) {
+            return;
+        }
+
         // Determine if this is a new or existing phone by checking if mCurrentPhoneUri is null or not
         if (mCurrentPhoneUri == null) {
             // This is a NEW phone, so insert a new phone into the provider,
-            // returning the content URI for the new phone.
-            Uri newUri = getContentResolver().insert(PhoneEntry.CONTENT_URI, values);
-
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (newUri == null) {
-                // If the new content URI is null, then there was an error with insertion.
-                Toast.makeText(this, getString(R.string.editor_insert_phone_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the insertion was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_insert_phone_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // receiving the content URI for the new phone once it has been written.
+            PendingWrite<Uri> write = PendingWrite.newInsert(this);
+            startWrite(write);
+            PhoneWriter.getInstance(this).insert(PhoneEntry.CONTENT_URI, values, write);
         } else {
-            // Otherwise this is an EXISTING phone, so update the phone with content URI: mCurrentPetUri
-            // and pass in the new ContentValues. Pass in null for the selection and selection args
-            // because mCurrentPhoneUri will already identify the correct row in the database that
-            // we want to modify.
-            int rowsAffected = getContentResolver().update(mCurrentPhoneUri, values, null, null);
-
-            // Show a toast message depending on whether or not the update was successful.
-            if (rowsAffected == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(this, getString(R.string.editor_update_phone_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_update_phone_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+            // Otherwise this is an EXISTING phone, so update the phone with content URI: mCurrentPhoneUri
+            // and pass in the new ContentValues. The update only applies if nobody else changed
+            // the phone since it was loaded, so their changes are not silently overwritten, and
+            // the provider tells such a conflict apart from a failed update.
+            Bundle extras = new Bundle();
+            extras.putParcelable(PhoneEntry.EXTRA_VALUES, values);
+            extras.putLong(PhoneEntry.COLUMN_VERSION, mLoadedVersion);
+            PendingWrite<Bundle> write = PendingWrite.newUpdate(this);
+            startWrite(write);
+            PhoneWriter.getInstance(this).call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_UPDATE_PHONE,
+                    mCurrentPhoneUri.toString(), extras, write);
+        }
+    }
+
+    /**
+     * Keep the given write as the one that is running, so more taps on "Save" and "Delete" are
+     * ignored until it is done.
+     */
+    private void startWrite(PendingWrite<?> write) {
+        mPendingWrite = write;
+        write.attach(this);
+    }
+
+    /**
+     * Called on the editor that is showing once its write is done. A phone that was saved or
+     * deleted closes the editor, a phone that could not be saved stays in it, so the user can
+     * correct it.
+     */
+    private void onWriteComplete(PendingWrite<?> write) {
+        mPendingWrite = null;
+        if (write.mOutcome == PendingWrite.OUTCOME_CONFLICT) {
+            onPhoneConflict();
+        } else if (write.mOutcome == PendingWrite.OUTCOME_DONE || write.mFinishOnFailure) {
+            finish();
         }
     }
 
+    /**
+     * The phone was changed by somebody else since it was loaded, so nothing was saved. Load it
+     * again to merge the other changes into the fields, and let the user check the result and
+     * save again.
+     */
+    private void onPhoneConflict() {
+        mMergePending = true;
+        getLoaderManager().restartLoader(EXISTING_PHONE_LOADER, null, this);
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu options from the res/menu/menu_editor.xml file.
@@ -310,15 +416,17 @@ public class EditorActivity extends AppCompatActivity implements
         switch (item.getItemId()) {
             // Respond to a click on the "Save" menu option
             case R.id.action_save:
-                // Save phone to database
-                savePhone();
-                // Exit activity
-                finish();
+                // Save phone to database, the activity exits once it has been saved
+                if (mPendingWrite == null) {
+                    savePhone();
+                }
                 return true;
             // Respond to a click on the "Delete" menu option
             case R.id.action_delete:
                 // Pop up confirmation dialog for deletion
-                showDeleteConfirmationDialog();
+                if (mPendingWrite == null) {
+                    showDeleteConfirmationDialog();
+                }
                 return true;
             // Respond to a click on the "Up" arrow button in the app bar
             case android.R.id.home:
@@ -376,6 +484,12 @@ public class EditorActivity extends AppCompatActivity implements
 
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
+        if (i == SUPPLIER_LOADER) {
+            return new CursorLoader(this, SupplierEntry.CONTENT_URI,
+                    new String[]{SupplierEntry._ID, SupplierEntry.COLUMN_SUPPLIER_NAME},
+                    null, null, null);
+        }
+
         // Since the editor shows all phone attributes, define a projection that contains
         // all columns from the phones table
         String[] projection = {
@@ -384,7 +498,8 @@ public class EditorActivity extends AppCompatActivity implements
                 PhoneEntry.COLUMN_PRICE,
                 PhoneEntry.COLUMN_SUPPLIER,
                 PhoneEntry.COLUMN_SUPPLIER_NUMBER,
-                PhoneEntry.COLUMN_QUANTITY };
+                PhoneEntry.COLUMN_QUANTITY,
+                PhoneEntry.COLUMN_VERSION };
 
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
@@ -397,8 +512,20 @@ public class EditorActivity extends AppCompatActivity implements
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor cursor) {
+        if (loader.getId() == SUPPLIER_LOADER) {
+            mSupplierAdapter.swapCursor(cursor);
+            selectSupplier();
+            return;
+        }
+
         // Bail early if the cursor is null or there is less than 1 row in the cursor
         if (cursor == null || cursor.getCount() < 1) {
+            if (cursor != null && mLoadedPhone != null) {
+                // The phone was there before, so somebody else deleted it
+                Toast.makeText(getApplicationContext(), R.string.editor_phone_deleted_meanwhile,
+                        Toast.LENGTH_SHORT).show();
+                finish();
+            }
             return;
         }
 
@@ -411,6 +538,7 @@ public class EditorActivity extends AppCompatActivity implements
             int supplierColumnIndex = cursor.getColumnIndex(PhoneEntry.COLUMN_SUPPLIER);
             int numberColumnIndex = cursor.getColumnIndex(PhoneEntry.COLUMN_SUPPLIER_NUMBER);
             int quantityColumnIndex = cursor.getColumnIndex(PhoneEntry.COLUMN_QUANTITY);
+            int versionColumnIndex = cursor.getColumnIndex(PhoneEntry.COLUMN_VERSION);
 
             // Extract out the value from the Cursor for the given column index
             String name = cursor.getString(nameColumnIndex);
@@ -419,43 +547,113 @@ public class EditorActivity extends AppCompatActivity implements
             String number = cursor.getString(numberColumnIndex);
             int quantity = cursor.getInt(quantityColumnIndex);
 
-            // Update the views on the screen with the values from the database
-            mNameEditText.setText(name);
-            mPriceEditText.setText(Integer.toString(price));
-            mNumberEditText.setText(number);
-            mQuantityEditText.setText(Integer.toString(quantity));
-
-            // Supplier is a dropdown spinner, so map the constant value from the database
-            // into one of the dropdown options (0 is Unknown, 1 is Apple, 2 is Sony etc.).
-            // Then call setSelection() so that option is displayed on screen as the current selection.
-            switch (supplier) {
-                case PhoneEntry.SUPPLIER_APPLE:
-                    mSupplierSpinner.setSelection(1);
-                    break;
-                case PhoneEntry.SUPPLIER_SONY:
-                    mSupplierSpinner.setSelection(2);
-                    break;
-                case PhoneEntry.SUPPLIER_SAMSUNG:
-                    mSupplierSpinner.setSelection(3);
-                    break;
-                case PhoneEntry.SUPPLIER_HUAWEI:
-                    mSupplierSpinner.setSelection(4);
-                    break;
-                default:
-                    mSupplierSpinner.setSelection(0);
-                    break;
+            // The loader runs again whenever somebody else changes the phone. While the user has
+            // changes of their own, the fields and the version stay as they are: the save then
+            // finds the phone changed, and the merge below shows the user what was.
+            boolean merge = mMergePending;
+            mMergePending = false;
+            if (mLoadedPhone != null && !merge && hasUserChanges()) {
+                return;
             }
+
+            // Update the views on the screen with the values from the database. When the phone
+            // is loaded again after a conflict, the fields the user has changed keep the user's
+            // value, and the others take the new one. A field that both changed is marked.
+            ContentValues loaded = mLoadedPhone == null ? new ContentValues() : mLoadedPhone;
+            int conflicts = 0;
+            if (mergeField(mNameEditText, loaded.getAsString(PhoneEntry.COLUMN_PHONE_NAME), name)) {
+                conflicts++;
+            }
+            if (mergeField(mPriceEditText, loaded.getAsString(PhoneEntry.COLUMN_PRICE), Integer.toString(price))) {
+                conflicts++;
+            }
+            if (mergeField(mNumberEditText, loaded.getAsString(PhoneEntry.COLUMN_SUPPLIER_NUMBER), number)) {
+                conflicts++;
+            }
+            if (mergeField(mQuantityEditText, loaded.getAsString(PhoneEntry.COLUMN_QUANTITY), Integer.toString(quantity))) {
+                conflicts++;
+            }
+
+            // Supplier is a dropdown spinner, so find the option with the ID from the database.
+            // If the suppliers are not loaded yet, it is selected when they are.
+            Integer loadedSupplier = loaded.getAsInteger(PhoneEntry.COLUMN_SUPPLIER);
+            if (loadedSupplier == null || loadedSupplier == mSupplier) {
+                mSupplier = supplier;
+                selectSupplier();
+            } else if (supplier != loadedSupplier && supplier != mSupplier) {
+                View selected = mSupplierSpinner.getSelectedView();
+                if (selected instanceof TextView) {
+                    ((TextView) selected).setError(getString(R.string.editor_supplier_changed_meanwhile));
+                }
+                conflicts++;
+            }
+
+            if (merge) {
+                Toast.makeText(this, conflicts == 0 ? R.string.editor_update_phone_conflict
+                        : R.string.editor_update_phone_conflict_fields, Toast.LENGTH_LONG).show();
+            }
+
+            mLoadedPhone = new ContentValues();
+            mLoadedPhone.put(PhoneEntry.COLUMN_PHONE_NAME, name);
+            mLoadedPhone.put(PhoneEntry.COLUMN_PRICE, price);
+            mLoadedPhone.put(PhoneEntry.COLUMN_SUPPLIER, supplier);
+            mLoadedPhone.put(PhoneEntry.COLUMN_SUPPLIER_NUMBER, number);
+            mLoadedPhone.put(PhoneEntry.COLUMN_QUANTITY, quantity);
+            mLoadedVersion = cursor.getLong(versionColumnIndex);
+        }
+    }
+
+    /**
+     * Returns whether the user has changed any field from the value it was loaded with.
+     */
+    private boolean hasUserChanges() {
+        return !mLoadedPhone.getAsString(PhoneEntry.COLUMN_PHONE_NAME).equals(getText(mNameEditText))
+                || !mLoadedPhone.getAsString(PhoneEntry.COLUMN_PRICE).equals(getText(mPriceEditText))
+                || !mLoadedPhone.getAsString(PhoneEntry.COLUMN_SUPPLIER_NUMBER).equals(getText(mNumberEditText))
+                || !mLoadedPhone.getAsString(PhoneEntry.COLUMN_QUANTITY).equals(getText(mQuantityEditText))
+                || mLoadedPhone.getAsInteger(PhoneEntry.COLUMN_SUPPLIER) != mSupplier;
+    }
+
+    /**
+     * Show the given value of the phone in the field, unless the user has changed the field from
+     * the value it was loaded with. A field that has not been loaded yet always shows it. If the
+     * value changed as well, the field keeps the user's value and is marked with the new one.
+     *
+     * @return whether both the user and somebody else changed the field
+     */
+    private boolean mergeField(EditText field, String loadedValue, String value) {
+        String text = getText(field);
+        if (loadedValue == null || loadedValue.equals(text)) {
+            field.setText(value);
+            return false;
         }
+        if (loadedValue.equals(value) || value.equals(text)) {
+            return false;
+        }
+        field.setError(getString(R.string.editor_field_changed_meanwhile, value));
+        return true;
+    }
+
+    private static String getText(EditText field) {
+        return field.getText().toString().trim();
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
+        if (loader.getId() == SUPPLIER_LOADER) {
+            mSupplierAdapter.swapCursor(null);
+            return;
+        }
+
         // If the loader is invalidated, clear out all the data from the input fields.
         mNameEditText.setText("");
         mPriceEditText.setText("");
         mNumberEditText.setText("");
         mQuantityEditText.setText("");
-        mSupplierSpinner.setSelection(0); // Select "Unknown"
+        mSupplier = PhoneEntry.SUPPLIER_UNKNOWN;
+        selectSupplier();
+        mLoadedPhone = null;
+        mLoadedVersion = -1;
     }
 
     /**
@@ -517,30 +715,23 @@ public class EditorActivity extends AppCompatActivity implements
     }
 
     /**
-     * Perform the deletion of the phone in the database.
+     * Perform the deletion of the phone in the database. The phone is deleted in the
+     * background, and the editor is closed once it is done.
      */
     private void deletePhone() {
         // Only perform the delete if this is an existing phone.
-        if (mCurrentPhoneUri != null) {
-            // Call the ContentResolver to delete the pet at the given content URI.
-            // Pass in null for the selection and selection args because the mCurrentPhoneUri
-            // content URI already identifies the phone that we want.
-            int rowsDeleted = getContentResolver().delete(mCurrentPhoneUri, null, null);
-
-            // Show a toast message depending on whether or not the delete was successful.
-            if (rowsDeleted == 0) {
-                // If no rows were deleted, then there was an error with the delete.
-                Toast.makeText(this, getString(R.string.editor_delete_phone_failed),
-                        Toast.LENGTH_SHORT).show();
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(this, getString(R.string.editor_delete_phone_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+        if (mCurrentPhoneUri == null) {
+            // Close the activity
+            finish();
+            return;
         }
 
-        // Close the activity
-        finish();
+        // Call the PhoneWriter to delete the phone at the given content URI.
+        // Pass in null for the selection and selection args because the mCurrentPhoneUri
+        // content URI already identifies the phone that we want.
+        PendingWrite<Integer> write = PendingWrite.newDelete(this);
+        startWrite(write);
+        PhoneWriter.getInstance(this).delete(mCurrentPhoneUri, null, null, write);
     }
 
     /**
@@ -550,4 +741,127 @@ public class EditorActivity extends AppCompatActivity implements
         TextView quantityTextView = findViewById(R.id.edit_quantity);
         quantityTextView.setText("" + number);
     }
+
+    /**
+     * Callback of a save or deletion of the phone. The editor that started it may be destroyed
+     * by a configuration change before the {@link PhoneWriter} is done, so the write is kept
+     * across the change with {@link #onRetainCustomNonConfigurationInstance}, and reports to the
+     * editor that is attached to it at the time, or to the next one that attaches. A destroyed
+     * editor is never finished or asked to reload. The writes are made by the static factory
+     * methods, so they hold no reference to the editor that started them.
+     */
+    private abstract static class PendingWrite<T> implements PhoneWriter.Callback<T> {
+
+        /** The write is not done yet */
+        static final int OUTCOME_PENDING = 0;
+
+        /** The phone was saved or deleted */
+        static final int OUTCOME_DONE = 1;
+
+        /** The phone could not be saved or deleted */
+        static final int OUTCOME_FAILED = 2;
+
+        /** The phone was changed by somebody else since it was loaded, so nothing was saved */
+        static final int OUTCOME_CONFLICT = 3;
+
+        /** App context, for the toast that is shown even if no editor is left */
+        private final Context mAppContext;
+
+        private final int mSuccessMessage;
+        private final int mFailureMessage;
+
+        /** Whether the editor is closed even if the write failed */
+        final boolean mFinishOnFailure;
+
+        /** Editor to report to, or null while there is none */
+        private EditorActivity mEditor;
+
+        int mOutcome = OUTCOME_PENDING;
+
+        PendingWrite(Context context, int successMessage, int failureMessage, boolean finishOnFailure) {
+            mAppContext = context.getApplicationContext();
+            mSuccessMessage = successMessage;
+            mFailureMessage = failureMessage;
+            mFinishOnFailure = finishOnFailure;
+        }
+
+        /**
+         * Returns the write of a new phone. If the new content URI is null, then there was an
+         * error with insertion.
+         */
+        static PendingWrite<Uri> newInsert(Context context) {
+            return new PendingWrite<Uri>(context, R.string.editor_insert_phone_successful,
+                    R.string.editor_insert_phone_failed, false) {
+                @Override
+                int getOutcome(Uri newUri) {
+                    return newUri != null ? OUTCOME_DONE : OUTCOME_FAILED;
+                }
+            };
+        }
+
+        /**
+         * Returns the update of an existing phone. The result is null if the provider rejected
+         * the values.
+         */
+        static PendingWrite<Bundle> newUpdate(Context context) {
+            return new PendingWrite<Bundle>(context, R.string.editor_update_phone_successful,
+                    R.string.editor_update_phone_failed, false) {
+                @Override
+                int getOutcome(Bundle result) {
+                    if (result == null) {
+                        return OUTCOME_FAILED;
+                    } else if (result.getBoolean(PhoneEntry.EXTRA_CONFLICT)) {
+                        return OUTCOME_CONFLICT;
+                    }
+                    return result.getBoolean(PhoneEntry.EXTRA_UPDATED) ? OUTCOME_DONE : OUTCOME_FAILED;
+                }
+            };
+        }
+
+        /**
+         * Returns the deletion of the phone. If no rows were deleted, then there was an error
+         * with the delete. The editor is closed either way.
+         */
+        static PendingWrite<Integer> newDelete(Context context) {
+            return new PendingWrite<Integer>(context, R.string.editor_delete_phone_successful,
+                    R.string.editor_delete_phone_failed, true) {
+                @Override
+                int getOutcome(Integer rowsDeleted) {
+                    return rowsDeleted == 0 ? OUTCOME_FAILED : OUTCOME_DONE;
+                }
+            };
+        }
+
+        /**
+         * Returns the outcome of the write, one of the OUTCOME constants, from its result.
+         */
+        abstract int getOutcome(T result);
+
+        @Override
+        public void onWriteComplete(T result) {
+            mOutcome = getOutcome(result);
+            if (mOutcome != OUTCOME_CONFLICT) {
+                // Show a toast message depending on whether or not the write was successful
+                Toast.makeText(mAppContext, mOutcome == OUTCOME_DONE ? mSuccessMessage : mFailureMessage,
+                        Toast.LENGTH_SHORT).show();
+            }
+            if (mEditor != null) {
+                mEditor.onWriteComplete(this);
+            }
+        }
+
+        /**
+         * Report to the given editor, right away if the write is already done.
+         */
+        void attach(EditorActivity editor) {
+            mEditor = editor;
+            if (mOutcome != OUTCOME_PENDING) {
+                editor.onWriteComplete(this);
+            }
+        }
+
+        void detach() {
+            mEditor = null;
+        }
+    }
 }
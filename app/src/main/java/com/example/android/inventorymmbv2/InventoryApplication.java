@@ -0,0 +1,29 @@
+package com.example.android.inventorymmbv2;
+
+import android.app.Application;
+import android.content.Context;
+
+/**
+ * Application of the Smartphone Inventory app. It only marks the start of the app for
+ * {@link StartupTrace}: the content providers are created after
+ * {@link #attachBaseContext} but before {@link #onCreate}, so the start is recorded in the former.
+ */
+public class InventoryApplication extends Application {
+
+    @Override
+    protected void attachBaseContext(Context base) {
+        StartupTrace.markApplicationStart();
+        super.attachBaseContext(base);
+    }
+
+    @Override
+    public void onCreate() {
+        StartupTrace.beginSection("InventoryApplication.onCreate");
+        try {
+            super.onCreate();
+        } finally {
+            StartupTrace.endSection();
+        }
+        StartupTrace.mark("Application created");
+    }
+}
@@ -1,45 +1,171 @@
 package com.example.android.inventorymmbv2;
 
+import android.app.AlertDialog;
 import android.app.LoaderManager;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.Context;
 import android.content.CursorLoader;
+import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.Loader;
+import android.database.ContentObserver;
 import android.database.Cursor;
+import android.database.MergeCursor;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.SearchView;
+import android.support.v7.widget.DividerItemDecoration;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.SupplierEntry;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.ref.WeakReference;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
 
 /**
  * Displays list of phones that were entered and stored in the app.
  */
 public class MainActivity extends AppCompatActivity implements
-        LoaderManager.LoaderCallbacks<Cursor> {
+        LoaderManager.LoaderCallbacks<Cursor>, PhoneCursorAdapter.OnPhoneClickListener {
 
     /**
-     * Identifier for the phone data loader
+     * Identifier for the loader of the first page of phones. The loader of page n has the
+     * identifier PHONE_LOADER + n.
      */
     private static final int PHONE_LOADER = 0;
 
-    /** Adapter for the ListView */
+    /** Number of phones loaded per page */
+    private static final int PAGE_SIZE = PhoneEntry.DEFAULT_PAGE_SIZE;
+
+    /** Loader argument holding the last phone ID of the previous page */
+    private static final String ARG_AFTER_ID = "after_id";
+
+    /** Loader argument holding the sort value of the last phone of the previous page */
+    private static final String ARG_AFTER_KEY = "after_key";
+
+    /** Value of {@link #mSupplierFilter} when the phones of all suppliers are listed */
+    private static final int ALL_SUPPLIERS = -1;
+
+    /** Keys of the saved sort order and filters of the list */
+    private static final String STATE_SORT_COLUMN = "sort_column";
+    private static final String STATE_SUPPLIER_FILTER = "supplier_filter";
+    private static final String STATE_IN_STOCK_ONLY = "in_stock_only";
+
+    /** Identifier for the loader of the search results */
+    private static final int SEARCH_LOADER = -1;
+
+    /** Identifier for the loader of the suppliers in the filter menu */
+    private static final int SUPPLIER_LOADER = -2;
+
+    /** Maximum number of search results shown */
+    private static final int SEARCH_LIMIT = 100;
+
+    /** Loader argument holding the search text */
+    private static final String ARG_QUERY = "query";
+
+    /** Columns shown in the phone list */
+    private static final String[] LIST_PROJECTION = {
+            PhoneEntry._ID,
+            PhoneEntry.COLUMN_PHONE_NAME,
+            PhoneEntry.COLUMN_PRICE,
+            PhoneEntry.COLUMN_QUANTITY};
+
+    /** Columns of a phone that changed, the list columns and the supplier it is filtered by */
+    private static final String[] CHANGED_PHONE_PROJECTION = {
+            PhoneEntry._ID,
+            PhoneEntry.COLUMN_PHONE_NAME,
+            PhoneEntry.COLUMN_PRICE,
+            PhoneEntry.COLUMN_QUANTITY,
+            PhoneEntry.COLUMN_SUPPLIER};
+
+    /** Request code of the file picker for the CSV import */
+    private static final int REQUEST_IMPORT_CSV = 1;
+
+    /** Adapter for the RecyclerView */
     PhoneCursorAdapter mCursorAdapter;
 
+    /** View shown instead of the list when there are no phones */
+    private View mEmptyView;
+
+    /** Cursors of the pages loaded so far, in list order */
+    private final ArrayList<Cursor> mPages = new ArrayList<>();
+
+    /** Column the list is sorted by, or null to sort it in the order the phones were added */
+    private String mSortColumn;
+
+    /** Supplier whose phones are listed, or {@link #ALL_SUPPLIERS} */
+    private int mSupplierFilter = ALL_SUPPLIERS;
+
+    /** Whether only the phones in stock are listed */
+    private boolean mInStockOnly;
+
+    /** Text typed in the search box, or null if the list is not being searched */
+    private String mSearchQuery;
+
+    /** Cursor with the results of the current search, or null while they are loading */
+    private Cursor mSearchResults;
+
+    /** Cursor with the suppliers to filter by, or null while they are loading */
+    private Cursor mSuppliers;
+
+    /** Whether the first page of phones has been shown, see {@link StartupTrace#onListShown} */
+    private boolean mListShown;
+
+    /**
+     * Observer of changes to single phones. The loaders of the list are only told when phones
+     * are added or removed, so a phone that changed is loaded on its own and patched into the list.
+     */
+    private final ContentObserver mPhoneObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            // Before Jelly Bean the changed URI is not known, so everything is loaded again
+            reloadPhones();
+        }
+
+        @Override
+        public void onChange(boolean selfChange, Uri uri) {
+            // Changes to the whole table also go to the loaders, which load the list again.
+            // Only the URIs of single phones end with a phone ID.
+            if (uri != null && TextUtils.isDigitsOnly(uri.getLastPathSegment())) {
+                new LoadPhoneTask(MainActivity.this).execute(ContentUris.parseId(uri));
+            }
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.beginSection("MainActivity.onCreate");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
+        // The loaders are kept across configuration changes, so the list they load is as well
+        if (savedInstanceState != null) {
+            mSortColumn = savedInstanceState.getString(STATE_SORT_COLUMN);
+            mSupplierFilter = savedInstanceState.getInt(STATE_SUPPLIER_FILTER, ALL_SUPPLIERS);
+            mInStockOnly = savedInstanceState.getBoolean(STATE_IN_STOCK_ONLY);
+        }
+
         // Setup FAB to open EditorActivity
         FloatingActionButton fab = findViewById(R.id.fab);
         fab.setOnClickListener(new View.OnClickListener() {
@@ -50,40 +176,301 @@ public class MainActivity extends AppCompatActivity implements
             }
         });
 
-        // Find the ListView which will be populated with the phone data
-        ListView phoneListView = findViewById(R.id.list);
+        // Find the RecyclerView which will be populated with the phone data
+        RecyclerView phoneListView = findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        phoneListView.setLayoutManager(layoutManager);
+        phoneListView.addItemDecoration(
+                new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
 
-        // Find and set empty view on the ListView, so that it only shows when the list has 0 items.
-        View emptyView = findViewById(R.id.empty_view);
-        phoneListView.setEmptyView(emptyView);
+        // Find the empty view, which is only shown when the list has 0 items.
+        mEmptyView = findViewById(R.id.empty_view);
 
         // Setup an Adapter to create a list item for each row of phone data in the Cursor.
-        // There is no phone data yet (until the loader finishes) so pass in null for the Cursor.
-        mCursorAdapter = new PhoneCursorAdapter(this, null);
+        // There is no phone data yet (until the loader finishes), and clicks on a phone
+        // come back to this activity.
+        mCursorAdapter = new PhoneCursorAdapter(this, this);
         phoneListView.setAdapter(mCursorAdapter);
 
-        // Setup the item click listener
-        phoneListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        // Load the next page once the user scrolls close to the end of the loaded phones
+        phoneListView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                // Create new intent to go to {@link EditorActivity}
-                Intent intent = new Intent(MainActivity.this, EditorActivity.class);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int lastVisibleItem = layoutManager.findLastVisibleItemPosition();
+                if (lastVisibleItem >= mCursorAdapter.getItemCount() - PAGE_SIZE / 2) {
+                    loadNextPage();
+                }
+            }
+        });
 
-                // Form the content URI that represents the specific phone that was clicked on,
-                // by appending the "id" (passed as input to this method) onto the
-                // {@link PhoneEntry#CONTENT_URI}.
+        // Kick off the loader for the first page, and the one of the suppliers for the menu
+        getLoaderManager().initLoader(PHONE_LOADER, null, this);
+        getLoaderManager().initLoader(SUPPLIER_LOADER, null, this);
 
-                Uri currentPhoneUri = ContentUris.withAppendedId(PhoneEntry.CONTENT_URI, id);
+        // Listen for changes to each phone in the list, and to the stock changes made with
+        // the cart buttons that are still being written
+        getContentResolver().registerContentObserver(PhoneEntry.CONTENT_URI, true, mPhoneObserver);
+        StockAdjuster.getInstance(this).addListener(mCursorAdapter);
+        StartupTrace.endSection();
+    }
 
-                // Set the URI on the data field of the intent
-                intent.setData(currentPhoneUri);
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putString(STATE_SORT_COLUMN, mSortColumn);
+        outState.putInt(STATE_SUPPLIER_FILTER, mSupplierFilter);
+        outState.putBoolean(STATE_IN_STOCK_ONLY, mInStockOnly);
+    }
 
-                // Launch the {@link EditorActivity} to display the data for the current phone.
-                startActivity(intent);
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Write the stock changes as soon as the list is left, rather than after the delay
+        StockAdjuster.getInstance(this).flush();
+    }
+
+    @Override
+    protected void onDestroy() {
+        StockAdjuster.getInstance(this).removeListener(mCursorAdapter);
+        getContentResolver().unregisterContentObserver(mPhoneObserver);
+        super.onDestroy();
+    }
+
+    /**
+     * Tell all the loaders of the list that their data has changed, so they load it again.
+     */
+    private void reloadPhones() {
+        for (int page = 0; page < mPages.size(); page++) {
+            Loader<Cursor> loader = getLoaderManager().getLoader(PHONE_LOADER + page);
+            if (loader != null) {
+                loader.onContentChanged();
             }
-        });
-        // Kick off the loader
-        getLoaderManager().initLoader(PHONE_LOADER, null, this);
+        }
+        Loader<Cursor> searchLoader = getLoaderManager().getLoader(SEARCH_LOADER);
+        if (searchLoader != null) {
+            searchLoader.onContentChanged();
+        }
+    }
+
+    /**
+     * Open the {@link EditorActivity} for the phone that was clicked in the list.
+     */
+    @Override
+    public void onPhoneClick(long id) {
+        // Create new intent to go to {@link EditorActivity}
+        Intent intent = new Intent(MainActivity.this, EditorActivity.class);
+
+        // Form the content URI that represents the specific phone that was clicked on,
+        // by appending the "id" (passed as input to this method) onto the
+        // {@link PhoneEntry#CONTENT_URI}.
+        Uri currentPhoneUri = ContentUris.withAppendedId(PhoneEntry.CONTENT_URI, id);
+
+        // Set the URI on the data field of the intent
+        intent.setData(currentPhoneUri);
+
+        // Launch the {@link EditorActivity} to display the data for the current phone.
+        startActivity(intent);
+    }
+
+    /**
+     * Start loading the page after the last loaded one, unless it is already loading or the
+     * last page showed there are no more phones.
+     */
+    private void loadNextPage() {
+        // Search results are not paged
+        if (mSearchQuery != null) {
+            return;
+        }
+
+        int pageCount = mPages.size();
+        if (pageCount == 0 || getLoaderManager().getLoader(PHONE_LOADER + pageCount) != null) {
+            return;
+        }
+        Cursor lastPage = mPages.get(pageCount - 1);
+        if (lastPage == null) {
+            return;
+        }
+        Bundle args = buildNextPageArgs(lastPage);
+        if (args != null) {
+            getLoaderManager().initLoader(PHONE_LOADER + pageCount, args, this);
+        }
+    }
+
+    /**
+     * Returns the arguments of the loader of the page that follows the given one, which starts
+     * right after its last phone, or null if the given page is the last one.
+     */
+    private Bundle buildNextPageArgs(Cursor page) {
+        if (page.getCount() < PAGE_SIZE || !page.moveToLast()) {
+            return null;
+        }
+        Bundle args = new Bundle();
+        args.putLong(ARG_AFTER_ID, page.getLong(page.getColumnIndex(PhoneEntry._ID)));
+        if (mSortColumn != null) {
+            args.putString(ARG_AFTER_KEY, page.getString(page.getColumnIndex(mSortColumn)));
+        }
+        return args;
+    }
+
+    /**
+     * Returns the content URI of the page that starts after the keys of the given loader
+     * arguments, or the first page if there are none.
+     */
+    private Uri buildPageUri(Bundle args) {
+        // Each page starts right after the last phone of the previous page
+        long afterId = args == null ? 0 : args.getLong(ARG_AFTER_ID);
+        String afterKey = args == null ? null : args.getString(ARG_AFTER_KEY);
+        return PhoneEntry.buildPageUri(buildListUri(), afterKey, afterId, PAGE_SIZE);
+    }
+
+    /**
+     * Make the page after the given one start where the given page now ends. The loader of a
+     * page keeps the keys it was started with, so once phones were added to or removed from
+     * the pages before it, it would load phones that are already shown, or skip some. It is
+     * started again from the new end of the given page, and hidden until it is loaded, which
+     * moves on to the pages after it in turn. If the given page is the last one now, the pages
+     * after it are dropped.
+     */
+    private void updateNextPage(int page) {
+        int nextPage = page + 1;
+        Loader<Cursor> nextLoader = getLoaderManager().getLoader(PHONE_LOADER + nextPage);
+        if (nextLoader == null || mPages.get(page) == null) {
+            return;
+        }
+
+        Bundle args = buildNextPageArgs(mPages.get(page));
+        if (args == null) {
+            for (int next = nextPage; getLoaderManager().getLoader(PHONE_LOADER + next) != null; next++) {
+                getLoaderManager().destroyLoader(PHONE_LOADER + next);
+            }
+            if (mPages.size() > nextPage) {
+                mPages.subList(nextPage, mPages.size()).clear();
+            }
+            return;
+        }
+        if (!buildPageUri(args).equals(((CursorLoader) nextLoader).getUri())) {
+            if (nextPage < mPages.size()) {
+                mPages.set(nextPage, null);
+            }
+            getLoaderManager().restartLoader(PHONE_LOADER + nextPage, args, this);
+        }
+    }
+
+    /**
+     * Returns the content URI of the list with the current sort order and filters.
+     */
+    private Uri buildListUri() {
+        Uri.Builder builder = PhoneEntry.CONTENT_URI.buildUpon();
+        if (mSortColumn != null) {
+            builder.appendQueryParameter(PhoneEntry.QUERY_PARAMETER_SORT, mSortColumn);
+        }
+        if (mSupplierFilter != ALL_SUPPLIERS) {
+            builder.appendQueryParameter(PhoneEntry.QUERY_PARAMETER_SUPPLIER, String.valueOf(mSupplierFilter));
+        }
+        if (mInStockOnly) {
+            builder.appendQueryParameter(PhoneEntry.QUERY_PARAMETER_IN_STOCK, "true");
+        }
+        return builder.build();
+    }
+
+    /**
+     * Returns the query of the list with the current sort order and filters, the same as the
+     * provider builds it from {@link #buildListUri}.
+     */
+    private PhoneListQuery buildListQuery() {
+        PhoneListQuery query = new PhoneListQuery(mSortColumn);
+        if (mSupplierFilter != ALL_SUPPLIERS) {
+            query.setSupplier(mSupplierFilter);
+        }
+        return query.setInStockOnly(mInStockOnly);
+    }
+
+    /**
+     * Show the new values of a phone that changed. The row of the phone is patched in place,
+     * unless the change takes the phone into or out of the list, or to another place in it, see
+     * {@link PhoneListQuery#isMovedBy}. Then the pages are loaded again.
+     */
+    private void showChangedPhone(long id, ContentValues values) {
+        if (mSearchQuery == null) {
+            int supplier = values.getAsInteger(PhoneEntry.COLUMN_SUPPLIER);
+            Phone listed = toPhone(mCursorAdapter.getListedPhone(id), supplier);
+            if (buildListQuery().isMovedBy(listed, toPhone(values, supplier))) {
+                reloadPhones();
+                return;
+            }
+        }
+        mCursorAdapter.updatePhone(id, values);
+    }
+
+    /**
+     * Returns the phone with the list columns of the given values and the given supplier, or
+     * null if there are no values.
+     */
+    private static Phone toPhone(ContentValues values, int supplier) {
+        if (values == null) {
+            return null;
+        }
+        return new Phone(values.getAsString(PhoneEntry.COLUMN_PHONE_NAME),
+                values.getAsInteger(PhoneEntry.COLUMN_PRICE), supplier, "",
+                values.getAsInteger(PhoneEntry.COLUMN_QUANTITY));
+    }
+
+    /**
+     * Load the list again from its first page, after its sort order or filters changed. The
+     * loaded list stays on screen until the new first page is there.
+     */
+    private void reloadList() {
+        for (int page = mPages.size() - 1; page > 0; page--) {
+            getLoaderManager().destroyLoader(PHONE_LOADER + page);
+        }
+        if (mPages.size() > 1) {
+            mPages.subList(1, mPages.size()).clear();
+        }
+        getLoaderManager().restartLoader(PHONE_LOADER, null, this);
+        showPhones();
+    }
+
+    /**
+     * Search the phones for the given text, or go back to the full list if the text is empty.
+     */
+    private void setSearchQuery(String query) {
+        query = query.trim();
+        if (query.isEmpty()) {
+            mSearchQuery = null;
+            mSearchResults = null;
+            getLoaderManager().destroyLoader(SEARCH_LOADER);
+            showPhones();
+            return;
+        }
+
+        mSearchQuery = query;
+        Bundle args = new Bundle();
+        args.putString(ARG_QUERY, query);
+        getLoaderManager().restartLoader(SEARCH_LOADER, args, this);
+    }
+
+    /**
+     * Show the search results or the loaded pages in the list. Pages are only shown up to the
+     * first one that has not been loaded yet, so the list never has a gap.
+     */
+    private void showPhones() {
+        if (mSearchQuery != null) {
+            mCursorAdapter.swapCursor(mSearchResults);
+            mEmptyView.setVisibility(View.GONE);
+            return;
+        }
+
+        int pageCount = mPages.indexOf(null);
+        if (pageCount == -1) {
+            pageCount = mPages.size();
+        }
+        if (pageCount == 0) {
+            mCursorAdapter.swapCursor(null);
+        } else {
+            Cursor[] pages = mPages.subList(0, pageCount).toArray(new Cursor[pageCount]);
+            mCursorAdapter.swapCursor(new MergeCursor(pages));
+        }
+        mEmptyView.setVisibility(mCursorAdapter.getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
     /**
@@ -99,19 +486,77 @@ public class MainActivity extends AppCompatActivity implements
         values.put(PhoneEntry.COLUMN_SUPPLIER_NUMBER, "079123456");
         values.put(PhoneEntry.COLUMN_QUANTITY, 50);
 
-        // Insert a new row for Xperia XZ2 into the provider using the ContentResolver.
+        // Insert a new row for Xperia XZ2 into the provider in the background.
         // Use the {@link PhoneEntry#CONTENT_URI} to indicate that we want to insert
-        // into the phone database table.
-        // Receive the new content URI that will allow us to access the data in the future.
-       Uri newUri = getContentResolver().insert(PhoneEntry.CONTENT_URI, values);
-   }
+        // into the phone database table. The list picks up the new phone through its loaders.
+        PhoneWriter.getInstance(this).insert(PhoneEntry.CONTENT_URI, values, null);
+    }
+
+    /**
+     * Let the user pick a CSV file to import the phones from.
+     */
+    private void pickCsvToImport() {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("text/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        startActivityForResult(intent, REQUEST_IMPORT_CSV);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        if (requestCode == REQUEST_IMPORT_CSV) {
+            if (resultCode == RESULT_OK && data != null && data.getData() != null) {
+                new ImportCsvTask(this).execute(data.getData());
+            }
+            return;
+        }
+        super.onActivityResult(requestCode, resultCode, data);
+    }
+
+    /**
+     * Share all the phones as a CSV file. The receiving app reads the export straight from the
+     * provider, which writes it while it is being read.
+     */
+    private void exportCsv() {
+        Intent intent = new Intent(Intent.ACTION_SEND);
+        intent.setType(PhoneEntry.CSV_TYPE);
+        intent.putExtra(Intent.EXTRA_STREAM, PhoneEntry.EXPORT_URI);
+        intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        startActivity(Intent.createChooser(intent, getString(R.string.export_chooser_title)));
+    }
+
+    /**
+     * Prompt the user to confirm that the phones should be replaced with the latest backup.
+     */
+    private void showRestoreConfirmationDialog() {
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setMessage(R.string.restore_dialog_msg);
+        builder.setPositiveButton(R.string.restore, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                new BackupTask(MainActivity.this).execute(PhoneEntry.METHOD_RESTORE);
+            }
+        });
+        builder.setNegativeButton(R.string.cancel, new DialogInterface.OnClickListener() {
+            public void onClick(DialogInterface dialog, int id) {
+                if (dialog != null) {
+                    dialog.dismiss();
+                }
+            }
+        });
+        builder.create().show();
+    }
 
     /**
      * Helper method to delete all phones in the database.
      */
     private void deleteAllPhones() {
-        int rowsDeleted = getContentResolver().delete(PhoneEntry.CONTENT_URI, null, null);
-        Log.v("MainActivity", rowsDeleted + " rows deleted from phone database");
+        PhoneWriter.getInstance(this).delete(PhoneEntry.CONTENT_URI, null, null,
+                new PhoneWriter.Callback<Integer>() {
+                    @Override
+                    public void onWriteComplete(Integer rowsDeleted) {
+                        Log.v("MainActivity", rowsDeleted + " rows deleted from phone database");
+                    }
+                });
     }
 
     @Override
@@ -119,6 +564,33 @@ public class MainActivity extends AppCompatActivity implements
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+        addSupplierItems(menu.findItem(R.id.action_filter_supplier).getSubMenu());
+
+        // Check the current sort order and filters. A supplier that is not loaded yet is checked
+        // once the menu is created again with the suppliers.
+        menu.findItem(getSortItemId(mSortColumn)).setChecked(true);
+        MenuItem supplierItem = menu.findItem(getSupplierItemId(mSupplierFilter));
+        if (supplierItem != null) {
+            supplierItem.setChecked(true);
+        }
+        menu.findItem(R.id.action_in_stock_only).setChecked(mInStockOnly);
+
+        // Search the phones as the user types in the search box
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint(getString(R.string.search_hint));
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                setSearchQuery(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                setSearchQuery(newText);
+                return true;
+            }
+        });
         return true;
     }
 
@@ -126,6 +598,43 @@ public class MainActivity extends AppCompatActivity implements
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // Respond to a click on a sort order
+            case R.id.action_sort_default:
+            case R.id.action_sort_name:
+            case R.id.action_sort_price:
+            case R.id.action_sort_quantity:
+                item.setChecked(true);
+                mSortColumn = getSortColumn(item.getItemId());
+                reloadList();
+                return true;
+            // Respond to a click on "All suppliers", the suppliers themselves are handled below
+            case R.id.action_filter_supplier_all:
+                item.setChecked(true);
+                mSupplierFilter = ALL_SUPPLIERS;
+                reloadList();
+                return true;
+            // Respond to a click on the "In stock only" menu option
+            case R.id.action_in_stock_only:
+                mInStockOnly = !item.isChecked();
+                item.setChecked(mInStockOnly);
+                reloadList();
+                return true;
+            // Respond to a click on the "Import CSV" menu option
+            case R.id.action_import_csv:
+                pickCsvToImport();
+                return true;
+            // Respond to a click on the "Export CSV" menu option
+            case R.id.action_export_csv:
+                exportCsv();
+                return true;
+            // Respond to a click on the "Back up" menu option
+            case R.id.action_backup:
+                new BackupTask(this).execute(PhoneEntry.METHOD_BACKUP);
+                return true;
+            // Respond to a click on the "Restore backup" menu option
+            case R.id.action_restore_backup:
+                showRestoreConfirmationDialog();
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                insertPhone();
@@ -135,38 +644,344 @@ public class MainActivity extends AppCompatActivity implements
                 deleteAllPhones();
                 return true;
         }
+        // Respond to a click on a supplier to filter by
+        if (item.getGroupId() == R.id.group_filter_supplier) {
+            item.setChecked(true);
+            mSupplierFilter = getSupplier(item.getItemId());
+            reloadList();
+            return true;
+        }
         return super.onOptionsItemSelected(item);
     }
 
+    /**
+     * Returns the ID of the menu item of the given sort column.
+     */
+    private static int getSortItemId(String sortColumn) {
+        if (PhoneEntry.COLUMN_PHONE_NAME.equals(sortColumn)) {
+            return R.id.action_sort_name;
+        } else if (PhoneEntry.COLUMN_PRICE.equals(sortColumn)) {
+            return R.id.action_sort_price;
+        } else if (PhoneEntry.COLUMN_QUANTITY.equals(sortColumn)) {
+            return R.id.action_sort_quantity;
+        }
+        return R.id.action_sort_default;
+    }
+
+    /**
+     * Returns the sort column of the given menu item.
+     */
+    private static String getSortColumn(int itemId) {
+        switch (itemId) {
+            case R.id.action_sort_name:
+                return PhoneEntry.COLUMN_PHONE_NAME;
+            case R.id.action_sort_price:
+                return PhoneEntry.COLUMN_PRICE;
+            case R.id.action_sort_quantity:
+                return PhoneEntry.COLUMN_QUANTITY;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Add an item for each loaded supplier to the supplier filter menu, after "All suppliers".
+     * The ID of the item of a supplier is {@link Menu#FIRST} plus the supplier ID.
+     */
+    private void addSupplierItems(Menu supplierMenu) {
+        if (mSuppliers == null) {
+            return;
+        }
+        int idColumnIndex = mSuppliers.getColumnIndex(SupplierEntry._ID);
+        int nameColumnIndex = mSuppliers.getColumnIndex(SupplierEntry.COLUMN_SUPPLIER_NAME);
+        for (int position = 0; mSuppliers.moveToPosition(position); position++) {
+            supplierMenu.add(R.id.group_filter_supplier,
+                    getSupplierItemId(mSuppliers.getInt(idColumnIndex)), Menu.NONE,
+                    mSuppliers.getString(nameColumnIndex));
+        }
+        // Items added in code are not checkable like the ones of the group in the XML
+        supplierMenu.setGroupCheckable(R.id.group_filter_supplier, true, true);
+    }
+
+    /**
+     * Returns the ID of the menu item of the given supplier filter.
+     */
+    private static int getSupplierItemId(int supplier) {
+        return supplier == ALL_SUPPLIERS ? R.id.action_filter_supplier_all : Menu.FIRST + supplier;
+    }
+
+    /**
+     * Returns the supplier filter of the given menu item.
+     */
+    private static int getSupplier(int itemId) {
+        return itemId == R.id.action_filter_supplier_all ? ALL_SUPPLIERS : itemId - Menu.FIRST;
+    }
+
     @Override
     public Loader<Cursor> onCreateLoader(int i, Bundle bundle) {
         // Define a projection that specifies the columns from the table we care about.
-        String[] projection = {
-                PhoneEntry._ID,
-                PhoneEntry.COLUMN_PHONE_NAME,
-                PhoneEntry.COLUMN_PRICE,
-                PhoneEntry.COLUMN_QUANTITY};
+        String[] projection = LIST_PROJECTION;
+
+        if (i == SUPPLIER_LOADER) {
+            return new CursorLoader(this, SupplierEntry.CONTENT_URI,
+                    new String[]{SupplierEntry._ID, SupplierEntry.COLUMN_SUPPLIER_NAME},
+                    null, null, null);
+        }
+
+        if (i == SEARCH_LOADER) {
+            // This loader will search the phones on a background thread
+            return new CursorLoader(this,
+                    PhoneEntry.buildSearchUri(bundle.getString(ARG_QUERY), SEARCH_LIMIT),
+                    projection,
+                    null,
+                    null,
+                    null);              // Best matches first
+        }
 
         // This loader will execute the ContentProvider's query method on a background thread
         return new CursorLoader(this,   // Parent activity context
-                PhoneEntry.CONTENT_URI,   // Provider content URI to query
+                buildPageUri(bundle),   // Provider content URI of the page
                 projection,             // Columns to include in the resulting Cursor
-                null,                   // No selection clause
+                null,                   // Filtered by the query parameters of the URI
                 null,                   // No selection arguments
-                null);                  // Default sort order
+                null);                  // Sorted by the query parameters of the URI
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Update {@link PhoneCursorAdapter} with this new cursor containing updated phone data
-        mCursorAdapter.swapCursor(data);
+        if (loader.getId() == SUPPLIER_LOADER) {
+            // Create the menu again with the suppliers as they are now
+            mSuppliers = data;
+            invalidateOptionsMenu();
+            return;
+        }
+
+        if (loader.getId() == SEARCH_LOADER) {
+            mSearchResults = data;
+            showPhones();
+            return;
+        }
+
+        // Store the page and update {@link PhoneCursorAdapter} with the pages containing updated phone data
+        int page = loader.getId() - PHONE_LOADER;
+        while (mPages.size() <= page) {
+            mPages.add(null);
+        }
+        mPages.set(page, data);
+        updateNextPage(page);
+        showPhones();
+
+        // The first page is what the user waits for when the app starts
+        if (page == 0 && !mListShown) {
+            mListShown = true;
+            StartupTrace.onListShown(this);
+        }
     }
 
     @Override
     public void onLoaderReset(Loader<Cursor> loader) {
         // Callback called when the data needs to be deleted
-        mCursorAdapter.swapCursor(null);
+        if (loader.getId() == SUPPLIER_LOADER) {
+            mSuppliers = null;
+            return;
+        }
+
+        if (loader.getId() == SEARCH_LOADER) {
+            mSearchResults = null;
+            showPhones();
+            return;
+        }
+
+        int page = loader.getId() - PHONE_LOADER;
+        if (page < mPages.size()) {
+            mPages.set(page, null);
+        }
+        showPhones();
+    }
+
+    /**
+     * Imports the phones of a CSV file in the background, showing the number of rows read so far
+     * under the title of the list.
+     */
+    private static class ImportCsvTask extends AsyncTask<Uri, Integer, Integer>
+            implements PhoneCsvImporter.Listener {
+
+        /** The activity, held weakly so the task does not keep it alive */
+        private final WeakReference<MainActivity> mActivity;
+
+        /** Application context, to read the file and show the result */
+        private final Context mContext;
+
+        /** Number of rows that were skipped */
+        private int mErrors;
+
+        /** Why the file could not be imported, or null */
+        private String mFailure;
+
+        ImportCsvTask(MainActivity activity) {
+            mActivity = new WeakReference<>(activity);
+            mContext = activity.getApplicationContext();
+        }
+
+        @Override
+        protected Integer doInBackground(Uri... uris) {
+            ContentResolver resolver = mContext.getContentResolver();
+            try {
+                InputStream input = resolver.openInputStream(uris[0]);
+                if (input == null) {
+                    throw new FileNotFoundException("Cannot open " + uris[0]);
+                }
+                Reader reader = new InputStreamReader(input, Charset.forName("UTF-8"));
+                try {
+                    return new PhoneCsvImporter(resolver, this).importFrom(reader);
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e("MainActivity", "Failed to import " + uris[0], e);
+                mFailure = e.getMessage();
+                return 0;
+            }
+        }
+
+        @Override
+        public void onProgress(int rowsRead, int rowsImported) {
+            publishProgress(rowsRead);
+        }
+
+        @Override
+        public void onRowError(int line, String message) {
+            mErrors++;
+            Log.w("MainActivity", "Skipped line " + line + " of the import: " + message);
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... rowsRead) {
+            MainActivity activity = mActivity.get();
+            if (activity != null && activity.getSupportActionBar() != null) {
+                activity.getSupportActionBar().setSubtitle(
+                        activity.getString(R.string.import_progress, rowsRead[0]));
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Integer rowsImported) {
+            MainActivity activity = mActivity.get();
+            if (activity != null && activity.getSupportActionBar() != null) {
+                activity.getSupportActionBar().setSubtitle(null);
+            }
+            String message = mFailure != null
+                    ? mContext.getString(R.string.import_failed, mFailure)
+                    : mContext.getString(R.string.import_finished, rowsImported, mErrors);
+            Toast.makeText(mContext, message, Toast.LENGTH_LONG).show();
+        }
     }
+
+    /**
+     * Backs up the database, or restores its latest backup, through the provider in the
+     * background, and shows the result. The list reloads itself when a restore notifies it.
+     */
+    private static class BackupTask extends AsyncTask<String, Void, Bundle> {
+
+        /** Application context, to call the provider and show the result */
+        private final Context mContext;
+
+        /** {@link PhoneEntry#METHOD_BACKUP} or {@link PhoneEntry#METHOD_RESTORE} */
+        private String mMethod;
+
+        /** Why the backup or restore failed, or null */
+        private String mFailure;
+
+        BackupTask(MainActivity activity) {
+            mContext = activity.getApplicationContext();
+        }
+
+        @Override
+        protected Bundle doInBackground(String... methods) {
+            mMethod = methods[0];
+            try {
+                return mContext.getContentResolver().call(PhoneEntry.CONTENT_URI, mMethod, null, null);
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                Log.e("MainActivity", "Failed to " + mMethod, e);
+                mFailure = e.getMessage();
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Bundle result) {
+            boolean backup = PhoneEntry.METHOD_BACKUP.equals(mMethod);
+            String message;
+            if (mFailure != null) {
+                message = mContext.getString(backup ? R.string.backup_failed : R.string.restore_failed,
+                        mFailure);
+            } else {
+                message = mContext.getString(backup ? R.string.backup_finished : R.string.restore_finished,
+                        result.getLong(PhoneEntry.EXTRA_GENERATION));
+            }
+            Toast.makeText(mContext, message, Toast.LENGTH_LONG).show();
+        }
+    }
+
+    /**
+     * Loads a single phone that changed in the background and shows its new values in the list,
+     * see {@link #showChangedPhone}. A phone that was deleted is ignored here, its page is loaded
+     * again by its loader.
+     */
+    private static class LoadPhoneTask extends AsyncTask<Long, Void, ContentValues> {
+
+        /** The activity, held weakly so the task does not keep it alive */
+        private final WeakReference<MainActivity> mActivity;
+
+        /** ID of the phone being loaded */
+        private long mId;
+
+        LoadPhoneTask(MainActivity activity) {
+            mActivity = new WeakReference<>(activity);
+        }
+
+        @Override
+        protected ContentValues doInBackground(Long... ids) {
+            MainActivity activity = mActivity.get();
+            if (activity == null) {
+                return null;
+            }
+
+            mId = ids[0];
+            Cursor cursor = activity.getContentResolver().query(
+                    ContentUris.withAppendedId(PhoneEntry.CONTENT_URI, mId),
+                    CHANGED_PHONE_PROJECTION, null, null, null);
+            if (cursor == null) {
+                return null;
+            }
+            try {
+                if (!cursor.moveToFirst()) {
+                    return null;
+                }
+                ContentValues values = new ContentValues();
+                values.put(PhoneEntry.COLUMN_PHONE_NAME,
+                        cursor.getString(cursor.getColumnIndex(PhoneEntry.COLUMN_PHONE_NAME)));
+                values.put(PhoneEntry.COLUMN_PRICE,
+                        cursor.getInt(cursor.getColumnIndex(PhoneEntry.COLUMN_PRICE)));
+                values.put(PhoneEntry.COLUMN_QUANTITY,
+                        cursor.getInt(cursor.getColumnIndex(PhoneEntry.COLUMN_QUANTITY)));
+                values.put(PhoneEntry.COLUMN_SUPPLIER,
+                        cursor.getInt(cursor.getColumnIndex(PhoneEntry.COLUMN_SUPPLIER)));
+                return values;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(ContentValues values) {
+            MainActivity activity = mActivity.get();
+            if (values != null && activity != null && !activity.isFinishing()) {
+                activity.showChangedPhone(mId, values);
+            }
+        }
+    }
+
     /**
      * This method displays the given quantity value on the screen after incrementing or decrementing.
      */
@@ -2,9 +2,12 @@ package com.example.android.inventorymmbv2;
 
 
 import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.net.Uri;
 import android.provider.BaseColumns;
 
+import java.util.List;
+
 //**API Contract for the Inventory app.//
 public final class PhoneContract {
 
@@ -15,6 +18,15 @@ public final class PhoneContract {
     public static final String CONTENT_AUTHORITY = "com.example.android.inventorymmbv2";
     public static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
     public static final String PATH_PHONES = "phones";
+    public static final String PATH_SEARCH = "search";
+    public static final String PATH_PHONE_LIST = "phone_list";
+    public static final String PATH_STATS = "stats";
+    public static final String PATH_EXPORT = "export";
+    public static final String PATH_STOCK = "stock";
+    public static final String PATH_LOW_STOCK = "low_stock";
+    public static final String PATH_LOW_STOCK_CROSSINGS = "low_stock_crossings";
+    public static final String PATH_SUPPLIERS = "suppliers";
+    public static final String PATH_STORES = "stores";
 
     /**
      * Inner class that defines constant values for the phones database table.
@@ -37,8 +49,133 @@ public final class PhoneContract {
         /** The content URI to access the phone data in the provider */
         public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PHONES);
 
+        /**
+         * Query parameter for a page of the {@link #CONTENT_URI} list: only phones after the
+         * phone with this {@link #_ID} are returned. Pages are sorted by
+         * {@link #QUERY_PARAMETER_SORT}, then by {@link #_ID}, so the last phone of one page is
+         * the start of the next one. Pages sorted by a column other than the ID also need
+         * {@link #QUERY_PARAMETER_AFTER_KEY}.
+         */
+        public static final String QUERY_PARAMETER_AFTER = "after";
+
+        /**
+         * Query parameter for a page of a sorted list: the value of the sort column of the phone
+         * of {@link #QUERY_PARAMETER_AFTER}.
+         */
+        public static final String QUERY_PARAMETER_AFTER_KEY = "after_key";
+
+        /**
+         * Query parameter for the column the {@link #CONTENT_URI} list is sorted by, lowest value
+         * first: {@link #COLUMN_PHONE_NAME}, {@link #COLUMN_PRICE} or {@link #COLUMN_QUANTITY}.
+         * The list is sorted by {@link #_ID} without it. It cannot be combined with a sort order.
+         */
+        public static final String QUERY_PARAMETER_SORT = "sort";
+
+        /**
+         * Query parameter to only list the phones of one supplier, one of the SUPPLIER values.
+         */
+        public static final String QUERY_PARAMETER_SUPPLIER = "supplier";
+
+        /**
+         * Query parameter to only list the phones that cost at least this price.
+         */
+        public static final String QUERY_PARAMETER_MIN_PRICE = "min_price";
+
+        /**
+         * Query parameter to only list the phones that cost at most this price.
+         */
+        public static final String QUERY_PARAMETER_MAX_PRICE = "max_price";
+
+        /**
+         * Query parameter to only list the phones that are in stock, when it is "true".
+         */
+        public static final String QUERY_PARAMETER_IN_STOCK = "in_stock";
+
+        /**
+         * Query parameter for the maximum number of phones returned by a query of the
+         * {@link #CONTENT_URI} list.
+         */
+        public static final String QUERY_PARAMETER_LIMIT = "limit";
+
+        /**
+         * Number of phones in a page of the list shown by the app. The provider reads the first
+         * such page in the background as soon as it starts, so it is ready for the first screen.
+         */
+        public static final int DEFAULT_PAGE_SIZE = 50;
+
+        /**
+         * Returns the content URI for the page of at most {@code limit} phones that follows the
+         * phone with the ID {@code afterId}. Use 0 to get the first page.
+         */
+        public static Uri buildPageUri(long afterId, int limit) {
+            return buildPageUri(CONTENT_URI, null, afterId, limit);
+        }
+
+        /**
+         * Returns the content URI for the page of at most {@code limit} phones of the given list,
+         * which may be sorted and filtered with the query parameters, that follows the phone with
+         * the ID {@code afterId} and the sort value {@code afterKey}. Both are ignored if the
+         * sort value is null and the list is sorted, to get the first page.
+         */
+        public static Uri buildPageUri(Uri listUri, String afterKey, long afterId, int limit) {
+            Uri.Builder builder = listUri.buildUpon();
+            if (listUri.getQueryParameter(QUERY_PARAMETER_SORT) == null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER, String.valueOf(afterId));
+            } else if (afterKey != null) {
+                builder.appendQueryParameter(QUERY_PARAMETER_AFTER, String.valueOf(afterId))
+                        .appendQueryParameter(QUERY_PARAMETER_AFTER_KEY, afterKey);
+            }
+            return builder.appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit)).build();
+        }
+
+        /**
+         * Content URI that is notified when phones are added to or removed from the list.
+         * It cannot be queried. Changes to an existing phone are only notified on the content
+         * URI of that phone, so observers of a list can update just the row that changed.
+         */
+        public static final Uri LIST_NOTIFICATION_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_PHONE_LIST);
+
+        /**
+         * The content URI to search the phones by name. Use {@link #buildSearchUri} to add the
+         * search text. The results are sorted with the best matches first.
+         */
+        public static final Uri SEARCH_URI = Uri.withAppendedPath(CONTENT_URI, PATH_SEARCH);
+
+        /**
+         * Query parameter of the {@link #SEARCH_URI} with the text to search for. Every word of
+         * the text has to match the start of a word in the phone name.
+         */
+        public static final String QUERY_PARAMETER_QUERY = "q";
+
+        /**
+         * Returns the content URI for the best {@code limit} phones whose name matches the given
+         * search text.
+         */
+        public static Uri buildSearchUri(String query, int limit) {
+            return SEARCH_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_QUERY, query)
+                    .appendQueryParameter(QUERY_PARAMETER_LIMIT, String.valueOf(limit))
+                    .build();
+        }
+
+        /**
+         * The content URI to read all the phones as a CSV file with
+         * {@link ContentResolver#openInputStream}. The first line is the header with the names
+         * of the columns, the file can be imported again as it is.
+         * A query of the URI answers the {@link android.provider.OpenableColumns} of the file:
+         * its {@link #EXPORT_FILE_NAME}, and a null size, since the file is written while it is
+         * read.
+         */
+        public static final Uri EXPORT_URI = Uri.withAppendedPath(CONTENT_URI, PATH_EXPORT);
+
+        /** Display name of the file at {@link #EXPORT_URI} */
+        public static final String EXPORT_FILE_NAME = "phones.csv";
+
+        /** The MIME type of the {@link #EXPORT_URI} */
+        public static final String CSV_TYPE = "text/csv";
+
         /** Name of database table for phones */
-        public final static String TABLE_NAME = "phones";
+        public final static String TABLE_NAME = PhoneSchema.TABLE_PHONES;
 
         /**
          * Unique ID number for the phone (only for use in the database table).
@@ -52,56 +189,610 @@ public final class PhoneContract {
          *
          * Type: TEXT
          */
-        public final static String COLUMN_PHONE_NAME ="name";
+        public final static String COLUMN_PHONE_NAME = PhoneSchema.COLUMN_PHONE_NAME;
 
         /**
          * Price of the phone.
          *
          * Type: INTEGER
          */
-        public final static String COLUMN_PRICE = "price";
+        public final static String COLUMN_PRICE = PhoneSchema.COLUMN_PRICE;
 
         /**
-         * Supplier of the phone.
-         *
-         * The only possible values are {@link #SUPPLIER_UNKNOWN}, {@link #SUPPLIER_APPLE,},
-         * or {@link #SUPPLIER_SONY} or {@link #SUPPLIER_SAMSUNG}or {@link #SUPPLIER_HUAWEI}.
+         * Supplier of the phone, the {@link SupplierEntry#_ID} of one of the suppliers at
+         * {@link SupplierEntry#CONTENT_URI}. Every inventory starts with {@link #SUPPLIER_UNKNOWN},
+         * {@link #SUPPLIER_APPLE}, {@link #SUPPLIER_SONY}, {@link #SUPPLIER_SAMSUNG} and
+         * {@link #SUPPLIER_HUAWEI}.
          *
          * Type: INTEGER
          */
-        public final static String COLUMN_SUPPLIER = "supplier";
+        public final static String COLUMN_SUPPLIER = PhoneSchema.COLUMN_SUPPLIER;
+
+        /**
+         * Name of the supplier of the phone. It is not stored with the phone, but it can be part
+         * of the projection of any query of phones, which then looks the supplier up.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER_NAME = PhoneSchema.COLUMN_SUPPLIER_NAME;
 
         /**
          * Supplier number.
          *
          * Type: TEXT
          */
-        public final static String COLUMN_SUPPLIER_NUMBER = "number";
+        public final static String COLUMN_SUPPLIER_NUMBER = PhoneSchema.COLUMN_SUPPLIER_NUMBER;
 
         /**
          * Quantity in stock.
          *
          * Type: INTEGER
          */
-        public final static String COLUMN_QUANTITY = "quantity";
+        public final static String COLUMN_QUANTITY = PhoneSchema.COLUMN_QUANTITY;
+
+        /**
+         * Reorder point of the phone. The phone is low on stock, and listed at
+         * {@link LowStockEntry#CONTENT_URI}, while its quantity is at or below it. Defaults to 0,
+         * which lists the phones that are out of stock.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_REORDER_THRESHOLD = PhoneSchema.COLUMN_REORDER_THRESHOLD;
+
+        /**
+         * Version of the phone. It starts at 1 and goes up by one with every change of the phone,
+         * made through the provider or not. It cannot be written, see
+         * {@link #QUERY_PARAMETER_EXPECTED_VERSION} to make an update depend on it.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_VERSION = PhoneSchema.COLUMN_VERSION;
+
+        /**
+         * Query parameter of the content URI of a single phone with the {@link #COLUMN_VERSION}
+         * that an update expects the phone to be at. The update is only applied if nobody changed
+         * the phone since it was read at that version, otherwise nothing is written and the update
+         * returns 0, the same as for a phone that does not exist. {@link #METHOD_UPDATE_PHONE}
+         * tells the two apart. The writer can then query the phone for its current values and
+         * version, merge its changes into them and try again.
+         * In a batch, {@link android.content.ContentProviderOperation.Builder#withExpectedCount}
+         * of 1 turns the conflict into an {@link android.content.OperationApplicationException}
+         * that rolls the whole batch back.
+         */
+        public static final String QUERY_PARAMETER_EXPECTED_VERSION = "expected_version";
+
+        /**
+         * Returns the given content URI of a single phone with the version that an update of it
+         * expects, see {@link #QUERY_PARAMETER_EXPECTED_VERSION}.
+         */
+        public static Uri buildVersionedUri(Uri phoneUri, long version) {
+            return phoneUri.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_EXPECTED_VERSION, String.valueOf(version))
+                    .build();
+        }
+
+        /**
+         * Name of the {@link ContentResolver#call} method that sells phones from stock.
+         * The arg is the ID of the phone, and the extras may hold {@link #EXTRA_COUNT} and
+         * {@link #EXTRA_STORE_ID}. An arg that is not a phone ID throws an IllegalArgumentException.
+         * The stock is only decreased if there are enough units left. The returned Bundle holds
+         * {@link #EXTRA_SOLD} and the quantity left in stock under {@link #COLUMN_QUANTITY}.
+         */
+        public static final String METHOD_SELL = "sell";
 
+        /**
+         * Number of units to sell with {@link #METHOD_SELL}. Defaults to 1.
+         *
+         * Type: int
+         */
+        public static final String EXTRA_COUNT = "count";
 
         /**
-         * Possible values for the supplier of the phone.
+         * Whether {@link #METHOD_SELL} took the units out of stock.
+         *
+         * Type: boolean
+         */
+        public static final String EXTRA_SOLD = "sold";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that adds a batch of stock changes in
+         * a single transaction. The arg is a token that is unique to the batch, and the extras hold
+         * {@link #EXTRA_IDS} and {@link #EXTRA_DELTAS}, and may hold {@link #EXTRA_STORE_ID}.
+         * The stock of a phone never goes below 0.
+         * A batch that is sent again with the same token is only applied once, so a sender that
+         * does not know whether its batch went through can safely send it again.
+         * The returned Bundle holds {@link #EXTRA_APPLIED} and {@link #EXTRA_QUANTITIES}.
+         */
+        public static final String METHOD_ADJUST_STOCK = "adjust_stock";
+
+        /**
+         * IDs of the phones whose stock changes with {@link #METHOD_ADJUST_STOCK}.
+         *
+         * Type: long[]
+         */
+        public static final String EXTRA_IDS = "ids";
+
+        /**
+         * Number of units to add to the stock of each phone of {@link #EXTRA_IDS}, negative to
+         * take units out of stock.
+         *
+         * Type: int[]
+         */
+        public static final String EXTRA_DELTAS = "deltas";
+
+        /**
+         * Whether {@link #METHOD_ADJUST_STOCK} applied the batch, false if it had already been
+         * applied before.
+         *
+         * Type: boolean
+         */
+        public static final String EXTRA_APPLIED = "applied";
+
+        /**
+         * Quantity in stock of each phone of {@link #EXTRA_IDS} right before
+         * {@link #METHOD_ADJUST_STOCK} changed it, or -1 where the stock did not change, because
+         * the delta was 0, the stock was already 0, there is no such phone or the batch was not
+         * applied. As the stock never goes below 0, the change that was made is the larger of
+         * the delta and minus this quantity.
+         *
+         * Type: int[]
+         */
+        public static final String EXTRA_QUANTITIES = "quantities";
+
+        /**
+         * Store of the phones that {@link #METHOD_SELL} and {@link #METHOD_ADJUST_STOCK} change.
+         * Defaults to {@link StoreEntry#DEFAULT_STORE_ID}.
+         *
+         * Type: long
+         */
+        public static final String EXTRA_STORE_ID = "store_id";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that compacts the stock history: the
+         * stock movements up to a time are folded into one snapshot per phone. The arg is the
+         * time in milliseconds since the epoch, or null for {@link StockEntry#HISTORY_RETENTION_MILLIS}
+         * ago. A later time is moved back to that, so the movements of the retention period
+         * are never folded. An arg that is not a time throws an IllegalArgumentException.
+         * The returned Bundle holds {@link #EXTRA_COMPACTED}.
+         */
+        public static final String METHOD_COMPACT_STOCK = "compact_stock";
+
+        /**
+         * Number of stock movements that {@link #METHOD_COMPACT_STOCK} folded into snapshots.
+         *
+         * Type: int
+         */
+        public static final String EXTRA_COMPACTED = "compacted";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that reports how well the provider's
+         * cache of single phones is doing. The returned Bundle holds {@link #EXTRA_CACHE_HITS},
+         * {@link #EXTRA_CACHE_MISSES} and {@link #EXTRA_CACHE_SIZE}.
+         */
+        public static final String METHOD_CACHE_STATS = "cache_stats";
+
+        /**
+         * Number of single phone queries answered from the cache.
+         *
+         * Type: int
          */
-        public static final int SUPPLIER_UNKNOWN = 0;
-        public static final int SUPPLIER_APPLE = 1;
-        public static final int SUPPLIER_SONY = 2;
-        public static final int SUPPLIER_HUAWEI = 3;
-        public static final int SUPPLIER_SAMSUNG = 4;
+        public static final String EXTRA_CACHE_HITS = "cache_hits";
+
+        /**
+         * Number of single phone queries that had to read the database.
+         *
+         * Type: int
+         */
+        public static final String EXTRA_CACHE_MISSES = "cache_misses";
+
+        /**
+         * Number of phones currently in the cache.
+         *
+         * Type: int
+         */
+        public static final String EXTRA_CACHE_SIZE = "cache_size";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that returns the latency and row
+         * statistics of the provider. The returned Bundle holds one Bundle per operation and URI,
+         * named like "query PHONES", with the EXTRA_METRICS values.
+         */
+        public static final String METHOD_METRICS = "metrics";
+
+        /** Number of operations. Type: long */
+        public static final String EXTRA_METRICS_COUNT = "count";
+
+        /** Number of rows returned or changed by the operations. Type: long */
+        public static final String EXTRA_METRICS_ROWS = "rows";
+
+        /** Number of operations that were logged as slow. Type: long */
+        public static final String EXTRA_METRICS_SLOW_COUNT = "slow_count";
+
+        /** Total time spent in the operations, in microseconds. Type: long */
+        public static final String EXTRA_METRICS_TOTAL_MICROS = "total_micros";
+
+        /** Time of the slowest operation, in microseconds. Type: long */
+        public static final String EXTRA_METRICS_MAX_MICROS = "max_micros";
+
+        /**
+         * Number of operations per latency bucket. The buckets end at 1, 2, 4, 8, 16, 32, 64,
+         * 128, 256, 512 and 1024 ms, and the last one holds the slower operations.
+         *
+         * Type: long[]
+         */
+        public static final String EXTRA_METRICS_HISTOGRAM = "histogram";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that backs up the database while it
+         * stays in use. Only the pages changed since the last backup are written. The returned
+         * Bundle holds {@link #EXTRA_GENERATION} and {@link #EXTRA_BACKUP_PAGES}.
+         */
+        public static final String METHOD_BACKUP = "backup";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that replaces the database with a
+         * backup. The arg is the generation to restore, or null for the latest one. Fails with an
+         * IllegalArgumentException if there is no such backup. The returned Bundle holds
+         * {@link #EXTRA_GENERATION}.
+         */
+        public static final String METHOD_RESTORE = "restore";
+
+        /** Generation written by {@link #METHOD_BACKUP} or read by {@link #METHOD_RESTORE}. Type: long */
+        public static final String EXTRA_GENERATION = "generation";
+
+        /** Number of database pages written by {@link #METHOD_BACKUP}. Type: int */
+        public static final String EXTRA_BACKUP_PAGES = "backup_pages";
+
+        /**
+         * Name of the {@link ContentResolver#call} method that updates a single phone only if it
+         * is still at the version it was read at, see {@link #QUERY_PARAMETER_EXPECTED_VERSION}.
+         * Unlike an update, it tells a conflict apart from a phone that does not exist. The arg
+         * is the content URI of the phone, of any store, and the extras hold the new values
+         * under {@link #EXTRA_VALUES} and the expected version under {@link #COLUMN_VERSION}.
+         * Invalid values fail with an IllegalArgumentException, the same as an update. The
+         * returned Bundle holds {@link #EXTRA_UPDATED} and {@link #EXTRA_CONFLICT}, both false
+         * if there is no such phone.
+         */
+        public static final String METHOD_UPDATE_PHONE = "update_phone";
+
+        /**
+         * New values of the phone updated by {@link #METHOD_UPDATE_PHONE}.
+         *
+         * Type: ContentValues
+         */
+        public static final String EXTRA_VALUES = "values";
+
+        /**
+         * Whether {@link #METHOD_UPDATE_PHONE} updated the phone.
+         *
+         * Type: boolean
+         */
+        public static final String EXTRA_UPDATED = "updated";
+
+        /**
+         * Whether {@link #METHOD_UPDATE_PHONE} found the phone at another version than the
+         * expected one, so nothing was written.
+         *
+         * Type: boolean
+         */
+        public static final String EXTRA_CONFLICT = "conflict";
+
+        /**
+         * IDs of the suppliers every inventory starts with.
+         */
+        public static final int SUPPLIER_UNKNOWN = PhoneSchema.SUPPLIER_UNKNOWN;
+        public static final int SUPPLIER_APPLE = PhoneSchema.SUPPLIER_APPLE;
+        public static final int SUPPLIER_SONY = PhoneSchema.SUPPLIER_SONY;
+        public static final int SUPPLIER_HUAWEI = PhoneSchema.SUPPLIER_HUAWEI;
+        public static final int SUPPLIER_SAMSUNG = PhoneSchema.SUPPLIER_SAMSUNG;
 
         /**
          * Returns whether or not the given supplier is {@link #SUPPLIER_UNKNOWN}, {@link #SUPPLIER_APPLE,},
          * or {@link #SUPPLIER_SONY} or {@link #SUPPLIER_SAMSUNG}or {@link #SUPPLIER_HUAWEI}.
+         *
+         * @deprecated Suppliers can be added at {@link SupplierEntry#CONTENT_URI}, which lists
+         * all the valid ones.
          */
+        @Deprecated
         public static boolean isValidSupplier(int supplier) {
-            return supplier == SUPPLIER_UNKNOWN || supplier == SUPPLIER_APPLE || supplier == SUPPLIER_SONY || supplier == SUPPLIER_HUAWEI || supplier == SUPPLIER_SAMSUNG;
+            return PhoneValidator.isValidSupplier(supplier);
         }
     }
 
+    /**
+     * Inner class that defines constant values for the inventory summary table.
+     * Each entry in the table holds the totals of the phones of a single supplier. The totals are
+     * kept up to date by the database whenever a phone changes, so reading them never has to go
+     * through the phones themselves.
+     */
+    public static final class StatsEntry {
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the totals of all suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STATS;
+
+        /**
+         * The content URI to read the inventory totals, one row per supplier. The totals of the
+         * whole inventory are the sums of these rows. It is notified whenever a phone changes.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(PhoneEntry.CONTENT_URI, PATH_STATS);
+
+        /** Name of database table for the inventory totals */
+        public final static String TABLE_NAME = PhoneSchema.TABLE_INVENTORY_SUMMARY;
+
+        /**
+         * Supplier of the phones counted in this row, one of the supplier values of
+         * {@link PhoneEntry#COLUMN_SUPPLIER}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_SUPPLIER = PhoneSchema.COLUMN_SUPPLIER;
+
+        /**
+         * Number of different phones of the supplier.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PHONE_COUNT = PhoneSchema.COLUMN_PHONE_COUNT;
+
+        /**
+         * Total number of units in stock of the phones of the supplier.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNITS = PhoneSchema.COLUMN_UNITS;
+
+        /**
+         * Total value of the stock of the supplier: the sum of price times quantity of its phones.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_STOCK_VALUE = PhoneSchema.COLUMN_STOCK_VALUE;
+    }
+
+    /**
+     * Inner class that defines constant values for the stock history of the phones.
+     * Every change of stock is appended to a ledger of stock movements, which keeps the
+     * {@link PhoneEntry#COLUMN_QUANTITY} of the phones up to date. Old movements are compacted
+     * into snapshots, from which the stock at any time can still be read quickly.
+     */
+    public static final class StockEntry {
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for the stock of all phones at a given time.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STOCK;
+
+        /**
+         * The content URI to read the stock of the phones at the time given by
+         * {@link #QUERY_PARAMETER_AS_OF}, one row per phone with {@link PhoneEntry#_ID} and
+         * {@link PhoneEntry#COLUMN_QUANTITY}. It is notified whenever a phone changes.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(PhoneEntry.CONTENT_URI, PATH_STOCK);
+
+        /**
+         * Query parameter of the time of the stock, in milliseconds since the epoch.
+         * Defaults to now.
+         */
+        public static final String QUERY_PARAMETER_AS_OF = "as_of";
+
+        /**
+         * How long stock movements are kept one by one before they are compacted into snapshots.
+         * The stock at a time further back is the stock of the snapshot before that time.
+         */
+        public static final long HISTORY_RETENTION_MILLIS = 90L * 24 * 60 * 60 * 1000;
+
+        /** Name of database table for the stock movements */
+        public final static String TABLE_NAME = PhoneSchema.TABLE_STOCK_MOVEMENTS;
+
+        /**
+         * Possible reasons of a stock movement.
+         */
+        public static final int REASON_INITIAL = PhoneSchema.REASON_INITIAL;
+        public static final int REASON_SALE = PhoneSchema.REASON_SALE;
+        public static final int REASON_ADJUSTMENT = PhoneSchema.REASON_ADJUSTMENT;
+        public static final int REASON_CORRECTION = PhoneSchema.REASON_CORRECTION;
+
+        /**
+         * Returns the content URI of the stock of all phones at the given time.
+         */
+        public static Uri buildAsOfUri(long timeMillis) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(QUERY_PARAMETER_AS_OF, String.valueOf(timeMillis))
+                    .build();
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the phones that are low on stock, that is whose
+     * {@link PhoneEntry#COLUMN_QUANTITY} is at or below their {@link PhoneEntry#COLUMN_REORDER_THRESHOLD}.
+     */
+    public static final class LowStockEntry {
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of phones that are low on stock.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_LOW_STOCK;
+
+        /**
+         * The content URI to read the phones that are low on stock, with the columns of
+         * {@link PhoneEntry}. They are sorted by quantity, lowest first, unless another sort
+         * order is given.
+         *
+         * Phones added to or removed from the inventory notify this URI. A phone crossing its
+         * threshold notifies its URI below {@link #CROSSINGS_URI} instead.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(PhoneEntry.CONTENT_URI, PATH_LOW_STOCK);
+
+        /**
+         * When a change of a phone makes it cross its threshold, in either direction, the URI of
+         * that phone returned by {@link #buildPhoneUri} is notified. Observers of this URI that
+         * also watch its descendants hear of every phone that became low on stock, or no longer
+         * is, and of nothing else. It lies outside {@link PhoneEntry#CONTENT_URI}, so the
+         * observers of the phones do not hear of a change twice. It cannot be queried.
+         */
+        public static final Uri CROSSINGS_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_LOW_STOCK_CROSSINGS);
+
+        /**
+         * Returns the URI that is notified when the phone with the given ID crosses its threshold.
+         * It cannot be queried.
+         */
+        public static Uri buildPhoneUri(long id) {
+            return ContentUris.withAppendedId(CROSSINGS_URI, id);
+        }
+    }
+
+    /**
+     * Inner class that defines constant values for the suppliers database table.
+     * Each entry in the table represents a single supplier, which phones refer to by its ID.
+     */
+    public static final class SupplierEntry implements BaseColumns {
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of suppliers.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single supplier.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SUPPLIERS;
+
+        /**
+         * The content URI to access the suppliers. New suppliers are inserted here with a
+         * {@link #COLUMN_SUPPLIER_NAME} only, and get the next free ID. A supplier can be renamed
+         * at its own URI, but not deleted, since phones may still refer to it.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_SUPPLIERS);
+
+        /** Name of database table for suppliers */
+        public final static String TABLE_NAME = PhoneSchema.TABLE_SUPPLIERS;
+
+        /**
+         * Unique ID number for the supplier, the value of {@link PhoneEntry#COLUMN_SUPPLIER}.
+         *
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Name of the supplier, unique among the suppliers.
+         *
+         * Type: TEXT
+         */
+        public final static String COLUMN_SUPPLIER_NAME = PhoneSchema.COLUMN_SUPPLIER_NAME;
+    }
+
+    /**
+     * Inner class that defines constant values for the stores. Each store keeps its phones in a
+     * database file of its own, so the writes of one store never wait for another. The phones at
+     * {@link PhoneEntry#CONTENT_URI} are those of the {@link #DEFAULT_STORE_ID} store, and the
+     * phones of any store, including that one, are at {@link #buildPhonesUri}.
+     *
+     * A store only takes single phones and lists of them: its search, totals, stock history and
+     * suppliers are those of its own database, but are not offered at its URIs yet.
+     */
+    public static final class StoreEntry implements BaseColumns {
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a list of stores.
+         */
+        public static final String CONTENT_LIST_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STORES;
+
+        /**
+         * The MIME type of the {@link #CONTENT_URI} for a single store.
+         */
+        public static final String CONTENT_ITEM_TYPE =
+                ContentResolver.CURSOR_ITEM_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STORES;
+
+        /**
+         * The MIME type of the {@link #STATS_URI} for the totals of every store.
+         */
+        public static final String STATS_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_STORES
+                        + "." + PATH_STATS;
+
+        /**
+         * The content URI to list the stores, one row with the {@link #_ID} of each. Inserting
+         * empty values here opens a new store with the next free ID. A store other than the
+         * default one is deleted at its own URI, together with all of its phones.
+         */
+        public static final Uri CONTENT_URI = Uri.withAppendedPath(BASE_CONTENT_URI, PATH_STORES);
+
+        /**
+         * The content URI to read the totals of every store, one row per store with the sums of
+         * its {@link StatsEntry} rows. The stores are read together, but each one from the last
+         * commit it had when the query started. It is notified whenever a phone of any store
+         * changes.
+         */
+        public static final Uri STATS_URI = Uri.withAppendedPath(CONTENT_URI, PATH_STATS);
+
+        /** ID of the store whose phones are at {@link PhoneEntry#CONTENT_URI} */
+        public static final long DEFAULT_STORE_ID = 1;
+
+        /**
+         * Unique ID number for the store.
+         *
+         * Type: INTEGER
+         */
+        public final static String _ID = BaseColumns._ID;
+
+        /**
+         * Number of different phones of the store, in {@link #STATS_URI}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_PHONE_COUNT = StatsEntry.COLUMN_PHONE_COUNT;
+
+        /**
+         * Total number of units in stock in the store, in {@link #STATS_URI}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_UNITS = StatsEntry.COLUMN_UNITS;
+
+        /**
+         * Total value of the stock of the store, in {@link #STATS_URI}.
+         *
+         * Type: INTEGER
+         */
+        public final static String COLUMN_STOCK_VALUE = StatsEntry.COLUMN_STOCK_VALUE;
+
+        /**
+         * Returns the content URI of the phones of the given store. The phones are queried,
+         * inserted, updated and deleted there like at {@link PhoneEntry#CONTENT_URI}, and a
+         * single phone is at its ID appended to it. The search, the export, the stock and the
+         * low stock list of the store are below it as well, see {@link #buildStoreUri}.
+         */
+        public static Uri buildPhonesUri(long storeId) {
+            return ContentUris.withAppendedId(CONTENT_URI, storeId).buildUpon()
+                    .appendPath(PATH_PHONES).build();
+        }
+
+        /**
+         * Returns the URI of the given store that matches a URI below {@link PhoneEntry#CONTENT_URI},
+         * such as {@link PhoneEntry#buildSearchUri} or {@link LowStockEntry#CONTENT_URI}, with the
+         * same query parameters.
+         *
+         * @throws IllegalArgumentException if the URI is not one of the phones
+         */
+        public static Uri buildStoreUri(long storeId, Uri phonesUri) {
+            List<String> segments = phonesUri.getPathSegments();
+            if (segments.isEmpty() || !PATH_PHONES.equals(segments.get(0))) {
+                throw new IllegalArgumentException("Not a URI of the phones: " + phonesUri);
+            }
+            Uri.Builder builder = buildPhonesUri(storeId).buildUpon();
+            for (String segment : segments.subList(1, segments.size())) {
+                builder.appendPath(segment);
+            }
+            return builder.encodedQuery(phonesUri.getEncodedQuery()).build();
+        }
+    }
 }
@@ -0,0 +1,259 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.util.Log;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.SupplierEntry;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Imports phones from a CSV file into {@link PhoneProvider}. The file is parsed one record at a
+ * time and the phones are inserted in batches with {@link ContentResolver#bulkInsert}, so each
+ * batch is a single transaction and the file is never held in memory as a whole.
+ *
+ * The first record is the header, naming the column of each field with the names of the
+ * {@link PhoneEntry} columns, in any order. Every row is checked with the same rules as a phone
+ * inserted through the provider, and must have the columns the table has no default for.
+ * Invalid rows are reported and skipped, the others are imported.
+ */
+final class PhoneCsvImporter {
+
+    private static final String LOG_TAG = PhoneCsvImporter.class.getSimpleName();
+
+    /**
+     * Receives the progress of an import. The methods are called on the thread of the import.
+     */
+    interface Listener {
+
+        /**
+         * Called after each batch has been inserted.
+         *
+         * @param rowsRead     Number of rows read from the file so far
+         * @param rowsImported Number of phones inserted so far
+         */
+        void onProgress(int rowsRead, int rowsImported);
+
+        /**
+         * Called for a row that was skipped because it is not a valid phone.
+         *
+         * @param line    Line of the file on which the row starts
+         * @param message Why the row is not valid
+         */
+        void onRowError(int line, String message);
+    }
+
+    /** Number of phones inserted per transaction */
+    static final int BATCH_SIZE = 1000;
+
+    /** Text columns of a phone that can be imported. They are required in the header. */
+    private static final String[] TEXT_COLUMNS = {
+            PhoneEntry.COLUMN_PHONE_NAME,
+            PhoneEntry.COLUMN_SUPPLIER_NUMBER };
+
+    /** Number columns of a phone that can be imported */
+    private static final String[] NUMBER_COLUMNS = {
+            PhoneEntry.COLUMN_PRICE,
+            PhoneEntry.COLUMN_SUPPLIER,
+            PhoneEntry.COLUMN_QUANTITY };
+
+    /**
+     * Number columns the phones table has no default for, so a row without them would be
+     * rejected by the database
+     */
+    private static final String[] REQUIRED_NUMBER_COLUMNS = {
+            PhoneEntry.COLUMN_PRICE,
+            PhoneEntry.COLUMN_QUANTITY };
+
+    /** Byte order mark that some spreadsheet apps write at the start of a UTF-8 file */
+    private static final String BYTE_ORDER_MARK = "\uFEFF";
+
+    private final ContentResolver mResolver;
+    private final Listener mListener;
+
+    PhoneCsvImporter(ContentResolver resolver, Listener listener) {
+        mResolver = resolver;
+        mListener = listener;
+    }
+
+    /**
+     * Import the phones of the CSV file read by the given reader. The reader is not closed.
+     *
+     * @return the number of phones inserted
+     * @throws IOException if the file cannot be read, or its header is not valid
+     */
+    int importFrom(Reader reader) throws IOException {
+        CsvReader csv = new CsvReader(reader);
+        List<String> record = new ArrayList<>();
+        if (!csv.readRecord(record)) {
+            throw new IOException("The file is empty");
+        }
+        String[] columns = readHeader(record);
+        Set<Integer> suppliers = querySupplierIds();
+
+        ContentValues[] batch = new ContentValues[BATCH_SIZE];
+        int[] batchLines = new int[BATCH_SIZE];
+        int batchSize = 0;
+        int rowsRead = 0;
+        int rowsImported = 0;
+        while (csv.readRecord(record)) {
+            // Skip empty lines
+            if (record.size() == 1 && record.get(0).isEmpty()) {
+                continue;
+            }
+            rowsRead++;
+
+            ContentValues phone;
+            try {
+                phone = toPhone(columns, record);
+                PhoneProvider.validatePhone(phone);
+                // A phone of an unknown supplier would fail the whole batch
+                if (!suppliers.contains(phone.getAsInteger(PhoneEntry.COLUMN_SUPPLIER))) {
+                    throw new IllegalArgumentException("Phone requires valid supplier");
+                }
+            } catch (IllegalArgumentException e) {
+                mListener.onRowError(csv.getRecordLine(), e.getMessage());
+                continue;
+            }
+
+            batch[batchSize] = phone;
+            batchLines[batchSize++] = csv.getRecordLine();
+            if (batchSize == BATCH_SIZE) {
+                rowsImported += insertBatch(batch, batchLines);
+                batchSize = 0;
+                mListener.onProgress(rowsRead, rowsImported);
+            }
+        }
+
+        if (batchSize > 0) {
+            ContentValues[] lastBatch = new ContentValues[batchSize];
+            System.arraycopy(batch, 0, lastBatch, 0, batchSize);
+            rowsImported += insertBatch(lastBatch, batchLines);
+        }
+        mListener.onProgress(rowsRead, rowsImported);
+        return rowsImported;
+    }
+
+    /**
+     * Insert a batch of checked phones, read from the given lines. If the database still rejects
+     * one of them, the provider rolls back the whole batch, so its phones are inserted one by one
+     * instead and only the rejected ones are reported. Returns the number of phones inserted.
+     */
+    private int insertBatch(ContentValues[] batch, int[] lines) {
+        try {
+            return mResolver.bulkInsert(PhoneEntry.CONTENT_URI, batch);
+        } catch (IllegalArgumentException e) {
+            Log.w(LOG_TAG, "Batch rejected, inserting its phones one by one", e);
+        }
+
+        int rowsImported = 0;
+        for (int i = 0; i < batch.length; i++) {
+            try {
+                if (mResolver.insert(PhoneEntry.CONTENT_URI, batch[i]) != null) {
+                    rowsImported++;
+                    continue;
+                }
+                mListener.onRowError(lines[i], "Phone was rejected by the database");
+            } catch (IllegalArgumentException e) {
+                mListener.onRowError(lines[i], e.getMessage());
+            }
+        }
+        return rowsImported;
+    }
+
+    /**
+     * Returns the IDs of the suppliers the imported phones can have.
+     */
+    private Set<Integer> querySupplierIds() throws IOException {
+        Cursor cursor = mResolver.query(SupplierEntry.CONTENT_URI, new String[]{SupplierEntry._ID},
+                null, null, null);
+        if (cursor == null) {
+            throw new IOException("Cannot read the suppliers");
+        }
+        try {
+            Set<Integer> ids = new HashSet<>();
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getInt(0));
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Check the header record and return the column of each field.
+     */
+    private static String[] readHeader(List<String> header) throws IOException {
+        String[] columns = new String[header.size()];
+        for (int i = 0; i < columns.length; i++) {
+            String column = header.get(i).trim();
+            if (i == 0 && column.startsWith(BYTE_ORDER_MARK)) {
+                column = column.substring(BYTE_ORDER_MARK.length());
+            }
+            if (!contains(TEXT_COLUMNS, column) && !contains(NUMBER_COLUMNS, column)) {
+                throw new IOException("Unknown column " + column + " in the header");
+            }
+            columns[i] = column;
+        }
+        for (String required : TEXT_COLUMNS) {
+            if (!contains(columns, required)) {
+                throw new IOException("Column " + required + " is missing from the header");
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Turn a record into the values of a phone. An empty supplier is left out, so the phone gets
+     * the default supplier. An empty price or quantity is an error.
+     */
+    private static ContentValues toPhone(String[] columns, List<String> record) {
+        if (record.size() != columns.length) {
+            throw new IllegalArgumentException("Expected " + columns.length + " fields but found "
+                    + record.size());
+        }
+
+        ContentValues phone = new ContentValues(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            String value = record.get(i);
+            if (contains(TEXT_COLUMNS, columns[i])) {
+                phone.put(columns[i], value);
+                continue;
+            }
+
+            value = value.trim();
+            if (value.isEmpty()) {
+                continue;
+            }
+            try {
+                phone.put(columns[i], Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid " + columns[i] + " " + value);
+            }
+        }
+        for (String column : REQUIRED_NUMBER_COLUMNS) {
+            if (!phone.containsKey(column)) {
+                throw new IllegalArgumentException("Phone requires a " + column);
+            }
+        }
+        return phone;
+    }
+
+    private static boolean contains(String[] array, String value) {
+        for (String element : array) {
+            if (element.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,98 +1,385 @@
 package com.example.android.inventorymmbv2;
 
-import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
+import android.database.CharArrayBuffer;
 import android.database.Cursor;
-import android.net.Uri;
-import android.util.Log;
+import android.support.v4.util.LongSparseArray;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
+import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.CursorAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
 
 /**
- * {@link PhoneCursorAdapter} is an adapter for a list or grid view
- * that uses a {@link Cursor} of pet data as its data source. This adapter knows
+ * {@link PhoneCursorAdapter} is an adapter for a {@link RecyclerView}
+ * that uses a {@link Cursor} of phone data as its data source. This adapter knows
  * how to create list items for each row of phone data in the {@link Cursor}.
  */
-public class PhoneCursorAdapter extends CursorAdapter {
+public class PhoneCursorAdapter extends RecyclerView.Adapter<PhoneCursorAdapter.PhoneViewHolder>
+        implements StockAdjuster.Listener {
+
+    /**
+     * Interface for receiving clicks on a phone in the list.
+     */
+    public interface OnPhoneClickListener {
+
+        /**
+         * Called when the user clicks on the phone with the given ID.
+         */
+        void onPhoneClick(long id);
+    }
+
+    /** App context */
+    private final Context mContext;
+
+    /** Listener for clicks on a phone */
+    private final OnPhoneClickListener mListener;
+
+    /** Stock changes made with the cart button that are not in the database yet */
+    private final StockAdjuster mStockAdjuster;
+
+    /** The cursor from which to get the data, or null if there is no data yet */
+    private Cursor mCursor;
+
+    /** Column indices of {@link #mCursor}, resolved once per cursor */
+    private ColumnIndices mColumns;
+
+    /**
+     * Phones that changed after {@link #mCursor} was loaded, by ID. Their values are shown
+     * instead of the ones in the cursor, until a new cursor is swapped in.
+     */
+    private final LongSparseArray<ContentValues> mUpdatedPhones = new LongSparseArray<>();
+
+    /**
+     * Positions of the phones of {@link #mCursor} by ID, or null until a phone of that cursor is
+     * looked up, see {@link #findPosition}
+     */
+    private LongSparseArray<Integer> mPositions;
+
+    /**
+     * Click handler shared by all the list items. The view holder is stored as the tag of the
+     * clicked view, so the handler can find out which phone was clicked.
+     */
+    private final View.OnClickListener mClickHandler = new View.OnClickListener() {
+        @Override
+        public void onClick(View view) {
+            PhoneViewHolder holder = (PhoneViewHolder) view.getTag();
+            int position = holder.getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION) {
+                return;
+            }
+
+            long phoneId = getItemId(position);
+            if (view.getId() == R.id.cart_view) {
+                // Take one unit out of the stock shown on screen right away. The stock adjuster
+                // adds up the taps and writes them to the provider in one go.
+                if (getQuantity(position) < 1) {
+                    Toast.makeText(mContext, R.string.sell_out_of_stock, Toast.LENGTH_SHORT).show();
+                } else {
+                    mStockAdjuster.adjust(phoneId, -1);
+                }
+            } else {
+                mListener.onPhoneClick(phoneId);
+            }
+        }
+    };
 
     /**
      * Constructs a new {@link PhoneCursorAdapter}.
      *
-     * @param context The context
-     * @param c       The cursor from which to get the data.
+     * @param context  The context
+     * @param listener The listener for clicks on a phone
      */
-    public PhoneCursorAdapter(Context context, Cursor c) {
-        super(context, c, 0 /* flags */);
+    public PhoneCursorAdapter(Context context, OnPhoneClickListener listener) {
+        mContext = context.getApplicationContext();
+        mListener = listener;
+        mStockAdjuster = StockAdjuster.getInstance(context);
+        setHasStableIds(true);
     }
 
     /**
-     * Makes a new blank list item view. No data is set (or bound) to the views yet.
-     *
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already
-     *                moved to the correct position.
-     * @param parent  The parent to which the new view is attached to
-     * @return the newly created list item view.
+     * Makes a new blank list item view and its view holder. No data is set (or bound) to the
+     * views yet.
      */
     @Override
-    public View newView(Context context, Cursor cursor, ViewGroup parent) {
-        return LayoutInflater.from(context).inflate(R.layout.list_item, parent, false);
+    public PhoneViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item, parent, false);
+        PhoneViewHolder holder = new PhoneViewHolder(view);
+
+        // Both the list item and its cart button go to the shared click handler
+        view.setTag(holder);
+        view.setOnClickListener(mClickHandler);
+        holder.cartImageView.setTag(holder);
+        holder.cartImageView.setOnClickListener(mClickHandler);
+        return holder;
     }
 
     /**
-     * This method binds the phone data (in the current row pointed to by cursor) to the given
-     * list item layout. For example, the name for the current phone can be set on the name TextView
-     * in the list item layout.
-     *
-     * @param view    Existing view, returned earlier by newView() method
-     * @param context app context
-     * @param cursor  The cursor from which to get the data. The cursor is already moved to the
-     *                correct row.
+     * This method binds the phone data (in the row of the cursor at the given position) to the
+     * views of the given view holder. For example, the name for the current phone is set on the
+     * name TextView in the list item layout.
      */
     @Override
-    public void bindView(View view, final Context context, Cursor cursor) {
-        // Find individual views that we want to modify in the list item layout
-        TextView nameTextView = view.findViewById(R.id.name_tv);
-        TextView priceTextView = view.findViewById(R.id.price_tv);
-        final TextView quantityTextView = view.findViewById(R.id.in_stock_tv);
-        ImageView cartImageView = view.findViewById(R.id.cart_view);
-        // Find the columns of pet attributes that we're interested in
-        int nameColumnIndex = cursor.getColumnIndex(PhoneContract.PhoneEntry.COLUMN_PHONE_NAME);
-        int priceColumnIndex = cursor.getColumnIndex(PhoneContract.PhoneEntry.COLUMN_PRICE);
-        int quantityColumnIndex = cursor.getColumnIndex(PhoneContract.PhoneEntry.COLUMN_QUANTITY);
-        int idColumnIndex = cursor.getColumnIndex(PhoneContract.PhoneEntry._ID);
-
-        // Read the pet attributes from the Cursor for the current phone
-        String phoneName = cursor.getString(nameColumnIndex);
-        String phonePrice = cursor.getString(priceColumnIndex);
-        String phoneQuantity = cursor.getString(quantityColumnIndex);
-        final int phoneId = cursor.getInt(idColumnIndex);
+    public void onBindViewHolder(PhoneViewHolder holder, int position) {
+        if (!mCursor.moveToPosition(position)) {
+            throw new IllegalStateException("Cannot move cursor to position " + position);
+        }
+
+        // A phone that changed since the cursor was loaded is shown with its new values
+        long id = mCursor.getLong(mColumns.id);
+        ContentValues updatedPhone = mUpdatedPhones.get(id);
+        if (updatedPhone != null) {
+            holder.nameTextView.setText(updatedPhone.getAsString(PhoneEntry.COLUMN_PHONE_NAME));
+            holder.priceTextView.setText(updatedPhone.getAsString(PhoneEntry.COLUMN_PRICE));
+            holder.quantityTextView.setText(String.valueOf(getQuantity(position)));
+            return;
+        }
+
+        // Copy the phone attributes into the buffers of the view holder, so binding a row
+        // does not allocate new Strings
+        mCursor.copyStringToBuffer(mColumns.name, holder.nameBuffer);
+        mCursor.copyStringToBuffer(mColumns.price, holder.priceBuffer);
+        mCursor.copyStringToBuffer(mColumns.quantity, holder.quantityBuffer);
 
         // Update the TextViews with the attributes for the current phone
-        nameTextView.setText(phoneName);
-        priceTextView.setText("Price: " + phonePrice);
-        quantityTextView.setText(phoneQuantity);
-
-        cartImageView.setOnClickListener(new View.OnClickListener() {
-            @Override
-            public void onClick(View v) {
-                int stock = Integer.valueOf(quantityTextView.getText().toString());
-                stock = stock - 1;
-
-                // Create a ContentValues object where column names are the keys,
-                // and phone attributes from the editor are the values.
-                ContentValues values = new ContentValues();
-                values.put(PhoneContract.PhoneEntry.COLUMN_QUANTITY, stock);
-
-                Uri currentPhoneUri = ContentUris.withAppendedId(PhoneContract.PhoneEntry.CONTENT_URI, phoneId);
-                context.getContentResolver().update(currentPhoneUri, values, null, null);
-                Log.d("malgo", "the id is " + phoneId);
+        setText(holder.nameTextView, holder.nameBuffer);
+        setText(holder.priceTextView, holder.priceBuffer);
+        if (!mStockAdjuster.hasChanges(id)) {
+            setText(holder.quantityTextView, holder.quantityBuffer);
+        } else {
+            // Stock changes that are still being written are shown as if they were done
+            holder.quantityTextView.setText(String.valueOf(getQuantity(position)));
+        }
+    }
+
+    /**
+     * Returns the quantity of the phone at the given position as shown in the list, including
+     * the stock changes that have not been written yet.
+     */
+    private int getQuantity(int position) {
+        mCursor.moveToPosition(position);
+        long id = mCursor.getLong(mColumns.id);
+        ContentValues updatedPhone = mUpdatedPhones.get(id);
+        int quantity = updatedPhone != null
+                ? updatedPhone.getAsInteger(PhoneEntry.COLUMN_QUANTITY)
+                : mCursor.getInt(mColumns.quantity);
+        return mStockAdjuster.getShownQuantity(id, quantity);
+    }
+
+    private static void setText(TextView textView, CharArrayBuffer buffer) {
+        textView.setText(buffer.data, 0, buffer.sizeCopied);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mCursor == null ? 0 : mCursor.getCount();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if (mCursor == null || !mCursor.moveToPosition(position)) {
+            return RecyclerView.NO_ID;
+        }
+        return mCursor.getLong(mColumns.id);
+    }
+
+    /**
+     * Show new values for a single phone without loading the whole list again. Only the list
+     * item of that phone is rebound. Phones that are not in the list are ignored.
+     *
+     * @param id     The ID of the phone that changed
+     * @param values The new name, price and quantity of the phone
+     */
+    public void updatePhone(long id, ContentValues values) {
+        int position = findPosition(id);
+        if (position != RecyclerView.NO_POSITION) {
+            mUpdatedPhones.put(id, values);
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * Returns the name, price and quantity the list shows for the phone with the given ID, or
+     * null if the phone is not in the list.
+     */
+    public ContentValues getListedPhone(long id) {
+        int position = findPosition(id);
+        if (position == RecyclerView.NO_POSITION) {
+            return null;
+        }
+        ContentValues updatedPhone = mUpdatedPhones.get(id);
+        if (updatedPhone != null) {
+            return updatedPhone;
+        }
+        mCursor.moveToPosition(position);
+        ContentValues values = new ContentValues();
+        values.put(PhoneEntry.COLUMN_PHONE_NAME, mCursor.getString(mColumns.name));
+        values.put(PhoneEntry.COLUMN_PRICE, mCursor.getInt(mColumns.price));
+        values.put(PhoneEntry.COLUMN_QUANTITY, mCursor.getInt(mColumns.quantity));
+        return values;
+    }
+
+    /**
+     * Show the new stock of a phone after a change of the {@link StockAdjuster}.
+     */
+    @Override
+    public void onStockAdjusted(long id) {
+        int position = findPosition(id);
+        if (position != RecyclerView.NO_POSITION) {
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * Returns the position of the phone with the given ID, or {@link RecyclerView#NO_POSITION}
+     * if it is not in the list. The cursor is only read once, by the first lookup after it was
+     * swapped in, so a change of a single phone does not walk the whole list on the main thread.
+     */
+    private int findPosition(long id) {
+        if (mCursor == null) {
+            return RecyclerView.NO_POSITION;
+        }
+        if (mPositions == null) {
+            mPositions = new LongSparseArray<>(mCursor.getCount());
+            for (int position = 0; mCursor.moveToPosition(position); position++) {
+                mPositions.put(mCursor.getLong(mColumns.id), position);
             }
-        });
+        }
+        Integer position = mPositions.get(id);
+        return position == null ? RecyclerView.NO_POSITION : position;
+    }
+
+    /**
+     * Swap in a new cursor. The rows of the old and the new cursor are compared, so only the
+     * list items that were added, removed or changed are updated. The old cursor is not closed.
+     *
+     * @param newCursor The new cursor to be used, or null if there is no data
+     */
+    public void swapCursor(Cursor newCursor) {
+        if (newCursor == mCursor) {
+            return;
+        }
+
+        // The new cursor already has the latest values of the updated phones, and its own positions
+        mUpdatedPhones.clear();
+        mPositions = null;
+
+        Cursor oldCursor = mCursor;
+        ColumnIndices oldColumns = mColumns;
+        ColumnIndices newColumns = newCursor == null ? null : new ColumnIndices(newCursor);
+
+        if (oldCursor == null || newCursor == null) {
+            mCursor = newCursor;
+            mColumns = newColumns;
+            notifyDataSetChanged();
+            return;
+        }
+
+        // The old cursor is still open here, the loader only closes it after delivering the new one
+        DiffUtil.DiffResult diff = DiffUtil.calculateDiff(
+                new CursorDiffCallback(oldCursor, oldColumns, newCursor, newColumns), false);
+        mCursor = newCursor;
+        mColumns = newColumns;
+        diff.dispatchUpdatesTo(this);
+    }
+
+    /**
+     * Holds the views of a list item, so they are only looked up once.
+     */
+    static class PhoneViewHolder extends RecyclerView.ViewHolder {
+
+        final TextView nameTextView;
+        final TextView priceTextView;
+        final TextView quantityTextView;
+        final ImageView cartImageView;
+
+        /** Buffers reused every time a row is bound to this view holder */
+        final CharArrayBuffer nameBuffer = new CharArrayBuffer(32);
+        final CharArrayBuffer priceBuffer = new CharArrayBuffer(8);
+        final CharArrayBuffer quantityBuffer = new CharArrayBuffer(8);
+
+        PhoneViewHolder(View view) {
+            super(view);
+            nameTextView = view.findViewById(R.id.name_tv);
+            priceTextView = view.findViewById(R.id.price_tv);
+            quantityTextView = view.findViewById(R.id.in_stock_tv);
+            cartImageView = view.findViewById(R.id.cart_view);
+        }
+    }
+
+    /**
+     * Indices of the phone columns in a cursor.
+     */
+    private static class ColumnIndices {
+
+        final int id;
+        final int name;
+        final int price;
+        final int quantity;
+
+        ColumnIndices(Cursor cursor) {
+            id = cursor.getColumnIndexOrThrow(PhoneEntry._ID);
+            name = cursor.getColumnIndexOrThrow(PhoneEntry.COLUMN_PHONE_NAME);
+            price = cursor.getColumnIndexOrThrow(PhoneEntry.COLUMN_PRICE);
+            quantity = cursor.getColumnIndexOrThrow(PhoneEntry.COLUMN_QUANTITY);
+        }
+    }
+
+    /**
+     * Compares the rows of two phone cursors by ID and by the attributes shown in the list.
+     * Both cursors may wrap the same page cursors, so each old value is read before the new
+     * cursor is moved.
+     */
+    private static class CursorDiffCallback extends DiffUtil.Callback {
+
+        private final Cursor mOldCursor;
+        private final ColumnIndices mOldColumns;
+        private final Cursor mNewCursor;
+        private final ColumnIndices mNewColumns;
+
+        CursorDiffCallback(Cursor oldCursor, ColumnIndices oldColumns,
+                           Cursor newCursor, ColumnIndices newColumns) {
+            mOldCursor = oldCursor;
+            mOldColumns = oldColumns;
+            mNewCursor = newCursor;
+            mNewColumns = newColumns;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return mOldCursor.getCount();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mNewCursor.getCount();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            mOldCursor.moveToPosition(oldItemPosition);
+            long oldId = mOldCursor.getLong(mOldColumns.id);
+            mNewCursor.moveToPosition(newItemPosition);
+            return oldId == mNewCursor.getLong(mNewColumns.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            mOldCursor.moveToPosition(oldItemPosition);
+            long oldPrice = mOldCursor.getLong(mOldColumns.price);
+            long oldQuantity = mOldCursor.getLong(mOldColumns.quantity);
+            String oldName = mOldCursor.getString(mOldColumns.name);
+            mNewCursor.moveToPosition(newItemPosition);
+            return oldPrice == mNewCursor.getLong(mNewColumns.price)
+                    && oldQuantity == mNewCursor.getLong(mNewColumns.quantity)
+                    && TextUtils.equals(oldName, mNewCursor.getString(mNewColumns.name));
+        }
     }
-}
\ No newline at end of file
+}
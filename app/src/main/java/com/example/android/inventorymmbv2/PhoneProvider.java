@@ -1,15 +1,54 @@
 package com.example.android.inventorymmbv2;
 
+import android.content.ComponentCallbacks2;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.OpenableColumns;
+import android.text.TextUtils;
 import android.util.Log;
 
+import com.example.android.inventorymmbv2.PhoneContract.LowStockEntry;
 import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+import com.example.android.inventorymmbv2.PhoneContract.StatsEntry;
+import com.example.android.inventorymmbv2.PhoneContract.StockEntry;
+import com.example.android.inventorymmbv2.PhoneContract.StoreEntry;
+import com.example.android.inventorymmbv2.PhoneContract.SupplierEntry;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * {@link ContentProvider} for Phone inventory app.
@@ -30,6 +69,87 @@ public class PhoneProvider extends ContentProvider {
      * URI matcher code for the content URI for a single phone in the phone table
      */
     private static final int PHONE_ID = 101;
+
+    /**
+     * URI matcher code for the content URI to search the phones by name
+     */
+    private static final int PHONES_SEARCH = 102;
+
+    /**
+     * URI matcher code for the content URI for the inventory totals
+     */
+    private static final int STATS = 103;
+
+    /**
+     * URI matcher code for the content URI of the CSV export of the phones
+     */
+    private static final int PHONES_EXPORT = 104;
+
+    /**
+     * URI matcher code for the content URI of the stock of the phones at a given time
+     */
+    private static final int STOCK = 105;
+
+    /**
+     * URI matcher code for the content URI of the phones that are low on stock
+     */
+    private static final int LOW_STOCK = 106;
+
+    /**
+     * URI matcher code for the content URI for the suppliers table
+     */
+    private static final int SUPPLIERS = 107;
+
+    /**
+     * URI matcher code for the content URI for a single supplier
+     */
+    private static final int SUPPLIER_ID = 108;
+
+    /**
+     * URI matcher code for the content URI for the stores
+     */
+    private static final int STORES = 109;
+
+    /**
+     * URI matcher code for the content URI for a single store
+     */
+    private static final int STORE_ID = 110;
+
+    /**
+     * URI matcher code for the content URI for the totals of every store
+     */
+    private static final int STORES_STATS = 111;
+
+    /**
+     * URI matcher code for the content URI for the phones of a store
+     */
+    private static final int STORE_PHONES = 112;
+
+    /**
+     * URI matcher code for the content URI for a single phone of a store
+     */
+    private static final int STORE_PHONE_ID = 113;
+
+    /**
+     * URI matcher code for the content URI to search the phones of a store
+     */
+    private static final int STORE_PHONES_SEARCH = 114;
+
+    /**
+     * URI matcher code for the content URI of the CSV export of the phones of a store
+     */
+    private static final int STORE_PHONES_EXPORT = 115;
+
+    /**
+     * URI matcher code for the content URI of the stock of the phones of a store at a time
+     */
+    private static final int STORE_STOCK = 116;
+
+    /**
+     * URI matcher code for the content URI of the phones of a store that are low on stock
+     */
+    private static final int STORE_LOW_STOCK = 117;
+
     /**
      * UriMatcher object to match a content URI to a corresponding code.
      * The input passed into the constructor represents the code to return for the root URI.
@@ -44,43 +164,303 @@ public class PhoneProvider extends ContentProvider {
         // when a match is found.
         sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_PHONES, PHONES);
         sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_PHONES + "/#", PHONE_ID);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY,
+                PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_SEARCH, PHONES_SEARCH);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY,
+                PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_STATS, STATS);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY,
+                PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_EXPORT, PHONES_EXPORT);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY,
+                PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_STOCK, STOCK);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY,
+                PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_LOW_STOCK, LOW_STOCK);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_SUPPLIERS, SUPPLIERS);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_SUPPLIERS + "/#", SUPPLIER_ID);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_STORES, STORES);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_STORES + "/#", STORE_ID);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY,
+                PhoneContract.PATH_STORES + "/" + PhoneContract.PATH_STATS, STORES_STATS);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY,
+                PhoneContract.PATH_STORES + "/#/" + PhoneContract.PATH_PHONES, STORE_PHONES);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY,
+                PhoneContract.PATH_STORES + "/#/" + PhoneContract.PATH_PHONES + "/#", STORE_PHONE_ID);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_STORES + "/#/"
+                + PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_SEARCH, STORE_PHONES_SEARCH);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_STORES + "/#/"
+                + PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_EXPORT, STORE_PHONES_EXPORT);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_STORES + "/#/"
+                + PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_STOCK, STORE_STOCK);
+        sUriMatcher.addURI(PhoneContract.CONTENT_AUTHORITY, PhoneContract.PATH_STORES + "/#/"
+                + PhoneContract.PATH_PHONES + "/" + PhoneContract.PATH_LOW_STOCK, STORE_LOW_STOCK);
+    }
+
+    /**
+     * Query of the whole row of one phone with the name of its supplier, read on a miss of the
+     * row cache. The SQL is built once, so only the ID has to be bound.
+     */
+    private static final String SQL_SELECT_PHONE = "SELECT *, " + PhoneSchema.SUPPLIER_NAME_EXPRESSION
+            + " FROM " + PhoneEntry.TABLE_NAME + " WHERE " + PhoneEntry._ID + " = ?";
+
+    /**
+     * Number of phones returned by a search when the URI has no limit.
+     */
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+
+    /**
+     * Returned instead of a number of rows by the update of a single phone that exists, but is
+     * not at the version the update expects.
+     */
+    private static final int VERSION_CONFLICT = -1;
+
+    /**
+     * Tables of a search: the phones joined with the rows of the full-text index that match.
+     */
+    private static final String SEARCH_TABLES = PhoneEntry.TABLE_NAME + " JOIN " + PhoneSchema.TABLE_PHONES_FTS
+            + " ON " + PhoneEntry.TABLE_NAME + "." + PhoneEntry._ID + " = " + PhoneSchema.TABLE_PHONES_FTS + ".docid";
+
+    /**
+     * Ranking of the search results: names starting with the first search word come first,
+     * then shorter names, which match a bigger part of their name.
+     */
+    private static final String SEARCH_SORT_ORDER = PhoneEntry.TABLE_NAME + "." + PhoneEntry.COLUMN_PHONE_NAME
+            + " LIKE ? DESC, length(" + PhoneEntry.TABLE_NAME + "." + PhoneEntry.COLUMN_PHONE_NAME + "), "
+            + PhoneEntry.TABLE_NAME + "." + PhoneEntry._ID;
+
+    /**
+     * Maps the phone columns to the phones table in a search, because the full-text table
+     * has a name column too.
+     */
+    private static final HashMap<String, String> sSearchProjectionMap = new HashMap<>();
+
+    static {
+        for (String column : new String[]{PhoneEntry._ID, PhoneEntry.COLUMN_PHONE_NAME,
+                PhoneEntry.COLUMN_PRICE, PhoneEntry.COLUMN_SUPPLIER,
+                PhoneEntry.COLUMN_SUPPLIER_NUMBER, PhoneEntry.COLUMN_QUANTITY,
+                PhoneEntry.COLUMN_REORDER_THRESHOLD, PhoneEntry.COLUMN_VERSION}) {
+            sSearchProjectionMap.put(column, PhoneEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        sSearchProjectionMap.put(PhoneEntry.COLUMN_SUPPLIER_NAME, PhoneSchema.SUPPLIER_NAME_EXPRESSION);
     }
 
+    /**
+     * Columns of the CSV export, in the order of its fields.
+     */
+    private static final String[] EXPORT_COLUMNS = {
+            PhoneEntry.COLUMN_PHONE_NAME,
+            PhoneEntry.COLUMN_PRICE,
+            PhoneEntry.COLUMN_SUPPLIER,
+            PhoneEntry.COLUMN_SUPPLIER_NUMBER,
+            PhoneEntry.COLUMN_QUANTITY };
+
+    /**
+     * Maximum number of phones changed by one update or delete that are notified one by one.
+     * Above this, listeners are told that any phone may have changed.
+     */
+    private static final int MAX_ROW_NOTIFICATIONS = 50;
+
+    /**
+     * Maximum number of phones kept in {@link #mRowCache}.
+     */
+    private static final int ROW_CACHE_SIZE = 200;
+
+    /**
+     * How long a yielding {@link #applyBatch} waits for other threads before it carries on.
+     */
+    private static final long YIELD_SLEEP_MILLIS = 20;
+
+    /**
+     * How long the tokens of applied stock adjustment batches are kept, see {@link #adjustStock}.
+     */
+    private static final long STOCK_BATCH_RETENTION_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /**
+     * Directory in the files of the app where the backups of the database are kept
+     */
+    private static final String BACKUP_DIRECTORY = "backups";
+
+    /**
+     * Suffix of the database file name of a backup that is being restored next to the database
+     */
+    private static final String RESTORE_SUFFIX = ".restore";
+
     /**
      * Database helper that will provide us access to the database
      */
     private DbHelper mDbHelper;
 
     /**
-     * Initialize the provider and the database helper object.
+     * Recently queried phones, so opening a phone again does not have to read the database.
+     * Phones are removed from it when their change is notified, which is after the change
+     * has been committed.
+     */
+    private final PhoneRowCache mRowCache = new PhoneRowCache(ROW_CACHE_SIZE);
+
+    /**
+     * Content URIs changed by the batch that is currently being applied on this thread, or null
+     * if no batch is in progress.
+     */
+    private final ThreadLocal<Set<Uri>> mPendingNotifications = new ThreadLocal<>();
+
+    /**
+     * Store of the batch that is currently being applied on this thread, or null if no batch is
+     * in progress. Its operations write through it rather than look up their store again, see
+     * {@link #acquireStore}.
+     */
+    private final ThreadLocal<StoreShards.Shard> mBatchShard = new ThreadLocal<>();
+
+    /**
+     * Latency and row counts of the queries and writes, by URI matcher code
+     */
+    private final ProviderMetrics mMetrics = new ProviderMetrics();
+
+    /**
+     * The suppliers, read from the database the first time a phone is checked, so the supplier
+     * of a phone that is written is checked without a query
+     */
+    private final SupplierDirectory mSuppliers = new SupplierDirectory();
+
+    /**
+     * Held while the database is backed up or restored, so only one of them runs at a time
+     */
+    private final Object mBackupLock = new Object();
+
+    /**
+     * The databases of the stores. The default store is {@link #mDbHelper} with
+     * {@link #mSuppliers}, and its phones are served at {@link PhoneEntry#CONTENT_URI}.
+     */
+    private StoreShards mStores;
+
+    /**
+     * Initialize the provider and the database helper object, and start opening the database in
+     * the background, see {@link #warmUp}. The provider is created on the main thread before the
+     * first activity, so the database is opened while the activity is being created.
      */
     @Override
     public boolean onCreate() {
         mDbHelper = new DbHelper(getContext());
+        mStores = new StoreShards(getContext(), mDbHelper, mSuppliers);
+        final DbHelper dbHelper = mDbHelper;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                warmUp(dbHelper, mSuppliers);
+            }
+        });
         return true;
     }
 
+    /**
+     * Open the database and read what the first screen of the app needs, so its first queries
+     * find the database open and their statements compiled. Opening the database creates or
+     * upgrades it if needed. A query that comes in meanwhile waits for the open to finish
+     * instead of starting it.
+     *
+     * The first page of the list is read with the same SQL as the first query of
+     * {@link MainActivity}, and the connection pool gives that query the connection that
+     * already has the statement compiled. Reading the page also brings the pages of the index
+     * it is read from into the file cache. Errors are only logged, the first query reports them.
+     */
+    static void warmUp(DbHelper dbHelper, SupplierDirectory suppliers) {
+        StartupTrace.beginSection("PhoneProvider.warmUp");
+        try {
+            StartupTrace.beginSection("openDatabase");
+            SQLiteDatabase database;
+            try {
+                database = dbHelper.getWritableDatabase();
+            } finally {
+                StartupTrace.endSection();
+            }
+
+            if (!suppliers.isLoaded()) {
+                suppliers.load(database);
+            }
+
+            StartupTrace.beginSection("firstPage");
+            try {
+                Cursor cursor = queryFirstPage(database);
+                try {
+                    cursor.getCount();
+                } finally {
+                    cursor.close();
+                }
+            } finally {
+                StartupTrace.endSection();
+            }
+        } catch (SQLException e) {
+            Log.e(LOG_TAG, "Failed to warm up the database", e);
+        } finally {
+            StartupTrace.endSection();
+        }
+        StartupTrace.mark("Database warmed up");
+    }
+
+    /**
+     * Returns the first page of the phone list as {@link MainActivity} shows it first: the
+     * columns of the list, sorted by ID, and {@link PhoneEntry#DEFAULT_PAGE_SIZE} phones.
+     */
+    static Cursor queryFirstPage(SQLiteDatabase database) {
+        return queryPhoneList(database, PhoneEntry.buildPageUri(0, PhoneEntry.DEFAULT_PAGE_SIZE),
+                PhoneSchema.LIST_COLUMNS, null, null, null);
+    }
+
+    /**
+     * Once the app is no longer visible, compact the stock history if it is due, and checkpoint
+     * the WAL file in the background, so the write-ahead log does not keep growing while the
+     * app is idle.
+     */
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compactStockIfDue();
+                    mDbHelper.checkpoint();
+                }
+            });
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mRowCache.clear();
+        }
+    }
+
     /**
      * Perform the query for the given URI. Use the given projection, selection, selection arguments, and sort order.
+     * The query is measured until its rows have been counted, since SQLite only runs the
+     * statement when the cursor is first filled.
      */
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
                         String sortOrder) {
+        uri = routeDefaultStore(uri);
+        int match = sUriMatcher.match(uri);
+        long start = mMetrics.begin(ProviderMetrics.QUERY, match, getMatchName(match));
+        int rows = 0;
+        try {
+            Cursor cursor = queryUri(uri, match, projection, selection, selectionArgs, sortOrder);
+            rows = cursor.getCount();
+            return cursor;
+        } finally {
+            mMetrics.end(ProviderMetrics.QUERY, match, start, rows, uri, selection);
+        }
+    }
+
+    private Cursor queryUri(Uri uri, int match, String[] projection, String selection,
+                            String[] selectionArgs, String sortOrder) {
         // Get readable database
         SQLiteDatabase database = mDbHelper.getReadableDatabase();
 
         // This cursor will hold the result of the query
         Cursor cursor;
 
-        // Figure out if the URI matcher can match the URI to a specific code
-        int match = sUriMatcher.match(uri);
+        // The URI matcher code tells which kind of query this is
         switch (match) {
             case PHONES:
-                // For the PHONES code, query the phones table directly with the given
-                // projection, selection, selection arguments, and sort order. The cursor
-                // could contain multiple rows of the phone table.
-                cursor = database.query(PhoneEntry.TABLE_NAME, projection, selection, selectionArgs,
-                        null, null, sortOrder);
+                // For the PHONES code, query the phones table with the given projection,
+                // selection, selection arguments, and sort order, narrowed down by the sort and
+                // filter query parameters. The cursor could contain multiple rows of the phone table.
+                cursor = queryPhoneList(database, uri, projection, selection, selectionArgs, sortOrder);
                 break;
             case PHONE_ID:
                 // For the PHONE_ID code, extract out the ID from the URI.
@@ -91,226 +471,1883 @@ public class PhoneProvider extends ContentProvider {
                 // For every "?" in the selection, we need to have an element in the selection
                 // arguments that will fill in the "?". Since we have 1 question mark in the
                 // selection, we have 1 String in the selection arguments' String array.
-                selection = PhoneEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-
-                // This will perform a query on the phones table where the _id equals 3 to return a
-                // Cursor containing that row of the table.
-                cursor = database.query(PhoneContract.PhoneEntry.TABLE_NAME, projection, selection, selectionArgs,
+                //
+                // The row is answered from the row cache if it was queried recently, otherwise
+                // this will perform a query on the phones table where the _id equals 3 to return
+                // a Cursor containing that row of the table.
+                cursor = queryPhone(database, ContentUris.parseId(uri), projection);
+                break;
+            case PHONES_SEARCH:
+                cursor = searchPhones(database, uri, projection);
+                break;
+            case STATS:
+                // The totals are kept up to date by triggers, so this only reads one row per supplier
+                cursor = database.query(StatsEntry.TABLE_NAME, projection, selection, selectionArgs,
                         null, null, sortOrder);
                 break;
+            case STOCK:
+                cursor = queryStockAsOf(database, uri, projection, selection, selectionArgs, sortOrder);
+                break;
+            case LOW_STOCK:
+                cursor = queryLowStock(database, projection, selection, selectionArgs, sortOrder);
+                break;
+            case SUPPLIERS:
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, selection, selectionArgs,
+                        null, null, sortOrder == null ? SupplierEntry._ID : sortOrder);
+                break;
+            case SUPPLIER_ID:
+                cursor = database.query(SupplierEntry.TABLE_NAME, projection, SupplierEntry._ID + "=?",
+                        new String[]{String.valueOf(ContentUris.parseId(uri))}, null, null, null);
+                break;
+            case STORES:
+                MatrixCursor stores = new MatrixCursor(new String[]{StoreEntry._ID});
+                for (long storeId : mStores.listStoreIds()) {
+                    stores.addRow(new Object[]{storeId});
+                }
+                cursor = stores;
+                break;
+            case STORES_STATS:
+                cursor = mStores.queryTotals();
+                break;
+            case STORE_PHONES:
+            case STORE_PHONE_ID:
+            case STORE_PHONES_SEARCH:
+            case STORE_STOCK:
+            case STORE_LOW_STOCK:
+                cursor = queryStorePhones(uri, match, projection, selection, selectionArgs, sortOrder);
+                break;
+            case PHONES_EXPORT:
+            case STORE_PHONES_EXPORT:
+                cursor = queryExport(uri, projection);
+                break;
             default:
                 throw new IllegalArgumentException("Cannot query unknown URI " + uri);
         }
         // Set notification URI on the Cursor,
         // so we know what content URI the Cursor was created for.
         // If the data at this URI changes, then we know we need to update the Cursor.
-        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        cursor.setNotificationUri(getContext().getContentResolver(), getNotificationUri(match, uri));
 
         // Return the cursor
         return cursor;
     }
 
     /**
-     * Insert new data into the provider with the given ContentValues.
+     * Query the phones of a store other than the default one from its own database, the same way
+     * as the matching URI below {@link PhoneEntry#CONTENT_URI}. The cursor is filled before the
+     * store is released, while its database is sure to be open.
      */
-    @Override
-    public Uri insert(Uri uri, ContentValues contentValues) {
-        final int match = sUriMatcher.match(uri);
+    private Cursor queryStorePhones(Uri uri, int match, String[] projection, String selection,
+                                    String[] selectionArgs, String sortOrder) {
+        StoreShards.Shard shard = acquireStore(getStoreId(uri));
+        try {
+            SQLiteDatabase database = shard.dbHelper.getReadableDatabase();
+            Cursor cursor;
+            switch (match) {
+                case STORE_PHONES:
+                    cursor = queryPhoneList(database, uri, projection, selection, selectionArgs, sortOrder);
+                    break;
+                case STORE_PHONE_ID:
+                    cursor = database.query(PhoneEntry.TABLE_NAME, withSupplierName(projection),
+                            PhoneEntry._ID + "=?", new String[]{String.valueOf(ContentUris.parseId(uri))},
+                            null, null, null);
+                    break;
+                case STORE_PHONES_SEARCH:
+                    cursor = searchPhones(database, uri, projection);
+                    break;
+                case STORE_STOCK:
+                    cursor = queryStockAsOf(database, uri, projection, selection, selectionArgs, sortOrder);
+                    break;
+                default:
+                    cursor = queryLowStock(database, projection, selection, selectionArgs, sortOrder);
+                    break;
+            }
+            cursor.getCount();
+            return cursor;
+        } finally {
+            releaseStore(shard);
+        }
+    }
+
+    /**
+     * Query the phones that are low on stock. The condition of the low stock phones is the one of
+     * their partial index, so only the phones in the index are read, already in the order of
+     * their quantity.
+     */
+    private static Cursor queryLowStock(SQLiteDatabase database, String[] projection, String selection,
+                                        String[] selectionArgs, String sortOrder) {
+        return database.query(PhoneEntry.TABLE_NAME, withSupplierName(projection),
+                DatabaseUtils.concatenateWhere(PhoneSchema.WHERE_LOW_STOCK, selection), selectionArgs,
+                null, null, sortOrder == null ? PhoneEntry.COLUMN_QUANTITY : sortOrder);
+    }
+
+    /**
+     * Returns the content URI whose notifications tell that the result of a query has changed.
+     * A list only needs to be queried again when phones are added or removed, changes to a phone
+     * in the list are notified on the URI of that phone. The inventory totals change with any phone.
+     * The low stock list changes when a phone crosses its threshold, or is added or removed.
+     * Every list of suppliers changes with any supplier. The phones of a store other than the
+     * default one are only notified as a whole, and the totals of every store change with
+     * anything.
+     */
+    private static Uri getNotificationUri(int match, Uri uri) {
         switch (match) {
-            case PHONES:
-                return insertPhone(uri, contentValues);
+            case PHONE_ID:
+            case STORE_PHONE_ID:
+                return uri;
+            case STORE_PHONES:
+            case STORE_PHONES_SEARCH:
+            case STORE_STOCK:
+            case STORE_LOW_STOCK:
+                return StoreEntry.buildPhonesUri(getStoreId(uri));
+            case STORES:
+                return StoreEntry.CONTENT_URI;
+            case STORES_STATS:
+                return PhoneContract.BASE_CONTENT_URI;
+            case STORE_PHONES_EXPORT:
+                return StoreEntry.buildPhonesUri(getStoreId(uri));
+            case LOW_STOCK:
+                return LowStockEntry.CONTENT_URI;
+            case SUPPLIERS:
+            case SUPPLIER_ID:
+                return SupplierEntry.CONTENT_URI;
+            case STATS:
+            case STOCK:
+                return PhoneEntry.CONTENT_URI;
             default:
-                throw new IllegalArgumentException("Insertion is not supported for " + uri);
+                return PhoneEntry.LIST_NOTIFICATION_URI;
         }
     }
 
     /**
-     * Insert a phone into the database with the given content values. Return the new content URI
-     * for that specific row in the database.
+     * Query the phone list, sorted and filtered by the query parameters of the URI. A page of the
+     * list starts right after the last phone of the previous page, so each page is a range read
+     * of the index of the sort column no matter how deep it is, see {@link PhoneListQuery}.
      */
-    private Uri insertPhone(Uri uri, ContentValues values) {
-        // Check that the name is not null
-        String name = values.getAsString(PhoneEntry.COLUMN_PHONE_NAME);
-        if (name == null) {
-            throw new IllegalArgumentException("Phone requires a name");
+    private static Cursor queryPhoneList(SQLiteDatabase database, Uri uri, String[] projection,
+                                         String selection, String[] selectionArgs, String sortOrder) {
+        String sort = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_SORT);
+        String after = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_AFTER);
+        String limit = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_LIMIT);
+        if (sortOrder != null && (sort != null || after != null)) {
+            throw new IllegalArgumentException("The phones of " + uri + " are sorted by "
+                    + (sort == null ? PhoneEntry._ID : sort) + ", cannot sort by " + sortOrder);
         }
 
-        // Check that the supplier is valid
-        Integer supplier = values.getAsInteger(PhoneEntry.COLUMN_SUPPLIER);
-        if (supplier == null || !PhoneEntry.isValidSupplier(supplier)) {
-            throw new IllegalArgumentException("Phone requires valid supplier");
+        PhoneListQuery query = new PhoneListQuery(sort);
+        String supplier = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_SUPPLIER);
+        if (supplier != null) {
+            query.setSupplier(parseIntQueryParameter(uri, supplier));
         }
-
-        // Check that the supplier phone number is not null
-        String number = values.getAsString(PhoneEntry.COLUMN_SUPPLIER_NUMBER);
-        if (number == null) {
-            throw new IllegalArgumentException("Phone number of supplier is required");
+        String minPrice = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_MIN_PRICE);
+        String maxPrice = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_MAX_PRICE);
+        query.setPriceRange(minPrice == null ? null : parseIntQueryParameter(uri, minPrice),
+                maxPrice == null ? null : parseIntQueryParameter(uri, maxPrice));
+        query.setInStockOnly(Boolean.parseBoolean(uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_IN_STOCK)));
+        if (after != null) {
+            query.setAfter(uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_AFTER_KEY),
+                    parseQueryParameter(uri, after));
+        }
+        if (limit != null) {
+            limit = String.valueOf(parseQueryParameter(uri, limit));
         }
 
-        // If the price is provided, check that it's greater than or equal to 0 €
-        Integer price = values.getAsInteger(PhoneEntry.COLUMN_PRICE);
-        if (price != null && price < 0) {
-            throw new IllegalArgumentException("Phone requires valid price");
+        return database.query(PhoneEntry.TABLE_NAME, withSupplierName(projection),
+                DatabaseUtils.concatenateWhere(query.getSelection(), selection),
+                DatabaseUtils.appendSelectionArgs(query.getSelectionArgs(), selectionArgs),
+                null, null, sortOrder != null ? sortOrder : query.getOrderBy(), limit);
+    }
+
+    /**
+     * Query a single phone through the row cache. On a miss the whole row is read from the
+     * database and cached, unless the phone changed while it was being read.
+     */
+    private Cursor queryPhone(SQLiteDatabase database, long id, String[] projection) {
+        Cursor cursor = mRowCache.get(id, projection);
+        if (cursor != null) {
+            return cursor;
         }
 
-        // If the quantity is provided, check that it's greater than or equal to 0  units
-        Integer quantity = values.getAsInteger(PhoneEntry.COLUMN_QUANTITY);
-        if (quantity != null && quantity < 0) {
-            throw new IllegalArgumentException("Stock number needs to be valid");
+        long generation = mRowCache.generation();
+        String[] selectionArgs = new String[]{String.valueOf(id)};
+        Cursor row = database.rawQuery(SQL_SELECT_PHONE, selectionArgs);
+        try {
+            if (row.moveToFirst()) {
+                mRowCache.put(id, row, generation);
+                cursor = mRowCache.get(id, projection);
+            }
+        } finally {
+            row.close();
         }
 
-        // Get writeable database
-        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        // The phone does not exist, or the projection asks for more than the columns of the row
+        if (cursor == null) {
+            cursor = database.query(PhoneEntry.TABLE_NAME, withSupplierName(projection), PhoneEntry._ID + "=?",
+                    selectionArgs, null, null, null);
+        }
+        return cursor;
+    }
 
-        // Insert the new phone with the given values
-        long id = database.insert(PhoneEntry.TABLE_NAME, null, values);
-        // If the ID is -1, then the insertion failed. Log an error and return null.
-        if (id == -1) {
-            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+    /**
+     * Returns the given projection of the phones table with {@link PhoneEntry#COLUMN_SUPPLIER_NAME}
+     * replaced by the lookup of the supplier, see {@link PhoneSchema#SUPPLIER_NAME_EXPRESSION}.
+     */
+    private static String[] withSupplierName(String[] projection) {
+        if (projection == null) {
             return null;
         }
+        String[] columns = null;
+        for (int i = 0; i < projection.length; i++) {
+            if (PhoneEntry.COLUMN_SUPPLIER_NAME.equals(projection[i])) {
+                if (columns == null) {
+                    columns = projection.clone();
+                }
+                columns[i] = PhoneSchema.SUPPLIER_NAME_EXPRESSION;
+            }
+        }
+        return columns == null ? projection : columns;
+    }
 
-        // Notify all listeners that the data has changed for the phones content URI
-        getContext().getContentResolver().notifyChange(uri, null);
+    /**
+     * Returns the suppliers, reading them from the database the first time.
+     */
+    private SupplierDirectory getSuppliers() {
+        if (!mSuppliers.isLoaded()) {
+            mSuppliers.load(mDbHelper.getReadableDatabase());
+        }
+        return mSuppliers;
+    }
 
-        // Return the new URI with the ID (of the newly inserted row) appended at the end
-        return ContentUris.withAppendedId(uri, id);
+    /**
+     * Returns the URI under {@link PhoneEntry#CONTENT_URI} of a URI of the phones of the
+     * default store, so they are served like the phones of the app, with the row cache, the
+     * compiled statements and the notifications of every phone. Any other URI is returned as it is.
+     */
+    private static Uri routeDefaultStore(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.isEmpty() || !PhoneContract.PATH_STORES.equals(segments.get(0))) {
+            // Not a URI of a store, so the URIs of the app are not matched twice
+            return uri;
+        }
+        if (!isStoreMatch(sUriMatcher.match(uri)) || getStoreId(uri) != StoreEntry.DEFAULT_STORE_ID) {
+            return uri;
+        }
+        // The path below the phones of the store is the same below the phones of the app
+        Uri.Builder builder = PhoneEntry.CONTENT_URI.buildUpon().encodedQuery(uri.getEncodedQuery());
+        for (String segment : segments.subList(3, segments.size())) {
+            builder.appendEncodedPath(segment);
+        }
+        return builder.build();
     }
 
-    @Override
-    public int update(Uri uri, ContentValues contentValues, String selection,
-                      String[] selectionArgs) {
-        final int match = sUriMatcher.match(uri);
+    /**
+     * Returns whether the URI matcher code is one of a URI below the phones of a store.
+     */
+    private static boolean isStoreMatch(int match) {
         switch (match) {
-            case PHONES:
-                return updatePhone(uri, contentValues, selection, selectionArgs);
-            case PHONE_ID:
-                // For the PHONE_ID code, extract out the ID from the URI,
-                // so we know which row to update. Selection will be "_id=?" and selection
-                // arguments will be a String array containing the actual ID.
-                selection = PhoneEntry._ID + "=?";
-                selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                return updatePhone(uri, contentValues, selection, selectionArgs);
+            case STORE_PHONES:
+            case STORE_PHONE_ID:
+            case STORE_PHONES_SEARCH:
+            case STORE_PHONES_EXPORT:
+            case STORE_STOCK:
+            case STORE_LOW_STOCK:
+                return true;
             default:
-                throw new IllegalArgumentException("Update is not supported for " + uri);
+                return false;
         }
     }
 
     /**
-     * Update phones in the database with the given content values. Apply the changes to the rows
-     * specified in the selection and selection arguments (which could be 0 or 1 or more phones).
-     * Return the number of rows that were successfully updated.
+     * Returns the store of a URI below the phones of a store, or the default store for any other URI.
      */
-    private int updatePhone(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
-        // If the {@link PhoneEntry#COLUMN_PHONE_NAME} key is present,
-        // check that the name value is not null.
-        if (values.containsKey(PhoneEntry.COLUMN_PHONE_NAME)) {
-            String name = values.getAsString(PhoneEntry.COLUMN_PHONE_NAME);
-            if (name == null) {
-                throw new IllegalArgumentException("Phone requires a name");
-            }
+    private static long getStoreId(Uri uri) {
+        int match = sUriMatcher.match(uri);
+        if (!isStoreMatch(match)) {
+            return StoreEntry.DEFAULT_STORE_ID;
         }
+        return Long.parseLong(uri.getPathSegments().get(1));
+    }
 
-        // If the {@link PhoneEntry#COLUMN_SUPPLIER} key is present,
-        // check that the supplier value is valid.
-        if (values.containsKey(PhoneEntry.COLUMN_SUPPLIER)) {
-            Integer supplier = values.getAsInteger(PhoneEntry.COLUMN_SUPPLIER);
-            if (supplier == null || !PhoneEntry.isValidSupplier(supplier)) {
-                throw new IllegalArgumentException("Phone requires valid supplier");
-            }
-        }
+    /**
+     * Search the phones by name through the full-text index, best matches first.
+     * Every word of the search text has to match the start of a word in the name.
+     */
+    private static Cursor searchPhones(SQLiteDatabase database, Uri uri, String[] projection) {
+        String limit = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_LIMIT);
+        limit = String.valueOf(limit == null ? DEFAULT_SEARCH_LIMIT : parseQueryParameter(uri, limit));
 
-        // If the {@link PhoneEntry#COLUMN_SUPPLIER_NUMBER} key is present,
-        // check that the name value is not null.
-        if (values.containsKey(PhoneEntry.COLUMN_SUPPLIER_NUMBER)) {
-            String number = values.getAsString(PhoneEntry.COLUMN_SUPPLIER_NUMBER);
-            if (number == null) {
-                throw new IllegalArgumentException("Supplier requires a phone number");
+        // Turn the search text into prefix queries, one for each of its words. Only letters and
+        // digits are kept, so the text cannot inject any full-text query syntax. The index folds
+        // case the same way in every locale, so the words must not follow the default one: in
+        // Turkish, "I" would become a dotless "ı" and match nothing.
+        String query = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_QUERY);
+        String[] words = query == null
+                ? new String[0]
+                : query.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        StringBuilder match = new StringBuilder();
+        String firstWord = null;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
             }
+            if (firstWord == null) {
+                firstWord = word;
+            }
+            match.append(word).append("* ");
         }
 
-        // If the {@link PhoneEntry#COLUMN_PRICE} key is present,
-        // check that the price value is valid.
-        if (values.containsKey(PhoneEntry.COLUMN_PRICE)) {
-            // Check that the price is greater than or equal to 0 €
-            Integer price = values.getAsInteger(PhoneEntry.COLUMN_PRICE);
-            if (price != null && price < 0) {
-                throw new IllegalArgumentException("Phone requires valid price");
-            }
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables(SEARCH_TABLES);
+        queryBuilder.setProjectionMap(sSearchProjectionMap);
+        if (firstWord == null) {
+            // Nothing to search for, so nothing matches
+            return queryBuilder.query(database, projection, "0", null, null, null, null, limit);
         }
-        // If the {@link PhoneEntry#COLUMN_QUANTITY} key is present,
-        // check that the price value is valid.
-        if (values.containsKey(PhoneEntry.COLUMN_QUANTITY)) {
-            // Check that the price is greater than or equal to 0 €
-            // If the quantity is provided, check that it's greater than or equal to 0  units
-            Integer quantity = values.getAsInteger(PhoneEntry.COLUMN_QUANTITY);
-            if (quantity != null && quantity < 0) {
-                throw new IllegalArgumentException("Stock number needs to be valid");
+        String sql = queryBuilder.buildQuery(projection, PhoneSchema.TABLE_PHONES_FTS + " MATCH ?",
+                null, null, SEARCH_SORT_ORDER, limit);
+        return database.rawQuery(sql, new String[]{match.toString().trim(), firstWord + "%"});
+    }
+
+    /**
+     * Query the stock of the phones at the time of the URI. The stock of each phone is its
+     * latest snapshot before that time plus the movements since, so the selection and sort order
+     * apply to the computed rows.
+     */
+    private Cursor queryStockAsOf(SQLiteDatabase database, Uri uri, String[] projection,
+                                  String selection, String[] selectionArgs, String sortOrder) {
+        String asOf = uri.getQueryParameter(StockEntry.QUERY_PARAMETER_AS_OF);
+        long timeMillis = asOf == null ? System.currentTimeMillis() : parseQueryParameter(uri, asOf);
+
+        // The time is the first bind argument, ?1 in the query of the stock
+        SQLiteQueryBuilder queryBuilder = new SQLiteQueryBuilder();
+        queryBuilder.setTables("(" + PhoneSchema.SQL_STOCK_AS_OF + ")");
+        return queryBuilder.query(database, projection, selection,
+                DatabaseUtils.appendSelectionArgs(new String[]{String.valueOf(timeMillis)}, selectionArgs),
+                null, null, sortOrder);
+    }
+
+    /**
+     * Parse a numeric query parameter of the given URI, which must not be negative.
+     */
+    private static long parseQueryParameter(Uri uri, String value) {
+        try {
+            long number = Long.parseLong(value);
+            if (number >= 0) {
+                return number;
             }
+        } catch (NumberFormatException e) {
+            // Reported below
         }
-            // If there are no values to update, then don't try to update the database
-            if (values.size() == 0) {
-                return 0;
-            }
-            // Otherwise, get writeable database to update the data
-            SQLiteDatabase database = mDbHelper.getWritableDatabase();
-
-            // Perform the update on the database and get the number of rows affected
-            int rowsUpdated = database.update(PhoneEntry.TABLE_NAME, values, selection, selectionArgs);
+        throw new IllegalArgumentException("Invalid query parameter " + value + " in " + uri);
+    }
 
-            // If 1 or more rows were updated, then notify all listeners that the data at the
-            // given URI has changed
-            if (rowsUpdated != 0) {
-                getContext().getContentResolver().notifyChange(uri, null);
+    /**
+     * Parse the numeric arg of a {@link #call} method, which must not be negative.
+     */
+    private static long parseCallArg(String method, String arg) {
+        try {
+            long number = Long.parseLong(arg);
+            if (number >= 0) {
+                return number;
             }
-            // Return the number of rows updated
-            return rowsUpdated;
+        } catch (NumberFormatException e) {
+            // Reported below
         }
+        throw new IllegalArgumentException("Invalid arg " + arg + " of " + method);
+    }
 
-        @Override
-        public int delete (Uri uri, String selection, String[]selectionArgs){
-            // Get writeable database
-            SQLiteDatabase database = mDbHelper.getWritableDatabase();
+    /**
+     * Parse a numeric query parameter of the given URI that has to fit in an int.
+     */
+    private static int parseIntQueryParameter(Uri uri, String value) {
+        long number = parseQueryParameter(uri, value);
+        if (number > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid query parameter " + value + " in " + uri);
+        }
+        return (int) number;
+    }
 
-            // Track the number of rows that were deleted
-            int rowsDeleted;
+    /**
+     * Insert new data into the provider with the given ContentValues.
+     */
+    @Override
+    public Uri insert(Uri uri, ContentValues contentValues) {
+        uri = routeDefaultStore(uri);
+        final int match = sUriMatcher.match(uri);
+        long start = mMetrics.begin(ProviderMetrics.INSERT, match, getMatchName(match));
+        Uri newUri = null;
+        try {
+            switch (match) {
+                case PHONES:
+                    newUri = insertPhone(uri, contentValues);
+                    return newUri;
+                case SUPPLIERS:
+                    newUri = insertSupplier(uri, contentValues);
+                    return newUri;
+                case STORES:
+                    newUri = insertStore(contentValues);
+                    return newUri;
+                case STORE_PHONES:
+                    newUri = insertStorePhone(uri, contentValues);
+                    return newUri;
+                default:
+                    throw new IllegalArgumentException("Insertion is not supported for " + uri);
+            }
+        } finally {
+            mMetrics.end(ProviderMetrics.INSERT, match, start, newUri == null ? 0 : 1, uri, null);
+        }
+    }
+
+    /**
+     * Insert a phone into the database with the given content values. Return the new content URI
+     * for that specific row in the database.
+     */
+    private Uri insertPhone(Uri uri, ContentValues values) {
+        // Check that the phone has all the required attributes, and that its supplier exists
+        validatePhone(values);
+        getSuppliers().checkSupplier(values.getAsInteger(PhoneEntry.COLUMN_SUPPLIER));
+
+        // Get writeable database
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Insert the new phone with the given values, a whole phone through the phone store
+        Phone phone = SqlitePhoneStore.isWholePhone(values) ? SqlitePhoneStore.toPhone(values) : null;
+        long id;
+        if (phone == null) {
+            id = database.insert(PhoneEntry.TABLE_NAME, null, values);
+        } else {
+            SqlitePhoneStore store = mDbHelper.acquirePhoneStore();
+            try {
+                id = store.insert(phone);
+            } catch (SQLException e) {
+                Log.e(LOG_TAG, "Error inserting " + phone, e);
+                id = -1;
+            } finally {
+                mDbHelper.releasePhoneStore(store);
+            }
+        }
+        // If the ID is -1, then the insertion failed. Log an error and return null.
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        // Notify all listeners that there is a new phone in the list
+        notifyPhonesChanged(new long[]{id}, true);
+
+        // Return the new URI with the ID (of the newly inserted row) appended at the end
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert a phone into the database of a store other than the default one, checked the same
+     * way as in {@link #insertPhone}. Return the new content URI of the phone in the store.
+     */
+    private Uri insertStorePhone(Uri uri, ContentValues values) {
+        StoreShards.Shard shard = acquireStore(getStoreId(uri));
+        long id;
+        try {
+            validatePhone(values);
+            shard.getSuppliers().checkSupplier(values.getAsInteger(PhoneEntry.COLUMN_SUPPLIER));
+            id = shard.dbHelper.getWritableDatabase().insert(PhoneEntry.TABLE_NAME, null, values);
+        } finally {
+            releaseStore(shard);
+        }
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        notifyStoreChanged(shard.storeId);
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Open a new store with an empty database of its own. Return the content URI of the store.
+     */
+    private Uri insertStore(ContentValues values) {
+        if (values != null && values.size() != 0) {
+            throw new IllegalArgumentException("A new store takes no values");
+        }
+        long storeId = mStores.create();
+        notifyChange(StoreEntry.CONTENT_URI);
+        return ContentUris.withAppendedId(StoreEntry.CONTENT_URI, storeId);
+    }
+
+    /**
+     * Insert a supplier with the given name. It gets the next free ID, so the IDs of the
+     * suppliers stay dense, and is copied to the other stores. Return the new content URI of the
+     * supplier, or null if there already is a supplier with that name.
+     */
+    private Uri insertSupplier(Uri uri, ContentValues values) {
+        if (values.size() != 1 || !values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)) {
+            throw new IllegalArgumentException("A new supplier only takes a name");
+        }
+        String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+        PhoneValidator.checkSupplierName(name);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        long id = database.insert(SupplierEntry.TABLE_NAME, null, values);
+        if (id == -1) {
+            Log.e(LOG_TAG, "Failed to insert row for " + uri);
+            return null;
+        }
+
+        // The directory is only read on first use, so it may not hold the supplier yet
+        getSuppliers().put((int) id, name);
+        mStores.putSupplier((int) id, name);
+        notifyChange(SupplierEntry.CONTENT_URI);
+        return ContentUris.withAppendedId(uri, id);
+    }
+
+    /**
+     * Insert a batch of phones into the database in a single transaction. Every row is checked
+     * the same way as in {@link #insertPhone}, rows are written through one precompiled INSERT
+     * statement, and listeners are notified only once, after the batch has been committed.
+     * A row the database rejects, for example one without a price, fails the whole batch: the
+     * transaction is rolled back and an IllegalArgumentException names the row, so no row is
+     * ever lost without the caller knowing. Return the number of rows inserted.
+     */
+    @Override
+    public int bulkInsert(Uri uri, ContentValues[] values) {
+        uri = routeDefaultStore(uri);
+        final int match = sUriMatcher.match(uri);
+        long start = mMetrics.begin(ProviderMetrics.BULK_INSERT, match, getMatchName(match));
+        int rowsInserted = 0;
+        try {
+            rowsInserted = bulkInsertPhones(uri, match, values);
+            return rowsInserted;
+        } finally {
+            mMetrics.end(ProviderMetrics.BULK_INSERT, match, start, rowsInserted, uri, null);
+        }
+    }
+
+    private int bulkInsertPhones(Uri uri, int match, ContentValues[] values) {
+        if (match != PHONES && match != STORE_PHONES) {
+            throw new IllegalArgumentException("Insertion is not supported for " + uri);
+        }
+        StoreShards.Shard shard = acquireStore(getStoreId(uri));
+        try {
+            return bulkInsertPhones(uri, match, shard, values);
+        } finally {
+            releaseStore(shard);
+        }
+    }
+
+    private int bulkInsertPhones(Uri uri, int match, StoreShards.Shard shard, ContentValues[] values) {
+        // Check the whole batch before writing anything, so an invalid row leaves the table untouched
+        SupplierDirectory suppliers = shard.getSuppliers();
+        for (ContentValues phone : values) {
+            validatePhone(phone);
+            suppliers.checkSupplier(phone.getAsInteger(PhoneEntry.COLUMN_SUPPLIER));
+        }
+
+        // Get writeable database of the store
+        SQLiteDatabase database = shard.dbHelper.getWritableDatabase();
+
+        int rowsInserted = 0;
+        SQLiteStatement insertStatement = database.compileStatement(PhoneSchema.SQL_INSERT_PHONE);
+        database.beginTransaction();
+        try {
+            for (int row = 0; row < values.length; row++) {
+                ContentValues phone = values[row];
+                try {
+                    if (SqlitePhoneStore.isWholePhone(phone)) {
+                        // Fast path: rebind the precompiled statement instead of building new SQL
+                        insertStatement.clearBindings();
+                        for (int i = 0; i < PhoneSchema.INSERT_COLUMNS.length; i++) {
+                            DatabaseUtils.bindObjectToProgram(insertStatement, i + 1,
+                                    phone.get(PhoneSchema.INSERT_COLUMNS[i]));
+                        }
+                        insertStatement.executeInsert();
+                    } else {
+                        // Rows with missing or extra columns go through the regular insert
+                        database.insertOrThrow(PhoneEntry.TABLE_NAME, null, phone);
+                    }
+                } catch (SQLException e) {
+                    // Leaving without setTransactionSuccessful rolls back the rows before it
+                    Log.e(LOG_TAG, "Failed to insert row " + row + " for " + uri + ": " + phone, e);
+                    throw new IllegalArgumentException("Row " + row + " of the batch was rejected: "
+                            + e.getMessage(), e);
+                }
+                rowsInserted++;
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insertStatement.close();
+        }
+
+        // Notify all listeners once that there are new phones in the lists, and that the
+        // inventory totals have changed
+        if (rowsInserted != 0 && match == STORE_PHONES) {
+            notifyStoreChanged(shard.storeId);
+        } else if (rowsInserted != 0) {
+            notifyChange(PhoneEntry.LIST_NOTIFICATION_URI);
+            notifyChange(LowStockEntry.CONTENT_URI);
+            notifyChange(StatsEntry.CONTENT_URI);
+        }
+
+        // Return the number of rows inserted
+        return rowsInserted;
+    }
+
+    /**
+     * Apply a batch of operations inside a single database transaction, so the batch is written
+     * with one journal commit and either all of it is applied or none of it is. Listeners are
+     * notified once per changed content URI, after the batch has been committed.
+     *
+     * An operation built with {@link ContentProviderOperation.Builder#withYieldAllowed} marks a
+     * point where a long batch may let other threads at the database. If the transaction does
+     * yield there, the work done before that point is committed and stays in place even if a
+     * later operation fails.
+     *
+     * A transaction cannot span two database files, so all operations of a batch have to be on
+     * the same store.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        // A batch applied from inside another batch simply joins the outer transaction
+        if (mPendingNotifications.get() != null) {
+            return super.applyBatch(operations);
+        }
+
+        // The store of the batch stays open until the batch is done
+        StoreShards.Shard shard = mStores.acquire(getBatchStoreId(operations));
+        mBatchShard.set(shard);
+        try {
+            return applyBatch(shard.dbHelper.getWritableDatabase(), operations);
+        } finally {
+            mBatchShard.remove();
+            mStores.release(shard);
+        }
+    }
+
+    private ContentProviderResult[] applyBatch(SQLiteDatabase database,
+                                               ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        Set<Uri> changedUris = new HashSet<>();
+        mPendingNotifications.set(changedUris);
+        ContentProviderResult[] results;
+        boolean committed = false;
+        database.beginTransaction();
+        try {
+            final int numOperations = operations.size();
+            results = new ContentProviderResult[numOperations];
+            for (int i = 0; i < numOperations; i++) {
+                ContentProviderOperation operation = operations.get(i);
+                if (i > 0 && operation.isYieldAllowed()
+                        && database.yieldIfContendedSafely(YIELD_SLEEP_MILLIS)) {
+                    // Everything up to here has been committed, so tell listeners about it now
+                    notifyChanges(changedUris);
+                }
+                results[i] = operation.apply(this, results, i);
+            }
+            database.setTransactionSuccessful();
+            committed = true;
+        } finally {
+            database.endTransaction();
+            mPendingNotifications.remove();
+            if (!committed) {
+                // The suppliers added or renamed by the batch were rolled back, read them again
+                mSuppliers.clear();
+            }
+        }
+
+        // The batch has been committed, notify all listeners once per changed URI
+        notifyChanges(changedUris);
+        return results;
+    }
+
+    /**
+     * Returns the shard of the given store for a read or write of this thread. An operation of a
+     * batch gets the shard the batch already holds, whose transaction it joins, so it does not
+     * wait for the lock of the shards while another thread waits for that transaction. Give it
+     * back to {@link #releaseStore}.
+     */
+    private StoreShards.Shard acquireStore(long storeId) {
+        StoreShards.Shard batchShard = mBatchShard.get();
+        if (batchShard != null && batchShard.storeId == storeId) {
+            return batchShard;
+        }
+        return mStores.acquire(storeId);
+    }
+
+    /**
+     * Give back a shard returned by {@link #acquireStore}. The shard of a batch is only given
+     * back once the batch is done.
+     */
+    private void releaseStore(StoreShards.Shard shard) {
+        if (shard != mBatchShard.get()) {
+            mStores.release(shard);
+        }
+    }
+
+    /**
+     * Returns the store that all operations of a batch are on.
+     *
+     * @throws IllegalArgumentException if the operations are on more than one store
+     */
+    private static long getBatchStoreId(List<ContentProviderOperation> operations) {
+        long storeId = StoreEntry.DEFAULT_STORE_ID;
+        for (int i = 0; i < operations.size(); i++) {
+            long operationStoreId = getStoreId(routeDefaultStore(operations.get(i).getUri()));
+            if (i == 0) {
+                storeId = operationStoreId;
+            } else if (operationStoreId != storeId) {
+                throw new IllegalArgumentException("A batch can only change the phones of one store");
+            }
+        }
+        return storeId;
+    }
+
+    /**
+     * Notify listeners that phones of a store other than the default one have changed. The
+     * lists and the phones of the store are all below the URI of its phones, and the observers of
+     * the totals of every store are told about changes to any URI of the provider.
+     */
+    private void notifyStoreChanged(long storeId) {
+        notifyChange(StoreEntry.buildPhonesUri(storeId));
+    }
+
+    /**
+     * Notify listeners that the data at the given URI has changed. While a batch is being applied
+     * on this thread the notification is held back until the batch has been committed.
+     */
+    private void notifyChange(Uri uri) {
+        Set<Uri> pending = mPendingNotifications.get();
+        if (pending != null) {
+            pending.add(uri);
+        } else {
+            invalidateRowCache(uri);
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Remove the phones changed at the given content URI from the row cache. This runs when the
+     * change is notified, after it has been committed, so no reader can cache the old row again.
+     */
+    private void invalidateRowCache(Uri uri) {
+        switch (sUriMatcher.match(uri)) {
+            case PHONE_ID:
+                mRowCache.remove(ContentUris.parseId(uri));
+                break;
+            case PHONES:
+                mRowCache.clear();
+                break;
+            default:
+                // The list URI only tells about added and removed phones, which are notified
+                // on their own URIs as well
+                break;
+        }
+    }
+
+    /**
+     * Notify listeners that the phones with the given IDs have changed, or that any phone may
+     * have changed if the IDs are null. If phones were added or removed, or it is not known which
+     * phones changed, the listeners of the phone lists are notified as well.
+     */
+    private void notifyPhonesChanged(long[] ids, boolean listChanged) {
+        if (ids == null) {
+            notifyChange(PhoneEntry.CONTENT_URI);
+        } else {
+            for (long id : ids) {
+                notifyChange(ContentUris.withAppendedId(PhoneEntry.CONTENT_URI, id));
+            }
+        }
+        if (listChanged || ids == null) {
+            notifyChange(PhoneEntry.LIST_NOTIFICATION_URI);
+            notifyChange(LowStockEntry.CONTENT_URI);
+        }
+    }
+
+    /**
+     * Take the low stock events that the triggers added in the current transaction out of their
+     * table, and return the IDs of the phones that crossed their threshold. The table only holds
+     * the events of the changes not reported yet, so this reads no more than those rows.
+     * Changes made without the provider leave their events for the next write through it.
+     */
+    private static long[] takeLowStockCrossings(SQLiteDatabase database) {
+        Cursor cursor = database.query(PhoneSchema.TABLE_LOW_STOCK_EVENTS,
+                new String[]{PhoneSchema.COLUMN_PHONE_ID, PhoneSchema.COLUMN_LOW},
+                null, null, null, null, PhoneSchema.COLUMN_ID);
+        long[] ids;
+        try {
+            ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                Log.i(LOG_TAG, "Phone " + ids[i] + (cursor.getInt(1) != 0
+                        ? " is low on stock" : " is no longer low on stock"));
+            }
+        } finally {
+            cursor.close();
+        }
+        if (ids.length != 0) {
+            database.delete(PhoneSchema.TABLE_LOW_STOCK_EVENTS, null, null);
+        }
+        return ids;
+    }
+
+    /**
+     * Notify listeners of the low stock list that the phones with the given IDs crossed their
+     * threshold. Phones that did not cross it are not notified there, whatever else changed.
+     */
+    private void notifyLowStockCrossings(long[] ids) {
+        for (long id : ids) {
+            notifyChange(LowStockEntry.buildPhoneUri(id));
+        }
+    }
+
+    /**
+     * Returns the IDs of the phones that match the given selection, or null if there are more
+     * than {@link #MAX_ROW_NOTIFICATIONS} of them, in which case notifying each row is not worth it.
+     */
+    private static long[] findPhoneIds(SQLiteDatabase database, String selection, String[] selectionArgs) {
+        Cursor cursor = database.query(PhoneEntry.TABLE_NAME, new String[]{PhoneEntry._ID},
+                selection, selectionArgs, null, null, null, String.valueOf(MAX_ROW_NOTIFICATIONS + 1));
+        try {
+            if (cursor.getCount() > MAX_ROW_NOTIFICATIONS) {
+                return null;
+            }
+            long[] ids = new long[cursor.getCount()];
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+            }
+            return ids;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Send the notifications collected during a batch and forget about them.
+     */
+    private void notifyChanges(Set<Uri> changedUris) {
+        ContentResolver resolver = getContext().getContentResolver();
+        for (Uri uri : changedUris) {
+            invalidateRowCache(uri);
+            resolver.notifyChange(uri, null);
+        }
+        changedUris.clear();
+    }
+
+    /**
+     * Open the CSV export of the phones of a store. The file is written into a pipe on a
+     * background thread while the reader consumes it, one phone at a time, so the export never
+     * has to fit in memory. The store stays open until the whole file has been written.
+     */
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        uri = routeDefaultStore(uri);
+        int match = sUriMatcher.match(uri);
+        if (match != PHONES_EXPORT && match != STORE_PHONES_EXPORT) {
+            throw new FileNotFoundException("No file at " + uri);
+        }
+        if (!"r".equals(mode)) {
+            throw new FileNotFoundException("The export at " + uri + " can only be read");
+        }
+        final StoreShards.Shard shard;
+        try {
+            shard = mStores.acquire(getStoreId(uri));
+        } catch (IllegalArgumentException e) {
+            throw new FileNotFoundException("No store at " + uri);
+        }
+        boolean writing = false;
+        try {
+            ParcelFileDescriptor pipe = openPipeHelper(uri, PhoneEntry.CSV_TYPE, null, null,
+                    new PipeDataWriter<Void>() {
+                @Override
+                public void writeDataToPipe(ParcelFileDescriptor output, Uri uri, String mimeType,
+                                            Bundle opts, Void args) {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(
+                            new FileOutputStream(output.getFileDescriptor()), Charset.forName("UTF-8")));
+                    try {
+                        writePhonesCsv(shard.dbHelper.getReadableDatabase(), writer);
+                    } catch (IOException e) {
+                        // The reader closed the pipe before the end of the file
+                        Log.w(LOG_TAG, "Export of " + uri + " stopped", e);
+                    } finally {
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
+                            Log.w(LOG_TAG, "Error closing export of " + uri, e);
+                        }
+                        mStores.release(shard);
+                    }
+                }
+            });
+            writing = true;
+            return pipe;
+        } finally {
+            if (!writing) {
+                mStores.release(shard);
+            }
+        }
+    }
+
+    /**
+     * Answer the {@link OpenableColumns} of the CSV export, which the apps the export is shared
+     * with read for the name of the file. The size is null, since the file is only written as
+     * it is read. Other columns of the projection are left out.
+     */
+    private static Cursor queryExport(Uri uri, String[] projection) {
+        if (projection == null) {
+            projection = new String[]{OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
+        }
+        long storeId = getStoreId(uri);
+        String name = storeId == StoreEntry.DEFAULT_STORE_ID
+                ? PhoneEntry.EXPORT_FILE_NAME
+                : "store_" + storeId + "_" + PhoneEntry.EXPORT_FILE_NAME;
+
+        String[] columns = new String[projection.length];
+        Object[] row = new Object[projection.length];
+        int count = 0;
+        for (String column : projection) {
+            if (OpenableColumns.DISPLAY_NAME.equals(column)) {
+                columns[count] = column;
+                row[count++] = name;
+            } else if (OpenableColumns.SIZE.equals(column)) {
+                columns[count] = column;
+                row[count++] = null;
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(Arrays.copyOf(columns, count), 1);
+        cursor.addRow(Arrays.copyOf(row, count));
+        return cursor;
+    }
+
+    /**
+     * Write all the phones of the given database as CSV, header first. The rows are read from a
+     * cursor while they are written, so only the cursor's current window is ever held in memory.
+     */
+    private static void writePhonesCsv(SQLiteDatabase database, Writer writer) throws IOException {
+        writeCsvRecord(writer, EXPORT_COLUMNS);
+
+        Cursor cursor = database.query(PhoneEntry.TABLE_NAME, EXPORT_COLUMNS, null, null,
+                null, null, PhoneEntry._ID);
+        try {
+            String[] fields = new String[EXPORT_COLUMNS.length];
+            while (cursor.moveToNext()) {
+                for (int i = 0; i < fields.length; i++) {
+                    fields[i] = cursor.getString(i);
+                }
+                writeCsvRecord(writer, fields);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Write one CSV record. Fields with commas, quotes or line breaks are quoted.
+     */
+    private static void writeCsvRecord(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            if (field.indexOf(',') == -1 && field.indexOf('"') == -1
+                    && field.indexOf('\n') == -1 && field.indexOf('\r') == -1) {
+                writer.write(field);
+            } else {
+                writer.write('"');
+                writer.write(field.replace("\"", "\"\""));
+                writer.write('"');
+            }
+        }
+        writer.write("\r\n");
+    }
+
+    /**
+     * Handle the provider specific methods described in {@link PhoneContract}.
+     */
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (PhoneEntry.METHOD_SELL.equals(method)) {
+            int count = extras == null ? 1 : extras.getInt(PhoneEntry.EXTRA_COUNT, 1);
+            return sellPhone(getStoreId(extras), parseCallArg(method, arg), count);
+        }
+        if (PhoneEntry.METHOD_ADJUST_STOCK.equals(method)) {
+            if (extras == null) {
+                throw new IllegalArgumentException("No stock changes given");
+            }
+            return adjustStock(getStoreId(extras), arg, extras.getLongArray(PhoneEntry.EXTRA_IDS),
+                    extras.getIntArray(PhoneEntry.EXTRA_DELTAS));
+        }
+        if (PhoneEntry.METHOD_COMPACT_STOCK.equals(method)) {
+            // The movements of the retention period are always kept one by one, whatever the
+            // caller asks for
+            long cutoff = System.currentTimeMillis() - StockEntry.HISTORY_RETENTION_MILLIS;
+            if (arg != null) {
+                cutoff = Math.min(cutoff, parseCallArg(method, arg));
+            }
+            Bundle result = new Bundle();
+            result.putInt(PhoneEntry.EXTRA_COMPACTED, compactStock(cutoff));
+            return result;
+        }
+        if (PhoneEntry.METHOD_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(PhoneEntry.EXTRA_CACHE_HITS, mRowCache.hitCount());
+            result.putInt(PhoneEntry.EXTRA_CACHE_MISSES, mRowCache.missCount());
+            result.putInt(PhoneEntry.EXTRA_CACHE_SIZE, mRowCache.size());
+            return result;
+        }
+        if (PhoneEntry.METHOD_METRICS.equals(method)) {
+            return mMetrics.toBundle();
+        }
+        if (PhoneEntry.METHOD_BACKUP.equals(method)) {
+            return backUp();
+        }
+        if (PhoneEntry.METHOD_RESTORE.equals(method)) {
+            // Generation 0 stands for the latest one
+            return restoreBackup(arg == null ? 0 : parseCallArg(method, arg));
+        }
+        if (PhoneEntry.METHOD_UPDATE_PHONE.equals(method)) {
+            if (arg == null || extras == null) {
+                throw new IllegalArgumentException("No phone to update given");
+            }
+            return updatePhoneAtVersion(Uri.parse(arg),
+                    (ContentValues) extras.getParcelable(PhoneEntry.EXTRA_VALUES),
+                    extras.getLong(PhoneEntry.COLUMN_VERSION, -1));
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * Returns the store of {@link PhoneEntry#EXTRA_STORE_ID} in the extras of a call, or the
+     * default store if there is none.
+     */
+    private static long getStoreId(Bundle extras) {
+        return extras == null ? StoreEntry.DEFAULT_STORE_ID
+                : extras.getLong(PhoneEntry.EXTRA_STORE_ID, StoreEntry.DEFAULT_STORE_ID);
+    }
+
+    /**
+     * Back up the database as a new generation of {@link DatabaseBackup}. Queries and writes go
+     * on during the backup, only checkpoints of the WAL file wait for it.
+     */
+    private Bundle backUp() {
+        DatabaseBackup.Generation generation;
+        synchronized (mBackupLock) {
+            try {
+                generation = newDatabaseBackup().backUp(mDbHelper);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot back up the database: " + e.getMessage(), e);
+            }
+        }
+        Bundle result = new Bundle();
+        result.putLong(PhoneEntry.EXTRA_GENERATION, generation.number);
+        result.putInt(PhoneEntry.EXTRA_BACKUP_PAGES, generation.changedPages);
+        return result;
+    }
+
+    /**
+     * Replace the database with the given generation of the backup, or the latest one if 0.
+     * The backup is restored into a file next to the database and checked while the database is
+     * still in use, then the database is closed only to move that file over it. Everything read
+     * from the old database is forgotten and all listeners are notified.
+     */
+    private Bundle restoreBackup(long generation) {
+        synchronized (mBackupLock) {
+            DatabaseBackup backup = newDatabaseBackup();
+            if (generation == 0) {
+                generation = backup.latestGeneration();
+            }
+            if (generation == 0 || Arrays.binarySearch(backup.listGenerations(), generation) < 0) {
+                throw new IllegalArgumentException("There is no backup to restore");
+            }
+
+            File restored = new File(mDbHelper.getDatabaseFile().getPath() + RESTORE_SUFFIX);
+            try {
+                backup.restore(generation, restored);
+                mDbHelper.replaceDatabase(restored);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot restore backup " + generation + ": "
+                        + e.getMessage(), e);
+            } finally {
+                if (restored.exists() && !restored.delete()) {
+                    Log.w(LOG_TAG, "Cannot delete " + restored);
+                }
+            }
+        }
+
+        mSuppliers.clear();
+        mRowCache.clear();
+        // Observers of every URI of the provider are below its base URI
+        getContext().getContentResolver().notifyChange(PhoneContract.BASE_CONTENT_URI, null);
+
+        Bundle result = new Bundle();
+        result.putLong(PhoneEntry.EXTRA_GENERATION, generation);
+        return result;
+    }
+
+    private DatabaseBackup newDatabaseBackup() {
+        return new DatabaseBackup(new File(getContext().getFilesDir(), BACKUP_DIRECTORY));
+    }
+
+    /**
+     * Take the given number of units of a phone out of stock with a single conditional append to
+     * the stock movements, so concurrent sales can never lose a decrement or push the stock below 0.
+     * Return whether the units were sold, together with the quantity left in stock
+     * (-1 if there is no such phone).
+     */
+    private Bundle sellPhone(long storeId, long id, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one unit has to be sold");
+        }
+
+        boolean sold;
+        long quantity;
+        long[] crossedIds;
+        StoreShards.Shard shard = acquireStore(storeId);
+        try {
+            // Get writeable database of the store
+            SQLiteDatabase database = shard.dbHelper.getWritableDatabase();
+
+            SqlitePhoneStore store = shard.dbHelper.acquirePhoneStore();
+            try {
+                database.beginTransactionNonExclusive();
+                try {
+                    sold = store.sell(id, count);
+
+                    // Read the new quantity inside the same transaction, so it matches the sale
+                    quantity = store.queryQuantity(id);
+                    crossedIds = takeLowStockCrossings(database);
+                    database.setTransactionSuccessful();
+                } finally {
+                    database.endTransaction();
+                }
+            } finally {
+                shard.dbHelper.releasePhoneStore(store);
+            }
+        } finally {
+            releaseStore(shard);
+        }
+
+        // If the stock changed, notify all listeners that the data of this phone has changed
+        notifySoldPhones(storeId, sold ? new long[]{id} : new long[0], crossedIds);
+
+        Bundle result = new Bundle();
+        result.putBoolean(PhoneEntry.EXTRA_SOLD, sold);
+        result.putInt(PhoneEntry.COLUMN_QUANTITY, (int) quantity);
+        return result;
+    }
+
+    /**
+     * Notify listeners that the stock of the given phones of a store has changed. The phones of
+     * the default store are notified one by one, with the low stock crossings, while a store
+     * other than the default one is only notified as a whole.
+     */
+    private void notifySoldPhones(long storeId, long[] changedIds, long[] crossedIds) {
+        if (storeId != StoreEntry.DEFAULT_STORE_ID) {
+            if (changedIds.length != 0) {
+                notifyStoreChanged(storeId);
+            }
+            return;
+        }
+        if (changedIds.length != 0) {
+            notifyPhonesChanged(changedIds, false);
+        }
+        notifyLowStockCrossings(crossedIds);
+    }
+
+    /**
+     * Add a batch of stock changes, one per phone, in a single transaction. The token of the
+     * batch is recorded in the same transaction, so a batch that is sent again is skipped.
+     * Listeners are notified once per phone whose stock changed.
+     */
+    private Bundle adjustStock(long storeId, String batch, long[] ids, int[] deltas) {
+        if (batch == null || ids == null || deltas == null || ids.length != deltas.length) {
+            throw new IllegalArgumentException("A stock adjustment needs a batch token and one change per phone");
+        }
+
+        StoreShards.Shard shard = acquireStore(storeId);
+        try {
+            return adjustStock(shard, batch, ids, deltas);
+        } finally {
+            releaseStore(shard);
+        }
+    }
+
+    private Bundle adjustStock(StoreShards.Shard shard, String batch, long[] ids, int[] deltas) {
+        // Get writeable database of the store
+        SQLiteDatabase database = shard.dbHelper.getWritableDatabase();
+
+        boolean applied;
+        long[] changedIds = new long[ids.length];
+        int changed = 0;
+        int[] quantities = new int[ids.length];
+        Arrays.fill(quantities, -1);
+        long[] crossedIds;
+        SqlitePhoneStore store = shard.dbHelper.acquirePhoneStore();
+        try {
+            database.beginTransactionNonExclusive();
+            try {
+                applied = DatabaseUtils.queryNumEntries(database, PhoneSchema.TABLE_STOCK_BATCHES,
+                        PhoneSchema.COLUMN_BATCH_TOKEN + " = ?", new String[]{batch}) == 0;
+                if (applied) {
+                    for (int i = 0; i < ids.length; i++) {
+                        if (deltas[i] == 0) {
+                            continue;
+                        }
+                        // Read inside the transaction, so it is the quantity right before the change
+                        int quantity = (int) store.queryQuantity(ids[i]);
+                        if (store.adjustStock(ids[i], deltas[i])) {
+                            changedIds[changed++] = ids[i];
+                            quantities[i] = quantity;
+                        }
+                    }
+
+                    long now = System.currentTimeMillis();
+                    ContentValues batchValues = new ContentValues();
+                    batchValues.put(PhoneSchema.COLUMN_BATCH_TOKEN, batch);
+                    batchValues.put(PhoneSchema.COLUMN_APPLIED_AT, now);
+                    database.insertOrThrow(PhoneSchema.TABLE_STOCK_BATCHES, null, batchValues);
+
+                    // A sender retries a batch right away or at its next start, so old tokens can go
+                    database.delete(PhoneSchema.TABLE_STOCK_BATCHES, PhoneSchema.COLUMN_APPLIED_AT + " < ?",
+                            new String[]{String.valueOf(now - STOCK_BATCH_RETENTION_MILLIS)});
+                }
+                crossedIds = takeLowStockCrossings(database);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } finally {
+            shard.dbHelper.releasePhoneStore(store);
+        }
+
+        // Notify all listeners that the data of these phones has changed
+        notifySoldPhones(shard.storeId, Arrays.copyOf(changedIds, changed), crossedIds);
+
+        Bundle result = new Bundle();
+        result.putBoolean(PhoneEntry.EXTRA_APPLIED, applied);
+        result.putIntArray(PhoneEntry.EXTRA_QUANTITIES, quantities);
+        return result;
+    }
+
+    /**
+     * Fold the stock movements up to the given time into one new snapshot per phone, and remove
+     * them, in a single transaction. Return the number of movements that were folded.
+     */
+    private int compactStock(long cutoffMillis) {
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        Object[] cutoff = {cutoffMillis};
+        int compacted;
+        database.beginTransactionNonExclusive();
+        try {
+            database.execSQL(PhoneSchema.SQL_COMPACT_SNAPSHOTS, cutoff);
+            SQLiteStatement deleteStatement = database.compileStatement(PhoneSchema.SQL_COMPACT_MOVEMENTS);
+            try {
+                deleteStatement.bindLong(1, cutoffMillis);
+                compacted = deleteStatement.executeUpdateDelete();
+            } finally {
+                deleteStatement.close();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        Log.i(LOG_TAG, "Compacted " + compacted + " stock movements up to " + cutoffMillis);
+        return compacted;
+    }
+
+    /**
+     * Compact the stock history once its oldest movement is more than a day past
+     * {@link StockEntry#HISTORY_RETENTION_MILLIS}, so compaction runs at most about once a day.
+     * The oldest movement is read through the time index, so this check is cheap.
+     */
+    private void compactStockIfDue() {
+        SQLiteDatabase database = mDbHelper.getReadableDatabase();
+        long oldest = DatabaseUtils.longForQuery(database, "SELECT IFNULL(MIN("
+                + PhoneSchema.COLUMN_CREATED_AT + "), " + Long.MAX_VALUE + ") FROM "
+                + PhoneSchema.TABLE_STOCK_MOVEMENTS, null);
+        long cutoff = System.currentTimeMillis() - StockEntry.HISTORY_RETENTION_MILLIS;
+        if (oldest < cutoff - TimeUnit.DAYS.toMillis(1)) {
+            compactStock(cutoff);
+        }
+    }
+
+    /**
+     * Check that the given values describe a valid new phone. Throws an
+     * {@link IllegalArgumentException} naming the first attribute that is missing or invalid.
+     * Whether the supplier exists is checked against the database when the phone is written.
+     */
+    static void validatePhone(ContentValues values) {
+        PhoneValidator.checkName(values.getAsString(PhoneEntry.COLUMN_PHONE_NAME));
+        PhoneValidator.checkSupplierId(values.getAsInteger(PhoneEntry.COLUMN_SUPPLIER));
+        PhoneValidator.checkSupplierNumber(values.getAsString(PhoneEntry.COLUMN_SUPPLIER_NUMBER));
+        PhoneValidator.checkPrice(values.getAsInteger(PhoneEntry.COLUMN_PRICE));
+        PhoneValidator.checkQuantity(values.getAsInteger(PhoneEntry.COLUMN_QUANTITY));
+        PhoneValidator.checkReorderThreshold(values.getAsInteger(PhoneEntry.COLUMN_REORDER_THRESHOLD));
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues contentValues, String selection,
+                      String[] selectionArgs) {
+        uri = routeDefaultStore(uri);
+        final int match = sUriMatcher.match(uri);
+        long start = mMetrics.begin(ProviderMetrics.UPDATE, match, getMatchName(match));
+        int rowsUpdated = 0;
+        try {
+            // A phone that is not at the expected version is not updated, which update() can
+            // only tell as 0 rows, see METHOD_UPDATE_PHONE for the conflict itself
+            rowsUpdated = Math.max(0, updateUri(uri, match, contentValues, selection, selectionArgs));
+            return rowsUpdated;
+        } finally {
+            mMetrics.end(ProviderMetrics.UPDATE, match, start, rowsUpdated, uri, selection);
+        }
+    }
+
+    private int updateUri(Uri uri, int match, ContentValues contentValues, String selection,
+                          String[] selectionArgs) {
+        switch (match) {
+            case PHONES:
+                checkNoExpectedVersion(uri);
+                return updatePhone(contentValues, selection, selectionArgs);
+            case PHONE_ID:
+                // For the PHONE_ID code, extract out the ID from the URI,
+                // so we know which row to update.
+                return updatePhone(contentValues, ContentUris.parseId(uri), getExpectedVersion(uri));
+            case SUPPLIER_ID:
+                return updateSupplier(contentValues, ContentUris.parseId(uri));
+            case STORE_PHONES:
+                checkNoExpectedVersion(uri);
+                return updateStorePhones(uri, match, contentValues, selection, selectionArgs, -1);
+            case STORE_PHONE_ID:
+                return updateStorePhones(uri, match, contentValues, selection, selectionArgs,
+                        getExpectedVersion(uri));
+            default:
+                throw new IllegalArgumentException("Update is not supported for " + uri);
+        }
+    }
+
+    /**
+     * Update the single phone of the given content URI, of any store, only if it is at the
+     * expected version. Unlike {@link #update}, the returned Bundle tells a conflict apart from a
+     * phone that does not exist, see {@link PhoneEntry#METHOD_UPDATE_PHONE}.
+     */
+    private Bundle updatePhoneAtVersion(Uri uri, ContentValues values, long expectedVersion) {
+        if (values == null || expectedVersion < 1) {
+            throw new IllegalArgumentException("An update of a phone at a version needs the values and the version");
+        }
+        uri = routeDefaultStore(uri);
+        int match = sUriMatcher.match(uri);
+        long start = mMetrics.begin(ProviderMetrics.UPDATE, match, getMatchName(match));
+        int rowsUpdated = 0;
+        try {
+            switch (match) {
+                case PHONE_ID:
+                    rowsUpdated = updatePhone(values, ContentUris.parseId(uri), expectedVersion);
+                    break;
+                case STORE_PHONE_ID:
+                    rowsUpdated = updateStorePhones(uri, match, values, null, null, expectedVersion);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not the URI of a single phone: " + uri);
+            }
+        } finally {
+            mMetrics.end(ProviderMetrics.UPDATE, match, start, Math.max(0, rowsUpdated), uri, null);
+        }
+
+        Bundle result = new Bundle();
+        result.putBoolean(PhoneEntry.EXTRA_UPDATED, rowsUpdated > 0);
+        result.putBoolean(PhoneEntry.EXTRA_CONFLICT, rowsUpdated == VERSION_CONFLICT);
+        return result;
+    }
+
+    /**
+     * Returns the version that an update of the given URI of a single phone expects the phone to
+     * be at, or -1 if the update does not depend on it.
+     */
+    private static long getExpectedVersion(Uri uri) {
+        String version = uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_EXPECTED_VERSION);
+        return version == null ? -1 : parseQueryParameter(uri, version);
+    }
+
+    /**
+     * Check that the given URI of several phones does not expect a version, which only a single
+     * phone has.
+     */
+    private static void checkNoExpectedVersion(Uri uri) {
+        if (uri.getQueryParameter(PhoneEntry.QUERY_PARAMETER_EXPECTED_VERSION) != null) {
+            throw new IllegalArgumentException("Only the update of a single phone can expect a version: " + uri);
+        }
+    }
+
+    /**
+     * Returns whether the phone with the given ID is at the version an update expects, always true
+     * if the update does not expect any. Must be called in the transaction of the update, before
+     * anything is written, so nobody else can change the phone in between. A conflict is logged.
+     * The version of a phone that does not exist is -1.
+     */
+    private static boolean hasExpectedVersion(long id, long version, long expectedVersion) {
+        if (expectedVersion == -1 || version == expectedVersion) {
+            return true;
+        }
+        Log.i(LOG_TAG, "Phone " + id + (version == -1 ? " does not exist"
+                : " is at version " + version) + ", not " + expectedVersion + ", update skipped");
+        return false;
+    }
+
+    /**
+     * Update phones in the database with the given content values. Apply the changes to the rows
+     * specified in the selection and selection arguments (which could be 0 or 1 or more phones).
+     * The IDs of these rows are looked up first, so listeners can be told exactly which phones
+     * changed.
+     * Return the number of rows that were successfully updated.
+     */
+    private int updatePhone(ContentValues values, String selection, String[] selectionArgs) {
+        checkPhoneUpdate(values, getSuppliers());
+        // If there are no values to update, then don't try to update the database
+        if (values.size() == 0) {
+            return 0;
+        }
+        // Otherwise, get writeable database to update the data
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+
+        // Perform the update on the database and get the number of rows affected. Look up the
+        // rows in the same transaction, so the IDs match the rows that were updated.
+        int rowsUpdated;
+        long[] ids;
+        long[] crossedIds;
+        database.beginTransactionNonExclusive();
+        try {
+            ids = findPhoneIds(database, selection, selectionArgs);
+            rowsUpdated = updateAndCorrectStock(database, values, selection, selectionArgs, ids.length);
+
+            // The triggers recorded the phones whose new quantity or threshold put them on the
+            // other side of their threshold, so no other phone has to be looked at
+            crossedIds = takeLowStockCrossings(database);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        // If 1 or more rows were updated, then notify all listeners that these phones
+        // have changed, and the listeners of the low stock list of those that crossed
+        // their threshold
+        if (rowsUpdated != 0) {
+            notifyPhonesChanged(ids, false);
+        }
+        notifyLowStockCrossings(crossedIds);
+        // Return the number of rows updated
+        return rowsUpdated;
+    }
+
+    /**
+     * Update the phones of a store other than the default one, all those of the selection or the
+     * one in the URI, the same way as {@link #updatePhone(ContentValues, String, String[])}.
+     * A single phone is only updated if it is at the expected version, unless that is -1.
+     * Return the number of rows that were successfully updated, or {@link #VERSION_CONFLICT}.
+     */
+    private int updateStorePhones(Uri uri, int match, ContentValues values, String selection,
+                                  String[] selectionArgs, long expectedVersion) {
+        StoreShards.Shard shard = acquireStore(getStoreId(uri));
+        try {
+            return updateStorePhones(uri, match, shard, values, selection, selectionArgs, expectedVersion);
+        } finally {
+            releaseStore(shard);
+        }
+    }
+
+    private int updateStorePhones(Uri uri, int match, StoreShards.Shard shard, ContentValues values,
+                                  String selection, String[] selectionArgs, long expectedVersion) {
+        checkPhoneUpdate(values, shard.getSuppliers());
+        if (values.size() == 0) {
+            return 0;
+        }
+        long id = -1;
+        if (match == STORE_PHONE_ID) {
+            id = ContentUris.parseId(uri);
+            selection = DatabaseUtils.concatenateWhere(PhoneEntry._ID + "=" + id, selection);
+        }
+
+        SQLiteDatabase database = shard.dbHelper.getWritableDatabase();
+        int rowsUpdated = 0;
+        database.beginTransactionNonExclusive();
+        try {
+            // The version is checked before the stock correction, which moves it on
+            long version = expectedVersion == -1 ? -1 : queryVersion(database, id);
+            if (!hasExpectedVersion(id, version, expectedVersion)) {
+                rowsUpdated = version == -1 ? 0 : VERSION_CONFLICT;
+            } else {
+                rowsUpdated = updateAndCorrectStock(database, values, selection, selectionArgs, -1);
+            }
+
+            // The low stock list of the other stores is notified with their phones as a whole
+            takeLowStockCrossings(database);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+
+        if (rowsUpdated > 0) {
+            notifyStoreChanged(shard.storeId);
+        }
+        return rowsUpdated;
+    }
+
+    /**
+     * Returns the version of a phone, or -1 if there is no such phone.
+     */
+    private static long queryVersion(SQLiteDatabase database, long id) {
+        Cursor cursor = database.rawQuery(PhoneSchema.SQL_SELECT_VERSION, new String[]{String.valueOf(id)});
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Update the phones of the selection with the given values. A new quantity is set through the
+     * stock movements, so the change is in the history, and only the other values are written
+     * by the update itself, so each phone moves on to its next version once. Must be called
+     * inside a transaction. Returns the number of phones of the selection, which is looked up
+     * if the given one is -1 and the new quantity is all there is to write.
+     */
+    private static int updateAndCorrectStock(SQLiteDatabase database, ContentValues values,
+                                             String selection, String[] selectionArgs, int count) {
+        if (!values.containsKey(PhoneEntry.COLUMN_QUANTITY)) {
+            return database.update(PhoneEntry.TABLE_NAME, values, selection, selectionArgs);
+        }
+        long lastMovementId = DatabaseUtils.longForQuery(database,
+                PhoneSchema.SQL_SELECT_LAST_MOVEMENT_ID, null);
+        int quantity = values.getAsInteger(PhoneEntry.COLUMN_QUANTITY);
+        database.execSQL(PhoneSchema.SQL_CORRECT_STOCK
+                        + (TextUtils.isEmpty(selection) ? "" : " AND (" + selection + ")"),
+                DatabaseUtils.appendSelectionArgs(
+                        new String[]{String.valueOf(quantity), String.valueOf(quantity)},
+                        selectionArgs));
+
+        ContentValues otherValues = withoutQuantity(values);
+        if (otherValues.size() == 0) {
+            return count != -1 ? count
+                    : (int) DatabaseUtils.queryNumEntries(database, PhoneEntry.TABLE_NAME, selection, selectionArgs);
+        }
+        int rowsUpdated = database.update(PhoneEntry.TABLE_NAME, otherValues, selection, selectionArgs);
+        // The phones whose stock was corrected moved on twice, but were only edited once
+        database.execSQL(PhoneSchema.SQL_TAKE_BACK_VERSIONS, new Object[]{lastMovementId});
+        return rowsUpdated;
+    }
+
+    /**
+     * Returns a copy of the given values without the quantity.
+     */
+    private static ContentValues withoutQuantity(ContentValues values) {
+        ContentValues otherValues = new ContentValues(values);
+        otherValues.remove(PhoneEntry.COLUMN_QUANTITY);
+        return otherValues;
+    }
+
+    /**
+     * Check each attribute that is present in the given values with the same rules as a new phone,
+     * the supplier against the given suppliers of the store of the phones. The version is only
+     * moved on by the database.
+     */
+    private void checkPhoneUpdate(ContentValues values, SupplierDirectory suppliers) {
+        if (values.containsKey(PhoneEntry.COLUMN_VERSION)) {
+            throw new IllegalArgumentException("The version of a phone cannot be written");
+        }
+        if (values.containsKey(PhoneEntry.COLUMN_PHONE_NAME)) {
+            PhoneValidator.checkName(values.getAsString(PhoneEntry.COLUMN_PHONE_NAME));
+        }
+        if (values.containsKey(PhoneEntry.COLUMN_SUPPLIER)) {
+            suppliers.checkSupplier(values.getAsInteger(PhoneEntry.COLUMN_SUPPLIER));
+        }
+        if (values.containsKey(PhoneEntry.COLUMN_SUPPLIER_NUMBER)) {
+            PhoneValidator.checkSupplierNumber(values.getAsString(PhoneEntry.COLUMN_SUPPLIER_NUMBER));
+        }
+        if (values.containsKey(PhoneEntry.COLUMN_PRICE)) {
+            PhoneValidator.checkPrice(values.getAsInteger(PhoneEntry.COLUMN_PRICE));
+        }
+        if (values.containsKey(PhoneEntry.COLUMN_QUANTITY)) {
+            PhoneValidator.checkQuantity(values.getAsInteger(PhoneEntry.COLUMN_QUANTITY));
+        }
+        if (values.containsKey(PhoneEntry.COLUMN_REORDER_THRESHOLD)) {
+            PhoneValidator.checkReorderThreshold(values.getAsInteger(PhoneEntry.COLUMN_REORDER_THRESHOLD));
+        }
+    }
+
+    /**
+     * Update a single phone through the {@link SqlitePhoneStore} of the database. A whole row is
+     * written as a {@link Phone} by {@link PhoneStore#update}, and a new quantity alone only needs
+     * the stock correction, which is all the list and the cart write during a sale.
+     * Nothing is written if the phone is not at the expected version, unless that is -1.
+     * Return the number of rows that were successfully updated, or {@link #VERSION_CONFLICT}.
+     */
+    private int updatePhone(ContentValues values, long id, long expectedVersion) {
+        checkPhoneUpdate(values, getSuppliers());
+        // If there are no values to update, then don't try to update the database
+        if (values.size() == 0) {
+            return 0;
+        }
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        Phone phone = SqlitePhoneStore.isWholePhone(values) ? SqlitePhoneStore.toPhone(values) : null;
+
+        int rowsUpdated;
+        long[] crossedIds;
+        SqlitePhoneStore store = mDbHelper.acquirePhoneStore();
+        try {
+            database.beginTransactionNonExclusive();
+            try {
+                Integer quantity = values.getAsInteger(PhoneEntry.COLUMN_QUANTITY);
+                long version = expectedVersion == -1 ? -1 : store.queryVersion(id);
+                if (!hasExpectedVersion(id, version, expectedVersion)) {
+                    // Somebody else changed the phone since the caller read it, so their changes are
+                    // not written over. The version is checked first, since the stock correction
+                    // below already moves it on.
+                    rowsUpdated = version == -1 ? 0 : VERSION_CONFLICT;
+                } else if (phone != null) {
+                    // The store records a new quantity in the stock movements itself
+                    rowsUpdated = store.update(id, phone);
+                } else {
+                    // A new quantity goes through the stock movements first, so it is in the history
+                    boolean corrected = quantity != null && store.correctStock(id, quantity);
+                    ContentValues otherValues = quantity == null ? values : withoutQuantity(values);
+                    if (otherValues.size() == 0) {
+                        // The correction already set the quantity. The phone only counts as
+                        // updated if its stock changed, so an unchanged phone is not notified.
+                        rowsUpdated = corrected ? 1 : 0;
+                    } else {
+                        rowsUpdated = database.update(PhoneEntry.TABLE_NAME, otherValues, PhoneEntry._ID + "=?",
+                                new String[]{String.valueOf(id)});
+                        if (rowsUpdated != 0 && corrected) {
+                            store.takeBackVersion(id);
+                        }
+                    }
+                }
+                crossedIds = takeLowStockCrossings(database);
+                database.setTransactionSuccessful();
+            } finally {
+                database.endTransaction();
+            }
+        } finally {
+            mDbHelper.releasePhoneStore(store);
+        }
+
+        if (rowsUpdated > 0) {
+            notifyPhonesChanged(new long[]{id}, false);
+        }
+        notifyLowStockCrossings(crossedIds);
+        return rowsUpdated;
+    }
+
+    /**
+     * Rename a supplier. Its phones keep their supplier ID, so only the supplier row changes,
+     * but every phone shown with the supplier name has to be read again.
+     * Return the number of rows that were successfully updated.
+     */
+    private int updateSupplier(ContentValues values, long id) {
+        if (values.size() != 1 || !values.containsKey(SupplierEntry.COLUMN_SUPPLIER_NAME)) {
+            throw new IllegalArgumentException("Only the name of a supplier can be changed");
+        }
+        String name = values.getAsString(SupplierEntry.COLUMN_SUPPLIER_NAME);
+        PhoneValidator.checkSupplierName(name);
+
+        SQLiteDatabase database = mDbHelper.getWritableDatabase();
+        int rowsUpdated = database.update(SupplierEntry.TABLE_NAME, values, SupplierEntry._ID + "=?",
+                new String[]{String.valueOf(id)});
+        if (rowsUpdated != 0) {
+            getSuppliers().put((int) id, name);
+            mStores.putSupplier((int) id, name);
+            notifyChange(SupplierEntry.CONTENT_URI);
+            notifyPhonesChanged(null, false);
+        }
+        return rowsUpdated;
+    }
+
+        @Override
+        public int delete (Uri uri, String selection, String[]selectionArgs){
+            uri = routeDefaultStore(uri);
             final int match = sUriMatcher.match(uri);
+            long start = mMetrics.begin(ProviderMetrics.DELETE, match, getMatchName(match));
+            int rowsDeleted = 0;
+            try {
+                rowsDeleted = deleteUri(uri, match, selection, selectionArgs);
+                return rowsDeleted;
+            } finally {
+                mMetrics.end(ProviderMetrics.DELETE, match, start, rowsDeleted, uri, selection);
+            }
+        }
+
+        private int deleteUri (Uri uri, int match, String selection, String[]selectionArgs){
+            // Track the number of rows that were deleted, and which ones they were
+            int rowsDeleted;
+            long[] ids;
             switch (match) {
                 case PHONES:
-                    // Delete all rows that match the selection and selection args
-                    rowsDeleted = database.delete(PhoneEntry.TABLE_NAME, selection, selectionArgs);
+                    // Delete all rows that match the selection and selection args, after looking
+                    // up their IDs in the same transaction
+                    SQLiteDatabase database = mDbHelper.getWritableDatabase();
+                    database.beginTransactionNonExclusive();
+                    try {
+                        ids = findPhoneIds(database, selection, selectionArgs);
+                        rowsDeleted = database.delete(PhoneEntry.TABLE_NAME, selection, selectionArgs);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
                     break;
                 case PHONE_ID:
-                    // Delete a single row given by the ID in the URI
-                    selection = PhoneEntry._ID + "=?";
-                    selectionArgs = new String[]{String.valueOf(ContentUris.parseId(uri))};
-                    rowsDeleted = database.delete(PhoneEntry.TABLE_NAME, selection, selectionArgs);
+                    // Delete a single row given by the ID in the URI, with a compiled statement
+                    long id = ContentUris.parseId(uri);
+                    ids = new long[]{id};
+                    SqlitePhoneStore store = mDbHelper.acquirePhoneStore();
+                    try {
+                        rowsDeleted = store.delete(id);
+                    } finally {
+                        mDbHelper.releasePhoneStore(store);
+                    }
                     break;
+                case STORE_PHONES:
+                case STORE_PHONE_ID:
+                    return deleteStorePhones(uri, match, selection, selectionArgs);
+                case STORE_ID:
+                    // The whole database of the store goes, which tells every URI of the store
+                    if (!mStores.delete(ContentUris.parseId(uri))) {
+                        return 0;
+                    }
+                    notifyChange(StoreEntry.CONTENT_URI);
+                    return 1;
                 default:
                     throw new IllegalArgumentException("Deletion is not supported for " + uri);
             }
 
-            // If 1 or more rows were deleted, then notify all listeners that the data at the
-            // given URI has changed
+            // If 1 or more rows were deleted, then notify all listeners that these phones
+            // are gone from the list
             if (rowsDeleted != 0) {
-                getContext().getContentResolver().notifyChange(uri, null);
+                notifyPhonesChanged(ids, true);
             }
 
             // Return the number of rows deleted
             return rowsDeleted;
         }
 
+        /**
+         * Delete the phones of a store other than the default one, all those of the selection or
+         * the one in the URI. Return the number of rows deleted.
+         */
+        private int deleteStorePhones (Uri uri, int match, String selection, String[] selectionArgs){
+            StoreShards.Shard shard = acquireStore(getStoreId(uri));
+            if (match == STORE_PHONE_ID) {
+                selection = DatabaseUtils.concatenateWhere(
+                        PhoneEntry._ID + "=" + ContentUris.parseId(uri), selection);
+            }
+            int rowsDeleted;
+            try {
+                rowsDeleted = shard.dbHelper.getWritableDatabase().delete(PhoneEntry.TABLE_NAME,
+                        selection, selectionArgs);
+            } finally {
+                releaseStore(shard);
+            }
+            if (rowsDeleted != 0) {
+                notifyStoreChanged(shard.storeId);
+            }
+            return rowsDeleted;
+        }
+
         @Override
         public String getType (Uri uri){
+            uri = routeDefaultStore(uri);
             final int match = sUriMatcher.match(uri);
             switch (match) {
                 case PHONES:
                     return PhoneEntry.CONTENT_LIST_TYPE;
                 case PHONE_ID:
                     return PhoneEntry.CONTENT_ITEM_TYPE;
+                case PHONES_SEARCH:
+                    return PhoneEntry.CONTENT_LIST_TYPE;
+                case STATS:
+                    return StatsEntry.CONTENT_LIST_TYPE;
+                case PHONES_EXPORT:
+                    return PhoneEntry.CSV_TYPE;
+                case STOCK:
+                    return StockEntry.CONTENT_LIST_TYPE;
+                case LOW_STOCK:
+                    return LowStockEntry.CONTENT_LIST_TYPE;
+                case SUPPLIERS:
+                    return SupplierEntry.CONTENT_LIST_TYPE;
+                case SUPPLIER_ID:
+                    return SupplierEntry.CONTENT_ITEM_TYPE;
+                case STORES:
+                    return StoreEntry.CONTENT_LIST_TYPE;
+                case STORE_ID:
+                    return StoreEntry.CONTENT_ITEM_TYPE;
+                case STORES_STATS:
+                    return StoreEntry.STATS_TYPE;
+                case STORE_PHONES:
+                    return PhoneEntry.CONTENT_LIST_TYPE;
+                case STORE_PHONE_ID:
+                    return PhoneEntry.CONTENT_ITEM_TYPE;
+                case STORE_PHONES_SEARCH:
+                    return PhoneEntry.CONTENT_LIST_TYPE;
+                case STORE_PHONES_EXPORT:
+                    return PhoneEntry.CSV_TYPE;
+                case STORE_STOCK:
+                    return StockEntry.CONTENT_LIST_TYPE;
+                case STORE_LOW_STOCK:
+                    return LowStockEntry.CONTENT_LIST_TYPE;
                 default:
                     throw new IllegalStateException("Unknown URI " + uri + " with match " + match);
             }
         }
+
+        /**
+         * Print the latency and row count metrics, for "adb shell dumpsys activity provider".
+         */
+        @Override
+        public void dump (FileDescriptor fd, PrintWriter writer, String[]args){
+            mMetrics.dump(writer);
+        }
+
+        /**
+         * Returns the name of a URI matcher code, for the metrics.
+         */
+        private static String getMatchName (int match){
+            switch (match) {
+                case PHONES:
+                    return "PHONES";
+                case PHONE_ID:
+                    return "PHONE_ID";
+                case PHONES_SEARCH:
+                    return "PHONES_SEARCH";
+                case STATS:
+                    return "STATS";
+                case PHONES_EXPORT:
+                    return "PHONES_EXPORT";
+                case STOCK:
+                    return "STOCK";
+                case LOW_STOCK:
+                    return "LOW_STOCK";
+                case SUPPLIERS:
+                    return "SUPPLIERS";
+                case SUPPLIER_ID:
+                    return "SUPPLIER_ID";
+                case STORES:
+                    return "STORES";
+                case STORE_ID:
+                    return "STORE_ID";
+                case STORES_STATS:
+                    return "STORES_STATS";
+                case STORE_PHONES:
+                    return "STORE_PHONES";
+                case STORE_PHONE_ID:
+                    return "STORE_PHONE_ID";
+                case STORE_PHONES_SEARCH:
+                    return "STORE_PHONES_SEARCH";
+                case STORE_PHONES_EXPORT:
+                    return "STORE_PHONES_EXPORT";
+                case STORE_STOCK:
+                    return "STORE_STOCK";
+                case STORE_LOW_STOCK:
+                    return "STORE_LOW_STOCK";
+                default:
+                    return "UNKNOWN";
+            }
+        }
     }
\ No newline at end of file
@@ -0,0 +1,149 @@
+package com.example.android.inventorymmbv2;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+/**
+ * Bounded cache of whole phone rows by ID, used by {@link PhoneProvider} to answer queries for
+ * a single phone without going to the database.
+ *
+ * Every change to a phone removes it from the cache and starts a new generation. A row read from
+ * the database is only cached if no phone changed while it was being read, so a reader that raced
+ * with a writer can never put an outdated row back into the cache.
+ */
+final class PhoneRowCache {
+
+    /** Rows by phone ID. A row is stored as its column names and its column values. */
+    private final LruCache<Long, Row> mRows;
+
+    /** Incremented every time a phone changes */
+    private long mGeneration;
+
+    /**
+     * Creates a cache that holds at most the given number of phones.
+     */
+    PhoneRowCache(int maxRows) {
+        mRows = new LruCache<>(maxRows);
+    }
+
+    /**
+     * Returns the current generation, to be passed to {@link #put} after reading a row.
+     */
+    synchronized long generation() {
+        return mGeneration;
+    }
+
+    /**
+     * Returns a cursor with the given columns of the cached phone, or null if the phone is not
+     * cached or one of the columns is not part of the row. A null projection means all columns.
+     */
+    synchronized Cursor get(long id, String[] projection) {
+        Row row = mRows.get(id);
+        if (row == null) {
+            return null;
+        }
+        if (projection == null) {
+            projection = row.columns;
+        }
+
+        Object[] values = new Object[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            int index = row.indexOf(projection[i]);
+            if (index == -1) {
+                return null;
+            }
+            values[i] = row.values[index];
+        }
+        MatrixCursor cursor = new MatrixCursor(projection, 1);
+        cursor.addRow(values);
+        return cursor;
+    }
+
+    /**
+     * Caches the current row of the given cursor, which must hold all the columns of the phone,
+     * unless a phone changed since the given generation.
+     */
+    synchronized void put(long id, Cursor cursor, long generation) {
+        if (generation != mGeneration) {
+            return;
+        }
+
+        String[] columns = cursor.getColumnNames();
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            switch (cursor.getType(i)) {
+                case Cursor.FIELD_TYPE_INTEGER:
+                    values[i] = cursor.getLong(i);
+                    break;
+                case Cursor.FIELD_TYPE_FLOAT:
+                    values[i] = cursor.getDouble(i);
+                    break;
+                case Cursor.FIELD_TYPE_STRING:
+                    values[i] = cursor.getString(i);
+                    break;
+                case Cursor.FIELD_TYPE_BLOB:
+                    values[i] = cursor.getBlob(i);
+                    break;
+                default:
+                    values[i] = null;
+                    break;
+            }
+        }
+        mRows.put(id, new Row(columns, values));
+    }
+
+    /**
+     * Forget the phone with the given ID, because it was changed or deleted.
+     */
+    synchronized void remove(long id) {
+        mGeneration++;
+        mRows.remove(id);
+    }
+
+    /**
+     * Forget all phones, because it is not known which of them changed.
+     */
+    synchronized void clear() {
+        mGeneration++;
+        mRows.evictAll();
+    }
+
+    /** Number of queries answered from the cache */
+    synchronized int hitCount() {
+        return mRows.hitCount();
+    }
+
+    /** Number of queries that had to read the phone from the database */
+    synchronized int missCount() {
+        return mRows.missCount();
+    }
+
+    /** Number of phones in the cache */
+    synchronized int size() {
+        return mRows.size();
+    }
+
+    /**
+     * A cached phone row.
+     */
+    private static class Row {
+
+        final String[] columns;
+        final Object[] values;
+
+        Row(String[] columns, Object[] values) {
+            this.columns = columns;
+            this.values = values;
+        }
+
+        int indexOf(String column) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(column)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
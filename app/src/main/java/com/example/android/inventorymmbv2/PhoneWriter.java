@@ -0,0 +1,178 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writes to {@link PhoneProvider} on a single background thread, so the main thread never waits
+ * for the disk. Writes are made one at a time in the order they were given, and each result is
+ * delivered to its {@link Callback} on the main thread.
+ *
+ * A write that throws, for example because the provider rejected an invalid phone, is logged
+ * and reported as failed: a null URI or Bundle, or 0 rows.
+ */
+final class PhoneWriter {
+
+    /**
+     * Interface for receiving the result of a write on the main thread.
+     */
+    interface Callback<T> {
+
+        /**
+         * Called on the main thread once the write is done.
+         */
+        void onWriteComplete(T result);
+    }
+
+    private static final String LOG_TAG = PhoneWriter.class.getSimpleName();
+
+    private static PhoneWriter sInstance;
+
+    private final ContentResolver mResolver;
+
+    /** The single thread all writes are made on */
+    private final Executor mExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, LOG_TAG);
+        }
+    });
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Returns the writer of the app.
+     */
+    static synchronized PhoneWriter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PhoneWriter(context.getApplicationContext().getContentResolver());
+        }
+        return sInstance;
+    }
+
+    private PhoneWriter(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    /**
+     * Insert a row, see {@link ContentResolver#insert}. The callback gets the URI of the new
+     * row, or null if it could not be inserted.
+     */
+    void insert(final Uri uri, ContentValues values, Callback<Uri> callback) {
+        final ContentValues copy = new ContentValues(values);
+        mExecutor.execute(new Write<Uri>(callback, null) {
+            @Override
+            Uri write() {
+                return mResolver.insert(uri, copy);
+            }
+        });
+    }
+
+    /**
+     * Update rows, see {@link ContentResolver#update}. The callback gets the number of rows
+     * updated.
+     */
+    void update(final Uri uri, ContentValues values, final String selection,
+                final String[] selectionArgs, Callback<Integer> callback) {
+        final ContentValues copy = new ContentValues(values);
+        mExecutor.execute(new Write<Integer>(callback, 0) {
+            @Override
+            Integer write() {
+                return mResolver.update(uri, copy, selection, selectionArgs);
+            }
+        });
+    }
+
+    /**
+     * Delete rows, see {@link ContentResolver#delete}. The callback gets the number of rows
+     * deleted.
+     */
+    void delete(final Uri uri, final String selection, final String[] selectionArgs,
+                Callback<Integer> callback) {
+        mExecutor.execute(new Write<Integer>(callback, 0) {
+            @Override
+            Integer write() {
+                return mResolver.delete(uri, selection, selectionArgs);
+            }
+        });
+    }
+
+    /**
+     * Call a provider method that writes, see {@link ContentResolver#call}. The callback gets
+     * the result of the method, or null if it failed.
+     */
+    void call(final Uri uri, final String method, final String arg, final Bundle extras,
+              Callback<Bundle> callback) {
+        mExecutor.execute(new Write<Bundle>(callback, null) {
+            @Override
+            Bundle write() {
+                return mResolver.call(uri, method, arg, extras);
+            }
+        });
+    }
+
+    /**
+     * Run a task on the writer thread, after the writes given before it and before those given
+     * after it. For writes to the disk that have to be in order with the writes to the provider.
+     */
+    void execute(Runnable task) {
+        mExecutor.execute(task);
+    }
+
+    /**
+     * A write run on the writer thread, whose result is posted to its callback.
+     */
+    private abstract class Write<T> implements Runnable {
+
+        /** Callback for the result, or null if nobody needs it */
+        private final Callback<T> mCallback;
+
+        /** Result reported when the write throws */
+        private final T mFailedResult;
+
+        Write(Callback<T> callback, T failedResult) {
+            mCallback = callback;
+            mFailedResult = failedResult;
+        }
+
+        abstract T write();
+
+        @Override
+        public void run() {
+            T result;
+            try {
+                result = write();
+            } catch (RuntimeException e) {
+                Log.e(LOG_TAG, "Write failed", e);
+                result = mFailedResult;
+            }
+
+            if (mCallback != null) {
+                final T finalResult = result;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        mCallback.onWriteComplete(finalResult);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.android.inventorymmbv2;
+
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Trace;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency histograms and row counters of the operations of {@link PhoneProvider}, one for each
+ * kind of operation and URI matcher code. Operations slower than {@link #SLOW_OPERATION_MILLIS}
+ * are logged with their selection, and every operation is a section in systrace.
+ *
+ * All methods may be called from any thread.
+ */
+final class ProviderMetrics {
+
+    private static final String LOG_TAG = ProviderMetrics.class.getSimpleName();
+
+    /** Kinds of operation that are measured */
+    static final int QUERY = 0;
+    static final int INSERT = 1;
+    static final int BULK_INSERT = 2;
+    static final int UPDATE = 3;
+    static final int DELETE = 4;
+
+    private static final String[] OPERATION_NAMES = {"query", "insert", "bulkInsert", "update", "delete"};
+
+    /** Operations that take longer than this are logged */
+    static final long SLOW_OPERATION_MILLIS = 100;
+
+    /**
+     * Upper bounds in milliseconds of the latency buckets. The last bucket of a histogram counts
+     * the operations slower than the last bound.
+     */
+    static final long[] BUCKET_BOUNDS_MILLIS = {1, 2, 4, 8, 16, 32, 64, 128, 256, 512, 1024};
+
+    /** Statistics by {@link #key} */
+    private final SparseArray<Stats> mStats = new SparseArray<>();
+
+    /**
+     * Start measuring an operation on the current thread.
+     *
+     * @param operation One of the operation constants
+     * @param match     URI matcher code of the URI of the operation
+     * @param matchName Name of the URI matcher code, for the logs and the dump
+     * @return the start time to pass to {@link #end}
+     */
+    long begin(int operation, int match, String matchName) {
+        Stats stats = getStats(operation, match, matchName);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(stats.name);
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Finish measuring an operation started on the current thread with {@link #begin}.
+     *
+     * @param rows      Number of rows returned or changed
+     * @param selection Selection of the operation, logged if it was slow
+     */
+    void end(int operation, int match, long start, int rows, Uri uri, String selection) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+
+        Stats stats = getStats(operation, match, null);
+        boolean slow = micros >= TimeUnit.MILLISECONDS.toMicros(SLOW_OPERATION_MILLIS);
+        stats.add(micros, rows, slow);
+        if (slow) {
+            Log.w(LOG_TAG, "Slow " + stats.name + " took " + micros / 1000 + " ms for " + rows
+                    + " rows: " + uri + " selection=" + selection);
+        }
+    }
+
+    /**
+     * Write all the statistics in a readable form, for {@link PhoneProvider#dump}.
+     */
+    void dump(PrintWriter writer) {
+        writer.println("PhoneProvider metrics (latency buckets up to "
+                + Arrays.toString(BUCKET_BOUNDS_MILLIS) + " ms, then slower)");
+        synchronized (mStats) {
+            for (int i = 0; i < mStats.size(); i++) {
+                mStats.valueAt(i).dump(writer);
+            }
+        }
+    }
+
+    /**
+     * Returns all the statistics for {@link PhoneEntry#METHOD_METRICS}, one Bundle per
+     * operation and URI matcher code.
+     */
+    Bundle toBundle() {
+        Bundle result = new Bundle();
+        synchronized (mStats) {
+            for (int i = 0; i < mStats.size(); i++) {
+                Stats stats = mStats.valueAt(i);
+                result.putBundle(stats.name, stats.toBundle());
+            }
+        }
+        return result;
+    }
+
+    private Stats getStats(int operation, int match, String matchName) {
+        int key = key(operation, match);
+        synchronized (mStats) {
+            Stats stats = mStats.get(key);
+            if (stats == null) {
+                stats = new Stats(OPERATION_NAMES[operation] + " " + matchName);
+                mStats.put(key, stats);
+            }
+            return stats;
+        }
+    }
+
+    private static int key(int operation, int match) {
+        return match * OPERATION_NAMES.length + operation;
+    }
+
+    /**
+     * Statistics of one kind of operation on one URI matcher code.
+     */
+    private static class Stats {
+
+        /** Name of the operation and URI matcher code, also the systrace section name */
+        final String name;
+
+        private long mCount;
+        private long mRows;
+        private long mSlowCount;
+        private long mTotalMicros;
+        private long mMaxMicros;
+        private final long[] mHistogram = new long[BUCKET_BOUNDS_MILLIS.length + 1];
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(long micros, int rows, boolean slow) {
+            mCount++;
+            mRows += rows;
+            mTotalMicros += micros;
+            mMaxMicros = Math.max(mMaxMicros, micros);
+            if (slow) {
+                mSlowCount++;
+            }
+
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS_MILLIS.length && micros >= BUCKET_BOUNDS_MILLIS[bucket] * 1000) {
+                bucket++;
+            }
+            mHistogram[bucket]++;
+        }
+
+        synchronized void dump(PrintWriter writer) {
+            long meanMicros = mCount == 0 ? 0 : mTotalMicros / mCount;
+            writer.println("  " + name + ": count=" + mCount + " rows=" + mRows + " slow=" + mSlowCount
+                    + " mean=" + meanMicros + "us max=" + mMaxMicros + "us");
+            writer.println("    histogram=" + Arrays.toString(mHistogram));
+        }
+
+        synchronized Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putLong(PhoneEntry.EXTRA_METRICS_COUNT, mCount);
+            bundle.putLong(PhoneEntry.EXTRA_METRICS_ROWS, mRows);
+            bundle.putLong(PhoneEntry.EXTRA_METRICS_SLOW_COUNT, mSlowCount);
+            bundle.putLong(PhoneEntry.EXTRA_METRICS_TOTAL_MICROS, mTotalMicros);
+            bundle.putLong(PhoneEntry.EXTRA_METRICS_MAX_MICROS, mMaxMicros);
+            bundle.putLongArray(PhoneEntry.EXTRA_METRICS_HISTOGRAM, mHistogram.clone());
+            return bundle;
+        }
+    }
+}
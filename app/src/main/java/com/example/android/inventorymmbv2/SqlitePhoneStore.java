@@ -0,0 +1,319 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link PhoneStore} on the app's {@link SQLiteDatabase}, opened through {@link DbHelper}. This is
+ * the store {@link PhoneProvider} writes single phones through.
+ *
+ * Each statement is compiled the first time it is used and then only rebound, so these calls
+ * build no SQL and no selection arguments. Besides the calls of {@link PhoneStore}, the store
+ * has the stock and version operations the provider needs inside its own transactions.
+ *
+ * A statement keeps its bind arguments until it runs, so a store must only be used by one
+ * thread at a time. The {@link DbHelper} keeps a pool of them, see
+ * {@link DbHelper#acquirePhoneStore}, and closes them with the database. The database itself
+ * belongs to the {@link DbHelper}, so {@link #close} only releases the statements.
+ */
+class SqlitePhoneStore implements PhoneStore {
+
+    /** Columns of a phone, in the order read by {@link #readPhone} */
+    private static final String[] PHONE_COLUMNS = {
+            PhoneSchema.COLUMN_ID,
+            PhoneSchema.COLUMN_PHONE_NAME,
+            PhoneSchema.COLUMN_PRICE,
+            PhoneSchema.COLUMN_SUPPLIER,
+            PhoneSchema.COLUMN_SUPPLIER_NUMBER,
+            PhoneSchema.COLUMN_QUANTITY };
+
+    private final SQLiteDatabase mDatabase;
+
+    private SQLiteStatement mInsertStatement;
+    private SQLiteStatement mUpdateStatement;
+    private SQLiteStatement mDeleteStatement;
+    private SQLiteStatement mSellStatement;
+    private SQLiteStatement mAdjustStatement;
+    private SQLiteStatement mCorrectStockStatement;
+    private SQLiteStatement mTakeBackVersionStatement;
+    private SQLiteStatement mQuantityStatement;
+    private SQLiteStatement mVersionStatement;
+
+    SqlitePhoneStore(SQLiteDatabase database) {
+        mDatabase = database;
+    }
+
+    /**
+     * Returns whether this store was opened on the given database. After the helper has
+     * reopened the database, the statements of the old one cannot be used anymore.
+     */
+    boolean isFor(SQLiteDatabase database) {
+        return mDatabase == database;
+    }
+
+    /**
+     * Returns whether the database of this store is still open.
+     */
+    boolean isOpen() {
+        return mDatabase.isOpen();
+    }
+
+    /**
+     * Returns whether the given values hold exactly the columns of a whole phone row, in any
+     * order, so they can be written as a {@link Phone}, see {@link #toPhone}.
+     */
+    static boolean isWholePhone(ContentValues values) {
+        if (values.size() != PhoneSchema.INSERT_COLUMNS.length) {
+            return false;
+        }
+        for (String column : PhoneSchema.INSERT_COLUMNS) {
+            if (!values.containsKey(column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the phone held by the given values, which must be a whole phone, see
+     * {@link #isWholePhone}. Returns null if one of the values is missing or cannot be read as
+     * the type of its column, so the caller can leave it to the database to reject the row.
+     */
+    static Phone toPhone(ContentValues values) {
+        String name = values.getAsString(PhoneSchema.COLUMN_PHONE_NAME);
+        Integer price = values.getAsInteger(PhoneSchema.COLUMN_PRICE);
+        Integer supplier = values.getAsInteger(PhoneSchema.COLUMN_SUPPLIER);
+        String number = values.getAsString(PhoneSchema.COLUMN_SUPPLIER_NUMBER);
+        Integer quantity = values.getAsInteger(PhoneSchema.COLUMN_QUANTITY);
+        if (name == null || price == null || supplier == null || number == null || quantity == null) {
+            return null;
+        }
+        return new Phone(name, price, supplier, number, quantity);
+    }
+
+    @Override
+    public long insert(Phone phone) {
+        PhoneValidator.validate(phone);
+        if (mInsertStatement == null) {
+            mInsertStatement = mDatabase.compileStatement(PhoneSchema.SQL_INSERT_PHONE);
+        }
+        bindPhone(mInsertStatement, phone);
+        return mInsertStatement.executeInsert();
+    }
+
+    @Override
+    public int bulkInsert(List<Phone> phones) {
+        // Check the whole batch before writing anything, so an invalid phone leaves the table untouched
+        for (Phone phone : phones) {
+            PhoneValidator.validate(phone);
+        }
+
+        int rowsInserted = 0;
+        mDatabase.beginTransaction();
+        try {
+            for (Phone phone : phones) {
+                if (insert(phone) != -1) {
+                    rowsInserted++;
+                }
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+        return rowsInserted;
+    }
+
+    @Override
+    public int update(long id, Phone phone) {
+        PhoneValidator.validate(phone);
+        if (mUpdateStatement == null) {
+            mUpdateStatement = mDatabase.compileStatement(PhoneSchema.SQL_UPDATE_PHONE);
+        }
+        mDatabase.beginTransaction();
+        try {
+            // A new quantity goes through the stock movements first, so it is in the history,
+            // and the update only writes the other attributes, so the version moves on once
+            boolean corrected = correctStock(id, phone.getQuantity());
+
+            mUpdateStatement.bindString(1, phone.getName());
+            mUpdateStatement.bindLong(2, phone.getPrice());
+            mUpdateStatement.bindLong(3, phone.getSupplier());
+            mUpdateStatement.bindString(4, phone.getSupplierNumber());
+            mUpdateStatement.bindLong(5, id);
+            int rowsUpdated = mUpdateStatement.executeUpdateDelete();
+            if (rowsUpdated != 0 && corrected) {
+                takeBackVersion(id);
+            } else if (rowsUpdated == 0 && (corrected || queryVersion(id) != -1)) {
+                // The phone is there with the same attributes
+                rowsUpdated = 1;
+            }
+            mDatabase.setTransactionSuccessful();
+            return rowsUpdated;
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    @Override
+    public int delete(long id) {
+        if (mDeleteStatement == null) {
+            mDeleteStatement = mDatabase.compileStatement(PhoneSchema.SQL_DELETE_PHONE);
+        }
+        mDeleteStatement.bindLong(1, id);
+        return mDeleteStatement.executeUpdateDelete();
+    }
+
+    @Override
+    public Phone query(long id) {
+        Cursor cursor = mDatabase.query(PhoneSchema.TABLE_PHONES, PHONE_COLUMNS,
+                PhoneSchema.COLUMN_ID + " = ?", new String[]{String.valueOf(id)}, null, null, null);
+        try {
+            return cursor.moveToFirst() ? readPhone(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public List<Phone> queryBySupplier(int supplier, int limit) {
+        Cursor cursor = mDatabase.query(PhoneSchema.TABLE_PHONES, PHONE_COLUMNS,
+                PhoneSchema.COLUMN_SUPPLIER + " = ?", new String[]{String.valueOf(supplier)},
+                null, null, PhoneSchema.COLUMN_ID, String.valueOf(limit));
+        try {
+            List<Phone> phones = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                phones.add(readPhone(cursor));
+            }
+            return phones;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public boolean sell(long id, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one unit has to be sold");
+        }
+        if (mSellStatement == null) {
+            mSellStatement = mDatabase.compileStatement(PhoneSchema.SQL_SELL_PHONE);
+        }
+        mSellStatement.bindLong(1, count);
+        mSellStatement.bindLong(2, id);
+        mSellStatement.bindLong(3, count);
+        return mSellStatement.executeUpdateDelete() != 0;
+    }
+
+    /**
+     * Add units, which may be negative, to the stock of a phone, see
+     * {@link PhoneSchema#SQL_ADJUST_STOCK}. Returns whether the stock changed.
+     */
+    boolean adjustStock(long id, int delta) {
+        if (mAdjustStatement == null) {
+            mAdjustStatement = mDatabase.compileStatement(PhoneSchema.SQL_ADJUST_STOCK);
+        }
+        mAdjustStatement.bindLong(1, delta);
+        mAdjustStatement.bindLong(2, id);
+        mAdjustStatement.bindLong(3, delta);
+        return mAdjustStatement.executeUpdateDelete() != 0;
+    }
+
+    /**
+     * Set the stock of a phone, recording the difference as a correction, see
+     * {@link PhoneSchema#SQL_CORRECT_PHONE_STOCK}. Returns whether the stock changed.
+     */
+    boolean correctStock(long id, int quantity) {
+        if (mCorrectStockStatement == null) {
+            mCorrectStockStatement = mDatabase.compileStatement(PhoneSchema.SQL_CORRECT_PHONE_STOCK);
+        }
+        mCorrectStockStatement.bindLong(1, quantity);
+        mCorrectStockStatement.bindLong(2, quantity);
+        mCorrectStockStatement.bindLong(3, id);
+        return mCorrectStockStatement.executeUpdateDelete() != 0;
+    }
+
+    /**
+     * Take back the second version an edit moved a phone on by, when both its stock correction
+     * and its other attributes were written, see {@link PhoneSchema#SQL_TAKE_BACK_VERSION}.
+     */
+    void takeBackVersion(long id) {
+        if (mTakeBackVersionStatement == null) {
+            mTakeBackVersionStatement = mDatabase.compileStatement(PhoneSchema.SQL_TAKE_BACK_VERSION);
+        }
+        mTakeBackVersionStatement.bindLong(1, id);
+        mTakeBackVersionStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Returns the quantity in stock of a phone, or -1 if there is no such phone.
+     */
+    long queryQuantity(long id) {
+        if (mQuantityStatement == null) {
+            mQuantityStatement = mDatabase.compileStatement(PhoneSchema.SQL_SELECT_QUANTITY);
+        }
+        mQuantityStatement.bindLong(1, id);
+        try {
+            return mQuantityStatement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the version of a phone, or -1 if there is no such phone.
+     */
+    long queryVersion(long id) {
+        if (mVersionStatement == null) {
+            mVersionStatement = mDatabase.compileStatement(PhoneSchema.SQL_SELECT_VERSION);
+        }
+        mVersionStatement.bindLong(1, id);
+        try {
+            return mVersionStatement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public void close() {
+        SQLiteStatement[] statements = {mInsertStatement, mUpdateStatement, mDeleteStatement,
+                mSellStatement, mAdjustStatement, mCorrectStockStatement, mTakeBackVersionStatement,
+                mQuantityStatement, mVersionStatement};
+        for (SQLiteStatement statement : statements) {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+        mInsertStatement = null;
+        mUpdateStatement = null;
+        mDeleteStatement = null;
+        mSellStatement = null;
+        mAdjustStatement = null;
+        mCorrectStockStatement = null;
+        mTakeBackVersionStatement = null;
+        mQuantityStatement = null;
+        mVersionStatement = null;
+    }
+
+    /**
+     * Bind the attributes of a phone in the order of {@link PhoneSchema#INSERT_COLUMNS}.
+     */
+    private static void bindPhone(SQLiteStatement statement, Phone phone) {
+        statement.bindString(1, phone.getName());
+        statement.bindLong(2, phone.getPrice());
+        statement.bindLong(3, phone.getSupplier());
+        statement.bindString(4, phone.getSupplierNumber());
+        statement.bindLong(5, phone.getQuantity());
+    }
+
+    private static Phone readPhone(Cursor cursor) {
+        return new Phone(cursor.getLong(0), cursor.getString(1), cursor.getInt(2),
+                cursor.getInt(3), cursor.getString(4), cursor.getInt(5));
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.android.inventorymmbv2;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+
+/**
+ * Milestones of the start of the app, from the start of the application to the first page of
+ * the phone list on screen. Each step is a section in systrace, and the time of each milestone
+ * since the start of the application is logged once per process:
+ *
+ * adb logcat -s StartupTrace
+ *
+ * The first list also reports the activity as fully drawn, which "adb shell am start -W" and
+ * the ActivityManager log show as the time to the first useful frame.
+ */
+final class StartupTrace {
+
+    private static final String LOG_TAG = StartupTrace.class.getSimpleName();
+
+    /** Time of the start of the application, in uptime milliseconds, or 0 if not known */
+    private static volatile long sStartMillis;
+
+    /** Whether the first list of this process has been shown */
+    private static boolean sListShown;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Record the start of the application. Called before any provider is created.
+     */
+    static void markApplicationStart() {
+        sStartMillis = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Log that the given milestone has been reached on the current thread.
+     */
+    static void mark(String milestone) {
+        long start = sStartMillis;
+        if (start != 0) {
+            Log.i(LOG_TAG, milestone + " at " + (SystemClock.uptimeMillis() - start) + " ms");
+        }
+    }
+
+    /**
+     * Start a section of the startup in systrace. Every section must be ended with
+     * {@link #endSection} on the same thread.
+     */
+    static void beginSection(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(name);
+        }
+    }
+
+    /**
+     * End the last section started on the current thread with {@link #beginSection}.
+     */
+    static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Record that the given activity shows its first page of phones, and report it as fully
+     * drawn. Only the first list of the process is logged as a milestone of the startup.
+     * Must be called on the main thread.
+     */
+    static void onListShown(Activity activity) {
+        if (!sListShown) {
+            sListShown = true;
+            mark("First list shown");
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            activity.reportFullyDrawn();
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.v4.util.LongSparseArray;
+import android.util.Log;
+
+import com.example.android.inventorymmbv2.PhoneContract.PhoneEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Collects the stock changes made from the phone list and writes them behind, so a burst of
+ * taps on the cart button becomes one UPDATE per phone instead of one write, notification and
+ * list reload per tap.
+ *
+ * The changes are added up per phone and shown right away through {@link #getShownQuantity}.
+ * A change that has been applied is still added to the quantity of a list that was loaded
+ * before it, until the list is loaded again, so the old stock never shows up in between.
+ * They are sent to the provider with {@link PhoneEntry#METHOD_ADJUST_STOCK}, through the
+ * {@link PhoneWriter} like the other writes of the app, shortly after the first change, or when
+ * {@link #flush} is called as the list leaves the screen. Until the provider has applied them,
+ * they are kept in {@link SharedPreferences}, so they survive the process being killed, and are
+ * sent again at the next start. The preferences are only read and written on the thread of the
+ * {@link PhoneWriter}, so the main thread never waits for the file: they are loaded there when
+ * the adjuster is created, and written through with commit(), so a batch is on the disk before
+ * it is sent. Each batch carries a token that the provider remembers, so a batch that is sent
+ * twice is only applied once.
+ *
+ * All methods must be called on the main thread.
+ */
+final class StockAdjuster {
+
+    /**
+     * Interface for being told that the stock shown for a phone has changed.
+     */
+    interface Listener {
+
+        /**
+         * Called when the pending change of the phone with the given ID changed.
+         */
+        void onStockAdjusted(long id);
+    }
+
+    private static final String LOG_TAG = StockAdjuster.class.getSimpleName();
+
+    /** How long changes are collected before they are sent to the provider */
+    static final long FLUSH_DELAY_MILLIS = 500;
+
+    /** How long to wait before sending a batch again that could not be sent */
+    private static final long RETRY_DELAY_MILLIS = 5000;
+
+    /** Name of the preferences file holding the changes that have not been applied yet */
+    private static final String PREFS_NAME = "stock_adjustments";
+
+    /** Prefix of the preference keys of the changes that have not been sent yet, by phone ID */
+    private static final String KEY_PENDING = "pending_";
+
+    /** Prefix of the preference keys of the changes in the batch being sent, by phone ID */
+    private static final String KEY_FLUSHING = "flushing_";
+
+    /** Preference key of the token of the batch being sent */
+    private static final String KEY_FLUSHING_BATCH = "flushing_batch";
+
+    private static StockAdjuster sInstance;
+
+    /** App context */
+    private final Context mContext;
+
+    /**
+     * Durable copy of {@link #mPending} and of the batch being sent, only used on the thread of
+     * the {@link PhoneWriter}
+     */
+    private SharedPreferences mPrefs;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** Changes that have not been sent yet, by phone ID */
+    private final LongSparseArray<Integer> mPending = new LongSparseArray<>();
+
+    /** Changes of the batch being sent, by phone ID */
+    private final LongSparseArray<Integer> mFlushing = new LongSparseArray<>();
+
+    /**
+     * Changes that have been applied, by phone ID, while the list may not show them yet: the
+     * sum of the changes and the quantity from before them
+     */
+    private final LongSparseArray<int[]> mApplied = new LongSparseArray<>();
+
+    /** Token of the batch being sent, or null if there is no such batch */
+    private String mFlushingBatch;
+
+    /** Whether the changes saved by a previous process have been loaded */
+    private boolean mLoaded;
+
+    /** Whether a batch is being sent */
+    private boolean mFlushRunning;
+
+    /** Whether {@link #mFlushRunnable} is waiting on the handler */
+    private boolean mFlushScheduled;
+
+    private final ArrayList<Listener> mListeners = new ArrayList<>();
+
+    private final Runnable mFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Returns the stock adjuster of the app. Changes left over by a previous process are sent
+     * again when it is first created.
+     */
+    static StockAdjuster getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StockAdjuster(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private StockAdjuster(Context context) {
+        mContext = context;
+
+        // Opening the preferences waits for the file to be read, so it is done on the thread of
+        // the writer, before any change is saved there
+        PhoneWriter.getInstance(context).execute(new Runnable() {
+            @Override
+            public void run() {
+                mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+                final Map<String, ?> saved = mPrefs.getAll();
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(saved);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Called with the changes saved by a previous process once they have been read. They are
+     * added to the changes made since the adjuster was created, and sent again.
+     */
+    private void onLoaded(Map<String, ?> saved) {
+        Map<String, Object> changes = new HashMap<>();
+        for (Map.Entry<String, ?> entry : saved.entrySet()) {
+            String key = entry.getKey();
+            if (key.equals(KEY_FLUSHING_BATCH)) {
+                mFlushingBatch = (String) entry.getValue();
+            } else if (key.startsWith(KEY_PENDING)) {
+                long id = Long.parseLong(key.substring(KEY_PENDING.length()));
+                Integer changed = mPending.get(id);
+                int pending = (Integer) entry.getValue() + (changed == null ? 0 : changed);
+                if (changed != null) {
+                    // The change saved since has replaced the one on the disk, so save the sum
+                    changes.put(key, pending == 0 ? null : pending);
+                }
+                if (pending == 0) {
+                    mPending.remove(id);
+                } else {
+                    mPending.put(id, pending);
+                }
+            } else if (key.startsWith(KEY_FLUSHING)) {
+                mFlushing.put(Long.parseLong(key.substring(KEY_FLUSHING.length())), (Integer) entry.getValue());
+            }
+        }
+        mLoaded = true;
+        if (!changes.isEmpty()) {
+            save(changes);
+        }
+
+        for (int i = 0; i < mPending.size(); i++) {
+            notifyListeners(mPending.keyAt(i));
+        }
+        for (int i = 0; i < mFlushing.size(); i++) {
+            notifyListeners(mFlushing.keyAt(i));
+        }
+        if (mFlushingBatch != null || mPending.size() != 0) {
+            scheduleFlush(0);
+        }
+    }
+
+    void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Returns whether the stock of a phone has changes that the list may not show yet.
+     */
+    boolean hasChanges(long id) {
+        return mPending.get(id) != null || mFlushing.get(id) != null || mApplied.get(id) != null;
+    }
+
+    /**
+     * Returns the stock to show for a phone, given the quantity loaded from the provider. The
+     * changes that are not in the database yet are added to it, and so are the applied changes
+     * as long as the loaded quantity is still the one from before them. Once a quantity loaded
+     * after the changes comes in, the applied changes are forgotten.
+     */
+    int getShownQuantity(long id, int loadedQuantity) {
+        int quantity = loadedQuantity + mPending.get(id, 0) + mFlushing.get(id, 0);
+        int[] applied = mApplied.get(id);
+        if (applied != null) {
+            if (loadedQuantity == applied[1]) {
+                quantity += applied[0];
+            } else {
+                // The list has been loaded again since, with these changes or later ones
+                mApplied.remove(id);
+            }
+        }
+        return quantity;
+    }
+
+    /**
+     * Add a number of units, negative to take them out, to the stock of a phone. The change is
+     * saved at once and sent to the provider together with the other changes of the next
+     * {@link #FLUSH_DELAY_MILLIS}.
+     */
+    void adjust(long id, int delta) {
+        int pending = mPending.get(id, 0) + delta;
+        Map<String, Object> changes = new HashMap<>();
+        if (pending == 0) {
+            mPending.remove(id);
+            changes.put(KEY_PENDING + id, null);
+        } else {
+            mPending.put(id, pending);
+            changes.put(KEY_PENDING + id, pending);
+        }
+        save(changes);
+
+        // The timer starts with the first change, so a steady stream of taps is still sent
+        // every FLUSH_DELAY_MILLIS
+        scheduleFlush(FLUSH_DELAY_MILLIS);
+        notifyListeners(id);
+    }
+
+    /**
+     * Send the changes to the provider now. Changes made while a batch is being sent go with
+     * the next batch, which is sent as soon as the current one is done.
+     */
+    void flush() {
+        mHandler.removeCallbacks(mFlushRunnable);
+        mFlushScheduled = false;
+        if (mFlushRunning || !mLoaded) {
+            // Flushed again once the batch is done, or the saved changes are loaded
+            return;
+        }
+
+        // A batch that was not confirmed is sent again as it was, with the same token
+        if (mFlushingBatch == null) {
+            if (mPending.size() == 0) {
+                return;
+            }
+            mFlushingBatch = UUID.randomUUID().toString();
+            Map<String, Object> changes = new HashMap<>();
+            for (int i = 0; i < mPending.size(); i++) {
+                long id = mPending.keyAt(i);
+                int delta = mPending.valueAt(i);
+                mFlushing.put(id, delta);
+                changes.put(KEY_PENDING + id, null);
+                changes.put(KEY_FLUSHING + id, delta);
+            }
+            changes.put(KEY_FLUSHING_BATCH, mFlushingBatch);
+            save(changes);
+            mPending.clear();
+        }
+
+        long[] ids = new long[mFlushing.size()];
+        int[] deltas = new int[mFlushing.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mFlushing.keyAt(i);
+            deltas[i] = mFlushing.valueAt(i);
+        }
+        Bundle extras = new Bundle();
+        extras.putLongArray(PhoneEntry.EXTRA_IDS, ids);
+        extras.putIntArray(PhoneEntry.EXTRA_DELTAS, deltas);
+        mFlushRunning = true;
+        PhoneWriter.getInstance(mContext).call(PhoneEntry.CONTENT_URI, PhoneEntry.METHOD_ADJUST_STOCK,
+                mFlushingBatch, extras, new PhoneWriter.Callback<Bundle>() {
+                    @Override
+                    public void onWriteComplete(Bundle result) {
+                        onFlushed(result);
+                    }
+                });
+    }
+
+    /**
+     * Called when the provider has answered a batch, or with null when it could not be sent.
+     */
+    private void onFlushed(Bundle result) {
+        mFlushRunning = false;
+        if (result == null) {
+            // Keep the batch and its token, and try again later
+            scheduleFlush(RETRY_DELAY_MILLIS);
+            return;
+        }
+
+        // The batch was sent in the order of mFlushing, which has not changed since
+        int[] quantities = result.getIntArray(PhoneEntry.EXTRA_QUANTITIES);
+        Map<String, Object> changes = new HashMap<>();
+        long[] ids = new long[mFlushing.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = mFlushing.keyAt(i);
+            changes.put(KEY_FLUSHING + ids[i], null);
+            if (quantities != null && quantities[i] != -1) {
+                // Keep showing the change until the list has been loaded with it
+                int delta = Math.max(-quantities[i], mFlushing.valueAt(i));
+                int[] applied = mApplied.get(ids[i]);
+                mApplied.put(ids[i], applied == null
+                        ? new int[]{delta, quantities[i]}
+                        : new int[]{applied[0] + delta, applied[1]});
+            }
+        }
+        changes.put(KEY_FLUSHING_BATCH, null);
+        save(changes);
+        mFlushing.clear();
+        mFlushingBatch = null;
+
+        for (long id : ids) {
+            notifyListeners(id);
+        }
+        if (mPending.size() != 0) {
+            scheduleFlush(FLUSH_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Write the given changes of the preferences on the thread of the {@link PhoneWriter}, in
+     * order with the batches sent to the provider. The keys map to an Integer or a String, or
+     * to null to remove them. They are written through with commit(), so a batch is on the disk
+     * as the batch being sent before the provider can apply it.
+     */
+    private void save(final Map<String, Object> changes) {
+        PhoneWriter.getInstance(mContext).execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences.Editor editor = mPrefs.edit();
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    Object value = change.getValue();
+                    if (value == null) {
+                        editor.remove(change.getKey());
+                    } else if (value instanceof Integer) {
+                        editor.putInt(change.getKey(), (Integer) value);
+                    } else {
+                        editor.putString(change.getKey(), (String) value);
+                    }
+                }
+                if (!editor.commit()) {
+                    Log.e(LOG_TAG, "Failed to save the stock changes");
+                }
+            }
+        });
+    }
+
+    /**
+     * Flush after the given delay, unless a flush is already scheduled.
+     */
+    private void scheduleFlush(long delayMillis) {
+        if (!mFlushScheduled) {
+            mFlushScheduled = true;
+            mHandler.postDelayed(mFlushRunnable, delayMillis);
+        }
+    }
+
+    private void notifyListeners(long id) {
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onStockAdjusted(id);
+        }
+    }
+}
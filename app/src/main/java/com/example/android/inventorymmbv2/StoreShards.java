@@ -0,0 +1,442 @@
+package com.example.android.inventorymmbv2;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.example.android.inventorymmbv2.PhoneContract.StoreEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The databases of the stores, used by {@link PhoneProvider} to route the URIs of a store to its
+ * shard. Every store has a database file of its own with the whole schema of {@link DbHelper},
+ * so its writes and locks never reach the other stores. The default store is the database of
+ * the app, the others are in files named after their ID, opened on first use.
+ *
+ * The suppliers are shared by all stores. They are added and renamed in the default store, which
+ * copies each change to the shards that are open, and every shard catches up with the suppliers
+ * of the default store when it is opened. So a phone of any store can have any supplier.
+ *
+ * A shard is used between {@link #acquire} and {@link #release}. Deleting a store only closes
+ * and deletes its database once the last thread using it has released it, and until then the
+ * store is already unknown to new lookups.
+ *
+ * The lock of the shards only guards the map of the stores and their references. No database is
+ * opened, upgraded or written while it is held: a shard is published first and opened after, under
+ * a lock of its own, so opening one store never holds up the writes of another, and a thread in
+ * a transaction of a shard can look up its store while another thread waits for that transaction.
+ *
+ * The totals of all stores are read on a connection of their own that attaches the shards,
+ * since attaching a database to a connection of a {@link DbHelper} would switch its pool out of
+ * WAL mode.
+ */
+final class StoreShards {
+
+    /** Name of the database file of a store is this prefix, its ID and {@link #SHARD_SUFFIX} */
+    private static final String SHARD_PREFIX = "store_";
+    private static final String SHARD_SUFFIX = ".db";
+
+    /** Number of databases SQLite attaches to one connection at most, SQLITE_MAX_ATTACHED */
+    private static final int MAX_ATTACHED = 10;
+
+    /** Preferences that keep {@link #KEY_LAST_STORE_ID} */
+    private static final String PREFS_NAME = "store_shards";
+
+    /** The highest store ID ever handed out, so the ID of a deleted store is never used again */
+    private static final String KEY_LAST_STORE_ID = "last_store_id";
+
+    private static final String[] SUPPLIER_COLUMNS = {PhoneSchema.COLUMN_ID, PhoneSchema.COLUMN_SUPPLIER_NAME};
+
+    /**
+     * The database of one store, with its suppliers read once like those of the default store.
+     */
+    static final class Shard {
+
+        final long storeId;
+        final DbHelper dbHelper;
+        private final SupplierDirectory mSuppliers;
+
+        /** Number of threads between {@link #acquire} and {@link #release}, guarded by the shards */
+        private int mReferences;
+
+        /** Whether the store has been deleted, and its database goes with the last reference */
+        private boolean mDeleted;
+
+        /** Whether the database has been opened and its suppliers caught up, guarded by the shard */
+        private boolean mOpened;
+
+        Shard(long storeId, DbHelper dbHelper, SupplierDirectory suppliers, boolean opened) {
+            this.storeId = storeId;
+            this.dbHelper = dbHelper;
+            mSuppliers = suppliers;
+            mOpened = opened;
+        }
+
+        /**
+         * Returns the suppliers of the store, reading them from its database the first time.
+         */
+        SupplierDirectory getSuppliers() {
+            if (!mSuppliers.isLoaded()) {
+                mSuppliers.load(dbHelper.getReadableDatabase());
+            }
+            return mSuppliers;
+        }
+    }
+
+    private final Context mContext;
+
+    /** The shard of {@link StoreEntry#DEFAULT_STORE_ID}, which is the database of the app */
+    private final Shard mDefaultShard;
+
+    /** The shards of the other stores that have been opened, by store ID */
+    private final Map<Long, Shard> mShards = new HashMap<>();
+
+    /** Stores that have been deleted, but whose database is still in use or being deleted, by store ID */
+    private final Set<Long> mDeletedStoreIds = new HashSet<>();
+
+    /** Lock of {@link #KEY_LAST_STORE_ID}, so two stores being created never get the same ID */
+    private final Object mCounterLock = new Object();
+
+    /**
+     * @param dbHelper  of the database of the default store
+     * @param suppliers of the default store
+     */
+    StoreShards(Context context, DbHelper dbHelper, SupplierDirectory suppliers) {
+        mContext = context;
+        // The provider opens the database of the app itself
+        mDefaultShard = new Shard(StoreEntry.DEFAULT_STORE_ID, dbHelper, suppliers, true);
+    }
+
+    /**
+     * Returns the shard of the given store, opening its database helper the first time. The
+     * database stays open until the shard is given back to {@link #release}, even if the store
+     * is deleted meanwhile, so call it in a finally block.
+     *
+     * @throws IllegalArgumentException if there is no such store
+     */
+    Shard acquire(long storeId) {
+        if (storeId == StoreEntry.DEFAULT_STORE_ID) {
+            return mDefaultShard;
+        }
+        Shard shard = register(storeId, false);
+        try {
+            openShard(shard);
+        } catch (RuntimeException e) {
+            release(shard);
+            throw e;
+        }
+        return shard;
+    }
+
+    /**
+     * Returns the shard of the given store with one more reference, adding it to the open stores
+     * if it is not there yet. Its database is not opened here.
+     *
+     * @param create whether the store is being created, so it has no database file yet
+     */
+    private synchronized Shard register(long storeId, boolean create) {
+        Shard shard = mShards.get(storeId);
+        if (shard == null) {
+            if (mDeletedStoreIds.contains(storeId)
+                    || (!create && !mContext.getDatabasePath(getDatabaseName(storeId)).exists())) {
+                throw new IllegalArgumentException("Unknown store " + storeId);
+            }
+            shard = new Shard(storeId, new DbHelper(mContext, getDatabaseName(storeId),
+                    DbHelper.DEFAULT_SYNCHRONOUS_MODE, DbHelper.DEFAULT_WAL_AUTOCHECKPOINT_PAGES),
+                    new SupplierDirectory(), false);
+            mShards.put(storeId, shard);
+        }
+        shard.mReferences++;
+        return shard;
+    }
+
+    /**
+     * Give back a shard returned by {@link #acquire}. The last thread to give back the shard of a
+     * deleted store closes and deletes its database.
+     */
+    void release(Shard shard) {
+        if (shard == mDefaultShard) {
+            return;
+        }
+        synchronized (this) {
+            shard.mReferences--;
+            if (shard.mReferences != 0 || !shard.mDeleted) {
+                return;
+            }
+        }
+        deleteShard(shard.storeId, shard);
+    }
+
+    /**
+     * Open a new store and create its database. The ID of the store comes from a counter that
+     * is saved before the database is created, so a client holding the URI of a deleted store
+     * never reaches a new store by it. The counter starts after the highest store on the disk,
+     * for the stores opened before it was kept.
+     *
+     * @return the ID of the new store
+     * @throws IllegalStateException if the counter could not be saved
+     */
+    long create() {
+        long storeId;
+        synchronized (mCounterLock) {
+            SharedPreferences prefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            long[] storeIds = listStoreIds();
+            storeId = Math.max(prefs.getLong(KEY_LAST_STORE_ID, StoreEntry.DEFAULT_STORE_ID),
+                    storeIds[storeIds.length - 1]) + 1;
+            // Written through before the store exists, the same as the database file created next
+            if (!prefs.edit().putLong(KEY_LAST_STORE_ID, storeId).commit()) {
+                throw new IllegalStateException("Failed to save the ID of store " + storeId);
+            }
+        }
+        Shard shard = register(storeId, true);
+        try {
+            openShard(shard);
+        } finally {
+            release(shard);
+        }
+        return storeId;
+    }
+
+    /**
+     * Delete the given store with all its phones. The store is unknown from now on, but its
+     * database is only closed and deleted once no thread uses it anymore.
+     *
+     * @return whether there was such a store
+     * @throws IllegalArgumentException for the default store, which holds the database of the app
+     */
+    boolean delete(long storeId) {
+        if (storeId == StoreEntry.DEFAULT_STORE_ID) {
+            throw new IllegalArgumentException("The default store cannot be deleted");
+        }
+        Shard shard;
+        synchronized (this) {
+            if (mDeletedStoreIds.contains(storeId)) {
+                return false;
+            }
+            // Unknown to new lookups from now on, until its database is gone
+            mDeletedStoreIds.add(storeId);
+            shard = mShards.remove(storeId);
+            if (shard != null && shard.mReferences != 0) {
+                // The last release deletes it
+                shard.mDeleted = true;
+                return true;
+            }
+        }
+        return deleteShard(storeId, shard);
+    }
+
+    /**
+     * Copy a supplier that has just been added to or renamed in the default store to the shards
+     * that are open. The other shards copy it when they are opened. Call it once the change has
+     * been committed, and not inside a transaction of a shard, whose write it would wait for.
+     */
+    void putSupplier(int id, String name) {
+        List<Shard> shards;
+        synchronized (this) {
+            shards = new ArrayList<>(mShards.values());
+            for (Shard shard : shards) {
+                shard.mReferences++;
+            }
+        }
+        try {
+            for (Shard shard : shards) {
+                // A shard still being opened reads the committed supplier when it catches up
+                openShard(shard);
+                writeSupplier(shard.dbHelper.getWritableDatabase(), id, name);
+                shard.mSuppliers.put(id, name);
+            }
+        } finally {
+            for (Shard shard : shards) {
+                release(shard);
+            }
+        }
+    }
+
+    /**
+     * Returns the IDs of all stores in ascending order, the default store first.
+     */
+    long[] listStoreIds() {
+        String[] names = mContext.getDatabasePath(SHARD_PREFIX).getParentFile().list();
+        long[] storeIds = new long[names == null ? 1 : names.length + 1];
+        storeIds[0] = StoreEntry.DEFAULT_STORE_ID;
+        int count = 1;
+        if (names != null) {
+            for (String name : names) {
+                if (name.startsWith(SHARD_PREFIX) && name.endsWith(SHARD_SUFFIX)) {
+                    try {
+                        long storeId = Long.parseLong(name.substring(SHARD_PREFIX.length(),
+                                name.length() - SHARD_SUFFIX.length()));
+                        if (!isDeleted(storeId)) {
+                            storeIds[count++] = storeId;
+                        }
+                    } catch (NumberFormatException e) {
+                        // Not the database of a store
+                    }
+                }
+            }
+        }
+        storeIds = Arrays.copyOf(storeIds, count);
+        Arrays.sort(storeIds);
+        return storeIds;
+    }
+
+    /**
+     * Returns the totals of every store, one row per store in the order of their IDs, with the
+     * columns of {@link StoreEntry#STATS_URI}. Each shard is opened first, so its schema is
+     * up to date, then attached to an in-memory database to be read with the others in one
+     * statement. Readers in WAL mode do not block the writers of the shards.
+     */
+    Cursor queryTotals() {
+        String[] columns = {StoreEntry._ID, StoreEntry.COLUMN_PHONE_COUNT, StoreEntry.COLUMN_UNITS,
+                StoreEntry.COLUMN_STOCK_VALUE};
+        MatrixCursor totals = new MatrixCursor(columns);
+
+        List<Shard> shards = new ArrayList<>();
+        SQLiteDatabase database = null;
+        try {
+            for (long storeId : listStoreIds()) {
+                Shard shard;
+                try {
+                    shard = acquire(storeId);
+                } catch (IllegalArgumentException e) {
+                    // Deleted since it was listed
+                    continue;
+                }
+                shards.add(shard);
+                shard.dbHelper.getReadableDatabase();
+            }
+
+            database = SQLiteDatabase.create(null);
+            for (int first = 0; first < shards.size(); first += MAX_ATTACHED) {
+                int count = Math.min(MAX_ATTACHED, shards.size() - first);
+                int attached = 0;
+                try {
+                    StringBuilder sql = new StringBuilder();
+                    for (int i = 0; i < count; i++) {
+                        database.execSQL("ATTACH DATABASE ? AS shard" + i,
+                                new Object[]{shards.get(first + i).dbHelper.getDatabaseFile().getPath()});
+                        attached++;
+                        if (i > 0) {
+                            sql.append(" UNION ALL ");
+                        }
+                        sql.append("SELECT ").append(shards.get(first + i).storeId).append(" AS ")
+                                .append(StoreEntry._ID);
+                        for (int column = 1; column < columns.length; column++) {
+                            sql.append(", ifnull(SUM(").append(columns[column]).append("), 0)");
+                        }
+                        sql.append(" FROM shard").append(i).append('.')
+                                .append(PhoneSchema.TABLE_INVENTORY_SUMMARY);
+                    }
+                    Cursor cursor = database.rawQuery(sql.toString(), null);
+                    try {
+                        while (cursor.moveToNext()) {
+                            totals.addRow(new Object[]{cursor.getLong(0), cursor.getLong(1),
+                                    cursor.getLong(2), cursor.getLong(3)});
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                } finally {
+                    for (int i = 0; i < attached; i++) {
+                        database.execSQL("DETACH DATABASE shard" + i);
+                    }
+                }
+            }
+        } finally {
+            if (database != null) {
+                database.close();
+            }
+            for (Shard shard : shards) {
+                release(shard);
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * Close the database of a deleted store, if it has been opened, and delete it. The store
+     * stays among the deleted ones until its file is gone, so it cannot be opened again meanwhile.
+     */
+    private boolean deleteShard(long storeId, Shard shard) {
+        boolean deleted;
+        try {
+            if (shard != null) {
+                shard.dbHelper.close();
+            }
+            deleted = mContext.deleteDatabase(getDatabaseName(storeId));
+        } finally {
+            synchronized (this) {
+                mDeletedStoreIds.remove(storeId);
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Open, create or upgrade the database of a registered shard and catch up with the suppliers,
+     * the first time it is used. Only the threads using this store wait for it. If it fails, the
+     * next use tries again.
+     */
+    private void openShard(Shard shard) {
+        synchronized (shard) {
+            if (!shard.mOpened) {
+                copySuppliers(shard.dbHelper.getWritableDatabase());
+                shard.mOpened = true;
+            }
+        }
+    }
+
+    /**
+     * Bring the suppliers of a shard up to date with those of the default store, in case
+     * suppliers were added or renamed while it was not open.
+     */
+    private void copySuppliers(SQLiteDatabase shardDatabase) {
+        Cursor cursor = mDefaultShard.dbHelper.getReadableDatabase().query(PhoneSchema.TABLE_SUPPLIERS,
+                SUPPLIER_COLUMNS, null, null, null, null, null);
+        shardDatabase.beginTransaction();
+        try {
+            while (cursor.moveToNext()) {
+                writeSupplier(shardDatabase, cursor.getInt(0), cursor.getString(1));
+            }
+            shardDatabase.setTransactionSuccessful();
+        } finally {
+            shardDatabase.endTransaction();
+            cursor.close();
+        }
+    }
+
+    /**
+     * Add a supplier to a shard with the ID it has in the default store, or give it its new name.
+     * The supplier row is never replaced, since the phones of the shard refer to it.
+     */
+    private static void writeSupplier(SQLiteDatabase database, int id, String name) {
+        ContentValues values = new ContentValues();
+        values.put(PhoneSchema.COLUMN_ID, id);
+        values.put(PhoneSchema.COLUMN_SUPPLIER_NAME, name);
+        if (database.insertWithOnConflict(PhoneSchema.TABLE_SUPPLIERS, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE) == -1) {
+            values.remove(PhoneSchema.COLUMN_ID);
+            database.updateWithOnConflict(PhoneSchema.TABLE_SUPPLIERS, values,
+                    PhoneSchema.COLUMN_ID + " = ?", new String[]{String.valueOf(id)},
+                    SQLiteDatabase.CONFLICT_IGNORE);
+        }
+    }
+
+    private synchronized boolean isDeleted(long storeId) {
+        return mDeletedStoreIds.contains(storeId);
+    }
+
+    private static String getDatabaseName(long storeId) {
+        return SHARD_PREFIX + storeId + SHARD_SUFFIX;
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.android.inventorymmbv2;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Arrays;
+
+/**
+ * In-memory copy of the suppliers table, used by {@link PhoneProvider} to check the supplier of
+ * every phone it writes without going to the database.
+ *
+ * Supplier IDs are handed out by the database one after the other, so the names are kept in an
+ * array indexed by ID and a lookup is a single array access. The array is replaced as a whole
+ * when a supplier is added or renamed, so readers never take a lock.
+ */
+final class SupplierDirectory {
+
+    private static final String[] COLUMNS = {PhoneSchema.COLUMN_ID, PhoneSchema.COLUMN_SUPPLIER_NAME};
+
+    /**
+     * Supplier names by ID, null where there is no supplier, or null until loaded. The names
+     * are only kept to tell the suppliers that exist from the gaps.
+     */
+    private volatile String[] mNames;
+
+    /**
+     * Returns whether the suppliers have been read from the database since the directory was
+     * created or last cleared.
+     */
+    boolean isLoaded() {
+        return mNames != null;
+    }
+
+    /**
+     * Read all the suppliers from the given database, replacing the ones known so far.
+     */
+    synchronized void load(SQLiteDatabase database) {
+        Cursor cursor = database.query(PhoneSchema.TABLE_SUPPLIERS, COLUMNS, null, null,
+                null, null, PhoneSchema.COLUMN_ID + " DESC");
+        try {
+            // The highest ID comes first and sets the size of the array
+            String[] names = new String[cursor.moveToFirst() ? cursor.getInt(0) + 1 : 0];
+            for (int i = 0; i < cursor.getCount(); i++) {
+                cursor.moveToPosition(i);
+                names[cursor.getInt(0)] = cursor.getString(1);
+            }
+            mNames = names;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Forget all suppliers, so they are read again from the next database that is opened.
+     */
+    synchronized void clear() {
+        mNames = null;
+    }
+
+    /**
+     * Returns whether there is a supplier with the given ID. The directory must be loaded.
+     */
+    boolean contains(int id) {
+        String[] names = mNames;
+        return id >= 0 && id < names.length && names[id] != null;
+    }
+
+    /**
+     * Add a supplier that has just been inserted, or the new name of a supplier that has just been
+     * renamed. Call it once the change has been committed.
+     */
+    synchronized void put(int id, String name) {
+        String[] names = mNames;
+        if (names == null) {
+            // Not loaded yet, the supplier is read with the others
+            return;
+        }
+        names = Arrays.copyOf(names, Math.max(names.length, id + 1));
+        names[id] = name;
+        mNames = names;
+    }
+
+    /**
+     * Check that the given supplier exists, with the same message as {@link PhoneValidator}.
+     * The directory must be loaded.
+     */
+    void checkSupplier(Integer supplier) {
+        PhoneValidator.checkSupplierId(supplier);
+        if (!contains(supplier)) {
+            throw new IllegalArgumentException("Phone requires valid supplier");
+        }
+    }
+}
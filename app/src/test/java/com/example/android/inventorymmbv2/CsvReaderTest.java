@@ -0,0 +1,60 @@
+package com.example.android.inventorymmbv2;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link CsvReader}.
+ */
+public class CsvReaderTest {
+
+    @Test
+    public void readRecord_splitsPlainFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("name,price\nXperia,500\n"));
+        List<String> record = new ArrayList<>();
+
+        assertTrue(reader.readRecord(record));
+        assertEquals(Arrays.asList("name", "price"), record);
+        assertTrue(reader.readRecord(record));
+        assertEquals(Arrays.asList("Xperia", "500"), record);
+        assertFalse(reader.readRecord(record));
+    }
+
+    @Test
+    public void readRecord_handlesQuotedFields() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader(
+                "\"Galaxy, S9\",\"say \"\"hi\"\"\",\"two\r\nlines\"\r\nlast,\n"));
+        List<String> record = new ArrayList<>();
+
+        assertTrue(reader.readRecord(record));
+        assertEquals(Arrays.asList("Galaxy, S9", "say \"hi\"", "two\r\nlines"), record);
+        assertEquals(1, reader.getRecordLine());
+        assertTrue(reader.readRecord(record));
+        assertEquals(Arrays.asList("last", ""), record);
+        assertEquals(3, reader.getRecordLine());
+        assertFalse(reader.readRecord(record));
+    }
+
+    @Test
+    public void readRecord_lastLineWithoutLineBreak() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("a,b"));
+        List<String> record = new ArrayList<>();
+
+        assertTrue(reader.readRecord(record));
+        assertEquals(Arrays.asList("a", "b"), record);
+        assertFalse(reader.readRecord(record));
+    }
+
+    @Test(expected = IOException.class)
+    public void readRecord_unterminatedQuoteFails() throws IOException {
+        CsvReader reader = new CsvReader(new StringReader("\"open,field\n"));
+        reader.readRecord(new ArrayList<String>());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.android.inventorymmbv2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the phone store operations the app relies on, measured on {@link JdbcPhoneStore}
+ * with the same schema, triggers and journal settings as the app's database.
+ *
+ * Every trial starts from a fresh database file preloaded with {@link #catalogSize} phones.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PhoneStoreBenchmark {
+
+    /** Number of phones inserted by one bulk load */
+    private static final int BULK_SIZE = 1000;
+
+    /** Number of suppliers the phones are spread over */
+    private static final int SUPPLIERS = 5;
+
+    /** Number of phones in the database before each trial */
+    @Param({"10000", "100000"})
+    public int catalogSize;
+
+    private File mDatabaseFile;
+    private PhoneStore mStore;
+    private Random mRandom;
+    private List<Phone> mBulk;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        mDatabaseFile = File.createTempFile("phones", ".db");
+        mDatabaseFile.delete();
+        mStore = JdbcPhoneStore.open("jdbc:sqlite:" + mDatabaseFile.getAbsolutePath());
+        mRandom = new Random(42);
+
+        List<Phone> catalog = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < catalogSize; i++) {
+            // Plenty of stock, so the sell benchmark never runs out
+            catalog.add(newPhone(i, 1000000));
+            if (catalog.size() == BULK_SIZE) {
+                mStore.bulkInsert(catalog);
+                catalog.clear();
+            }
+        }
+        mStore.bulkInsert(catalog);
+
+        mBulk = new ArrayList<>(BULK_SIZE);
+        for (int i = 0; i < BULK_SIZE; i++) {
+            mBulk.add(newPhone(i, 10));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mStore.close();
+        for (String suffix : new String[]{"", "-wal", "-shm"}) {
+            new File(mDatabaseFile.getPath() + suffix).delete();
+        }
+    }
+
+    /** A single insert() per phone, each in its own transaction, like saving in the editor */
+    @Benchmark
+    public long insert() {
+        return mStore.insert(newPhone(mRandom.nextInt(), 10));
+    }
+
+    /** Phones per second loaded with bulkInsert(), one transaction per batch */
+    @Benchmark
+    @OperationsPerInvocation(BULK_SIZE)
+    public int bulkLoad() {
+        return mStore.bulkInsert(mBulk);
+    }
+
+    /** Reading a single phone by ID, like opening the editor */
+    @Benchmark
+    public Phone pointLookup() {
+        return mStore.query(randomId());
+    }
+
+    /** Reading a page of the phones of one supplier through the supplier index */
+    @Benchmark
+    public List<Phone> filteredScan() {
+        return mStore.queryBySupplier(mRandom.nextInt(SUPPLIERS), 50);
+    }
+
+    /** Taking one unit out of stock, like tapping the cart button */
+    @Benchmark
+    public boolean stockDecrement() {
+        return mStore.sell(randomId(), 1);
+    }
+
+    private long randomId() {
+        return 1 + mRandom.nextInt(catalogSize);
+    }
+
+    private static Phone newPhone(int i, int quantity) {
+        return new Phone("Phone " + i, 100 + Math.abs(i % 900), Math.abs(i % SUPPLIERS),
+                "0791234" + Math.abs(i % 1000), quantity);
+    }
+}
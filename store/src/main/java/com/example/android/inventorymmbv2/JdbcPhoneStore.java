@@ -0,0 +1,272 @@
+package com.example.android.inventorymmbv2;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link PhoneStore} on a plain JVM, through the JDBC driver of an embedded SQLite database
+ * such as org.xerial:sqlite-jdbc. The database is set up like the app's: same schema, WAL mode
+ * and NORMAL synchronous level, so it can be benchmarked on a build host.
+ *
+ * Errors of the database are thrown as {@link IllegalStateException}.
+ */
+public class JdbcPhoneStore implements PhoneStore {
+
+    private static final String SQL_SELECT_PHONES = "SELECT "
+            + PhoneSchema.COLUMN_ID + ", "
+            + PhoneSchema.COLUMN_PHONE_NAME + ", "
+            + PhoneSchema.COLUMN_PRICE + ", "
+            + PhoneSchema.COLUMN_SUPPLIER + ", "
+            + PhoneSchema.COLUMN_SUPPLIER_NUMBER + ", "
+            + PhoneSchema.COLUMN_QUANTITY
+            + " FROM " + PhoneSchema.TABLE_PHONES;
+
+    private static final String SQL_SELECT_PHONE = SQL_SELECT_PHONES
+            + " WHERE " + PhoneSchema.COLUMN_ID + " = ?";
+
+    private static final String SQL_SELECT_PHONES_BY_SUPPLIER = SQL_SELECT_PHONES
+            + " WHERE " + PhoneSchema.COLUMN_SUPPLIER + " = ? ORDER BY " + PhoneSchema.COLUMN_ID + " LIMIT ?";
+
+    private final Connection mConnection;
+
+    /** Statements prepared once and reused for every call */
+    private final PreparedStatement mInsertStatement;
+    private final PreparedStatement mUpdateStatement;
+    private final PreparedStatement mDeleteStatement;
+    private final PreparedStatement mSelectStatement;
+    private final PreparedStatement mSelectBySupplierStatement;
+    private final PreparedStatement mSellStatement;
+    private final PreparedStatement mCorrectStockStatement;
+    private final PreparedStatement mTakeBackVersionStatement;
+
+    /**
+     * Opens the SQLite database at the given JDBC URL, for example "jdbc:sqlite:/tmp/phones.db",
+     * and creates the phone schema if the database is empty.
+     */
+    public static JdbcPhoneStore open(String url) {
+        try {
+            return new JdbcPhoneStore(DriverManager.getConnection(url));
+        } catch (SQLException e) {
+            throw new IllegalStateException("Cannot open " + url, e);
+        }
+    }
+
+    private JdbcPhoneStore(Connection connection) throws SQLException {
+        mConnection = connection;
+
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("PRAGMA journal_mode = WAL;");
+            statement.execute("PRAGMA synchronous = NORMAL;");
+            ResultSet tables = statement.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE"
+                    + " type = 'table' AND name = '" + PhoneSchema.TABLE_PHONES + "';");
+            boolean exists = tables.next() && tables.getInt(1) > 0;
+            tables.close();
+            if (!exists) {
+                connection.setAutoCommit(false);
+                for (String sql : PhoneSchema.createStatements()) {
+                    statement.execute(sql);
+                }
+                connection.commit();
+                connection.setAutoCommit(true);
+            }
+        } finally {
+            statement.close();
+        }
+
+        mInsertStatement = connection.prepareStatement(PhoneSchema.SQL_INSERT_PHONE,
+                Statement.RETURN_GENERATED_KEYS);
+        mUpdateStatement = connection.prepareStatement(PhoneSchema.SQL_UPDATE_PHONE);
+        mDeleteStatement = connection.prepareStatement(PhoneSchema.SQL_DELETE_PHONE);
+        mSelectStatement = connection.prepareStatement(SQL_SELECT_PHONE);
+        mSelectBySupplierStatement = connection.prepareStatement(SQL_SELECT_PHONES_BY_SUPPLIER);
+        mSellStatement = connection.prepareStatement(PhoneSchema.SQL_SELL_PHONE);
+        mCorrectStockStatement = connection.prepareStatement(PhoneSchema.SQL_CORRECT_PHONE_STOCK);
+        mTakeBackVersionStatement = connection.prepareStatement(PhoneSchema.SQL_TAKE_BACK_VERSION);
+    }
+
+    @Override
+    public long insert(Phone phone) {
+        PhoneValidator.validate(phone);
+        try {
+            return executeInsert(phone);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to insert " + phone, e);
+        }
+    }
+
+    @Override
+    public int bulkInsert(List<Phone> phones) {
+        // Check the whole batch before writing anything, so an invalid phone leaves the table untouched
+        for (Phone phone : phones) {
+            PhoneValidator.validate(phone);
+        }
+
+        try {
+            mConnection.setAutoCommit(false);
+            try {
+                for (Phone phone : phones) {
+                    bindPhone(mInsertStatement, phone);
+                    mInsertStatement.addBatch();
+                }
+                int rowsInserted = 0;
+                for (int count : mInsertStatement.executeBatch()) {
+                    rowsInserted += count > 0 || count == Statement.SUCCESS_NO_INFO ? 1 : 0;
+                }
+                mConnection.commit();
+                return rowsInserted;
+            } catch (SQLException e) {
+                mConnection.rollback();
+                throw e;
+            } finally {
+                mConnection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to insert " + phones.size() + " phones", e);
+        }
+    }
+
+    @Override
+    public int update(long id, Phone phone) {
+        PhoneValidator.validate(phone);
+        try {
+            mConnection.setAutoCommit(false);
+            try {
+                // A new quantity goes through the stock movements first, so it is in the history,
+                // and the update only writes the other attributes, so the version moves on once
+                mCorrectStockStatement.setInt(1, phone.getQuantity());
+                mCorrectStockStatement.setInt(2, phone.getQuantity());
+                mCorrectStockStatement.setLong(3, id);
+                boolean corrected = mCorrectStockStatement.executeUpdate() != 0;
+
+                mUpdateStatement.setString(1, phone.getName());
+                mUpdateStatement.setInt(2, phone.getPrice());
+                mUpdateStatement.setInt(3, phone.getSupplier());
+                mUpdateStatement.setString(4, phone.getSupplierNumber());
+                mUpdateStatement.setLong(5, id);
+                int rowsUpdated = mUpdateStatement.executeUpdate();
+                if (rowsUpdated != 0 && corrected) {
+                    // Both writes moved the version on, the edit only counts once
+                    mTakeBackVersionStatement.setLong(1, id);
+                    mTakeBackVersionStatement.executeUpdate();
+                } else if (rowsUpdated == 0 && (corrected || query(id) != null)) {
+                    // The phone is there with the same attributes
+                    rowsUpdated = 1;
+                }
+                mConnection.commit();
+                return rowsUpdated;
+            } catch (SQLException e) {
+                mConnection.rollback();
+                throw e;
+            } finally {
+                mConnection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to update phone " + id, e);
+        }
+    }
+
+    @Override
+    public int delete(long id) {
+        try {
+            mDeleteStatement.setLong(1, id);
+            return mDeleteStatement.executeUpdate();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to delete phone " + id, e);
+        }
+    }
+
+    @Override
+    public Phone query(long id) {
+        try {
+            mSelectStatement.setLong(1, id);
+            ResultSet resultSet = mSelectStatement.executeQuery();
+            try {
+                return resultSet.next() ? readPhone(resultSet) : null;
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to query phone " + id, e);
+        }
+    }
+
+    @Override
+    public List<Phone> queryBySupplier(int supplier, int limit) {
+        try {
+            mSelectBySupplierStatement.setInt(1, supplier);
+            mSelectBySupplierStatement.setInt(2, limit);
+            ResultSet resultSet = mSelectBySupplierStatement.executeQuery();
+            try {
+                List<Phone> phones = new ArrayList<>();
+                while (resultSet.next()) {
+                    phones.add(readPhone(resultSet));
+                }
+                return phones;
+            } finally {
+                resultSet.close();
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to query supplier " + supplier, e);
+        }
+    }
+
+    @Override
+    public boolean sell(long id, int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("At least one unit has to be sold");
+        }
+        try {
+            mSellStatement.setInt(1, count);
+            mSellStatement.setLong(2, id);
+            mSellStatement.setInt(3, count);
+            return mSellStatement.executeUpdate() != 0;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to sell phone " + id, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            mConnection.close();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to close the database", e);
+        }
+    }
+
+    private long executeInsert(Phone phone) throws SQLException {
+        bindPhone(mInsertStatement, phone);
+        if (mInsertStatement.executeUpdate() == 0) {
+            return -1;
+        }
+        ResultSet keys = mInsertStatement.getGeneratedKeys();
+        try {
+            return keys.next() ? keys.getLong(1) : -1;
+        } finally {
+            keys.close();
+        }
+    }
+
+    /**
+     * Bind the attributes of a phone in the order of {@link PhoneSchema#INSERT_COLUMNS}.
+     */
+    private static void bindPhone(PreparedStatement statement, Phone phone) throws SQLException {
+        statement.setString(1, phone.getName());
+        statement.setInt(2, phone.getPrice());
+        statement.setInt(3, phone.getSupplier());
+        statement.setString(4, phone.getSupplierNumber());
+        statement.setInt(5, phone.getQuantity());
+    }
+
+    private static Phone readPhone(ResultSet resultSet) throws SQLException {
+        return new Phone(resultSet.getLong(1), resultSet.getString(2), resultSet.getInt(3),
+                resultSet.getInt(4), resultSet.getString(5), resultSet.getInt(6));
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.android.inventorymmbv2;
+
+/**
+ * A phone of the inventory, as stored by a {@link PhoneStore}.
+ */
+public final class Phone {
+
+    /** ID of a phone that has not been stored yet */
+    public static final long NO_ID = -1;
+
+    private final long mId;
+    private final String mName;
+    private final int mPrice;
+    private final int mSupplier;
+    private final String mSupplierNumber;
+    private final int mQuantity;
+
+    /**
+     * Constructs a new phone that has not been stored yet.
+     */
+    public Phone(String name, int price, int supplier, String supplierNumber, int quantity) {
+        this(NO_ID, name, price, supplier, supplierNumber, quantity);
+    }
+
+    /**
+     * Constructs a phone with the given ID.
+     */
+    public Phone(long id, String name, int price, int supplier, String supplierNumber, int quantity) {
+        mId = id;
+        mName = name;
+        mPrice = price;
+        mSupplier = supplier;
+        mSupplierNumber = supplierNumber;
+        mQuantity = quantity;
+    }
+
+    /** Returns the ID of the phone, or {@link #NO_ID} */
+    public long getId() {
+        return mId;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public int getPrice() {
+        return mPrice;
+    }
+
+    /** Returns the ID of the supplier, a row of {@link PhoneSchema#TABLE_SUPPLIERS} */
+    public int getSupplier() {
+        return mSupplier;
+    }
+
+    public String getSupplierNumber() {
+        return mSupplierNumber;
+    }
+
+    public int getQuantity() {
+        return mQuantity;
+    }
+
+    @Override
+    public String toString() {
+        return "Phone{id=" + mId + ", name=" + mName + ", price=" + mPrice + ", supplier=" + mSupplier
+                + ", number=" + mSupplierNumber + ", quantity=" + mQuantity + "}";
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.android.inventorymmbv2;
+
+import java.util.ArrayList;
+
+/**
+ * Selection and sort order of a page of the phone list, sorted by one column and filtered by
+ * supplier, price range and stock. Every combination is answered from one of the covering
+ * indexes of {@link PhoneSchema#CREATE_PHONES_INDEXES} when the columns read are among
+ * {@link PhoneSchema#LIST_COLUMNS}.
+ *
+ * Pages are read with a keyset: a page starts right after the sort value and the ID of the last
+ * phone of the previous page, see {@link #setAfter}. Phones with the same sort value are sorted
+ * by ID, so the order is total and each page is a range read of the index, however deep it is.
+ *
+ * All values are passed as selection arguments, which are bound as text. The columns compared
+ * with them have INTEGER affinity, so SQLite compares them as numbers.
+ */
+public final class PhoneListQuery {
+
+    /** Columns the list can be sorted by */
+    private static final String[] SORT_COLUMNS = {
+            PhoneSchema.COLUMN_ID,
+            PhoneSchema.COLUMN_PHONE_NAME,
+            PhoneSchema.COLUMN_PRICE,
+            PhoneSchema.COLUMN_QUANTITY };
+
+    private final String mSortColumn;
+    private Integer mSupplier;
+    private Integer mMinPrice;
+    private Integer mMaxPrice;
+    private boolean mInStockOnly;
+    private String mAfterKey;
+    private long mAfterId = -1;
+
+    /**
+     * Constructs the query of the list sorted by the given column, or by ID if it is null.
+     *
+     * @throws IllegalArgumentException if the list cannot be sorted by the column
+     */
+    public PhoneListQuery(String sortColumn) {
+        if (sortColumn == null) {
+            sortColumn = PhoneSchema.COLUMN_ID;
+        }
+        if (!isSortColumn(sortColumn)) {
+            throw new IllegalArgumentException("Cannot sort the phones by " + sortColumn);
+        }
+        mSortColumn = sortColumn;
+    }
+
+    /**
+     * Returns whether the list can be sorted by the given column.
+     */
+    public static boolean isSortColumn(String column) {
+        for (String sortColumn : SORT_COLUMNS) {
+            if (sortColumn.equals(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the column the list is sorted by */
+    public String getSortColumn() {
+        return mSortColumn;
+    }
+
+    /**
+     * Only list the phones of the given supplier, the ID of a row of {@link PhoneSchema#TABLE_SUPPLIERS}.
+     */
+    public PhoneListQuery setSupplier(int supplier) {
+        PhoneValidator.checkSupplierId(supplier);
+        mSupplier = supplier;
+        return this;
+    }
+
+    /**
+     * Only list the phones whose price is between the given bounds, included. A null bound is
+     * left open.
+     */
+    public PhoneListQuery setPriceRange(Integer minPrice, Integer maxPrice) {
+        PhoneValidator.checkPrice(minPrice);
+        PhoneValidator.checkPrice(maxPrice);
+        mMinPrice = minPrice;
+        mMaxPrice = maxPrice;
+        return this;
+    }
+
+    /**
+     * Only list the phones that are in stock.
+     */
+    public PhoneListQuery setInStockOnly(boolean inStockOnly) {
+        mInStockOnly = inStockOnly;
+        return this;
+    }
+
+    /**
+     * Start the list right after the given phone of the previous page.
+     *
+     * @param key Value of the sort column of that phone, ignored when the list is sorted by ID
+     * @param id  ID of that phone
+     */
+    public PhoneListQuery setAfter(String key, long id) {
+        if (key == null && !mSortColumn.equals(PhoneSchema.COLUMN_ID)) {
+            throw new IllegalArgumentException("A page sorted by " + mSortColumn
+                    + " needs the " + mSortColumn + " of the phone it starts after");
+        }
+        mAfterKey = key;
+        mAfterId = id;
+        return this;
+    }
+
+    /**
+     * Returns the selection of the query, or null if every phone is listed.
+     */
+    public String getSelection() {
+        StringBuilder selection = new StringBuilder();
+        if (mSupplier != null) {
+            and(selection, PhoneSchema.COLUMN_SUPPLIER + " = ?");
+        }
+        if (mMinPrice != null) {
+            and(selection, PhoneSchema.COLUMN_PRICE + " >= ?");
+        }
+        if (mMaxPrice != null) {
+            and(selection, PhoneSchema.COLUMN_PRICE + " <= ?");
+        }
+        if (mInStockOnly) {
+            and(selection, PhoneSchema.COLUMN_QUANTITY + " > 0");
+        }
+        if (mAfterId >= 0) {
+            if (mSortColumn.equals(PhoneSchema.COLUMN_ID)) {
+                and(selection, PhoneSchema.COLUMN_ID + " > ?");
+            } else {
+                // The first term is the range of the index, the second one skips the phones
+                // with the same sort value that were on the previous page
+                and(selection, mSortColumn + " >= ? AND (" + mSortColumn + " > ? OR "
+                        + PhoneSchema.COLUMN_ID + " > ?)");
+            }
+        }
+        return selection.length() == 0 ? null : selection.toString();
+    }
+
+    /**
+     * Returns the arguments of the selection, in the order of its question marks.
+     */
+    public String[] getSelectionArgs() {
+        ArrayList<String> args = new ArrayList<>();
+        if (mSupplier != null) {
+            args.add(String.valueOf(mSupplier));
+        }
+        if (mMinPrice != null) {
+            args.add(String.valueOf(mMinPrice));
+        }
+        if (mMaxPrice != null) {
+            args.add(String.valueOf(mMaxPrice));
+        }
+        if (mAfterId >= 0) {
+            if (!mSortColumn.equals(PhoneSchema.COLUMN_ID)) {
+                args.add(mAfterKey);
+                args.add(mAfterKey);
+            }
+            args.add(String.valueOf(mAfterId));
+        }
+        return args.toArray(new String[args.size()]);
+    }
+
+    /**
+     * Returns the sort order of the query: the sort column, then the ID.
+     */
+    public String getOrderBy() {
+        return mSortColumn.equals(PhoneSchema.COLUMN_ID)
+                ? PhoneSchema.COLUMN_ID
+                : mSortColumn + ", " + PhoneSchema.COLUMN_ID;
+    }
+
+    /**
+     * Returns whether the given phone is listed by this query, by its supplier, price and stock.
+     */
+    public boolean matches(Phone phone) {
+        return (mSupplier == null || phone.getSupplier() == mSupplier)
+                && (mMinPrice == null || phone.getPrice() >= mMinPrice)
+                && (mMaxPrice == null || phone.getPrice() <= mMaxPrice)
+                && (!mInStockOnly || phone.getQuantity() > 0);
+    }
+
+    /**
+     * Returns whether a change of a phone takes it into or out of the list of this query, or to
+     * another place in it. A list read before the change then has to be read again, since
+     * patching the row in place would leave it where it was, and the pages after it would
+     * start from a stale key. Other changes only have to be shown in the row of the phone.
+     *
+     * @param listed  the phone as the list shows it, or null if it is not in the list. Only the
+     *                columns of {@link PhoneSchema#LIST_COLUMNS} are compared.
+     * @param changed the phone after the change
+     */
+    public boolean isMovedBy(Phone listed, Phone changed) {
+        if (listed == null) {
+            // It may join the list
+            return matches(changed);
+        }
+        if (!matches(changed)) {
+            // It leaves the list
+            return true;
+        }
+        switch (mSortColumn) {
+            case PhoneSchema.COLUMN_PHONE_NAME:
+                return !listed.getName().equals(changed.getName());
+            case PhoneSchema.COLUMN_PRICE:
+                return listed.getPrice() != changed.getPrice();
+            case PhoneSchema.COLUMN_QUANTITY:
+                return listed.getQuantity() != changed.getQuantity();
+            default:
+                // The ID never changes
+                return false;
+        }
+    }
+
+    private static void and(StringBuilder selection, String condition) {
+        if (selection.length() != 0) {
+            selection.append(" AND ");
+        }
+        selection.append(condition);
+    }
+}
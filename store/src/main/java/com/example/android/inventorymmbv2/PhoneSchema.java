@@ -0,0 +1,569 @@
+package com.example.android.inventorymmbv2;
+
+/**
+ * Tables, columns and SQL statements of the phone database. They are shared by every
+ * {@link PhoneStore} and by the app's database helper, so the app and the JVM benchmarks
+ * always run on the same schema.
+ */
+public final class PhoneSchema {
+
+    // To prevent someone from accidentally instantiating the schema class,
+    // give it an empty constructor.
+    private PhoneSchema() {}
+
+    /** Name of database table for phones */
+    public static final String TABLE_PHONES = "phones";
+
+    /** Unique ID number of a phone, the same name as android.provider.BaseColumns#_ID */
+    public static final String COLUMN_ID = "_id";
+
+    /** Name of the phone. Type: TEXT */
+    public static final String COLUMN_PHONE_NAME = "name";
+
+    /** Price of the phone. Type: INTEGER */
+    public static final String COLUMN_PRICE = "price";
+
+    /** Supplier of the phone, the {@link #COLUMN_ID} of a row of {@link #TABLE_SUPPLIERS}. Type: INTEGER */
+    public static final String COLUMN_SUPPLIER = "supplier";
+
+    /** Phone number of the supplier. Type: TEXT */
+    public static final String COLUMN_SUPPLIER_NUMBER = "number";
+
+    /** Quantity in stock. Type: INTEGER */
+    public static final String COLUMN_QUANTITY = "quantity";
+
+    /**
+     * Reorder point of the phone: the phone is low on stock when its quantity is at or below
+     * it. Type: INTEGER
+     */
+    public static final String COLUMN_REORDER_THRESHOLD = "reorder_threshold";
+
+    /**
+     * Version of the phone row, 1 for a new phone and one more after each change of it, see
+     * {@link #CREATE_PHONES_VERSION_TRIGGER}. A writer that read the phone at some version can
+     * tell whether somebody else changed it since. Type: INTEGER
+     */
+    public static final String COLUMN_VERSION = "version";
+
+    /** Columns of the phone list, which its indexes cover */
+    public static final String[] LIST_COLUMNS = {
+            COLUMN_ID,
+            COLUMN_PHONE_NAME,
+            COLUMN_PRICE,
+            COLUMN_QUANTITY };
+
+    /** Name of database table for the suppliers of the phones */
+    public static final String TABLE_SUPPLIERS = "suppliers";
+
+    /**
+     * Name of the supplier. It is unique, and differs from {@link #COLUMN_PHONE_NAME} so it can
+     * be read next to the columns of a phone. Type: TEXT
+     */
+    public static final String COLUMN_SUPPLIER_NAME = "supplier_name";
+
+    /**
+     * IDs of the suppliers every database starts with. More suppliers can be added to
+     * {@link #TABLE_SUPPLIERS}, with the next free IDs.
+     */
+    public static final int SUPPLIER_UNKNOWN = 0;
+    public static final int SUPPLIER_APPLE = 1;
+    public static final int SUPPLIER_SONY = 2;
+    public static final int SUPPLIER_HUAWEI = 3;
+    public static final int SUPPLIER_SAMSUNG = 4;
+
+    /** Names of the suppliers every database starts with, by ID */
+    private static final String[] BUILT_IN_SUPPLIER_NAMES = {"Unknown", "Apple", "Sony", "Huawei", "Samsung"};
+
+    /**
+     * Name of the full-text search table that mirrors the phone names. Its docid is the
+     * {@link #COLUMN_ID} of the phone.
+     */
+    public static final String TABLE_PHONES_FTS = "phones_fts";
+
+    /** Name of database table for the inventory totals per supplier */
+    public static final String TABLE_INVENTORY_SUMMARY = "inventory_summary";
+
+    /** Number of different phones of the supplier. Type: INTEGER */
+    public static final String COLUMN_PHONE_COUNT = "phone_count";
+
+    /** Total number of units in stock of the phones of the supplier. Type: INTEGER */
+    public static final String COLUMN_UNITS = "units";
+
+    /** Sum of price times quantity of the phones of the supplier. Type: INTEGER */
+    public static final String COLUMN_STOCK_VALUE = "stock_value";
+
+    /** Name of database table for the stock adjustment batches that have been applied */
+    public static final String TABLE_STOCK_BATCHES = "stock_batches";
+
+    /** Token chosen by the sender of a batch, unique per batch. Type: TEXT */
+    public static final String COLUMN_BATCH_TOKEN = "token";
+
+    /** Time the batch was applied, in milliseconds since the epoch. Type: INTEGER */
+    public static final String COLUMN_APPLIED_AT = "applied_at";
+
+    /**
+     * Name of database table for the stock movements. Every change of the quantity in stock of a
+     * phone is appended to it, and the quantity of the phone is kept up to date from it.
+     */
+    public static final String TABLE_STOCK_MOVEMENTS = "stock_movements";
+
+    /** {@link #COLUMN_ID} of the phone whose stock moved. Type: INTEGER */
+    public static final String COLUMN_PHONE_ID = "phone_id";
+
+    /** Number of units added to the stock, negative if they were taken out. Type: INTEGER */
+    public static final String COLUMN_DELTA = "delta";
+
+    /** Why the stock moved, one of the REASON values. Type: INTEGER */
+    public static final String COLUMN_REASON = "reason";
+
+    /** Time of the movement, in milliseconds since the epoch. Type: INTEGER */
+    public static final String COLUMN_CREATED_AT = "created_at";
+
+    /**
+     * Name of database table for the stock snapshots. A snapshot holds the quantity of a phone at
+     * the time the movements up to then were compacted into it. The quantity column is
+     * {@link #COLUMN_QUANTITY}.
+     */
+    public static final String TABLE_STOCK_SNAPSHOTS = "stock_snapshots";
+
+    /** Time of the snapshot, in milliseconds since the epoch. Type: INTEGER */
+    public static final String COLUMN_TAKEN_AT = "taken_at";
+
+    /**
+     * Name of database table for the low stock events. A row is added whenever a change of a
+     * phone makes it cross its reorder threshold, and is taken out again by whoever reports it.
+     */
+    public static final String TABLE_LOW_STOCK_EVENTS = "low_stock_events";
+
+    /**
+     * Whether the phone became low on stock, 1, or came back above its threshold, 0.
+     * Type: INTEGER
+     */
+    public static final String COLUMN_LOW = "low";
+
+    /**
+     * Possible reasons of a stock movement. The initial stock of a new phone is recorded but
+     * not applied, because the phone was inserted with it.
+     */
+    public static final int REASON_INITIAL = 0;
+    public static final int REASON_SALE = 1;
+    public static final int REASON_ADJUSTMENT = 2;
+    public static final int REASON_CORRECTION = 3;
+
+    /** SQL expression of the current time in milliseconds since the epoch */
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    /**
+     * SQL statements to create the suppliers table with the built-in suppliers. Each supplier
+     * is inserted on its own, because inserting several rows at once needs SQLite 3.7.11.
+     */
+    public static final String[] CREATE_SUPPLIERS = createSuppliers();
+
+    /**
+     * SQL expression of the name of the supplier of a phone, for the projection of a query of
+     * the phones table. It looks the supplier up by its primary key, the same as a join would,
+     * without bringing a second ID column into the selection and the sort order of the query.
+     */
+    public static final String SUPPLIER_NAME_EXPRESSION = "(SELECT " + COLUMN_SUPPLIER_NAME
+            + " FROM " + TABLE_SUPPLIERS + " WHERE " + TABLE_SUPPLIERS + "." + COLUMN_ID
+            + " = " + TABLE_PHONES + "." + COLUMN_SUPPLIER + ") AS " + COLUMN_SUPPLIER_NAME;
+
+    /**
+     * SQL statement to create the phones table with the current schema. The supplier has to be
+     * one of the suppliers table when foreign keys are enforced.
+     */
+    public static final String CREATE_PHONES_TABLE = "CREATE TABLE " + TABLE_PHONES + " ("
+            + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COLUMN_PHONE_NAME + " TEXT NOT NULL, "
+            + COLUMN_PRICE + " INTEGER NOT NULL, "
+            + COLUMN_SUPPLIER + " INTEGER NOT NULL DEFAULT " + SUPPLIER_UNKNOWN
+            + " REFERENCES " + TABLE_SUPPLIERS + " (" + COLUMN_ID + "), "
+            + COLUMN_SUPPLIER_NUMBER + " TEXT NOT NULL, "
+            + COLUMN_QUANTITY + " INTEGER NOT NULL, "
+            + COLUMN_REORDER_THRESHOLD + " INTEGER NOT NULL DEFAULT 0, "
+            + COLUMN_VERSION + " INTEGER NOT NULL DEFAULT 1);";
+
+    /**
+     * Trigger that moves a phone to its next version whenever one of its attributes is updated,
+     * whoever writes it: an edit, a sale through the stock movements or a bulk update. Updating
+     * the version alone does not fire it again.
+     */
+    public static final String CREATE_PHONES_VERSION_TRIGGER = "CREATE TRIGGER phones_version AFTER UPDATE OF "
+            + COLUMN_PHONE_NAME + ", " + COLUMN_PRICE + ", " + COLUMN_SUPPLIER + ", "
+            + COLUMN_SUPPLIER_NUMBER + ", " + COLUMN_QUANTITY + ", " + COLUMN_REORDER_THRESHOLD
+            + " ON " + TABLE_PHONES + " BEGIN"
+            + " UPDATE " + TABLE_PHONES + " SET " + COLUMN_VERSION + " = old." + COLUMN_VERSION + " + 1"
+            + " WHERE " + COLUMN_ID + " = new." + COLUMN_ID + ";"
+            + " END;";
+
+    /** Condition of the phones that are low on stock */
+    public static final String WHERE_LOW_STOCK = COLUMN_QUANTITY + " <= " + COLUMN_REORDER_THRESHOLD;
+
+    /**
+     * Partial index of the phones that are low on stock, sorted by quantity. It only holds the
+     * few phones at or below their threshold, so listing them never reads the other phones,
+     * and a change of any other phone does not have to touch it. A query uses it when its
+     * condition is {@link #WHERE_LOW_STOCK}.
+     *
+     * Partial indexes need SQLite 3.8.0, so the index is created apart from the rest of the
+     * schema, with IF NOT EXISTS, where the SQLite version allows it.
+     */
+    public static final String CREATE_LOW_STOCK_INDEX = "CREATE INDEX IF NOT EXISTS phones_low_stock_index ON "
+            + TABLE_PHONES + " (" + COLUMN_QUANTITY + ") WHERE " + WHERE_LOW_STOCK + ";";
+
+    /** Names of the indexes of {@link #CREATE_PHONES_INDEXES}, in the same order */
+    public static final String[] PHONES_INDEX_NAMES = {
+            "phones_name_index",
+            "phones_price_index",
+            "phones_quantity_index",
+            "phones_supplier_index" };
+
+    /**
+     * Covering indexes of the phone list, one per column it is sorted or filtered by, see
+     * {@link PhoneListQuery}. Each one starts with its column and the ID, which is the order of
+     * the list sorted by that column, and holds the other columns of {@link #LIST_COLUMNS} and
+     * the supplier. A page of the list is then read from a single index, in order, without
+     * touching the table.
+     */
+    public static final String[] CREATE_PHONES_INDEXES = {
+            "CREATE INDEX " + PHONES_INDEX_NAMES[0] + " ON " + TABLE_PHONES + " ("
+                    + COLUMN_PHONE_NAME + ", " + COLUMN_ID + ", "
+                    + COLUMN_PRICE + ", " + COLUMN_QUANTITY + ", " + COLUMN_SUPPLIER + ");",
+            "CREATE INDEX " + PHONES_INDEX_NAMES[1] + " ON " + TABLE_PHONES + " ("
+                    + COLUMN_PRICE + ", " + COLUMN_ID + ", "
+                    + COLUMN_PHONE_NAME + ", " + COLUMN_QUANTITY + ", " + COLUMN_SUPPLIER + ");",
+            "CREATE INDEX " + PHONES_INDEX_NAMES[2] + " ON " + TABLE_PHONES + " ("
+                    + COLUMN_QUANTITY + ", " + COLUMN_ID + ", "
+                    + COLUMN_PHONE_NAME + ", " + COLUMN_PRICE + ", " + COLUMN_SUPPLIER + ");",
+            "CREATE INDEX " + PHONES_INDEX_NAMES[3] + " ON " + TABLE_PHONES + " ("
+                    + COLUMN_SUPPLIER + ", " + COLUMN_ID + ", "
+                    + COLUMN_PHONE_NAME + ", " + COLUMN_PRICE + ", " + COLUMN_QUANTITY + ");" };
+
+    /**
+     * Full-text index of the phone names, and the triggers that keep it in step with the
+     * phones table.
+     */
+    public static final String[] CREATE_PHONES_FTS = {
+            "CREATE VIRTUAL TABLE " + TABLE_PHONES_FTS + " USING fts4("
+                    + COLUMN_PHONE_NAME + ");",
+            "CREATE TRIGGER phones_fts_insert AFTER INSERT ON " + TABLE_PHONES + " BEGIN"
+                    + " INSERT INTO " + TABLE_PHONES_FTS + " (docid, " + COLUMN_PHONE_NAME + ")"
+                    + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_PHONE_NAME + ");"
+                    + " END;",
+            "CREATE TRIGGER phones_fts_update AFTER UPDATE OF " + COLUMN_PHONE_NAME
+                    + " ON " + TABLE_PHONES + " BEGIN"
+                    + " UPDATE " + TABLE_PHONES_FTS + " SET " + COLUMN_PHONE_NAME
+                    + " = new." + COLUMN_PHONE_NAME + " WHERE docid = old." + COLUMN_ID + ";"
+                    + " END;",
+            "CREATE TRIGGER phones_fts_delete AFTER DELETE ON " + TABLE_PHONES + " BEGIN"
+                    + " DELETE FROM " + TABLE_PHONES_FTS + " WHERE docid = old." + COLUMN_ID + ";"
+                    + " END;" };
+
+    /**
+     * Inventory totals per supplier, and the triggers that add each change of a phone to them.
+     * A supplier gets its row the first time one of its phones is inserted.
+     */
+    public static final String[] CREATE_INVENTORY_SUMMARY = {
+            "CREATE TABLE " + TABLE_INVENTORY_SUMMARY + " ("
+                    + COLUMN_SUPPLIER + " INTEGER PRIMARY KEY, "
+                    + COLUMN_PHONE_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_UNITS + " INTEGER NOT NULL DEFAULT 0, "
+                    + COLUMN_STOCK_VALUE + " INTEGER NOT NULL DEFAULT 0);",
+            "CREATE TRIGGER inventory_summary_insert AFTER INSERT ON " + TABLE_PHONES + " BEGIN"
+                    + summaryChange("new", "+")
+                    + " END;",
+            "CREATE TRIGGER inventory_summary_update AFTER UPDATE OF "
+                    + COLUMN_PRICE + ", " + COLUMN_SUPPLIER + ", "
+                    + COLUMN_QUANTITY + " ON " + TABLE_PHONES + " BEGIN"
+                    + summaryChange("old", "-")
+                    + summaryChange("new", "+")
+                    + " END;",
+            "CREATE TRIGGER inventory_summary_delete AFTER DELETE ON " + TABLE_PHONES + " BEGIN"
+                    + summaryChange("old", "-")
+                    + " END;" };
+
+    /**
+     * Tokens of the stock adjustment batches already applied, so a batch that is sent again
+     * after its sender was killed is not applied twice.
+     */
+    public static final String CREATE_STOCK_BATCHES_TABLE = "CREATE TABLE " + TABLE_STOCK_BATCHES + " ("
+            + COLUMN_BATCH_TOKEN + " TEXT PRIMARY KEY, "
+            + COLUMN_APPLIED_AT + " INTEGER NOT NULL);";
+
+    /**
+     * Stock movement ledger and snapshots. Inserting a movement applies it to the quantity of
+     * its phone, a new phone records its initial stock, and the history of a phone goes with it.
+     * Movements are looked up by phone and time for the stock at a given time, and by time for
+     * the compaction.
+     */
+    public static final String[] CREATE_STOCK_LEDGER = {
+            "CREATE TABLE " + TABLE_STOCK_MOVEMENTS + " ("
+                    + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                    + COLUMN_PHONE_ID + " INTEGER NOT NULL, "
+                    + COLUMN_DELTA + " INTEGER NOT NULL, "
+                    + COLUMN_REASON + " INTEGER NOT NULL, "
+                    + COLUMN_CREATED_AT + " INTEGER NOT NULL DEFAULT (" + NOW_MILLIS + "));",
+            "CREATE INDEX stock_movements_phone_index ON " + TABLE_STOCK_MOVEMENTS
+                    + " (" + COLUMN_PHONE_ID + ", " + COLUMN_CREATED_AT + ");",
+            "CREATE INDEX stock_movements_time_index ON " + TABLE_STOCK_MOVEMENTS
+                    + " (" + COLUMN_CREATED_AT + ");",
+            "CREATE TABLE " + TABLE_STOCK_SNAPSHOTS + " ("
+                    + COLUMN_PHONE_ID + " INTEGER NOT NULL, "
+                    + COLUMN_TAKEN_AT + " INTEGER NOT NULL, "
+                    + COLUMN_QUANTITY + " INTEGER NOT NULL, "
+                    + "PRIMARY KEY (" + COLUMN_PHONE_ID + ", " + COLUMN_TAKEN_AT + "));",
+            "CREATE TRIGGER stock_movements_apply AFTER INSERT ON " + TABLE_STOCK_MOVEMENTS
+                    + " WHEN new." + COLUMN_REASON + " <> " + REASON_INITIAL + " BEGIN"
+                    + " UPDATE " + TABLE_PHONES + " SET " + COLUMN_QUANTITY + " = "
+                    + COLUMN_QUANTITY + " + new." + COLUMN_DELTA
+                    + " WHERE " + COLUMN_ID + " = new." + COLUMN_PHONE_ID + ";"
+                    + " END;",
+            "CREATE TRIGGER stock_movements_initial AFTER INSERT ON " + TABLE_PHONES + " BEGIN"
+                    + " INSERT INTO " + TABLE_STOCK_MOVEMENTS + " (" + COLUMN_PHONE_ID + ", "
+                    + COLUMN_DELTA + ", " + COLUMN_REASON + ")"
+                    + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_QUANTITY + ", " + REASON_INITIAL + ");"
+                    + " END;",
+            "CREATE TRIGGER stock_movements_delete AFTER DELETE ON " + TABLE_PHONES + " BEGIN"
+                    + " DELETE FROM " + TABLE_STOCK_MOVEMENTS + " WHERE " + COLUMN_PHONE_ID + " = old." + COLUMN_ID + ";"
+                    + " DELETE FROM " + TABLE_STOCK_SNAPSHOTS + " WHERE " + COLUMN_PHONE_ID + " = old." + COLUMN_ID + ";"
+                    + " END;" };
+
+    /**
+     * Low stock events, and the trigger that adds one when a change of the quantity or of the
+     * threshold of a phone makes it cross its threshold. Changes that leave a phone on the same
+     * side of its threshold add nothing, so the table stays empty between crossings.
+     */
+    public static final String[] CREATE_LOW_STOCK_EVENTS = {
+            "CREATE TABLE " + TABLE_LOW_STOCK_EVENTS + " ("
+                    + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                    + COLUMN_PHONE_ID + " INTEGER NOT NULL, "
+                    + COLUMN_LOW + " INTEGER NOT NULL);",
+            "CREATE TRIGGER low_stock_crossing AFTER UPDATE OF "
+                    + COLUMN_QUANTITY + ", " + COLUMN_REORDER_THRESHOLD + " ON " + TABLE_PHONES
+                    + " WHEN (new." + COLUMN_QUANTITY + " <= new." + COLUMN_REORDER_THRESHOLD + ")"
+                    + " <> (old." + COLUMN_QUANTITY + " <= old." + COLUMN_REORDER_THRESHOLD + ") BEGIN"
+                    + " INSERT INTO " + TABLE_LOW_STOCK_EVENTS + " (" + COLUMN_PHONE_ID + ", " + COLUMN_LOW + ")"
+                    + " VALUES (new." + COLUMN_ID + ", new." + COLUMN_QUANTITY
+                    + " <= new." + COLUMN_REORDER_THRESHOLD + ");"
+                    + " END;" };
+
+    /**
+     * Columns written by {@link #SQL_INSERT_PHONE}, in the order of its bind arguments.
+     */
+    public static final String[] INSERT_COLUMNS = {
+            COLUMN_PHONE_NAME,
+            COLUMN_PRICE,
+            COLUMN_SUPPLIER,
+            COLUMN_SUPPLIER_NUMBER,
+            COLUMN_QUANTITY };
+
+    /**
+     * SQL statement that inserts one full phone row.
+     */
+    public static final String SQL_INSERT_PHONE = "INSERT INTO " + TABLE_PHONES + " ("
+            + COLUMN_PHONE_NAME + ", "
+            + COLUMN_PRICE + ", "
+            + COLUMN_SUPPLIER + ", "
+            + COLUMN_SUPPLIER_NUMBER + ", "
+            + COLUMN_QUANTITY + ") VALUES (?, ?, ?, ?, ?)";
+
+    /**
+     * SQL statement that replaces the attributes of one phone other than its quantity, which is
+     * set through the stock movements by {@link #SQL_CORRECT_PHONE_STOCK}. The bind arguments
+     * are the first four attributes in the order of {@link #INSERT_COLUMNS}, then the phone ID.
+     * A phone whose attributes are all unchanged is not written, so its version only moves on
+     * once for an edit of the quantity alone.
+     */
+    public static final String SQL_UPDATE_PHONE = "UPDATE " + TABLE_PHONES + " SET "
+            + COLUMN_PHONE_NAME + " = ?1, "
+            + COLUMN_PRICE + " = ?2, "
+            + COLUMN_SUPPLIER + " = ?3, "
+            + COLUMN_SUPPLIER_NUMBER + " = ?4"
+            + " WHERE " + COLUMN_ID + " = ?5 AND ("
+            + COLUMN_PHONE_NAME + " IS NOT ?1 OR "
+            + COLUMN_PRICE + " IS NOT ?2 OR "
+            + COLUMN_SUPPLIER + " IS NOT ?3 OR "
+            + COLUMN_SUPPLIER_NUMBER + " IS NOT ?4)";
+
+    /**
+     * SQL statement that deletes one phone. The bind argument is the phone ID.
+     */
+    public static final String SQL_DELETE_PHONE = "DELETE FROM " + TABLE_PHONES
+            + " WHERE " + COLUMN_ID + " = ?";
+
+    /** Start of the statements that append stock movements computed from the phones table */
+    private static final String INSERT_MOVEMENTS = "INSERT INTO " + TABLE_STOCK_MOVEMENTS + " ("
+            + COLUMN_PHONE_ID + ", " + COLUMN_DELTA + ", " + COLUMN_REASON + ") SELECT " + COLUMN_ID + ", ";
+
+    /**
+     * SQL statement that takes units out of stock, but only if there are enough of them left.
+     * The sale is appended to the stock movements, which updates the quantity of the phone.
+     * The bind arguments are the number of units, the phone ID, and the number of units again.
+     * The number of changed rows is 1 if the units were sold.
+     */
+    public static final String SQL_SELL_PHONE = INSERT_MOVEMENTS + "-?, " + REASON_SALE
+            + " FROM " + TABLE_PHONES
+            + " WHERE " + COLUMN_ID + " = ? AND " + COLUMN_QUANTITY + " >= ?";
+
+    /**
+     * SQL statement that adds a number of units, which may be negative, to the stock of a phone.
+     * The stock never goes below 0. The bind arguments are the number of units, the phone ID,
+     * and the number of units again. The number of changed rows is 0 if the stock did not change.
+     */
+    public static final String SQL_ADJUST_STOCK = INSERT_MOVEMENTS
+            + "MAX(-" + COLUMN_QUANTITY + ", ?), " + REASON_ADJUSTMENT
+            + " FROM " + TABLE_PHONES
+            + " WHERE " + COLUMN_ID + " = ? AND MAX(-" + COLUMN_QUANTITY + ", ?) <> 0";
+
+    /**
+     * Start of the SQL statement that sets the stock of phones to a given quantity, recording the
+     * difference as a correction. The first two bind arguments are the new quantity, and the
+     * statement is completed with the condition on the phones, for example by
+     * {@link #SQL_CORRECT_PHONE_STOCK}.
+     */
+    public static final String SQL_CORRECT_STOCK = INSERT_MOVEMENTS
+            + "? - " + COLUMN_QUANTITY + ", " + REASON_CORRECTION
+            + " FROM " + TABLE_PHONES
+            + " WHERE " + COLUMN_QUANTITY + " <> ?";
+
+    /**
+     * SQL statement that sets the stock of a single phone, see {@link #SQL_CORRECT_STOCK}.
+     * The bind arguments are the quantity, the quantity again, and the phone ID.
+     */
+    public static final String SQL_CORRECT_PHONE_STOCK = SQL_CORRECT_STOCK + " AND " + COLUMN_ID + " = ?";
+
+    /**
+     * SQL statement that takes back one version of a single phone, after an edit moved it on
+     * twice: once through its stock correction and once for its other attributes. Updating the
+     * version alone does not fire {@link #CREATE_PHONES_VERSION_TRIGGER}. The bind argument is
+     * the phone ID.
+     */
+    public static final String SQL_TAKE_BACK_VERSION = "UPDATE " + TABLE_PHONES
+            + " SET " + COLUMN_VERSION + " = " + COLUMN_VERSION + " - 1"
+            + " WHERE " + COLUMN_ID + " = ?";
+
+    /**
+     * SQL statement that takes back one version of the phones with a stock movement after a
+     * given one, see {@link #SQL_TAKE_BACK_VERSION}. The bind argument is the ID of the last
+     * stock movement before the correction, see {@link #SQL_SELECT_LAST_MOVEMENT_ID}.
+     */
+    public static final String SQL_TAKE_BACK_VERSIONS = "UPDATE " + TABLE_PHONES
+            + " SET " + COLUMN_VERSION + " = " + COLUMN_VERSION + " - 1"
+            + " WHERE " + COLUMN_ID + " IN (SELECT " + COLUMN_PHONE_ID
+            + " FROM " + TABLE_STOCK_MOVEMENTS + " WHERE " + COLUMN_ID + " > ?)";
+
+    /**
+     * SQL statement that reads the ID of the last stock movement, 0 if there is none.
+     */
+    public static final String SQL_SELECT_LAST_MOVEMENT_ID = "SELECT IFNULL(MAX(" + COLUMN_ID
+            + "), 0) FROM " + TABLE_STOCK_MOVEMENTS;
+
+    /**
+     * SQL statement that folds the stock movements up to a time into a new snapshot per phone,
+     * on top of the phone's latest snapshot. The bind argument is the time, and is referenced
+     * as ?1 so it is only bound once.
+     */
+    public static final String SQL_COMPACT_SNAPSHOTS = "INSERT OR REPLACE INTO " + TABLE_STOCK_SNAPSHOTS + " ("
+            + COLUMN_PHONE_ID + ", " + COLUMN_TAKEN_AT + ", " + COLUMN_QUANTITY + ")"
+            + " SELECT m." + COLUMN_PHONE_ID + ", ?1, "
+            + "COALESCE((SELECT s." + COLUMN_QUANTITY + " FROM " + TABLE_STOCK_SNAPSHOTS + " s"
+            + " WHERE s." + COLUMN_PHONE_ID + " = m." + COLUMN_PHONE_ID + " AND s." + COLUMN_TAKEN_AT + " <= ?1"
+            + " ORDER BY s." + COLUMN_TAKEN_AT + " DESC LIMIT 1), 0) + SUM(m." + COLUMN_DELTA + ")"
+            + " FROM " + TABLE_STOCK_MOVEMENTS + " m"
+            + " WHERE m." + COLUMN_CREATED_AT + " <= ?1"
+            + " GROUP BY m." + COLUMN_PHONE_ID;
+
+    /**
+     * SQL statement that removes the stock movements folded into snapshots by
+     * {@link #SQL_COMPACT_SNAPSHOTS}. The bind argument is the same time.
+     */
+    public static final String SQL_COMPACT_MOVEMENTS = "DELETE FROM " + TABLE_STOCK_MOVEMENTS
+            + " WHERE " + COLUMN_CREATED_AT + " <= ?";
+
+    /**
+     * SQL query of the stock of every phone at a given time: the latest snapshot at or before
+     * that time, plus the movements after the snapshot up to that time. Both are read through
+     * their indexes, so the cost per phone does not grow with the length of the ledger.
+     * The bind argument is the time, referenced as ?1. The columns are {@link #COLUMN_ID} and
+     * {@link #COLUMN_QUANTITY}.
+     *
+     * A time before the latest compaction falls between snapshots, and gets the stock of the
+     * snapshot before it.
+     */
+    public static final String SQL_STOCK_AS_OF = "SELECT p." + COLUMN_ID + " AS " + COLUMN_ID + ", "
+            + "COALESCE((SELECT s." + COLUMN_QUANTITY + " FROM " + TABLE_STOCK_SNAPSHOTS + " s"
+            + " WHERE s." + COLUMN_PHONE_ID + " = p." + COLUMN_ID + " AND s." + COLUMN_TAKEN_AT + " <= ?1"
+            + " ORDER BY s." + COLUMN_TAKEN_AT + " DESC LIMIT 1), 0)"
+            + " + COALESCE((SELECT SUM(m." + COLUMN_DELTA + ") FROM " + TABLE_STOCK_MOVEMENTS + " m"
+            + " WHERE m." + COLUMN_PHONE_ID + " = p." + COLUMN_ID + " AND m." + COLUMN_CREATED_AT + " <= ?1"
+            + " AND m." + COLUMN_CREATED_AT + " > COALESCE((SELECT MAX(s." + COLUMN_TAKEN_AT + ") FROM "
+            + TABLE_STOCK_SNAPSHOTS + " s WHERE s." + COLUMN_PHONE_ID + " = p." + COLUMN_ID
+            + " AND s." + COLUMN_TAKEN_AT + " <= ?1), -1)), 0) AS " + COLUMN_QUANTITY
+            + " FROM " + TABLE_PHONES + " p";
+
+    /**
+     * SQL statement that reads the quantity in stock of a single phone.
+     */
+    public static final String SQL_SELECT_QUANTITY = "SELECT " + COLUMN_QUANTITY
+            + " FROM " + TABLE_PHONES + " WHERE " + COLUMN_ID + " = ?";
+
+    /**
+     * SQL statement that reads the version of a single phone.
+     */
+    public static final String SQL_SELECT_VERSION = "SELECT " + COLUMN_VERSION
+            + " FROM " + TABLE_PHONES + " WHERE " + COLUMN_ID + " = ?";
+
+    /**
+     * Returns all the statements that create the current schema in an empty database, including
+     * {@link #CREATE_LOW_STOCK_INDEX}, so they need SQLite 3.8.0 or later.
+     */
+    public static String[] createStatements() {
+        String[] statements = new String[4 + CREATE_SUPPLIERS.length + CREATE_PHONES_INDEXES.length
+                + CREATE_PHONES_FTS.length + CREATE_INVENTORY_SUMMARY.length + CREATE_STOCK_LEDGER.length
+                + CREATE_LOW_STOCK_EVENTS.length];
+        int i = CREATE_SUPPLIERS.length;
+        System.arraycopy(CREATE_SUPPLIERS, 0, statements, 0, i);
+        statements[i++] = CREATE_PHONES_TABLE;
+        statements[i++] = CREATE_PHONES_VERSION_TRIGGER;
+        for (String[] group : new String[][]{CREATE_PHONES_INDEXES, CREATE_PHONES_FTS,
+                CREATE_INVENTORY_SUMMARY, CREATE_STOCK_LEDGER, CREATE_LOW_STOCK_EVENTS}) {
+            System.arraycopy(group, 0, statements, i, group.length);
+            i += group.length;
+        }
+        statements[i++] = CREATE_STOCK_BATCHES_TABLE;
+        statements[i] = CREATE_LOW_STOCK_INDEX;
+        return statements;
+    }
+
+    /**
+     * Returns the statements of {@link #CREATE_SUPPLIERS}.
+     */
+    private static String[] createSuppliers() {
+        String[] statements = new String[1 + BUILT_IN_SUPPLIER_NAMES.length];
+        statements[0] = "CREATE TABLE " + TABLE_SUPPLIERS + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY, "
+                + COLUMN_SUPPLIER_NAME + " TEXT NOT NULL UNIQUE);";
+        for (int id = 0; id < BUILT_IN_SUPPLIER_NAMES.length; id++) {
+            statements[id + 1] = "INSERT OR IGNORE INTO " + TABLE_SUPPLIERS + " ("
+                    + COLUMN_ID + ", " + COLUMN_SUPPLIER_NAME + ") VALUES ("
+                    + id + ", '" + BUILT_IN_SUPPLIER_NAMES[id] + "');";
+        }
+        return statements;
+    }
+
+    /**
+     * Returns the trigger statements that add ({@code sign} "+") or take away ({@code sign} "-")
+     * the {@code row} ("new" or "old") of a phone to or from the totals of its supplier.
+     */
+    private static String summaryChange(String row, String sign) {
+        return " INSERT OR IGNORE INTO " + TABLE_INVENTORY_SUMMARY + " (" + COLUMN_SUPPLIER + ")"
+                + " VALUES (" + row + "." + COLUMN_SUPPLIER + ");"
+                + " UPDATE " + TABLE_INVENTORY_SUMMARY + " SET "
+                + COLUMN_PHONE_COUNT + " = " + COLUMN_PHONE_COUNT + " " + sign + " 1, "
+                + COLUMN_UNITS + " = " + COLUMN_UNITS + " " + sign + " "
+                + row + "." + COLUMN_QUANTITY + ", "
+                + COLUMN_STOCK_VALUE + " = " + COLUMN_STOCK_VALUE + " " + sign + " "
+                + row + "." + COLUMN_PRICE + " * " + row + "." + COLUMN_QUANTITY
+                + " WHERE " + COLUMN_SUPPLIER + " = " + row + "." + COLUMN_SUPPLIER + ";";
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.android.inventorymmbv2;
+
+import java.util.List;
+
+/**
+ * Storage of the phone inventory, independent of the platform the database runs on. Every
+ * implementation uses the tables and statements of {@link PhoneSchema} and checks phones with
+ * {@link PhoneValidator} before writing them, so all of them behave the same.
+ *
+ * Implementations are not thread-safe, each thread needs its own store.
+ */
+public interface PhoneStore {
+
+    /**
+     * Check and insert a phone.
+     *
+     * @return the ID of the new phone, or -1 if the insert failed
+     * @throws IllegalArgumentException if the phone is not valid
+     */
+    long insert(Phone phone);
+
+    /**
+     * Check and insert a batch of phones in a single transaction. Nothing is inserted if one of
+     * the phones is not valid.
+     *
+     * @return the number of phones inserted
+     * @throws IllegalArgumentException if one of the phones is not valid
+     */
+    int bulkInsert(List<Phone> phones);
+
+    /**
+     * Check a phone and replace the phone with the given ID with it.
+     *
+     * @return the number of phones updated, 0 or 1
+     * @throws IllegalArgumentException if the phone is not valid
+     */
+    int update(long id, Phone phone);
+
+    /**
+     * Delete the phone with the given ID.
+     *
+     * @return the number of phones deleted, 0 or 1
+     */
+    int delete(long id);
+
+    /**
+     * Returns the phone with the given ID, or null if there is none.
+     */
+    Phone query(long id);
+
+    /**
+     * Returns at most {@code limit} phones of the given supplier, in ID order.
+     */
+    List<Phone> queryBySupplier(int supplier, int limit);
+
+    /**
+     * Take the given number of units of a phone out of stock, but only if there are enough of
+     * them left.
+     *
+     * @return whether the units were sold
+     */
+    boolean sell(long id, int count);
+
+    /**
+     * Release the resources of the store. It cannot be used anymore afterwards.
+     */
+    void close();
+}
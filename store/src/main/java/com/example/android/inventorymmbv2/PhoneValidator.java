@@ -0,0 +1,96 @@
+package com.example.android.inventorymmbv2;
+
+/**
+ * The rules a phone has to follow before it is written to the database. Each check throws an
+ * {@link IllegalArgumentException} describing the attribute that is invalid.
+ *
+ * Attributes that may be left out of a write are passed as null and are then always valid.
+ */
+public final class PhoneValidator {
+
+    // To prevent someone from accidentally instantiating the validator class,
+    // give it an empty constructor.
+    private PhoneValidator() {}
+
+    /**
+     * Returns whether or not the given supplier is one of the built-in SUPPLIER values of
+     * {@link PhoneSchema}. Suppliers added to {@link PhoneSchema#TABLE_SUPPLIERS} later are
+     * only known to the database.
+     */
+    public static boolean isValidSupplier(int supplier) {
+        return supplier == PhoneSchema.SUPPLIER_UNKNOWN || supplier == PhoneSchema.SUPPLIER_APPLE
+                || supplier == PhoneSchema.SUPPLIER_SONY || supplier == PhoneSchema.SUPPLIER_HUAWEI
+                || supplier == PhoneSchema.SUPPLIER_SAMSUNG;
+    }
+
+    /** Check that the name is not null */
+    public static void checkName(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("Phone requires a name");
+        }
+    }
+
+    /** Check that the supplier is one of the built-in suppliers */
+    public static void checkSupplier(Integer supplier) {
+        if (supplier == null || !isValidSupplier(supplier)) {
+            throw new IllegalArgumentException("Phone requires valid supplier");
+        }
+    }
+
+    /**
+     * Check that the supplier is given and can be the ID of a supplier. Whether that supplier
+     * exists is up to whoever knows the suppliers table.
+     */
+    public static void checkSupplierId(Integer supplier) {
+        if (supplier == null || supplier < 0) {
+            throw new IllegalArgumentException("Phone requires valid supplier");
+        }
+    }
+
+    /** Check that the supplier name is not empty */
+    public static void checkSupplierName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new IllegalArgumentException("Supplier requires a name");
+        }
+    }
+
+    /** Check that the supplier phone number is not null */
+    public static void checkSupplierNumber(String number) {
+        if (number == null) {
+            throw new IllegalArgumentException("Phone number of supplier is required");
+        }
+    }
+
+    /** If the price is provided, check that it's greater than or equal to 0 € */
+    public static void checkPrice(Integer price) {
+        if (price != null && price < 0) {
+            throw new IllegalArgumentException("Phone requires valid price");
+        }
+    }
+
+    /** If the quantity is provided, check that it's greater than or equal to 0 units */
+    public static void checkQuantity(Integer quantity) {
+        if (quantity != null && quantity < 0) {
+            throw new IllegalArgumentException("Stock number needs to be valid");
+        }
+    }
+
+    /** If the reorder threshold is provided, check that it's greater than or equal to 0 units */
+    public static void checkReorderThreshold(Integer threshold) {
+        if (threshold != null && threshold < 0) {
+            throw new IllegalArgumentException("Reorder threshold needs to be valid");
+        }
+    }
+
+    /**
+     * Check that the given phone has all the required attributes and that they are valid.
+     * The supplier only has to be a possible supplier ID, see {@link #checkSupplierId}.
+     */
+    public static void validate(Phone phone) {
+        checkName(phone.getName());
+        checkSupplierId(phone.getSupplier());
+        checkSupplierNumber(phone.getSupplierNumber());
+        checkPrice(phone.getPrice());
+        checkQuantity(phone.getQuantity());
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.inventorymmbv2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link JdbcPhoneStore} on an in-memory SQLite database.
+ */
+public class JdbcPhoneStoreTest {
+
+    private PhoneStore mStore;
+
+    @Before
+    public void setUp() {
+        mStore = JdbcPhoneStore.open("jdbc:sqlite::memory:");
+    }
+
+    @After
+    public void tearDown() {
+        mStore.close();
+    }
+
+    @Test
+    public void insert_thenQuery() {
+        long id = mStore.insert(new Phone("Xperia XZ2", 500, PhoneSchema.SUPPLIER_SONY, "079123456", 10));
+
+        Phone phone = mStore.query(id);
+        assertNotNull(phone);
+        assertEquals(id, phone.getId());
+        assertEquals("Xperia XZ2", phone.getName());
+        assertEquals(500, phone.getPrice());
+        assertEquals(PhoneSchema.SUPPLIER_SONY, phone.getSupplier());
+        assertEquals("079123456", phone.getSupplierNumber());
+        assertEquals(10, phone.getQuantity());
+    }
+
+    @Test
+    public void bulkInsert_invalidPhoneInsertsNothing() {
+        List<Phone> phones = Arrays.asList(
+                new Phone("Xperia XZ2", 500, PhoneSchema.SUPPLIER_SONY, "079123456", 10),
+                new Phone("Unknown", 500, -1, "079123456", 10));
+        try {
+            mStore.bulkInsert(phones);
+            fail("Expected the invalid supplier to be rejected");
+        } catch (IllegalArgumentException expected) {
+            // The whole batch is rejected
+        }
+
+        assertTrue(mStore.queryBySupplier(PhoneSchema.SUPPLIER_SONY, 10).isEmpty());
+    }
+
+    @Test
+    public void insert_acceptsAddedSupplier() {
+        // Suppliers past the built-in ones are rows of the suppliers table, not known to the store
+        long id = mStore.insert(new Phone("Mi 8", 400, PhoneSchema.SUPPLIER_SAMSUNG + 1, "079123456", 3));
+
+        assertEquals(PhoneSchema.SUPPLIER_SAMSUNG + 1, mStore.query(id).getSupplier());
+    }
+
+    @Test
+    public void queryBySupplier_returnsOnlyThatSupplier() {
+        mStore.bulkInsert(Arrays.asList(
+                new Phone("Xperia XZ2", 500, PhoneSchema.SUPPLIER_SONY, "079123456", 10),
+                new Phone("iPhone X", 900, PhoneSchema.SUPPLIER_APPLE, "079123456", 5),
+                new Phone("Xperia XZ3", 600, PhoneSchema.SUPPLIER_SONY, "079123456", 3)));
+
+        List<Phone> sony = mStore.queryBySupplier(PhoneSchema.SUPPLIER_SONY, 10);
+        assertEquals(2, sony.size());
+        assertEquals("Xperia XZ2", sony.get(0).getName());
+        assertEquals("Xperia XZ3", sony.get(1).getName());
+    }
+
+    @Test
+    public void sell_neverGoesBelowZero() {
+        long id = mStore.insert(new Phone("Xperia XZ2", 500, PhoneSchema.SUPPLIER_SONY, "079123456", 2));
+
+        assertTrue(mStore.sell(id, 2));
+        assertFalse(mStore.sell(id, 1));
+        assertEquals(0, mStore.query(id).getQuantity());
+    }
+
+    @Test
+    public void updateAndDelete() {
+        long id = mStore.insert(new Phone("Xperia XZ2", 500, PhoneSchema.SUPPLIER_SONY, "079123456", 2));
+
+        assertEquals(1, mStore.update(id,
+                new Phone("Xperia XZ3", 650, PhoneSchema.SUPPLIER_SONY, "079123456", 4)));
+        assertEquals("Xperia XZ3", mStore.query(id).getName());
+
+        assertEquals(1, mStore.delete(id));
+        assertNull(mStore.query(id));
+    }
+}
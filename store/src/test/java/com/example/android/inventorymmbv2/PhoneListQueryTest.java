@@ -0,0 +1,299 @@
+package com.example.android.inventorymmbv2;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit test for {@link PhoneListQuery} on an in-memory SQLite database. The query plans of
+ * every supported combination of sort order and filters are checked, so an index change that
+ * makes the list read the phones table, or scan an index it could search, fails here.
+ */
+public class PhoneListQueryTest {
+
+    /** Sort columns of the list, null for the default order by ID */
+    private static final String[] SORTS = {
+            null,
+            PhoneSchema.COLUMN_PHONE_NAME,
+            PhoneSchema.COLUMN_PRICE,
+            PhoneSchema.COLUMN_QUANTITY };
+
+    private static final int PAGE_SIZE = 7;
+
+    private Connection mConnection;
+
+    @Before
+    public void setUp() throws SQLException {
+        mConnection = DriverManager.getConnection("jdbc:sqlite::memory:");
+        Statement statement = mConnection.createStatement();
+        try {
+            for (String sql : PhoneSchema.createStatements()) {
+                statement.execute(sql);
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        mConnection.close();
+    }
+
+    @Test
+    public void everyCombination_readsTheExpectedIndex() throws SQLException {
+        for (String sort : SORTS) {
+            for (int filters = 0; filters < 8; filters++) {
+                for (boolean firstPage : new boolean[]{true, false}) {
+                    PhoneListQuery query = newQuery(sort, filters, firstPage);
+                    String index = expectedIndex(sort, filters);
+                    boolean search = expectsSearch(sort, filters, firstPage);
+                    int reads = 0;
+                    for (String step : explain(query)) {
+                        String description = sort + " with filters " + filters
+                                + (firstPage ? " on the first page: " : " after a page: ") + step;
+                        if (step.contains("TEMP B-TREE")) {
+                            continue;
+                        }
+                        reads++;
+                        // Older versions say "SEARCH TABLE phones", newer ones "SEARCH phones"
+                        assertTrue(description, step.startsWith(search ? "SEARCH " : "SCAN "));
+                        if (index == null) {
+                            assertTrue(description, step.contains("INTEGER PRIMARY KEY"));
+                        } else {
+                            assertTrue(description, step.contains("COVERING INDEX " + index));
+                        }
+                    }
+                    assertEquals(sort + " with filters " + filters, 1, reads);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void filterOfSortColumn_needsNoSorting() throws SQLException {
+        assertNoSorting(new PhoneListQuery(null).setAfter(null, 0));
+        assertNoSorting(new PhoneListQuery(null).setSupplier(PhoneSchema.SUPPLIER_SONY).setAfter(null, 0));
+        assertNoSorting(new PhoneListQuery(PhoneSchema.COLUMN_PHONE_NAME));
+        assertNoSorting(new PhoneListQuery(PhoneSchema.COLUMN_PHONE_NAME).setAfter("Xperia", 3));
+        assertNoSorting(new PhoneListQuery(PhoneSchema.COLUMN_PRICE).setPriceRange(100, 500));
+        assertNoSorting(new PhoneListQuery(PhoneSchema.COLUMN_PRICE).setAfter("300", 3));
+        assertNoSorting(new PhoneListQuery(PhoneSchema.COLUMN_QUANTITY).setInStockOnly(true));
+    }
+
+    @Test
+    public void pages_listEveryPhoneOnceInOrder() throws SQLException {
+        // Many phones share a price, so pages often start in the middle of equal values
+        PreparedStatement insert = mConnection.prepareStatement(PhoneSchema.SQL_INSERT_PHONE);
+        for (int i = 0; i < 50; i++) {
+            insert.setString(1, "Phone " + (i % 9));
+            insert.setInt(2, 100 * (i % 4));
+            insert.setInt(3, i % 2 == 0 ? PhoneSchema.SUPPLIER_SONY : PhoneSchema.SUPPLIER_APPLE);
+            insert.setString(4, "079123456");
+            insert.setInt(5, i % 5);
+            insert.executeUpdate();
+        }
+        insert.close();
+
+        for (String sort : SORTS) {
+            String column = sort == null ? PhoneSchema.COLUMN_ID : sort;
+            List<String> keys = new ArrayList<>();
+            Set<Long> ids = new HashSet<>();
+            String afterKey = null;
+            long afterId = 0;
+            while (true) {
+                PhoneListQuery query = new PhoneListQuery(sort).setSupplier(PhoneSchema.SUPPLIER_SONY);
+                if (sort == null || !keys.isEmpty()) {
+                    query.setAfter(afterKey, afterId);
+                }
+                int rows = 0;
+                PreparedStatement statement = mConnection.prepareStatement(toSql(query, PAGE_SIZE));
+                try {
+                    bind(statement, query);
+                    ResultSet page = statement.executeQuery();
+                    while (page.next()) {
+                        rows++;
+                        afterId = page.getLong(PhoneSchema.COLUMN_ID);
+                        afterKey = page.getString(column);
+                        assertTrue("Phone " + afterId + " listed twice sorted by " + column, ids.add(afterId));
+                        keys.add(afterKey);
+                    }
+                } finally {
+                    statement.close();
+                }
+                if (rows < PAGE_SIZE) {
+                    break;
+                }
+            }
+
+            assertEquals(25, ids.size());
+            for (int i = 1; i < keys.size(); i++) {
+                if (column.equals(PhoneSchema.COLUMN_PHONE_NAME)) {
+                    assertTrue(keys.get(i - 1).compareTo(keys.get(i)) <= 0);
+                } else {
+                    assertTrue(Long.parseLong(keys.get(i - 1)) <= Long.parseLong(keys.get(i)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sellingTheLastUnit_withTheInStockFilter_movesThePhoneOut() {
+        PhoneListQuery query = new PhoneListQuery(null).setInStockOnly(true);
+        assertTrue(query.isMovedBy(newPhone("Xperia XZ2", 500, 1), newPhone("Xperia XZ2", 500, 0)));
+        assertFalse(query.isMovedBy(newPhone("Xperia XZ2", 500, 2), newPhone("Xperia XZ2", 500, 1)));
+    }
+
+    @Test
+    public void restockingAPhone_withTheInStockFilter_movesThePhoneIn() {
+        PhoneListQuery query = new PhoneListQuery(null).setInStockOnly(true);
+        assertTrue(query.isMovedBy(null, newPhone("Xperia XZ2", 500, 3)));
+        assertFalse(query.isMovedBy(null, newPhone("Xperia XZ2", 500, 0)));
+    }
+
+    @Test
+    public void changeOfTheSortColumn_movesThePhone() {
+        assertTrue(new PhoneListQuery(PhoneSchema.COLUMN_PRICE)
+                .isMovedBy(newPhone("Xperia XZ2", 500, 3), newPhone("Xperia XZ2", 450, 3)));
+        assertTrue(new PhoneListQuery(PhoneSchema.COLUMN_QUANTITY)
+                .isMovedBy(newPhone("Xperia XZ2", 500, 3), newPhone("Xperia XZ2", 500, 2)));
+        assertFalse(new PhoneListQuery(PhoneSchema.COLUMN_PHONE_NAME)
+                .isMovedBy(newPhone("Xperia XZ2", 500, 3), newPhone("Xperia XZ2", 500, 2)));
+        assertFalse(new PhoneListQuery(null)
+                .isMovedBy(newPhone("Xperia XZ2", 500, 3), newPhone("Xperia XZ3", 450, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSortColumn_isRejected() {
+        new PhoneListQuery(PhoneSchema.COLUMN_SUPPLIER_NUMBER);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sortedPage_needsSortValue() {
+        new PhoneListQuery(PhoneSchema.COLUMN_PRICE).setAfter(null, 3);
+    }
+
+    /** Returns a phone of Sony with the given list columns */
+    private static Phone newPhone(String name, int price, int quantity) {
+        return new Phone(name, price, PhoneSchema.SUPPLIER_SONY, "079123456", quantity);
+    }
+
+    /**
+     * Returns the query with the given sort column and the filters of the bits of
+     * {@code filters}: 1 for the supplier, 2 for the price range and 4 for the phones in stock.
+     * Pages sorted by ID always start after an ID, the first one after 0.
+     */
+    private static PhoneListQuery newQuery(String sort, int filters, boolean firstPage) {
+        PhoneListQuery query = new PhoneListQuery(sort);
+        if ((filters & 1) != 0) {
+            query.setSupplier(PhoneSchema.SUPPLIER_SONY);
+        }
+        if ((filters & 2) != 0) {
+            query.setPriceRange(100, 500);
+        }
+        if ((filters & 4) != 0) {
+            query.setInStockOnly(true);
+        }
+        if (sort == null) {
+            query.setAfter(null, firstPage ? 0 : 10);
+        } else if (!firstPage) {
+            query.setAfter("300", 10);
+        }
+        return query;
+    }
+
+    /**
+     * Returns the index the query of {@link #newQuery} should read, or null for the rowid of the
+     * table. An equal supplier is the narrowest range, then the price range, then the sort column.
+     */
+    private static String expectedIndex(String sort, int filters) {
+        if ((filters & 1) != 0) {
+            return PhoneSchema.PHONES_INDEX_NAMES[3];
+        }
+        if ((filters & 2) != 0) {
+            return PhoneSchema.PHONES_INDEX_NAMES[1];
+        }
+        if (sort == null) {
+            return null;
+        }
+        if (sort.equals(PhoneSchema.COLUMN_PHONE_NAME)) {
+            return PhoneSchema.PHONES_INDEX_NAMES[0];
+        }
+        return sort.equals(PhoneSchema.COLUMN_PRICE)
+                ? PhoneSchema.PHONES_INDEX_NAMES[1]
+                : PhoneSchema.PHONES_INDEX_NAMES[2];
+    }
+
+    /**
+     * Returns whether the query of {@link #newQuery} should search a range of its index. Only
+     * the first page of a list sorted by name or price with no filter but the stock has no range
+     * to search: the phones in stock are not a range of those indexes, so that page scans the
+     * index in the order of the list.
+     */
+    private static boolean expectsSearch(String sort, int filters, boolean firstPage) {
+        if ((filters & 3) != 0 || !firstPage || sort == null) {
+            return true;
+        }
+        return sort.equals(PhoneSchema.COLUMN_QUANTITY) && (filters & 4) != 0;
+    }
+
+    private void assertNoSorting(PhoneListQuery query) throws SQLException {
+        for (String step : explain(query)) {
+            assertFalse(query.getOrderBy() + ": " + step, step.contains("TEMP B-TREE"));
+        }
+    }
+
+    /**
+     * Returns the steps of the query plan of the list columns read with the given query.
+     */
+    private List<String> explain(PhoneListQuery query) throws SQLException {
+        PreparedStatement statement = mConnection.prepareStatement("EXPLAIN QUERY PLAN " + toSql(query, 50));
+        try {
+            bind(statement, query);
+            ResultSet plan = statement.executeQuery();
+            List<String> steps = new ArrayList<>();
+            while (plan.next()) {
+                steps.add(plan.getString("detail"));
+            }
+            plan.close();
+            return steps;
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static String toSql(PhoneListQuery query, int limit) {
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < PhoneSchema.LIST_COLUMNS.length; i++) {
+            sql.append(i == 0 ? "" : ", ").append(PhoneSchema.LIST_COLUMNS[i]);
+        }
+        sql.append(" FROM ").append(PhoneSchema.TABLE_PHONES);
+        if (query.getSelection() != null) {
+            sql.append(" WHERE ").append(query.getSelection());
+        }
+        return sql.append(" ORDER BY ").append(query.getOrderBy()).append(" LIMIT ").append(limit).toString();
+    }
+
+    /**
+     * Bind the arguments as text, the same as the selection arguments of Android.
+     */
+    private static void bind(PreparedStatement statement, PhoneListQuery query) throws SQLException {
+        String[] args = query.getSelectionArgs();
+        for (int i = 0; i < args.length; i++) {
+            statement.setString(i + 1, args[i]);
+        }
+    }
+}